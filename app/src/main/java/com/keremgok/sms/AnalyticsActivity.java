@@ -34,6 +34,7 @@ public class AnalyticsActivity extends AppCompatActivity {
     private TextView tvAvgProcessingTime;
     private TextView tvAppOpens;
     private TextView tvMostCommonError;
+    private TextView tvLatencyPercentiles;
     private TextView tvLastUpdateTime;
     private ProgressBar progressSuccessRate;
     private Button btnExport;
@@ -111,6 +112,7 @@ public class AnalyticsActivity extends AppCompatActivity {
         tvAvgProcessingTime = findViewById(R.id.tvAvgProcessingTime);
         tvAppOpens = findViewById(R.id.tvAppOpens);
         tvMostCommonError = findViewById(R.id.tvMostCommonError);
+        tvLatencyPercentiles = findViewById(R.id.tvLatencyPercentiles);
         tvLastUpdateTime = findViewById(R.id.tvLastUpdateTime);
         progressSuccessRate = findViewById(R.id.progressSuccessRate);
         
@@ -185,17 +187,23 @@ public class AnalyticsActivity extends AppCompatActivity {
                 int failedCount = historyDao.getFailedCount();
                 double overallSuccessRate = totalReceived > 0 ? (successCount * 100.0 / totalReceived) : 0.0;
                 
-                // Load analytics events for additional metrics
-                AnalyticsEventDao analyticsDao = database.analyticsEventDao();
-                int totalErrors = analyticsDao.getEventCountByType("SMS_ERROR");
-                int totalBlocked = analyticsDao.getEventCountByType("SMS_BLOCKED");
-                final int appOpens = analyticsDao.getEventCountByType("APP_OPEN");
+                // Additional metrics from the incrementally maintained day buckets, including buffered events
+                StatisticsManager.flushIfActive();
+                StatisticsBucketDao bucketDao = database.statisticsBucketDao();
+                StatisticsBucket allTime = bucketDao.getTotals(StatisticsBucket.DAY, 0, Long.MAX_VALUE);
+                int totalErrors = allTime.getErrorCount();
+                int totalBlocked = allTime.getBlockedCount();
+                final int appOpens = allTime.getAppOpens();
                 
-                // Get average processing time from analytics events
+                // Get average processing time over the last 30 days
                 long thirtyDaysAgo = System.currentTimeMillis() - (30L * 24 * 60 * 60 * 1000);
-                Double avgProcessingTime = analyticsDao.getAvgProcessingTime(thirtyDaysAgo, System.currentTimeMillis());
-                if (avgProcessingTime == null) avgProcessingTime = 0.0;
-                final Double finalAvgProcessingTime = avgProcessingTime;
+                final double finalAvgProcessingTime = bucketDao.getTotals(StatisticsBucket.DAY,
+                    StatisticsBucket.bucketStart(StatisticsBucket.DAY, thirtyDaysAgo), Long.MAX_VALUE)
+                    .getAvgProcessingTimeMs();
+                AnalyticsEventDao analyticsDao = database.analyticsEventDao();
+                
+                // Latency percentiles over the same 30 days from the persisted histograms
+                final String latencySummary = buildLatencySummary(thirtyDaysAgo, System.currentTimeMillis());
                 
                 // Get most common error
                 String commonError = getString(R.string.error_none);
@@ -228,14 +236,41 @@ public class AnalyticsActivity extends AppCompatActivity {
                 runOnUiThread(() -> updateUI(
                     totalReceived, successCount, failedCount, overallSuccessRate,
                     totalErrors, totalBlocked, appOpens, finalAvgProcessingTime, mostCommonError,
-                    todayStats, weekStats, monthStats
+                    latencySummary, todayStats, weekStats, monthStats
                 ));
                 
             } catch (Exception e) {
                 android.util.Log.e(TAG, "Error loading statistics: " + e.getMessage(), e);
                 runOnUiThread(() -> Toast.makeText(this, getString(R.string.error_loading_statistics), Toast.LENGTH_SHORT).show());
             }
-        });
+        }, ThreadManager.TASK_PRIORITY_UI);
+    }
+    
+    /**
+     * Format mean and p50/p90/p99/max for each pipeline latency, one line per metric
+     * Runs database queries, call from a background thread
+     */
+    private String buildLatencySummary(long startTime, long endTime) {
+        LatencyMetrics latencyMetrics = LatencyMetrics.getInstance(this);
+        String[] metrics = {LatencyMetrics.PROCESSING, LatencyMetrics.ENQUEUE_TO_SEND, LatencyMetrics.SEND_TO_ACK};
+        int[] labels = {R.string.latency_processing, R.string.latency_enqueue_to_send, R.string.latency_send_to_ack};
+        
+        StringBuilder summary = new StringBuilder();
+        for (int i = 0; i < metrics.length; i++) {
+            LatencyHistogram.Snapshot snapshot = latencyMetrics.getSnapshot(metrics[i], startTime, endTime);
+            if (summary.length() > 0) {
+                summary.append('\n');
+            }
+            String label = getString(labels[i]);
+            if (snapshot.count == 0) {
+                summary.append(getString(R.string.latency_no_samples, label));
+            } else {
+                summary.append(getString(R.string.latency_percentiles_format, label, snapshot.getMean(),
+                    snapshot.getPercentile(0.50), snapshot.getPercentile(0.90),
+                    snapshot.getPercentile(0.99), snapshot.max));
+            }
+        }
+        return summary.toString();
     }
     
     /**
@@ -243,7 +278,7 @@ public class AnalyticsActivity extends AppCompatActivity {
      */
     private void updateUI(int totalReceived, int successCount, int failedCount, double overallSuccessRate,
                          int totalErrors, int totalBlocked, int appOpens, double avgProcessingTime,
-                         String mostCommonError, StatisticsSummary todayStats,
+                         String mostCommonError, String latencySummary, StatisticsSummary todayStats,
                          List<StatisticsSummary> weekStats, List<StatisticsSummary> monthStats) {
         
         // Overall statistics
@@ -255,6 +290,7 @@ public class AnalyticsActivity extends AppCompatActivity {
         tvAvgProcessingTime.setText(String.format(Locale.US, "%.0f ms", avgProcessingTime));
         tvAppOpens.setText(String.valueOf(appOpens));
         tvMostCommonError.setText(mostCommonError);
+        tvLatencyPercentiles.setText(latencySummary);
         
         // Update progress bar
         progressSuccessRate.setProgress((int) overallSuccessRate);
@@ -351,10 +387,12 @@ public class AnalyticsActivity extends AppCompatActivity {
                 csvContent.append(getString(R.string.csv_failed_forwards)).append(failedCount).append("\n");
                 csvContent.append(getString(R.string.csv_success_rate)).append(String.format(Locale.US, "%.2f%%", overallSuccessRate)).append("\n");
                 
-                // Get analytics data
+                // Get analytics data, from the day buckets since rolled up raw events are downsampled
                 AnalyticsEventDao analyticsDao = database.analyticsEventDao();
-                int totalErrors = analyticsDao.getEventCountByType("SMS_ERROR");
-                int appOpens = analyticsDao.getEventCountByType("APP_OPEN");
+                StatisticsManager.flushIfActive();
+                StatisticsBucket allTime = database.statisticsBucketDao().getTotals(StatisticsBucket.DAY, 0, Long.MAX_VALUE);
+                int totalErrors = allTime.getErrorCount();
+                int appOpens = allTime.getAppOpens();
                 
                 csvContent.append(getString(R.string.csv_total_errors)).append(totalErrors).append("\n");
                 csvContent.append(getString(R.string.csv_app_opens)).append(appOpens).append("\n");
@@ -376,6 +414,20 @@ public class AnalyticsActivity extends AppCompatActivity {
                     csvContent.append(stat.getErrorCount()).append("\n");
                 }
                 
+                // Monthly statistics for the last 12 months
+                csvContent.append("\n").append(getString(R.string.csv_monthly_stats_header)).append("\n");
+                csvContent.append(getString(R.string.csv_daily_columns)).append("\n");
+                
+                for (StatisticsSummary stat : summaryDao.getLastNMonths(12)) {
+                    csvContent.append(stat.getDate()).append(",");
+                    csvContent.append(stat.getTotalSmsReceived()).append(",");
+                    csvContent.append(stat.getTotalSmsForwarded()).append(",");
+                    csvContent.append(stat.getSuccessfulForwards()).append(",");
+                    csvContent.append(stat.getFailedForwards()).append(",");
+                    csvContent.append(String.format(Locale.US, "%.2f%%", stat.getSuccessRate())).append(",");
+                    csvContent.append(stat.getErrorCount()).append("\n");
+                }
+                
                 // Error analysis
                 csvContent.append("\n").append(getString(R.string.csv_error_analysis_header)).append("\n");
                 csvContent.append(getString(R.string.csv_error_columns)).append("\n");
@@ -413,7 +465,7 @@ public class AnalyticsActivity extends AppCompatActivity {
                 android.util.Log.e(TAG, "Error exporting statistics: " + e.getMessage(), e);
                 runOnUiThread(() -> Toast.makeText(this, getString(R.string.export_failed) + ": " + e.getMessage(), Toast.LENGTH_LONG).show());
             }
-        });
+        }, ThreadManager.TASK_PRIORITY_UI);
     }
     
     /**
@@ -511,7 +563,7 @@ public class AnalyticsActivity extends AppCompatActivity {
                     }
                 });
             }
-        });
+        }, ThreadManager.TASK_PRIORITY_UI);
     }
     
     /**
@@ -606,6 +658,8 @@ public class AnalyticsActivity extends AppCompatActivity {
             try {
                 database.analyticsEventDao().deleteAllEvents();
                 database.statisticsSummaryDao().deleteAllSummaries();
+                database.statisticsBucketDao().deleteAllBuckets();
+                database.latencyBucketDao().deleteAllBuckets();
                 
                 runOnUiThread(() -> {
                     Toast.makeText(this, getString(R.string.analytics_data_cleared), Toast.LENGTH_SHORT).show();
@@ -616,7 +670,7 @@ public class AnalyticsActivity extends AppCompatActivity {
                 android.util.Log.e(TAG, "Error clearing analytics data: " + e.getMessage(), e);
                 runOnUiThread(() -> Toast.makeText(this, getString(R.string.error_clearing_data), Toast.LENGTH_SHORT).show());
             }
-        });
+        }, ThreadManager.TASK_PRIORITY_UI);
     }
     
     @Override
@@ -1,6 +1,8 @@
 package com.keremgok.sms;
 
 import androidx.room.Entity;
+import androidx.room.Ignore;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 import androidx.room.ColumnInfo;
 
@@ -9,7 +11,14 @@ import androidx.room.ColumnInfo;
  * Tracks individual events for privacy-first local analytics
  * No sensitive data is stored - only anonymized metrics
  */
-@Entity(tableName = "analytics_events")
+@Entity(
+    tableName = "analytics_events",
+    indices = {
+        @Index(value = "timestamp"),
+        @Index(value = {"event_type", "event_action", "timestamp"}),
+        @Index(value = {"error_code", "timestamp"})
+    }
+)
 public class AnalyticsEvent {
     
     @PrimaryKey(autoGenerate = true)
@@ -42,6 +51,12 @@ public class AnalyticsEvent {
     @ColumnInfo(name = "session_id")
     private String sessionId; // Anonymous session identifier
     
+    @ColumnInfo(name = "sample_weight", defaultValue = "1")
+    private int sampleWeight = 1; // Events this row stands for when TelemetryPolicy sampled its type
+    
+    @Ignore
+    private boolean persisted = true; // False for sampled-out events that only feed the statistics counters
+    
     // Constructor
     public AnalyticsEvent(String eventType, String eventCategory, String eventAction, 
                          long timestamp, long durationMs, String errorCode, String metadata, 
@@ -137,4 +152,20 @@ public class AnalyticsEvent {
     public void setSessionId(String sessionId) {
         this.sessionId = sessionId;
     }
+    
+    public int getSampleWeight() {
+        return sampleWeight;
+    }
+    
+    public void setSampleWeight(int sampleWeight) {
+        this.sampleWeight = sampleWeight;
+    }
+    
+    public boolean isPersisted() {
+        return persisted;
+    }
+    
+    public void setPersisted(boolean persisted) {
+        this.persisted = persisted;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,232 @@
+package com.keremgok.sms;
+
+import android.util.Log;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lock-free ring buffer for analytics events
+ * Recording an event claims a slot with a single CAS and never touches the database. The buffer
+ * is drained into analytics_events with batched insertAll transactions once FLUSH_SIZE events are
+ * waiting or the oldest has waited FLUSH_DELAY_MS, and on memory trim and termination. When the
+ * ring is full new events are dropped - analytics is best effort, like the analytics backpressure
+ * policy in ThreadManager.
+ * Each batch also rolls its events into the statistics_buckets counters in the same transaction,
+ * so summaries never have to scan analytics_events. Events sampled out by TelemetryPolicy are
+ * counted in the buckets but not written as rows.
+ */
+public class AnalyticsEventBuffer {
+
+    private static final String TAG = "AnalyticsEventBuffer";
+
+    // Buffer configuration
+    private static final int CAPACITY = 1024; // Must be a power of two
+    private static final int FLUSH_SIZE = 64; // Flush immediately once this many events are waiting
+    private static final int MAX_TRANSACTION_ROWS = 256; // Upper bound on rows per transaction
+    private static final long FLUSH_DELAY_MS = 2000; // Upper bound on how long an event waits before commit
+
+    // Statistics bucket retention - day buckets are kept, finer ones only as long as they are useful
+    private static final long MINUTE_BUCKET_RETENTION_MS = 2L * 24 * 60 * 60 * 1000;
+    private static final long HOUR_BUCKET_RETENTION_MS = 90L * 24 * 60 * 60 * 1000;
+    private static final long PRUNE_INTERVAL_MS = 60 * 60 * 1000;
+
+    private final AppDatabase database;
+    private final int mask = CAPACITY - 1;
+    private final AtomicReferenceArray<AnalyticsEvent> slots = new AtomicReferenceArray<>(CAPACITY);
+    // Per slot sequence: equal to the producer position when free, position + 1 once published
+    private final AtomicLongArray sequences = new AtomicLongArray(CAPACITY);
+    private final AtomicLong tail = new AtomicLong(0); // Next position producers claim
+    private final AtomicLong head = new AtomicLong(0); // Next position the writer reads, guarded by writeLock
+    private final AtomicBoolean flushPending = new AtomicBoolean(false);
+    private final AtomicBoolean timerArmed = new AtomicBoolean(false);
+    private final Object writeLock = new Object();
+    private long lastPrunedAt = 0; // Guarded by writeLock
+
+    // Metrics
+    private final AtomicLong committedRows = new AtomicLong(0);
+    private final AtomicLong countedOnlyEvents = new AtomicLong(0);
+    private final AtomicLong committedTransactions = new AtomicLong(0);
+    private final AtomicLong droppedEvents = new AtomicLong(0);
+
+    AnalyticsEventBuffer(AppDatabase database) {
+        this.database = database;
+        for (int i = 0; i < CAPACITY; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Buffer an event for writing, never blocks the caller
+     * @return false if the ring was full and the event was dropped
+     */
+    public boolean record(AnalyticsEvent event) {
+        long position;
+        while (true) {
+            position = tail.get();
+            long sequence = sequences.get((int) (position & mask));
+            if (sequence == position) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+            } else if (sequence < position) {
+                // The writer has not freed this slot yet - the ring is full
+                droppedEvents.incrementAndGet();
+                requestFlush();
+                return false;
+            }
+            // Another producer claimed the slot first, retry with the new tail
+        }
+
+        int index = (int) (position & mask);
+        slots.set(index, event);
+        sequences.set(index, position + 1);
+
+        if (position - head.get() + 1 >= FLUSH_SIZE) {
+            requestFlush();
+        } else {
+            armFlushTimer();
+        }
+        return true;
+    }
+
+    /**
+     * Commit everything buffered so far on the calling thread
+     * Used before summaries are computed, on memory trim and on app termination
+     */
+    public void flush() {
+        synchronized (writeLock) {
+            // Events recorded from here on need a new flush request
+            flushPending.set(false);
+
+            List<AnalyticsEvent> batch = new ArrayList<>();
+            while (true) {
+                batch.clear();
+                AnalyticsEvent event;
+                while (batch.size() < MAX_TRANSACTION_ROWS && (event = poll()) != null) {
+                    batch.add(event);
+                }
+                if (batch.isEmpty()) {
+                    return;
+                }
+                commit(batch);
+            }
+        }
+    }
+
+    /**
+     * Get number of events waiting to be committed
+     */
+    public int getBufferedCount() {
+        return (int) Math.max(0, tail.get() - head.get());
+    }
+
+    /**
+     * Human readable buffer summary for debug screens
+     */
+    public String getStatusSummary() {
+        long transactions = committedTransactions.get();
+        long rows = committedRows.get();
+        return "Buffered: " + getBufferedCount() + "/" + CAPACITY + ", committed " + rows + " events in "
+                + transactions + " transactions"
+                + (transactions > 0 ? String.format(Locale.US, " (%.1f events/tx)", (double) rows / transactions) : "")
+                + ", counted only " + countedOnlyEvents.get()
+                + ", dropped " + droppedEvents.get();
+    }
+
+    private void requestFlush() {
+        if (flushPending.compareAndSet(false, true)
+                && !ThreadManager.getInstance().executeDatabase(this::flush, ThreadManager.TASK_PRIORITY_ANALYTICS, "analytics-flush")) {
+            // The DB queue is full and analytics work was shed: clear the flag so the next trigger
+            // can ask again, and retry on the timer in case no further events arrive
+            flushPending.set(false);
+            armFlushTimer();
+        }
+    }
+    
+    /**
+     * Ask for a flush once FLUSH_DELAY_MS has passed
+     * The timer task only submits the flush, so it runs at normal priority: an analytics task can
+     * be shed by a full background queue, which would leave timerArmed set for good
+     */
+    private void armFlushTimer() {
+        if (timerArmed.compareAndSet(false, true)) {
+            TimerWheel.getInstance().schedule(() -> {
+                timerArmed.set(false);
+                requestFlush();
+            }, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS, ThreadManager.TASK_PRIORITY_NORMAL, "analytics-flush-timer");
+        }
+    }
+
+    /**
+     * Take the next published event, called with writeLock held
+     * @return null if the buffer is empty or the next slot is still being written
+     */
+    private AnalyticsEvent poll() {
+        long position = head.get();
+        int index = (int) (position & mask);
+        if (sequences.get(index) != position + 1) {
+            return null;
+        }
+        AnalyticsEvent event = slots.get(index);
+        slots.set(index, null);
+        // Free the slot for the producer one lap ahead
+        sequences.set(index, position + CAPACITY);
+        head.set(position + 1);
+        return event;
+    }
+
+    private void commit(List<AnalyticsEvent> batch) {
+        if (database == null) {
+            Log.w(TAG, "Database is null, " + batch.size() + " analytics events not persisted");
+            return;
+        }
+
+        try {
+            List<StatisticsBucket> deltas = StatisticsBucket.rollUp(batch);
+            List<AnalyticsEvent> rows = new ArrayList<>(batch.size());
+            for (AnalyticsEvent event : batch) {
+                if (event.isPersisted()) {
+                    rows.add(event);
+                }
+            }
+            database.runInTransaction(() -> {
+                if (!rows.isEmpty()) {
+                    database.analyticsEventDao().insertAll(rows);
+                }
+                if (!deltas.isEmpty()) {
+                    database.statisticsBucketDao().addAll(deltas);
+                }
+            });
+            committedRows.addAndGet(rows.size());
+            countedOnlyEvents.addAndGet(batch.size() - rows.size());
+            committedTransactions.incrementAndGet();
+        } catch (Exception e) {
+            Log.e(TAG, "Error writing " + batch.size() + " analytics events: " + e.getMessage(), e);
+        }
+        pruneBuckets();
+    }
+
+    /**
+     * Drop minute and hour buckets past their retention, at most once per PRUNE_INTERVAL_MS
+     */
+    private void pruneBuckets() {
+        long now = System.currentTimeMillis();
+        if (now - lastPrunedAt < PRUNE_INTERVAL_MS) {
+            return;
+        }
+        lastPrunedAt = now;
+        try {
+            StatisticsBucketDao dao = database.statisticsBucketDao();
+            dao.deleteOldBuckets(StatisticsBucket.MINUTE, now - MINUTE_BUCKET_RETENTION_MS);
+            dao.deleteOldBuckets(StatisticsBucket.HOUR, now - HOUR_BUCKET_RETENTION_MS);
+        } catch (Exception e) {
+            Log.e(TAG, "Error pruning statistics buckets: " + e.getMessage(), e);
+        }
+    }
+}
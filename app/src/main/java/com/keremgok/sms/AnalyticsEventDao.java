@@ -93,7 +93,7 @@ public interface AnalyticsEventDao {
      * Count total events
      * @return Total number of events
      */
-    @Query("SELECT COUNT(*) FROM analytics_events")
+    @Query("SELECT COALESCE(SUM(sample_weight), 0) FROM analytics_events")
     int getTotalEventCount();
     
     /**
@@ -101,7 +101,7 @@ public interface AnalyticsEventDao {
      * @param eventType Event type to count
      * @return Number of events of specified type
      */
-    @Query("SELECT COUNT(*) FROM analytics_events WHERE event_type = :eventType")
+    @Query("SELECT COALESCE(SUM(sample_weight), 0) FROM analytics_events WHERE event_type = :eventType")
     int getEventCountByType(String eventType);
     
     /**
@@ -112,7 +112,7 @@ public interface AnalyticsEventDao {
      * @param endTime End timestamp
      * @return Count of matching events
      */
-    @Query("SELECT COUNT(*) FROM analytics_events WHERE event_type = :eventType AND event_action = :eventAction AND timestamp BETWEEN :startTime AND :endTime")
+    @Query("SELECT COALESCE(SUM(sample_weight), 0) FROM analytics_events WHERE event_type = :eventType AND event_action = :eventAction AND timestamp BETWEEN :startTime AND :endTime")
     int getEventCountByTypeAndAction(String eventType, String eventAction, long startTime, long endTime);
     
     /**
@@ -121,7 +121,7 @@ public interface AnalyticsEventDao {
      * @param endTime End timestamp
      * @return Average processing time in milliseconds
      */
-    @Query("SELECT AVG(duration_ms) FROM analytics_events WHERE event_type = 'SMS_FORWARD' AND duration_ms > 0 AND timestamp BETWEEN :startTime AND :endTime")
+    @Query("SELECT CAST(SUM(duration_ms * sample_weight) AS REAL) / SUM(sample_weight) FROM analytics_events WHERE event_type = 'SMS_FORWARD' AND duration_ms > 0 AND timestamp BETWEEN :startTime AND :endTime")
     Double getAvgProcessingTime(long startTime, long endTime);
     
     /**
@@ -131,7 +131,7 @@ public interface AnalyticsEventDao {
      * @param limit Maximum number of results
      * @return List of error codes ordered by frequency
      */
-    @Query("SELECT error_code, COUNT(*) as count FROM analytics_events WHERE error_code IS NOT NULL AND error_code != '' AND timestamp BETWEEN :startTime AND :endTime GROUP BY error_code ORDER BY count DESC LIMIT :limit")
+    @Query("SELECT error_code, SUM(sample_weight) as count FROM analytics_events WHERE error_code IS NOT NULL AND error_code != '' AND timestamp BETWEEN :startTime AND :endTime GROUP BY error_code ORDER BY count DESC LIMIT :limit")
     List<ErrorCodeCount> getMostCommonErrors(long startTime, long endTime, int limit);
     
     /**
@@ -152,6 +152,16 @@ public interface AnalyticsEventDao {
     @Query("DELETE FROM analytics_events WHERE timestamp < :timestamp")
     int deleteOldEvents(long timestamp);
     
+    /**
+     * Delete events older than a threshold that carry no error code
+     * Used by StatisticsRollup once their counts live in buckets and summaries; error events stay
+     * until the regular cleanup because the most common error is computed from them
+     * @param timestamp Timestamp threshold (events older than this will be deleted)
+     * @return Number of deleted events
+     */
+    @Query("DELETE FROM analytics_events WHERE timestamp < :timestamp AND (error_code IS NULL OR error_code = '')")
+    int deleteRolledUpEvents(long timestamp);
+    
     /**
      * Delete all analytics events
      */
@@ -17,8 +17,8 @@ import com.keremgok.sms.remote.RemoteCommandHistory;
  * Contains SMS history tracking and target numbers management
  */
 @Database(
-    entities = {SmsHistory.class, TargetNumber.class, SmsFilter.class, AnalyticsEvent.class, StatisticsSummary.class, AuthorizedNumber.class, RemoteCommandHistory.class},
-    version = 10,
+    entities = {SmsHistory.class, TargetNumber.class, SmsFilter.class, AnalyticsEvent.class, StatisticsSummary.class, AuthorizedNumber.class, RemoteCommandHistory.class, StatisticsBucket.class, LatencyBucket.class},
+    version = 15,
     exportSchema = false
 )
 public abstract class AppDatabase extends RoomDatabase {
@@ -56,6 +56,18 @@ public abstract class AppDatabase extends RoomDatabase {
      */
     public abstract StatisticsSummaryDao statisticsSummaryDao();
     
+    /**
+     * Get the StatisticsBucketDao for database operations
+     * @return StatisticsBucketDao instance
+     */
+    public abstract StatisticsBucketDao statisticsBucketDao();
+    
+    /**
+     * Get the LatencyBucketDao for database operations
+     * @return LatencyBucketDao instance
+     */
+    public abstract LatencyBucketDao latencyBucketDao();
+    
     /**
      * Get the AuthorizedNumberDao for database operations
      * @return AuthorizedNumberDao instance
@@ -436,6 +448,202 @@ public abstract class AppDatabase extends RoomDatabase {
             }
         }
     };
+    
+    /**
+     * Migration from version 10 to 11: Add statistics_buckets table
+     * Hour and day buckets are backfilled from existing analytics events
+     */
+    static final Migration MIGRATION_10_11 = new Migration(10, 11) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            try {
+                android.util.Log.i("AppDatabase", "Starting migration from version 10 to 11 (adding statistics buckets)");
+                
+                database.execSQL(
+                    "CREATE TABLE IF NOT EXISTS statistics_buckets (" +
+                    "resolution TEXT NOT NULL, " +
+                    "bucket_start INTEGER NOT NULL, " +
+                    "sms_received INTEGER NOT NULL, " +
+                    "successful_forwards INTEGER NOT NULL, " +
+                    "failed_forwards INTEGER NOT NULL, " +
+                    "error_count INTEGER NOT NULL, " +
+                    "blocked_count INTEGER NOT NULL, " +
+                    "app_opens INTEGER NOT NULL, " +
+                    "processing_time_total_ms INTEGER NOT NULL, " +
+                    "processing_time_count INTEGER NOT NULL, " +
+                    "session_duration_total_ms INTEGER NOT NULL, " +
+                    "session_count INTEGER NOT NULL, " +
+                    "PRIMARY KEY(resolution, bucket_start))"
+                );
+                
+                // Backfill hour and day buckets (local time) from the raw events still on disk
+                backfillStatisticsBuckets(database, "HOUR",
+                    "strftime('%s', strftime('%Y-%m-%d %H:00:00', timestamp / 1000, 'unixepoch', 'localtime'), 'utc')");
+                backfillStatisticsBuckets(database, "DAY",
+                    "strftime('%s', timestamp / 1000, 'unixepoch', 'localtime', 'start of day', 'utc')");
+                
+                android.util.Log.i("AppDatabase", "Successfully completed migration from version 10 to 11");
+            } catch (Exception e) {
+                android.util.Log.e("AppDatabase", "Migration 10->11 failed: " + e.getMessage(), e);
+                throw e;
+            }
+        }
+    };
+    
+    /**
+     * Migration from version 11 to 12: Add indices matched to the DAO queries
+     * Every table used to be scanned in full for filtered and ordered queries
+     */
+    static final Migration MIGRATION_11_12 = new Migration(11, 12) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            try {
+                android.util.Log.i("AppDatabase", "Starting migration from version 11 to 12 (adding query indices)");
+                
+                // SMS history: recent lists, date ranges, retention cleanup, success filters, resend
+                // candidate subqueries (success + target + sender) and per-SIM statistics
+                database.execSQL("CREATE INDEX IF NOT EXISTS index_sms_history_timestamp ON sms_history(timestamp)");
+                database.execSQL("CREATE INDEX IF NOT EXISTS index_sms_history_success_timestamp ON sms_history(success, timestamp)");
+                database.execSQL("CREATE INDEX IF NOT EXISTS index_sms_history_success_target_number_sender_number ON sms_history(success, target_number, sender_number)");
+                database.execSQL("CREATE INDEX IF NOT EXISTS index_sms_history_sender_number_timestamp ON sms_history(sender_number, timestamp)");
+                database.execSQL("CREATE INDEX IF NOT EXISTS index_sms_history_source_sim_slot ON sms_history(source_sim_slot)");
+                database.execSQL("CREATE INDEX IF NOT EXISTS index_sms_history_forwarding_sim_slot ON sms_history(forwarding_sim_slot)");
+                
+                // Analytics: date ranges and cleanup, per type/action counts, error code grouping
+                database.execSQL("CREATE INDEX IF NOT EXISTS index_analytics_events_timestamp ON analytics_events(timestamp)");
+                database.execSQL("CREATE INDEX IF NOT EXISTS index_analytics_events_event_type_event_action_timestamp ON analytics_events(event_type, event_action, timestamp)");
+                database.execSQL("CREATE INDEX IF NOT EXISTS index_analytics_events_error_code_timestamp ON analytics_events(error_code, timestamp)");
+                
+                // Statistics summaries: latest/ranged lookups per summary type
+                database.execSQL("CREATE INDEX IF NOT EXISTS index_statistics_summary_summary_type_date ON statistics_summary(summary_type, date)");
+                
+                // Filters and target numbers: enabled lists and duplicate checks
+                database.execSQL("CREATE INDEX IF NOT EXISTS index_sms_filters_is_enabled_priority ON sms_filters(is_enabled, priority)");
+                database.execSQL("CREATE INDEX IF NOT EXISTS index_sms_filters_filter_type_is_enabled_priority ON sms_filters(filter_type, is_enabled, priority)");
+                database.execSQL("CREATE INDEX IF NOT EXISTS index_target_numbers_phone_number ON target_numbers(phone_number)");
+                database.execSQL("CREATE INDEX IF NOT EXISTS index_target_numbers_is_enabled ON target_numbers(is_enabled)");
+                
+                // Refresh planner statistics so the new indices are picked up right away
+                database.execSQL("ANALYZE");
+                
+                android.util.Log.i("AppDatabase", "Successfully completed migration from version 11 to 12");
+            } catch (Exception e) {
+                android.util.Log.e("AppDatabase", "Migration 11->12 failed: " + e.getMessage(), e);
+                throw e;
+            }
+        }
+    };
+    
+    /**
+     * Migration from version 12 to 13: Add latency_buckets table
+     * Histograms start empty, latency was never recorded per sample before
+     */
+    static final Migration MIGRATION_12_13 = new Migration(12, 13) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            try {
+                android.util.Log.i("AppDatabase", "Starting migration from version 12 to 13 (adding latency buckets)");
+                
+                database.execSQL(
+                    "CREATE TABLE IF NOT EXISTS latency_buckets (" +
+                    "metric TEXT NOT NULL, " +
+                    "resolution TEXT NOT NULL, " +
+                    "bucket_start INTEGER NOT NULL, " +
+                    "sample_count INTEGER NOT NULL, " +
+                    "sum_ms INTEGER NOT NULL, " +
+                    "max_ms INTEGER NOT NULL, " +
+                    "histogram BLOB, " +
+                    "PRIMARY KEY(metric, resolution, bucket_start))"
+                );
+                
+                android.util.Log.i("AppDatabase", "Successfully completed migration from version 12 to 13");
+            } catch (Exception e) {
+                android.util.Log.e("AppDatabase", "Migration 12->13 failed: " + e.getMessage(), e);
+                throw e;
+            }
+        }
+    };
+    
+    /**
+     * Migration from version 13 to 14: Add sample_weight to analytics_events
+     * Existing rows were recorded unsampled and stand for one event each
+     */
+    static final Migration MIGRATION_13_14 = new Migration(13, 14) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            try {
+                android.util.Log.i("AppDatabase", "Starting migration from version 13 to 14 (adding analytics sample weight)");
+                
+                database.execSQL("ALTER TABLE analytics_events ADD COLUMN sample_weight INTEGER NOT NULL DEFAULT 1");
+                
+                android.util.Log.i("AppDatabase", "Successfully completed migration from version 13 to 14");
+            } catch (Exception e) {
+                android.util.Log.e("AppDatabase", "Migration 13->14 failed: " + e.getMessage(), e);
+                throw e;
+            }
+        }
+    };
+    
+    /**
+     * Migration from version 14 to 15: Make (summary_type, date) unique in statistics_summary
+     * Duplicate rows left by the old check-then-insert summary writes are merged first: the most
+     * recently updated row is kept with the earliest created_timestamp of its group
+     */
+    static final Migration MIGRATION_14_15 = new Migration(14, 15) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            try {
+                android.util.Log.i("AppDatabase", "Starting migration from version 14 to 15 (unique statistics summaries)");
+                
+                database.execSQL(
+                    "UPDATE statistics_summary SET created_timestamp = (" +
+                    "SELECT MIN(created_timestamp) FROM statistics_summary other " +
+                    "WHERE other.summary_type = statistics_summary.summary_type AND other.date = statistics_summary.date)"
+                );
+                database.execSQL(
+                    "DELETE FROM statistics_summary WHERE EXISTS (" +
+                    "SELECT 1 FROM statistics_summary newer " +
+                    "WHERE newer.summary_type = statistics_summary.summary_type AND newer.date = statistics_summary.date " +
+                    "AND (newer.last_updated > statistics_summary.last_updated " +
+                    "OR (newer.last_updated = statistics_summary.last_updated AND newer.id > statistics_summary.id)))"
+                );
+                
+                database.execSQL("DROP INDEX IF EXISTS index_statistics_summary_summary_type_date");
+                database.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS index_statistics_summary_summary_type_date ON statistics_summary(summary_type, date)");
+                
+                android.util.Log.i("AppDatabase", "Successfully completed migration from version 14 to 15");
+            } catch (Exception e) {
+                android.util.Log.e("AppDatabase", "Migration 14->15 failed: " + e.getMessage(), e);
+                throw e;
+            }
+        }
+    };
+    
+    /**
+     * Aggregate analytics_events into statistics_buckets of one resolution
+     * @param bucketStartSeconds SQL expression giving the bucket start in epoch seconds
+     */
+    private static void backfillStatisticsBuckets(SupportSQLiteDatabase database, String resolution, String bucketStartSeconds) {
+        database.execSQL(
+            "INSERT OR IGNORE INTO statistics_buckets (resolution, bucket_start, sms_received, successful_forwards, " +
+            "failed_forwards, error_count, blocked_count, app_opens, processing_time_total_ms, processing_time_count, " +
+            "session_duration_total_ms, session_count) " +
+            "SELECT '" + resolution + "', CAST(" + bucketStartSeconds + " AS INTEGER) * 1000 AS start, " +
+            "SUM(CASE WHEN event_type = 'SMS_RECEIVED' AND event_action = 'SUCCESS' THEN 1 ELSE 0 END), " +
+            "SUM(CASE WHEN event_type = 'SMS_FORWARD' AND event_action = 'SUCCESS' THEN 1 ELSE 0 END), " +
+            "SUM(CASE WHEN event_type = 'SMS_FORWARD' AND event_action = 'FAILURE' THEN 1 ELSE 0 END), " +
+            "SUM(CASE WHEN event_type = 'SMS_ERROR' AND event_action = 'FAILURE' THEN 1 ELSE 0 END), " +
+            "SUM(CASE WHEN event_type = 'SMS_BLOCKED' AND event_action = 'FILTERED' THEN 1 ELSE 0 END), " +
+            "SUM(CASE WHEN event_type = 'APP_OPEN' AND event_action = 'STARTED' THEN 1 ELSE 0 END), " +
+            "SUM(CASE WHEN event_type = 'SMS_FORWARD' AND duration_ms > 0 THEN duration_ms ELSE 0 END), " +
+            "SUM(CASE WHEN event_type = 'SMS_FORWARD' AND duration_ms > 0 THEN 1 ELSE 0 END), " +
+            "SUM(CASE WHEN event_type = 'APP_CLOSE' AND duration_ms > 0 THEN duration_ms ELSE 0 END), " +
+            "SUM(CASE WHEN event_type = 'APP_CLOSE' AND duration_ms > 0 THEN 1 ELSE 0 END) " +
+            "FROM analytics_events " +
+            "WHERE event_type IN ('SMS_RECEIVED', 'SMS_FORWARD', 'SMS_ERROR', 'SMS_BLOCKED', 'APP_OPEN', 'APP_CLOSE') " +
+            "GROUP BY start"
+        );
+    }
 
     /**
      * Get singleton instance of the database
@@ -454,7 +662,9 @@ public abstract class AppDatabase extends RoomDatabase {
                             DATABASE_NAME
                         )
                         // Removed allowMainThreadQueries() for better performance and ANR prevention
-                        .addMigrations(MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4, MIGRATION_4_5, MIGRATION_5_6, MIGRATION_6_7, MIGRATION_7_8, MIGRATION_8_9, MIGRATION_9_10)
+                        // WAL lets the read pool query while the single writer commits
+                        .setJournalMode(RoomDatabase.JournalMode.WRITE_AHEAD_LOGGING)
+                        .addMigrations(MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4, MIGRATION_4_5, MIGRATION_5_6, MIGRATION_6_7, MIGRATION_7_8, MIGRATION_8_9, MIGRATION_9_10, MIGRATION_10_11, MIGRATION_11_12, MIGRATION_12_13, MIGRATION_13_14, MIGRATION_14_15)
                         .addCallback(new RoomDatabase.Callback() {
                             @Override
                             public void onCreate(@NonNull SupportSQLiteDatabase db) {
@@ -487,6 +697,7 @@ public abstract class AppDatabase extends RoomDatabase {
                                 DATABASE_NAME + "_emergency"
                             )
                             // Emergency DB - still requires background thread access for production safety
+                            .setJournalMode(RoomDatabase.JournalMode.WRITE_AHEAD_LOGGING)
                             .fallbackToDestructiveMigration()
                             .build();
                             
@@ -549,6 +760,7 @@ public abstract class AppDatabase extends RoomDatabase {
                 int deletedSmsCount = db.smsHistoryDao().deleteOldRecords(smsRetentionTimestamp);
 
                 if (deletedSmsCount > 0) {
+                    SimUsageTracker.getInstance().invalidate();
                     android.util.Log.i("AppDatabase", "Auto cleanup: Deleted " + deletedSmsCount + " old SMS history records (>" + smsRetentionDays + " days)");
                 }
             }
@@ -666,6 +666,9 @@ public class BackupManager {
         } catch (Exception e) {
             android.util.Log.e(TAG, "Failed to import SMS history: " + e.getMessage(), e);
             return false;
+        } finally {
+            // Rows were replaced or added outside HistoryWriter
+            SimUsageTracker.getInstance().invalidate();
         }
     }
     
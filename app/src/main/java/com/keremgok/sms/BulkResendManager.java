@@ -0,0 +1,316 @@
+package com.keremgok.sms;
+
+import android.content.Context;
+import android.util.Log;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bulk "resend failed" operation
+ * Walks failed history rows page by page (keyset pagination, so 10k+ rows are never held in
+ * memory at once), skips rows already delivered, and feeds them into the outbound pipeline
+ * through the per-SIM send window at a paced rate with backpressure on the outbound backlog.
+ */
+public class BulkResendManager {
+
+    private static final String TAG = "BulkResendManager";
+
+    // Match any forwarding SIM slot
+    public static final int ANY_SIM = -2;
+
+    // Pacing configuration
+    private static final int PAGE_SIZE = 100;
+    private static final long DISPATCH_INTERVAL_MS = 250; // Upper bound on dispatch rate, the send window paces actual sends
+    private static final int MAX_PENDING_SENDS = 20; // Stop feeding while this many sends are queued or in flight
+    private static final long BACKPRESSURE_DELAY_MS = 2000;
+
+    private static BulkResendManager instance;
+
+    /**
+     * Selection of failed rows to resend
+     */
+    public static class Filter {
+        public final long startTime;
+        public final long endTime;
+        public final int forwardingSimSlot;
+        public final String targetNumber;
+
+        /**
+         * @param forwardingSimSlot Forwarding SIM slot, or ANY_SIM
+         * @param targetNumber Target number, or null for any target
+         */
+        public Filter(long startTime, long endTime, int forwardingSimSlot, String targetNumber) {
+            this.startTime = startTime;
+            this.endTime = endTime;
+            this.forwardingSimSlot = forwardingSimSlot;
+            this.targetNumber = targetNumber;
+        }
+    }
+
+    /**
+     * Snapshot of a bulk resend run
+     */
+    public static class Progress {
+        public final int total;
+        public final int dispatched;
+        public final int queueErrors;
+        public final long elapsedMs;
+        public final boolean finished;
+        public final boolean cancelled;
+
+        Progress(int total, int dispatched, int queueErrors, long elapsedMs, boolean finished, boolean cancelled) {
+            this.total = total;
+            this.dispatched = dispatched;
+            this.queueErrors = queueErrors;
+            this.elapsedMs = elapsedMs;
+            this.finished = finished;
+            this.cancelled = cancelled;
+        }
+
+        /**
+         * Get dispatch throughput in messages per minute
+         */
+        public double getThroughputPerMinute() {
+            return elapsedMs > 0 ? dispatched * 60000.0 / elapsedMs : 0;
+        }
+    }
+
+    /**
+     * Progress callback, always invoked on the main thread
+     */
+    public interface ProgressListener {
+        void onProgress(Progress progress);
+    }
+
+    private final Context context;
+
+    // Run state, guarded by this
+    private boolean running = false;
+    private boolean cancelRequested = false;
+    private Filter filter;
+    private int maxId;
+    private int lastId;
+    private final List<SmsHistory> page = new ArrayList<>();
+    private int pageIndex;
+    private boolean exhausted;
+    private int total;
+    private int dispatched;
+    private int queueErrors;
+    private long startedAt;
+    private ProgressListener listener;
+
+    private BulkResendManager(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    public static synchronized BulkResendManager getInstance(Context context) {
+        if (instance == null) {
+            instance = new BulkResendManager(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Count failed rows a run with this filter would resend
+     * Must be called from a background thread
+     */
+    public int countCandidates(Filter filter) {
+        SmsHistoryDao dao = AppDatabase.getInstance(context).smsHistoryDao();
+        return dao.countResendCandidates(0, dao.getMaxId(), filter.startTime, filter.endTime,
+                                         filter.forwardingSimSlot, filter.targetNumber);
+    }
+
+    /**
+     * Start a bulk resend run
+     * @return false if a run is already in progress
+     */
+    public synchronized boolean start(Filter filter) {
+        if (running) {
+            return false;
+        }
+
+        this.running = true;
+        this.cancelRequested = false;
+        this.filter = filter;
+        this.lastId = 0;
+        this.page.clear();
+        this.pageIndex = 0;
+        this.exhausted = false;
+        this.total = 0;
+        this.dispatched = 0;
+        this.queueErrors = 0;
+        this.startedAt = System.currentTimeMillis();
+
+        ThreadManager.getInstance().executeDatabaseRead(() -> {
+            try {
+                SmsHistoryDao dao = AppDatabase.getInstance(context).smsHistoryDao();
+                int upperId = dao.getMaxId();
+                int count = dao.countResendCandidates(0, upperId, filter.startTime, filter.endTime,
+                                                      filter.forwardingSimSlot, filter.targetNumber);
+                synchronized (this) {
+                    maxId = upperId;
+                    total = count;
+                }
+                Log.i(TAG, "Bulk resend started: " + count + " failed SMS to requeue");
+                publishProgress(false);
+                tick();
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to start bulk resend: " + e.getMessage(), e);
+                finish();
+            }
+        }, ThreadManager.TASK_PRIORITY_NORMAL, "bulk-resend-count");
+        return true;
+    }
+
+    /**
+     * Request cancellation of the running bulk resend
+     * SMS already handed to the queue are not recalled
+     */
+    public synchronized void cancel() {
+        if (running) {
+            cancelRequested = true;
+        }
+    }
+
+    public synchronized boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Set the progress listener (null to remove), the current progress is delivered immediately
+     */
+    public void setProgressListener(ProgressListener listener) {
+        boolean active;
+        synchronized (this) {
+            this.listener = listener;
+            active = running;
+        }
+        if (listener != null && active) {
+            publishProgress(false);
+        }
+    }
+
+    /**
+     * Dispatch the next row, or wait for the pipeline to drain, then reschedule
+     */
+    private void tick() {
+        SmsHistory next = null;
+        boolean needPage = false;
+
+        synchronized (this) {
+            if (cancelRequested) {
+                Log.i(TAG, "Bulk resend cancelled after " + dispatched + " of " + total);
+                finishLocked(true);
+                return;
+            }
+            if (pageIndex < page.size()) {
+                next = page.get(pageIndex);
+            } else if (exhausted) {
+                Log.i(TAG, "Bulk resend finished: " + dispatched + " requeued, " + queueErrors + " errors");
+                finishLocked(false);
+                return;
+            } else {
+                needPage = true;
+            }
+        }
+
+        if (needPage) {
+            ThreadManager.getInstance().executeDatabaseRead(this::loadNextPage,
+                    ThreadManager.TASK_PRIORITY_NORMAL, "bulk-resend-page");
+            return;
+        }
+
+        SmsQueueManager queueManager = SmsQueueManager.getInstance(context);
+        OutboundBacklog.BacklogStats backlogStats = queueManager.getBacklogStats();
+        int pending = queueManager.getInFlightWorkCount() + backlogStats.memorySize + backlogStats.spilledSize;
+        if (pending >= MAX_PENDING_SENDS) {
+            logDebug("Outbound pipeline busy (" + pending + " pending), pausing bulk resend");
+            ThreadManager.getInstance().schedule(this::tick, BACKPRESSURE_DELAY_MS, TimeUnit.MILLISECONDS);
+            return;
+        }
+
+        java.util.UUID workId = queueManager.queueWindowedSms(next.getSenderNumber(), next.getOriginalMessage(),
+                next.getTargetNumber(), next.getTimestamp(), SmsQueueWorker.PRIORITY_LOW,
+                next.getSourceSubscriptionId(), next.getForwardingSubscriptionId(),
+                next.getSourceSimSlot(), next.getForwardingSimSlot());
+
+        synchronized (this) {
+            pageIndex++;
+            lastId = next.getId();
+            if (workId != null) {
+                dispatched++;
+            } else {
+                queueErrors++;
+            }
+        }
+        publishProgress(false);
+        ThreadManager.getInstance().schedule(this::tick, DISPATCH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void loadNextPage() {
+        try {
+            Filter currentFilter;
+            int afterId;
+            int upperId;
+            synchronized (this) {
+                currentFilter = filter;
+                afterId = lastId;
+                upperId = maxId;
+            }
+
+            List<SmsHistory> rows = AppDatabase.getInstance(context).smsHistoryDao().getResendCandidatesPage(
+                    afterId, upperId, currentFilter.startTime, currentFilter.endTime,
+                    currentFilter.forwardingSimSlot, currentFilter.targetNumber, PAGE_SIZE);
+
+            synchronized (this) {
+                page.clear();
+                page.addAll(rows);
+                pageIndex = 0;
+                exhausted = rows.size() < PAGE_SIZE;
+            }
+            tick();
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to load bulk resend page: " + e.getMessage(), e);
+            finish();
+        }
+    }
+
+    private void finish() {
+        synchronized (this) {
+            finishLocked(false);
+        }
+    }
+
+    private void finishLocked(boolean cancelled) {
+        running = false;
+        page.clear();
+        publishProgress(true, cancelled);
+    }
+
+    private void publishProgress(boolean finished) {
+        publishProgress(finished, false);
+    }
+
+    private void publishProgress(boolean finished, boolean cancelled) {
+        ProgressListener currentListener;
+        Progress progress;
+        synchronized (this) {
+            currentListener = listener;
+            progress = new Progress(total, dispatched, queueErrors, System.currentTimeMillis() - startedAt,
+                                    finished, cancelled);
+        }
+        if (currentListener != null) {
+            ThreadManager.getInstance().executeOnMainThread(() -> currentListener.onProgress(progress));
+        }
+    }
+
+    /**
+     * Secure debug logging
+     */
+    private void logDebug(String message) {
+        if (BuildConfig.ENABLE_DEBUG_LOGS) {
+            Log.d(TAG, message);
+        }
+    }
+}
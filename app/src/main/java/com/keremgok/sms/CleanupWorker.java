@@ -9,7 +9,7 @@ import androidx.work.WorkerParameters;
 
 /**
  * Background worker for automatic database cleanup
- * Runs periodically to delete old SMS history and analytics events
+ * Runs periodically to roll up statistics and delete old SMS history and analytics events
  * Retention period is configurable via Settings
  */
 public class CleanupWorker extends Worker {
@@ -56,6 +56,13 @@ public class CleanupWorker extends Worker {
                 android.util.Log.w(TAG, "Invalid analytics retention value, using default: " + DEFAULT_ANALYTICS_RETENTION_DAYS);
             }
 
+            // Roll finished days up into summaries before their raw events can be deleted
+            try {
+                new StatisticsRollup(context).run();
+            } catch (Exception e) {
+                android.util.Log.e(TAG, "Statistics rollup failed: " + e.getMessage(), e);
+            }
+
             // Perform cleanup
             AppDatabase db = AppDatabase.getInstance(context);
 
@@ -65,6 +72,9 @@ public class CleanupWorker extends Worker {
 
             // Clean up SMS history
             int deletedSmsCount = db.smsHistoryDao().deleteOldRecords(smsRetentionTimestamp);
+            if (deletedSmsCount > 0) {
+                SimUsageTracker.getInstance().invalidate();
+            }
 
             // Clean up analytics events
             int deletedAnalyticsCount = db.analyticsEventDao().deleteOldEvents(analyticsRetentionTimestamp);
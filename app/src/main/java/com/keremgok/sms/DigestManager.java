@@ -0,0 +1,460 @@
+package com.keremgok.sms;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.telephony.SmsMessage;
+import android.text.TextUtils;
+import android.util.Log;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-target digest mode
+ * Holds low-priority forwards for opted-in targets for a configurable window and sends them
+ * as a few compact multi-message SMS instead of one SMS per forward. A HIGH priority forward
+ * to the same target flushes the digest early. Held forwards are kept on disk so they survive
+ * process death.
+ */
+public class DigestManager {
+
+    private static final String TAG = "DigestManager";
+    private static final String PREFS_NAME = "HermesPrefs";
+    private static final String KEY_DIGEST_TARGETS = "digest_targets";
+    private static final String PREF_DIGEST_WINDOW = "pref_digest_window_minutes";
+    private static final String DEFAULT_WINDOW_MINUTES = "5";
+    private static final String STATE_FILE = "digest_pending.json";
+
+    // Packing limits
+    private static final int MAX_DIGEST_SEGMENTS = 6; // Keep each digest SMS a reasonable multipart size
+    private static final int MAX_HELD_PER_TARGET = 50; // Flush before a digest grows unbounded
+
+    private static DigestManager instance;
+
+    /**
+     * A single held forward
+     */
+    private static class Item {
+        final String sender;
+        final String message;
+        final long timestamp;
+        final int sourceSubscriptionId;
+        final int sourceSimSlot;
+
+        Item(String sender, String message, long timestamp, int sourceSubscriptionId, int sourceSimSlot) {
+            this.sender = sender;
+            this.message = message;
+            this.timestamp = timestamp;
+            this.sourceSubscriptionId = sourceSubscriptionId;
+            this.sourceSimSlot = sourceSimSlot;
+        }
+    }
+
+    /**
+     * Held forwards for one target
+     */
+    private static class Pending {
+        final List<Item> items = new ArrayList<>();
+        int forwardingSubscriptionId = -1;
+        int forwardingSimSlot = -1;
+        long firstHeldAt;
+        long generation;
+        TimerWheel.Timeout flushTimer;
+    }
+
+    private final Context context;
+    private final Map<String, Pending> pending = new LinkedHashMap<>();
+    private long generationCounter = 0;
+
+    private DigestManager(Context context) {
+        this.context = context.getApplicationContext();
+        restore();
+    }
+
+    public static synchronized DigestManager getInstance(Context context) {
+        if (instance == null) {
+            instance = new DigestManager(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Check whether digest mode is enabled for a target number
+     */
+    public static boolean isDigestTarget(Context context, String targetNumber) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        Set<String> targets = prefs.getStringSet(KEY_DIGEST_TARGETS, null);
+        return targets != null && targets.contains(targetNumber);
+    }
+
+    /**
+     * Enable or disable digest mode for a target number
+     */
+    public static void setDigestTarget(Context context, String targetNumber, boolean enabled) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        // The returned set must not be modified in place
+        Set<String> targets = new HashSet<>(prefs.getStringSet(KEY_DIGEST_TARGETS, new HashSet<String>()));
+        boolean changed = enabled ? targets.add(targetNumber) : targets.remove(targetNumber);
+        if (changed) {
+            prefs.edit().putStringSet(KEY_DIGEST_TARGETS, targets).apply();
+        }
+    }
+
+    /**
+     * Hold a forward for the target's digest
+     * @return true if the forward was held, false if it should be sent normally
+     */
+    public boolean hold(String sender, String message, String targetNumber, long timestamp,
+                        int sourceSubscriptionId, int forwardingSubscriptionId,
+                        int sourceSimSlot, int forwardingSimSlot) {
+        if (sender == null || message == null || targetNumber == null) {
+            return false;
+        }
+
+        boolean flushNow;
+        long delayMs;
+        long generation;
+        synchronized (this) {
+            Pending target = pending.get(targetNumber);
+            boolean first = target == null;
+            if (first) {
+                target = new Pending();
+                target.firstHeldAt = System.currentTimeMillis();
+                target.generation = ++generationCounter;
+                pending.put(targetNumber, target);
+            }
+            target.items.add(new Item(sender, message, timestamp, sourceSubscriptionId, sourceSimSlot));
+            // Latest SIM selection wins, it reflects the current SIM state
+            target.forwardingSubscriptionId = forwardingSubscriptionId;
+            target.forwardingSimSlot = forwardingSimSlot;
+
+            flushNow = target.items.size() >= MAX_HELD_PER_TARGET;
+            delayMs = first ? getWindowMs() : -1;
+            generation = target.generation;
+            persist();
+        }
+
+        logDebug("Forward held for digest to " + maskPhoneNumber(targetNumber));
+
+        if (flushNow) {
+            flush(targetNumber, "size limit");
+        } else if (delayMs >= 0) {
+            scheduleFlush(targetNumber, generation, delayMs);
+        }
+        return true;
+    }
+
+    /**
+     * Flush a target's digest ahead of its window (e.g. HIGH priority traffic arrived)
+     */
+    public void flushEarly(String targetNumber) {
+        boolean hasPending;
+        synchronized (this) {
+            hasPending = pending.containsKey(targetNumber);
+        }
+        if (hasPending) {
+            flush(targetNumber, "high priority traffic");
+        }
+    }
+
+    /**
+     * Get number of forwards currently held across all targets
+     */
+    public synchronized int getHeldCount() {
+        int count = 0;
+        for (Pending target : pending.values()) {
+            count += target.items.size();
+        }
+        return count;
+    }
+
+    private void scheduleFlush(String targetNumber, long generation, long delayMs) {
+        TimerWheel.Timeout timer = TimerWheel.getInstance().schedule(() -> {
+            synchronized (this) {
+                Pending target = pending.get(targetNumber);
+                // A newer digest started after an early flush, it has its own timer
+                if (target == null || target.generation != generation) {
+                    return;
+                }
+            }
+            flush(targetNumber, "window elapsed");
+        }, delayMs, TimeUnit.MILLISECONDS, ThreadManager.TASK_PRIORITY_SMS, "digest-flush");
+        synchronized (this) {
+            Pending target = pending.get(targetNumber);
+            if (target != null && target.generation == generation) {
+                target.flushTimer = timer;
+            } else {
+                timer.cancel();
+            }
+        }
+    }
+
+    private void flush(String targetNumber, String reason) {
+        Pending target;
+        synchronized (this) {
+            target = pending.remove(targetNumber);
+            persist();
+        }
+        if (target == null) {
+            return;
+        }
+        // Early and size-limit flushes drop the window timer instead of leaving it to fire stale
+        if (target.flushTimer != null) {
+            target.flushTimer.cancel();
+        }
+        if (target.items.isEmpty()) {
+            return;
+        }
+
+        try {
+            List<String> digests = pack(target.items);
+            long timestamp = target.items.get(0).timestamp;
+            Item first = target.items.get(0);
+            SmsQueueManager queueManager = SmsQueueManager.getInstance(context);
+
+            for (int i = 0; i < digests.size(); i++) {
+                // Distinct timestamps keep per-message work and callback keys unique
+                queueManager.queueLowPrioritySms(SmsFormatter.DIGEST_SENDER, digests.get(i), targetNumber, timestamp + i,
+                        first.sourceSubscriptionId, target.forwardingSubscriptionId,
+                        first.sourceSimSlot, target.forwardingSimSlot);
+            }
+
+            Log.i(TAG, "Digest flushed (" + reason + "): " + target.items.size() + " forwards in "
+                    + digests.size() + " SMS to " + maskPhoneNumber(targetNumber));
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to flush digest: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Pack held forwards into as few SMS segments as possible
+     * Forwards that fit the GSM 7-bit alphabet are packed apart from those that need UCS-2
+     * when that saves segments, since one non-GSM character switches a whole message to UCS-2.
+     */
+    private List<String> pack(List<Item> items) {
+        SmsFormatter formatter = new SmsFormatter(context);
+        List<String> all = new ArrayList<>();
+        List<String> gsm = new ArrayList<>();
+        List<String> ucs = new ArrayList<>();
+
+        for (Item item : items) {
+            String line = formatter.formatDigestLine(item.sender, item.message, item.sourceSimSlot,
+                                                     item.sourceSubscriptionId);
+            all.add(line);
+            if (isGsm7(line)) {
+                gsm.add(line);
+            } else {
+                ucs.add(line);
+            }
+        }
+
+        if (!gsm.isEmpty() && !ucs.isEmpty()) {
+            int combined = countSegments(join(all));
+            int split = countSegments(join(gsm)) + countSegments(join(ucs));
+            if (split < combined) {
+                List<String> result = chunk(gsm);
+                result.addAll(chunk(ucs));
+                return result;
+            }
+        }
+        return chunk(all);
+    }
+
+    /**
+     * Greedily fill each digest SMS up to the segment limit, never splitting a forward
+     */
+    private List<String> chunk(List<String> lines) {
+        List<String> result = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+
+        for (String line : lines) {
+            if (current.length() == 0) {
+                current.append(line);
+                continue;
+            }
+            String candidate = current + "\n" + line;
+            if (countSegments(candidate) <= MAX_DIGEST_SEGMENTS) {
+                current.setLength(0);
+                current.append(candidate);
+            } else {
+                result.add(current.toString());
+                current.setLength(0);
+                current.append(line);
+            }
+        }
+        if (current.length() > 0) {
+            result.add(current.toString());
+        }
+        return result;
+    }
+
+    private static String join(List<String> lines) {
+        StringBuilder sb = new StringBuilder();
+        for (String line : lines) {
+            if (sb.length() > 0) {
+                sb.append("\n");
+            }
+            sb.append(line);
+        }
+        return sb.toString();
+    }
+
+    private static int countSegments(String text) {
+        return SmsMessage.calculateLength(text, false)[0];
+    }
+
+    private static boolean isGsm7(String text) {
+        return SmsMessage.calculateLength(text, false)[3] == SmsMessage.ENCODING_7BIT;
+    }
+
+    private long getWindowMs() {
+        try {
+            SharedPreferences prefs = androidx.preference.PreferenceManager.getDefaultSharedPreferences(context);
+            long minutes = Long.parseLong(prefs.getString(PREF_DIGEST_WINDOW, DEFAULT_WINDOW_MINUTES));
+            return Math.max(1, minutes) * 60 * 1000;
+        } catch (NumberFormatException e) {
+            return Long.parseLong(DEFAULT_WINDOW_MINUTES) * 60 * 1000;
+        }
+    }
+
+    /**
+     * Write held forwards to disk, must be called with the lock held
+     */
+    private void persist() {
+        File file = new File(context.getFilesDir(), STATE_FILE);
+        if (pending.isEmpty()) {
+            if (file.exists() && !file.delete()) {
+                Log.w(TAG, "Could not delete digest state file");
+            }
+            return;
+        }
+
+        try {
+            JSONArray targets = new JSONArray();
+            for (Map.Entry<String, Pending> entry : pending.entrySet()) {
+                Pending target = entry.getValue();
+                JSONArray items = new JSONArray();
+                for (Item item : target.items) {
+                    items.put(new JSONObject()
+                        .put("sender", item.sender)
+                        .put("message", item.message)
+                        .put("timestamp", item.timestamp)
+                        .put("sourceSubscriptionId", item.sourceSubscriptionId)
+                        .put("sourceSimSlot", item.sourceSimSlot));
+                }
+                targets.put(new JSONObject()
+                    .put("target", entry.getKey())
+                    .put("forwardingSubscriptionId", target.forwardingSubscriptionId)
+                    .put("forwardingSimSlot", target.forwardingSimSlot)
+                    .put("firstHeldAt", target.firstHeldAt)
+                    .put("items", items));
+            }
+
+            File temp = new File(context.getFilesDir(), STATE_FILE + ".tmp");
+            try (FileOutputStream out = new FileOutputStream(temp)) {
+                out.write(targets.toString().getBytes("UTF-8"));
+                out.getFD().sync();
+            }
+            if (!temp.renameTo(file)) {
+                Log.w(TAG, "Could not replace digest state file");
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to persist digest state: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reload forwards held by a previous process and re-arm their flush timers
+     */
+    private void restore() {
+        File file = new File(context.getFilesDir(), STATE_FILE);
+        if (!file.exists()) {
+            return;
+        }
+
+        Map<String, Long> timers = new LinkedHashMap<>();
+        synchronized (this) {
+            try (FileInputStream in = new FileInputStream(file)) {
+                byte[] data = new byte[(int) file.length()];
+                int read = 0;
+                while (read < data.length) {
+                    int n = in.read(data, read, data.length - read);
+                    if (n < 0) {
+                        break;
+                    }
+                    read += n;
+                }
+
+                JSONArray targets = new JSONArray(new String(data, 0, read, "UTF-8"));
+                long now = System.currentTimeMillis();
+                long windowMs = getWindowMs();
+                for (int i = 0; i < targets.length(); i++) {
+                    JSONObject json = targets.getJSONObject(i);
+                    Pending target = new Pending();
+                    target.forwardingSubscriptionId = json.optInt("forwardingSubscriptionId", -1);
+                    target.forwardingSimSlot = json.optInt("forwardingSimSlot", -1);
+                    target.firstHeldAt = json.optLong("firstHeldAt", now);
+                    target.generation = ++generationCounter;
+
+                    JSONArray items = json.getJSONArray("items");
+                    for (int j = 0; j < items.length(); j++) {
+                        JSONObject item = items.getJSONObject(j);
+                        target.items.add(new Item(item.getString("sender"), item.getString("message"),
+                            item.getLong("timestamp"), item.optInt("sourceSubscriptionId", -1),
+                            item.optInt("sourceSimSlot", -1)));
+                    }
+
+                    if (!target.items.isEmpty()) {
+                        String targetNumber = json.getString("target");
+                        pending.put(targetNumber, target);
+                        timers.put(targetNumber, Math.max(0, target.firstHeldAt + windowMs - now));
+                    }
+                }
+                logDebug("Restored " + getHeldCount() + " held digest forwards");
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to restore digest state: " + e.getMessage(), e);
+            }
+        }
+
+        for (Map.Entry<String, Long> timer : timers.entrySet()) {
+            Pending target;
+            synchronized (this) {
+                target = pending.get(timer.getKey());
+            }
+            if (target != null) {
+                scheduleFlush(timer.getKey(), target.generation, timer.getValue());
+            }
+        }
+    }
+
+    /**
+     * Mask phone number for privacy in logs
+     */
+    private String maskPhoneNumber(String phoneNumber) {
+        if (TextUtils.isEmpty(phoneNumber) || phoneNumber.length() < 8) {
+            return "***";
+        }
+        
+        String prefix = phoneNumber.substring(0, Math.min(5, phoneNumber.length() - 4));
+        String suffix = phoneNumber.substring(phoneNumber.length() - 4);
+        return prefix + "***" + suffix;
+    }
+
+    /**
+     * Secure debug logging
+     */
+    private void logDebug(String message) {
+        if (BuildConfig.ENABLE_DEBUG_LOGS) {
+            Log.d(TAG, message);
+        }
+    }
+}
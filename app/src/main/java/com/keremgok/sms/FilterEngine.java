@@ -129,6 +129,7 @@ public class FilterEngine {
                     String filterType = filter.getFilterType() != null ? filter.getFilterType() : "UNKNOWN";
                     
                     logDebug("Filter matched: " + filterName + " -> " + result.getReason());
+                    MetricsRegistry.FILTER_HITS.inc(filterType, result.shouldForward() ? "forward" : "block");
 
                     // Record blocked SMS in analytics if message is blocked
                     if (!result.shouldForward()) {
@@ -399,7 +400,7 @@ public class FilterEngine {
             } catch (Exception e) {
                 Log.e(TAG, "Error updating filter match count: " + e.getMessage());
             }
-        });
+        }, ThreadManager.TASK_PRIORITY_NORMAL, "filter-match-count");
     }
     
     /**
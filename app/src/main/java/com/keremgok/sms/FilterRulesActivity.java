@@ -30,6 +30,7 @@ import android.widget.TextView;
 import android.widget.Toast;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
@@ -63,6 +64,12 @@ public class FilterRulesActivity extends AppCompatActivity implements FilterRule
     private FilterRulesAdapter adapter;
     private AppDatabase database;
     private SmsFilterDao filterDao;
+    
+    // Latest list load, name check and filter test, newer ones drop the ones they supersede
+    private final HermesFuture.Latest filtersQuery = new HermesFuture.Latest();
+    private final HermesFuture.Latest nameCheck = new HermesFuture.Latest();
+    private final HermesFuture.Latest filterTest = new HermesFuture.Latest();
+    private static final long FILTER_TEST_TIMEOUT_SECONDS = 10;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -278,41 +285,25 @@ public class FilterRulesActivity extends AppCompatActivity implements FilterRule
         String pattern = etFilterPattern.getText().toString().trim();
         
         if (TextUtils.isEmpty(filterName)) {
+            nameCheck.cancel();
             showValidationError(getString(R.string.filter_name_required));
             enableAddButton(false);
             return;
         }
         
         if (TextUtils.isEmpty(pattern)) {
+            nameCheck.cancel();
             showValidationError(getString(R.string.filter_pattern_required));
             enableAddButton(false);
             return;
         }
         
-        // Check for duplicate filter name (excluding current filter)
-        ThreadManager.getInstance().executeBackground(() -> {
-            boolean exists = filterDao.isFilterNameExistsExcluding(filterName, originalFilter.getId());
-            runOnUiThread(() -> {
-                if (exists) {
-                    showValidationError(getString(R.string.filter_name_exists));
-                    enableAddButton(false);
-                } else {
-                    // Validate regex if enabled
-                    if (cbRegex.isChecked()) {
-                        if (isValidRegex(pattern)) {
-                            showValidationSuccess();
-                            enableAddButton(true);
-                        } else {
-                            showValidationError(getString(R.string.filter_invalid_regex));
-                            enableAddButton(false);
-                        }
-                    } else {
-                        showValidationSuccess();
-                        enableAddButton(true);
-                    }
-                }
-            });
-        });
+        // Check for duplicate filter name (excluding current filter), each keystroke supersedes the previous check
+        nameCheck.replace(ThreadManager.getInstance()
+            .supplyDatabaseRead(() -> filterDao.isFilterNameExistsExcluding(filterName, originalFilter.getId()),
+                            ThreadManager.TASK_PRIORITY_UI, "filter-name-check")
+            .bindTo(this)
+            .onMainThread(exists -> showNameCheckResult(exists, pattern), null));
     }
     
     /**
@@ -393,41 +384,49 @@ public class FilterRulesActivity extends AppCompatActivity implements FilterRule
         String pattern = etFilterPattern.getText().toString().trim();
         
         if (TextUtils.isEmpty(filterName)) {
+            nameCheck.cancel();
             showValidationError(getString(R.string.filter_name_required));
             enableAddButton(false);
             return;
         }
         
         if (TextUtils.isEmpty(pattern)) {
+            nameCheck.cancel();
             showValidationError(getString(R.string.filter_pattern_required));
             enableAddButton(false);
             return;
         }
         
-        // Check for duplicate filter name
-        ThreadManager.getInstance().executeBackground(() -> {
-            boolean exists = filterDao.isFilterNameExists(filterName);
-            runOnUiThread(() -> {
-                if (exists) {
-                    showValidationError(getString(R.string.filter_name_exists));
-                    enableAddButton(false);
+        // Check for duplicate filter name, each keystroke supersedes the previous check
+        nameCheck.replace(ThreadManager.getInstance()
+            .supplyDatabaseRead(() -> filterDao.isFilterNameExists(filterName),
+                            ThreadManager.TASK_PRIORITY_UI, "filter-name-check")
+            .bindTo(this)
+            .onMainThread(exists -> showNameCheckResult(exists, pattern), null));
+    }
+    
+    /**
+     * Show the outcome of the duplicate name check, then validate the pattern
+     */
+    private void showNameCheckResult(boolean exists, String pattern) {
+        if (exists) {
+            showValidationError(getString(R.string.filter_name_exists));
+            enableAddButton(false);
+        } else {
+            // Validate regex if enabled
+            if (cbRegex.isChecked()) {
+                if (isValidRegex(pattern)) {
+                    showValidationSuccess();
+                    enableAddButton(true);
                 } else {
-                    // Validate regex if enabled
-                    if (cbRegex.isChecked()) {
-                        if (isValidRegex(pattern)) {
-                            showValidationSuccess();
-                            enableAddButton(true);
-                        } else {
-                            showValidationError(getString(R.string.filter_invalid_regex));
-                            enableAddButton(false);
-                        }
-                    } else {
-                        showValidationSuccess();
-                        enableAddButton(true);
-                    }
+                    showValidationError(getString(R.string.filter_invalid_regex));
+                    enableAddButton(false);
                 }
-            });
-        });
+            } else {
+                showValidationSuccess();
+                enableAddButton(true);
+            }
+        }
     }
     
     /**
@@ -515,15 +514,15 @@ public class FilterRulesActivity extends AppCompatActivity implements FilterRule
      * Load filter rules from database and update UI
      */
     private void loadFilterRules() {
-        ThreadManager.getInstance().executeDatabase(() -> {
-            List<SmsFilter> filters = filterDao.getAllFilters();
-            android.util.Log.d("FilterRulesActivity", "Loaded " + (filters != null ? filters.size() : 0) + " filters from database");
-            runOnUiThread(() -> {
+        filtersQuery.replace(ThreadManager.getInstance()
+            .supplyDatabaseRead(() -> filterDao.getAllFilters(), ThreadManager.TASK_PRIORITY_UI, "filter-list")
+            .bindTo(this)
+            .onMainThread(filters -> {
+                android.util.Log.d("FilterRulesActivity", "Loaded " + (filters != null ? filters.size() : 0) + " filters from database");
                 adapter.updateFilterRules(filters);
                 updateUI();
                 android.util.Log.d("FilterRulesActivity", "Adapter item count: " + adapter.getItemCount());
-            });
-        });
+            }, null));
     }
     
     /**
@@ -617,33 +616,28 @@ public class FilterRulesActivity extends AppCompatActivity implements FilterRule
             String testMessage = etTestMessage.getText().toString();
             String testSender = etTestSender.getText().toString();
             
-            // Test filter in background thread to prevent ANR
-            ThreadManager.getInstance().executeBackground(() -> {
-                try {
-                    FilterEngine filterEngine = new FilterEngine(this);
-                    FilterEngine.FilterResult result = filterEngine.applyFilters(testSender, testMessage, System.currentTimeMillis());
-                    
-                    // Update UI on main thread
-                    runOnUiThread(() -> {
-                        if (result.getMatchedFilter() != null && result.getMatchedFilter().getId() == filter.getId()) {
-                            String resultText = getString(R.string.filter_test_result_match, result.getMatchedFilter().getAction());
-                            tvTestResult.setText(resultText);
-                            tvTestResult.setTextColor(ContextCompat.getColor(this, android.R.color.holo_green_dark));
-                        } else {
-                            tvTestResult.setText(R.string.filter_test_result_no_match);
-                            tvTestResult.setTextColor(ContextCompat.getColor(this, android.R.color.holo_red_dark));
-                        }
-                        tvTestResult.setVisibility(View.VISIBLE);
-                    });
-                } catch (Exception e) {
-                    Log.e("FilterRulesActivity", "Error testing filter: " + e.getMessage(), e);
-                    runOnUiThread(() -> {
-                        tvTestResult.setText(R.string.filter_test_result_error);
+            // Test filter in background thread to prevent ANR, a pathological regex times out
+            filterTest.replace(ThreadManager.getInstance()
+                .supplyBackground(() -> new FilterEngine(this).applyFilters(testSender, testMessage, System.currentTimeMillis()),
+                                  ThreadManager.TASK_PRIORITY_UI, "filter-test")
+                .withTimeout(FILTER_TEST_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .bindTo(this)
+                .onMainThread(result -> {
+                    if (result.getMatchedFilter() != null && result.getMatchedFilter().getId() == filter.getId()) {
+                        String resultText = getString(R.string.filter_test_result_match, result.getMatchedFilter().getAction());
+                        tvTestResult.setText(resultText);
+                        tvTestResult.setTextColor(ContextCompat.getColor(this, android.R.color.holo_green_dark));
+                    } else {
+                        tvTestResult.setText(R.string.filter_test_result_no_match);
                         tvTestResult.setTextColor(ContextCompat.getColor(this, android.R.color.holo_red_dark));
-                        tvTestResult.setVisibility(View.VISIBLE);
-                    });
-                }
-            });
+                    }
+                    tvTestResult.setVisibility(View.VISIBLE);
+                }, error -> {
+                    Log.e("FilterRulesActivity", "Error testing filter: " + error.getMessage(), error);
+                    tvTestResult.setText(R.string.filter_test_result_error);
+                    tvTestResult.setTextColor(ContextCompat.getColor(this, android.R.color.holo_red_dark));
+                    tvTestResult.setVisibility(View.VISIBLE);
+                }));
         });
         
         dialog.show();
@@ -18,6 +18,25 @@ public class HermesApplication extends Application {
         
         // Application initialization here if needed
         // ThreadManager, WorkManager, etc. are initialized lazily
+        
+        // Telemetry sampling and verbosity, read before anything records events
+        TelemetryPolicy.load(this);
+        
+        // Watch the main looper for stalls (jank, slow broadcast handling)
+        MainThreadWatchdog.start(this);
+        
+        // Serve OpenMetrics on loopback if enabled in settings
+        MetricsExporter.applySettings(this);
+        
+        // Resume any outbound SMS backlog and held digests left by a previous process
+        ThreadManager.getInstance().executeBackground(() -> {
+            try {
+                SmsQueueManager.getInstance(this);
+                DigestManager.getInstance(this);
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to restore SMS queue backlog: " + e.getMessage(), e);
+            }
+        });
     }
     
     @Override
@@ -25,6 +44,18 @@ public class HermesApplication extends Application {
         super.onTerminate();
         Log.i(TAG, "Hermes SMS Forward application terminating");
         
+        // Persist send budgets, queued history, analytics and stall sites before shutting down
+        try {
+            SimSendBudget.persistIfActive();
+            // Room refuses main thread writes, so the flushes go to the DB writer, which the
+            // shutdown below drains before it stops
+            ThreadManager.getInstance().executeDatabase(HistoryWriter::flushIfActive);
+            ThreadManager.getInstance().executeDatabase(StatisticsManager::flushIfActive);
+            MainThreadWatchdog.persistIfActive();
+        } catch (Exception e) {
+            Log.e(TAG, "Error persisting pending state: " + e.getMessage(), e);
+        }
+        
         // Clean up ThreadManager resources
         try {
             ThreadManager.getInstance().shutdown();
@@ -62,6 +93,12 @@ public class HermesApplication extends Application {
                 break;
             case TRIM_MEMORY_BACKGROUND:
                 Log.i(TAG, "Memory trim: BACKGROUND");
+                // Process may be killed soon - drop the cached outbound backlog (it is already on disk), move budgets, history, analytics and stall sites to disk
+                ThreadManager.getInstance().executeBackground(SmsQueueManager::trimBacklogIfActive);
+                ThreadManager.getInstance().executeBackground(SimSendBudget::persistIfActive);
+                ThreadManager.getInstance().executeDatabase(HistoryWriter::flushIfActive);
+                ThreadManager.getInstance().executeDatabase(StatisticsManager::flushIfActive);
+                ThreadManager.getInstance().executeBackground(MainThreadWatchdog::persistIfActive);
                 break;
             case TRIM_MEMORY_MODERATE:
                 Log.w(TAG, "Memory trim: MODERATE");
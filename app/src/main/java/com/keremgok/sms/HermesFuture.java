@@ -0,0 +1,310 @@
+package com.keremgok.sms;
+
+import android.util.Log;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleOwner;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Composable result of work running on a ThreadManager pool
+ * Replaces nested executeDatabase / executeOnMainThread lambdas with a chain such as
+ * supplyDatabase(query) -> thenOnBackground(transform) -> onMainThread(render).
+ * A cancelled chain skips every stage that has not started yet, so superseded queries never
+ * reach SQLite and stale results never reach the UI.
+ */
+public class HermesFuture<T> {
+
+    private static final String TAG = "HermesFuture";
+
+    private static final int STATE_PENDING = 0;
+    private static final int STATE_SUCCEEDED = 1;
+    private static final int STATE_FAILED = 2;
+    private static final int STATE_CANCELLED = 3;
+
+    /**
+     * Transforms the result of one stage into the input of the next
+     */
+    public interface Function<I, O> {
+        O apply(I input) throws Exception;
+    }
+
+    /**
+     * Receives a result on the main thread
+     */
+    public interface Consumer<V> {
+        void accept(V value);
+    }
+
+    /**
+     * Runs a stage on a particular pool
+     */
+    interface Dispatcher {
+        void dispatch(Runnable task);
+    }
+
+    /**
+     * Stage task that is told when a pool drops it instead of running it
+     */
+    interface Rejectable extends Runnable {
+        void reject(RejectedExecutionException e);
+    }
+
+    /**
+     * Runs a stage and completes its future, or fails the future if the pool drops the stage
+     */
+    private static class StageTask implements Rejectable {
+        private final HermesFuture<?> future;
+        private final Runnable stage;
+
+        StageTask(HermesFuture<?> future, Runnable stage) {
+            this.future = future;
+            this.stage = stage;
+        }
+
+        @Override
+        public void run() {
+            if (!future.cancelRequested) {
+                stage.run();
+            }
+        }
+
+        @Override
+        public void reject(RejectedExecutionException e) {
+            future.fail(e);
+        }
+    }
+
+    // Completion state, guarded by this
+    private int state = STATE_PENDING;
+    private T value;
+    private Throwable error;
+    private List<Runnable> listeners = new ArrayList<>();
+
+    // Set once cancel() is called, even after completion, so pending UI callbacks are skipped
+    private volatile boolean cancelRequested = false;
+
+    // Stage this future is derived from, cancelled along with it
+    private final HermesFuture<?> upstream;
+
+    HermesFuture(HermesFuture<?> upstream) {
+        this.upstream = upstream;
+    }
+
+    /**
+     * Run work on a pool and complete the future with its result
+     */
+    static <T> HermesFuture<T> supply(Dispatcher dispatcher, Callable<T> work) {
+        HermesFuture<T> future = new HermesFuture<>(null);
+        dispatcher.dispatch(new StageTask(future, () -> {
+            try {
+                future.complete(work.call());
+            } catch (Exception e) {
+                future.fail(e);
+            }
+        }));
+        return future;
+    }
+
+    /**
+     * Continue on the database pool once this stage succeeds
+     */
+    public <R> HermesFuture<R> thenOnDatabase(Function<T, R> stage) {
+        return then(ThreadManager.getInstance()::executeDatabase, stage);
+    }
+
+    /**
+     * Continue on the database read pool once this stage succeeds
+     */
+    public <R> HermesFuture<R> thenOnDatabaseRead(Function<T, R> stage) {
+        return then(ThreadManager.getInstance()::executeDatabaseRead, stage);
+    }
+
+    /**
+     * Continue on the background pool once this stage succeeds
+     */
+    public <R> HermesFuture<R> thenOnBackground(Function<T, R> stage) {
+        return then(ThreadManager.getInstance()::executeBackground, stage);
+    }
+
+    private <R> HermesFuture<R> then(Dispatcher dispatcher, Function<T, R> stage) {
+        HermesFuture<R> next = new HermesFuture<>(this);
+        addListener(() -> {
+            if (next.cancelRequested) {
+                return;
+            }
+            int completedState;
+            T result;
+            Throwable failure;
+            synchronized (this) {
+                completedState = state;
+                result = value;
+                failure = error;
+            }
+            if (completedState == STATE_FAILED) {
+                next.fail(failure);
+            } else if (completedState == STATE_CANCELLED) {
+                next.cancel();
+            } else {
+                dispatcher.dispatch(new StageTask(next, () -> {
+                    try {
+                        next.complete(stage.apply(result));
+                    } catch (Exception e) {
+                        next.fail(e);
+                    }
+                }));
+            }
+        });
+        return next;
+    }
+
+    /**
+     * Deliver the outcome on the main thread, nothing is delivered once cancelled
+     * @param onSuccess Called with the result
+     * @param onError Called with the failure (including TimeoutException), may be null
+     */
+    public HermesFuture<T> onMainThread(Consumer<T> onSuccess, Consumer<Throwable> onError) {
+        addListener(() -> ThreadManager.getInstance().executeOnMainThread(() -> {
+            if (cancelRequested) {
+                return;
+            }
+            int completedState;
+            T result;
+            Throwable failure;
+            synchronized (this) {
+                completedState = state;
+                result = value;
+                failure = error;
+            }
+            if (completedState == STATE_SUCCEEDED) {
+                onSuccess.accept(result);
+            } else if (completedState == STATE_FAILED) {
+                if (onError != null) {
+                    onError.accept(failure);
+                } else {
+                    Log.e(TAG, "Unhandled async failure: " + failure.getMessage(), failure);
+                }
+            }
+        }));
+        return this;
+    }
+
+    /**
+     * Fail with a TimeoutException if no result arrives in time, remaining stages are dropped
+     */
+    public HermesFuture<T> withTimeout(long timeout, TimeUnit unit) {
+        ThreadManager.getInstance().schedule(() -> {
+            if (fail(new TimeoutException("Timed out after " + unit.toMillis(timeout) + " ms"))) {
+                cancelUpstream();
+            }
+        }, timeout, unit);
+        return this;
+    }
+
+    /**
+     * Cancel the chain when the owner (activity, fragment) is destroyed
+     * Must be called on the main thread
+     */
+    public HermesFuture<T> bindTo(LifecycleOwner owner) {
+        Lifecycle lifecycle = owner.getLifecycle();
+        if (lifecycle.getCurrentState() == Lifecycle.State.DESTROYED) {
+            cancel();
+            return this;
+        }
+        LifecycleEventObserver observer = (source, event) -> {
+            if (event == Lifecycle.Event.ON_DESTROY) {
+                cancel();
+            }
+        };
+        lifecycle.addObserver(observer);
+        addListener(() -> ThreadManager.getInstance().executeOnMainThread(() -> lifecycle.removeObserver(observer)));
+        return this;
+    }
+
+    /**
+     * Cancel this future and every stage it depends on that has not started yet
+     * A stage already running completes, but its result is discarded
+     */
+    public void cancel() {
+        cancelRequested = true;
+        finish(STATE_CANCELLED, null, null);
+        cancelUpstream();
+    }
+
+    public boolean isCancelled() {
+        return cancelRequested;
+    }
+
+    public synchronized boolean isDone() {
+        return state != STATE_PENDING;
+    }
+
+    private void cancelUpstream() {
+        if (upstream != null) {
+            upstream.cancel();
+        }
+    }
+
+    private void complete(T result) {
+        finish(STATE_SUCCEEDED, result, null);
+    }
+
+    private boolean fail(Throwable failure) {
+        return finish(STATE_FAILED, null, failure);
+    }
+
+    private boolean finish(int newState, T result, Throwable failure) {
+        List<Runnable> toRun;
+        synchronized (this) {
+            if (state != STATE_PENDING) {
+                return false;
+            }
+            state = newState;
+            value = result;
+            error = failure;
+            toRun = listeners;
+            listeners = null;
+        }
+        for (Runnable listener : toRun) {
+            listener.run();
+        }
+        return true;
+    }
+
+    private void addListener(Runnable listener) {
+        synchronized (this) {
+            if (state == STATE_PENDING) {
+                listeners.add(listener);
+                return;
+            }
+        }
+        listener.run();
+    }
+
+    /**
+     * Holds the latest query of a kind, starting a new one cancels the one it supersedes
+     */
+    public static class Latest {
+        private HermesFuture<?> current;
+
+        public synchronized <V> HermesFuture<V> replace(HermesFuture<V> future) {
+            if (current != null) {
+                current.cancel();
+            }
+            current = future;
+            return future;
+        }
+
+        public synchronized void cancel() {
+            if (current != null) {
+                current.cancel();
+                current = null;
+            }
+        }
+    }
+}
@@ -3,6 +3,11 @@ package com.keremgok.sms;
 import android.os.Bundle;
 import android.view.Menu;
 import android.view.MenuItem;
+import android.view.View;
+import android.widget.ArrayAdapter;
+import android.widget.ProgressBar;
+import android.widget.Spinner;
+import android.widget.TextView;
 import android.widget.SearchView;
 import android.widget.Toast;
 import androidx.appcompat.app.AppCompatActivity;
@@ -12,6 +17,8 @@ import androidx.recyclerview.widget.RecyclerView;
 import androidx.swiperefreshlayout.widget.SwipeRefreshLayout;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 
 /**
  * SMS History Activity
@@ -25,6 +32,11 @@ public class HistoryActivity extends AppCompatActivity {
     private AppDatabase database;
     private List<SmsHistory> allHistory;
     private List<SmsHistory> filteredHistory;
+    private androidx.appcompat.app.AlertDialog bulkResendDialog;
+    
+    // Latest list query, a new load, search or filter drops the one it supersedes
+    private final HermesFuture.Latest listQuery = new HermesFuture.Latest();
+    private static final long QUERY_TIMEOUT_SECONDS = 15;
     
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -91,32 +103,36 @@ public class HistoryActivity extends AppCompatActivity {
     private void loadHistoryData() {
         swipeRefreshLayout.setRefreshing(true);
         
-        ThreadManager.getInstance().executeDatabase(() -> {
-            try {
-                List<SmsHistory> history = database.smsHistoryDao().getAllHistory();
-                
-                ThreadManager.getInstance().executeOnMainThread(() -> {
-                    allHistory.clear();
-                    allHistory.addAll(history);
-                    
-                    filteredHistory.clear();
-                    filteredHistory.addAll(history);
-                    
-                    adapter.notifyDataSetChanged();
-                    swipeRefreshLayout.setRefreshing(false);
-                    
-                    if (history.isEmpty()) {
-                        Toast.makeText(this, getString(R.string.history_empty_message), Toast.LENGTH_SHORT).show();
-                    }
-                });
-                
-            } catch (Exception e) {
-                ThreadManager.getInstance().executeOnMainThread(() -> {
-                    swipeRefreshLayout.setRefreshing(false);
-                    Toast.makeText(this, getString(R.string.history_load_error), Toast.LENGTH_SHORT).show();
-                });
+        runListQuery(() -> database.smsHistoryDao().getAllHistory(), history -> {
+            allHistory.clear();
+            allHistory.addAll(history);
+            
+            filteredHistory.clear();
+            filteredHistory.addAll(history);
+            
+            adapter.notifyDataSetChanged();
+            swipeRefreshLayout.setRefreshing(false);
+            
+            if (history.isEmpty()) {
+                Toast.makeText(this, getString(R.string.history_empty_message), Toast.LENGTH_SHORT).show();
             }
-        });
+        }, R.string.history_load_error);
+    }
+    
+    /**
+     * Run a history list query on the database pool and deliver the rows on the main thread
+     * Supersedes any list query still pending, so only the latest result reaches the list
+     */
+    private void runListQuery(Callable<List<SmsHistory>> query,
+                              HermesFuture.Consumer<List<SmsHistory>> onLoaded, int errorMessageRes) {
+        listQuery.replace(ThreadManager.getInstance()
+            .supplyDatabaseRead(query, ThreadManager.TASK_PRIORITY_UI, "history-list")
+            .withTimeout(QUERY_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+            .bindTo(this)
+            .onMainThread(onLoaded, error -> {
+                swipeRefreshLayout.setRefreshing(false);
+                Toast.makeText(this, getString(errorMessageRes), Toast.LENGTH_SHORT).show();
+            }));
     }
     
     /**
@@ -125,31 +141,24 @@ public class HistoryActivity extends AppCompatActivity {
      */
     private void filterHistory(String query) {
         if (query == null || query.trim().isEmpty()) {
-            // Show all history when search is empty
+            // Show all history when search is empty, a pending search must not land afterwards
+            listQuery.cancel();
+            swipeRefreshLayout.setRefreshing(false);
             filteredHistory.clear();
             filteredHistory.addAll(allHistory);
+            adapter.notifyDataSetChanged();
         } else {
-            // Filter history based on query using optimized background thread
-            ThreadManager.getInstance().executeDatabase(() -> {
-                try {
-                    List<SmsHistory> searchResults = database.smsHistoryDao().searchHistory(query.trim());
-                    
-                    ThreadManager.getInstance().executeOnMainThread(() -> {
-                        filteredHistory.clear();
-                        filteredHistory.addAll(searchResults);
-                        adapter.notifyDataSetChanged();
-                        
-                        if (searchResults.isEmpty()) {
-                            Toast.makeText(this, getString(R.string.history_search_no_results), Toast.LENGTH_SHORT).show();
-                        }
-                    });
-                    
-                } catch (Exception e) {
-                    ThreadManager.getInstance().executeOnMainThread(() -> {
-                        Toast.makeText(this, getString(R.string.history_search_error), Toast.LENGTH_SHORT).show();
-                    });
+            // Each keystroke supersedes the previous search before it reaches SQLite
+            String trimmedQuery = query.trim();
+            runListQuery(() -> database.smsHistoryDao().searchHistory(trimmedQuery), searchResults -> {
+                filteredHistory.clear();
+                filteredHistory.addAll(searchResults);
+                adapter.notifyDataSetChanged();
+                
+                if (searchResults.isEmpty()) {
+                    Toast.makeText(this, getString(R.string.history_search_no_results), Toast.LENGTH_SHORT).show();
                 }
-            });
+            }, R.string.history_search_error);
         }
     }
     
@@ -236,6 +245,14 @@ public class HistoryActivity extends AppCompatActivity {
             // Show SIM selection dialog for source SIM filtering
             showSourceSimFilterDialog();
             return true;
+        } else if (itemId == R.id.action_resend_failed) {
+            // Requeue failed forwards in bulk
+            if (BulkResendManager.getInstance(this).isRunning()) {
+                showBulkResendProgress();
+            } else {
+                showBulkResendDialog();
+            }
+            return true;
         }
         
         return super.onOptionsItemSelected(item);
@@ -245,48 +262,26 @@ public class HistoryActivity extends AppCompatActivity {
      * Show only successful forwarded SMS
      */
     private void showSuccessfulHistory() {
-        ThreadManager.getInstance().executeDatabase(() -> {
-            try {
-                List<SmsHistory> successHistory = database.smsHistoryDao().getSuccessfulHistory();
-                
-                ThreadManager.getInstance().executeOnMainThread(() -> {
-                    filteredHistory.clear();
-                    filteredHistory.addAll(successHistory);
-                    adapter.notifyDataSetChanged();
-                    
-                    Toast.makeText(this, getString(R.string.history_showing_successful), Toast.LENGTH_SHORT).show();
-                });
-                
-            } catch (Exception e) {
-                ThreadManager.getInstance().executeOnMainThread(() -> {
-                    Toast.makeText(this, getString(R.string.history_filter_error), Toast.LENGTH_SHORT).show();
-                });
-            }
-        });
+        runListQuery(() -> database.smsHistoryDao().getSuccessfulHistory(), successHistory -> {
+            filteredHistory.clear();
+            filteredHistory.addAll(successHistory);
+            adapter.notifyDataSetChanged();
+            
+            Toast.makeText(this, getString(R.string.history_showing_successful), Toast.LENGTH_SHORT).show();
+        }, R.string.history_filter_error);
     }
     
     /**
      * Show only failed forwarded SMS
      */
     private void showFailedHistory() {
-        ThreadManager.getInstance().executeDatabase(() -> {
-            try {
-                List<SmsHistory> failedHistory = database.smsHistoryDao().getFailedHistory();
-                
-                ThreadManager.getInstance().executeOnMainThread(() -> {
-                    filteredHistory.clear();
-                    filteredHistory.addAll(failedHistory);
-                    adapter.notifyDataSetChanged();
-                    
-                    Toast.makeText(this, getString(R.string.history_showing_failed), Toast.LENGTH_SHORT).show();
-                });
-                
-            } catch (Exception e) {
-                ThreadManager.getInstance().executeOnMainThread(() -> {
-                    Toast.makeText(this, getString(R.string.history_filter_error), Toast.LENGTH_SHORT).show();
-                });
-            }
-        });
+        runListQuery(() -> database.smsHistoryDao().getFailedHistory(), failedHistory -> {
+            filteredHistory.clear();
+            filteredHistory.addAll(failedHistory);
+            adapter.notifyDataSetChanged();
+            
+            Toast.makeText(this, getString(R.string.history_showing_failed), Toast.LENGTH_SHORT).show();
+        }, R.string.history_filter_error);
     }
     
     /**
@@ -306,26 +301,15 @@ public class HistoryActivity extends AppCompatActivity {
      * @param simSlot SIM slot (0 for SIM 1, 1 for SIM 2)
      */
     private void showHistoryByForwardingSim(int simSlot) {
-        ThreadManager.getInstance().executeDatabase(() -> {
-            try {
-                List<SmsHistory> simHistory = database.smsHistoryDao().getHistoryByForwardingSim(simSlot);
-                
-                ThreadManager.getInstance().executeOnMainThread(() -> {
-                    filteredHistory.clear();
-                    filteredHistory.addAll(simHistory);
-                    adapter.notifyDataSetChanged();
-                    
-                    String simName = simSlot == 0 ? getString(R.string.sim_1) : getString(R.string.sim_2);
-                    String message = getString(R.string.history_showing_sim_filter, simName);
-                    Toast.makeText(this, message, Toast.LENGTH_SHORT).show();
-                });
-                
-            } catch (Exception e) {
-                ThreadManager.getInstance().executeOnMainThread(() -> {
-                    Toast.makeText(this, getString(R.string.history_filter_error), Toast.LENGTH_SHORT).show();
-                });
-            }
-        });
+        runListQuery(() -> database.smsHistoryDao().getHistoryByForwardingSim(simSlot), simHistory -> {
+            filteredHistory.clear();
+            filteredHistory.addAll(simHistory);
+            adapter.notifyDataSetChanged();
+            
+            String simName = simSlot == 0 ? getString(R.string.sim_1) : getString(R.string.sim_2);
+            String message = getString(R.string.history_showing_sim_filter, simName);
+            Toast.makeText(this, message, Toast.LENGTH_SHORT).show();
+        }, R.string.history_filter_error);
     }
     
     /**
@@ -371,34 +355,180 @@ public class HistoryActivity extends AppCompatActivity {
      * @param simDisplayName SIM display name for toast message
      */
     private void showHistoryBySourceSubscription(int sourceSubscriptionId, String simDisplayName) {
-        ThreadManager.getInstance().executeDatabase(() -> {
+        runListQuery(() -> database.smsHistoryDao().getHistoryBySourceSubscription(sourceSubscriptionId), sourceSimHistory -> {
+            filteredHistory.clear();
+            filteredHistory.addAll(sourceSimHistory);
+            adapter.notifyDataSetChanged();
+            
+            String message = getString(R.string.history_showing_source_sim_filter, simDisplayName);
+            Toast.makeText(this, message, Toast.LENGTH_SHORT).show();
+        }, R.string.history_filter_error);
+    }
+    
+    /**
+     * Show bulk resend filter dialog (time range, forwarding SIM, target)
+     */
+    private void showBulkResendDialog() {
+        ThreadManager.getInstance().executeDatabaseRead(() -> {
+            try {
+                List<String> failedTargets = database.smsHistoryDao().getFailedTargetNumbers();
+                ThreadManager.getInstance().executeOnMainThread(() -> buildBulkResendDialog(failedTargets));
+            } catch (Exception e) {
+                ThreadManager.getInstance().executeOnMainThread(() -> {
+                    Toast.makeText(this, getString(R.string.bulk_resend_error), Toast.LENGTH_SHORT).show();
+                });
+            }
+        });
+    }
+    
+    private void buildBulkResendDialog(List<String> failedTargets) {
+        if (isFinishing()) {
+            return;
+        }
+        
+        View dialogView = getLayoutInflater().inflate(R.layout.dialog_bulk_resend, null);
+        Spinner spinnerTimeRange = dialogView.findViewById(R.id.spinner_resend_time_range);
+        Spinner spinnerSim = dialogView.findViewById(R.id.spinner_resend_sim);
+        Spinner spinnerTarget = dialogView.findViewById(R.id.spinner_resend_target);
+        
+        String[] simOptions = {
+            getString(R.string.bulk_resend_any_sim), getString(R.string.sim_1), getString(R.string.sim_2)
+        };
+        ArrayAdapter<String> simAdapter = new ArrayAdapter<>(this, android.R.layout.simple_spinner_item, simOptions);
+        simAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        spinnerSim.setAdapter(simAdapter);
+        
+        List<String> targetOptions = new ArrayList<>();
+        targetOptions.add(getString(R.string.bulk_resend_any_target));
+        targetOptions.addAll(failedTargets);
+        ArrayAdapter<String> targetAdapter = new ArrayAdapter<>(this, android.R.layout.simple_spinner_item, targetOptions);
+        targetAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        spinnerTarget.setAdapter(targetAdapter);
+        
+        new androidx.appcompat.app.AlertDialog.Builder(this)
+            .setTitle(getString(R.string.bulk_resend_title))
+            .setView(dialogView)
+            .setPositiveButton(getString(R.string.bulk_resend_start), (dialog, which) -> {
+                long now = System.currentTimeMillis();
+                long startTime;
+                switch (spinnerTimeRange.getSelectedItemPosition()) {
+                    case 0:
+                        startTime = now - 60L * 60 * 1000;
+                        break;
+                    case 1:
+                        startTime = now - 24L * 60 * 60 * 1000;
+                        break;
+                    case 2:
+                        startTime = now - 7L * 24 * 60 * 60 * 1000;
+                        break;
+                    default:
+                        startTime = 0;
+                        break;
+                }
+                
+                int simPosition = spinnerSim.getSelectedItemPosition();
+                int forwardingSimSlot = simPosition == 0 ? BulkResendManager.ANY_SIM : simPosition - 1;
+                int targetPosition = spinnerTarget.getSelectedItemPosition();
+                String targetNumber = targetPosition > 0 ? targetOptions.get(targetPosition) : null;
+                
+                confirmBulkResend(new BulkResendManager.Filter(startTime, Long.MAX_VALUE, forwardingSimSlot, targetNumber));
+            })
+            .setNegativeButton(getString(R.string.cancel), null)
+            .show();
+    }
+    
+    /**
+     * Count matching rows and confirm before starting the bulk resend
+     */
+    private void confirmBulkResend(BulkResendManager.Filter filter) {
+        BulkResendManager resendManager = BulkResendManager.getInstance(this);
+        ThreadManager.getInstance().executeDatabaseRead(() -> {
             try {
-                List<SmsHistory> sourceSimHistory = database.smsHistoryDao().getHistoryBySourceSubscription(sourceSubscriptionId);
+                int count = resendManager.countCandidates(filter);
                 
                 ThreadManager.getInstance().executeOnMainThread(() -> {
-                    filteredHistory.clear();
-                    filteredHistory.addAll(sourceSimHistory);
-                    adapter.notifyDataSetChanged();
-                    
-                    String message = getString(R.string.history_showing_source_sim_filter, simDisplayName);
-                    Toast.makeText(this, message, Toast.LENGTH_SHORT).show();
+                    if (isFinishing()) {
+                        return;
+                    }
+                    if (count == 0) {
+                        Toast.makeText(this, getString(R.string.bulk_resend_nothing), Toast.LENGTH_SHORT).show();
+                        return;
+                    }
+                    new androidx.appcompat.app.AlertDialog.Builder(this)
+                        .setTitle(getString(R.string.bulk_resend_title))
+                        .setMessage(getString(R.string.bulk_resend_confirm_message, count))
+                        .setPositiveButton(getString(R.string.bulk_resend_start), (dialog, which) -> {
+                            if (resendManager.start(filter)) {
+                                showBulkResendProgress();
+                            } else {
+                                Toast.makeText(this, getString(R.string.bulk_resend_error), Toast.LENGTH_SHORT).show();
+                            }
+                        })
+                        .setNegativeButton(getString(R.string.cancel), null)
+                        .show();
                 });
                 
             } catch (Exception e) {
                 ThreadManager.getInstance().executeOnMainThread(() -> {
-                    Toast.makeText(this, getString(R.string.history_filter_error), Toast.LENGTH_SHORT).show();
+                    Toast.makeText(this, getString(R.string.bulk_resend_error), Toast.LENGTH_SHORT).show();
                 });
             }
         });
     }
     
+    /**
+     * Show progress and throughput of the running bulk resend
+     * The run continues in the background when the dialog is hidden
+     */
+    private void showBulkResendProgress() {
+        View dialogView = getLayoutInflater().inflate(R.layout.dialog_bulk_resend_progress, null);
+        ProgressBar progressBar = dialogView.findViewById(R.id.progress_bulk_resend);
+        TextView tvStatus = dialogView.findViewById(R.id.tv_bulk_resend_status);
+        BulkResendManager resendManager = BulkResendManager.getInstance(this);
+        
+        bulkResendDialog = new androidx.appcompat.app.AlertDialog.Builder(this)
+            .setTitle(getString(R.string.bulk_resend_title))
+            .setView(dialogView)
+            .setPositiveButton(getString(R.string.bulk_resend_hide), null)
+            .setNegativeButton(getString(R.string.bulk_resend_stop), (dialog, which) -> resendManager.cancel())
+            .create();
+        bulkResendDialog.setOnDismissListener(dialog -> {
+            resendManager.setProgressListener(null);
+            bulkResendDialog = null;
+        });
+        
+        resendManager.setProgressListener(progress -> {
+            if (progress.finished) {
+                String message = progress.cancelled
+                    ? getString(R.string.bulk_resend_cancelled, progress.dispatched)
+                    : getString(R.string.bulk_resend_finished, progress.dispatched, progress.queueErrors);
+                Toast.makeText(this, message, Toast.LENGTH_LONG).show();
+                if (bulkResendDialog != null) {
+                    bulkResendDialog.dismiss();
+                }
+                loadHistoryData();
+                return;
+            }
+            
+            int done = progress.dispatched + progress.queueErrors;
+            progressBar.setProgress(progress.total > 0 ? Math.min(100, done * 100 / progress.total) : 0);
+            tvStatus.setText(getString(R.string.bulk_resend_progress, done, progress.total,
+                                       progress.getThroughputPerMinute()));
+        });
+        
+        bulkResendDialog.show();
+    }
+    
     /**
      * Clear all SMS history from database
      */
     private void clearAllHistory() {
+        // A pending list query would bring the cleared rows back
+        listQuery.cancel();
         ThreadManager.getInstance().executeDatabase(() -> {
             try {
                 database.smsHistoryDao().deleteAllHistory();
+                SimUsageTracker.getInstance().invalidate();
                 
                 ThreadManager.getInstance().executeOnMainThread(() -> {
                     allHistory.clear();
@@ -416,6 +546,14 @@ public class HistoryActivity extends AppCompatActivity {
         });
     }
     
+    @Override
+    protected void onDestroy() {
+        if (bulkResendDialog != null) {
+            bulkResendDialog.dismiss();
+        }
+        super.onDestroy();
+    }
+    
     @Override
     protected void onResume() {
         super.onResume();
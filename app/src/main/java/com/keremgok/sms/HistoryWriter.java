@@ -0,0 +1,183 @@
+package com.keremgok.sms;
+
+import android.content.Context;
+import android.util.Log;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Single writer for sms_history
+ * Producers (receiver, queue worker, sent callbacks, backlog shedding) hand records over through
+ * a lock-free queue; the writer commits them in grouped transactions once a batch fills up or
+ * the oldest record has waited MAX_DELAY_MS, whichever comes first.
+ */
+public class HistoryWriter {
+
+    private static final String TAG = "HistoryWriter";
+
+    // Batching configuration
+    private static final int BATCH_SIZE = 50; // Flush immediately once this many records are waiting
+    private static final int MAX_TRANSACTION_ROWS = 200; // Upper bound on rows per transaction
+    private static final long MAX_DELAY_MS = 250; // Upper bound on how long a record waits before commit
+
+    private static HistoryWriter instance;
+
+    private final Context context;
+    private final ConcurrentLinkedQueue<SmsHistory> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queuedCount = new AtomicInteger(0);
+    private final AtomicBoolean drainPending = new AtomicBoolean(false);
+    private final AtomicBoolean timerArmed = new AtomicBoolean(false);
+    private final Object writeLock = new Object();
+
+    // Metrics
+    private final AtomicInteger committedRows = new AtomicInteger(0);
+    private final AtomicInteger committedTransactions = new AtomicInteger(0);
+
+    private HistoryWriter(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    public static synchronized HistoryWriter getInstance(Context context) {
+        if (instance == null) {
+            instance = new HistoryWriter(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Queue a history record for writing, never blocks the caller
+     */
+    public void enqueue(SmsHistory history) {
+        if (history == null) {
+            return;
+        }
+
+        queue.offer(history);
+        int waiting = queuedCount.incrementAndGet();
+
+        if (waiting >= BATCH_SIZE) {
+            requestDrain();
+        } else if (timerArmed.compareAndSet(false, true)) {
+            ThreadManager.getInstance().schedule(() -> {
+                timerArmed.set(false);
+                requestDrain();
+            }, MAX_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Commit everything queued so far on the calling thread
+     * Used on memory trim and app termination
+     */
+    public void flush() {
+        drain();
+    }
+
+    /**
+     * Flush queued history if the writer is running
+     */
+    public static void flushIfActive() {
+        HistoryWriter writer;
+        synchronized (HistoryWriter.class) {
+            writer = instance;
+        }
+        if (writer != null) {
+            writer.flush();
+        }
+    }
+
+    /**
+     * Get number of records waiting to be committed
+     */
+    public int getQueuedCount() {
+        return queuedCount.get();
+    }
+
+    /**
+     * Human readable writer summary for debug screens
+     */
+    public String getStatusSummary() {
+        int transactions = committedTransactions.get();
+        int rows = committedRows.get();
+        return "Queued: " + queuedCount.get() + ", committed " + rows + " rows in " + transactions
+                + " transactions" + (transactions > 0
+                    ? String.format(java.util.Locale.US, " (%.1f rows/tx)", (double) rows / transactions) : "");
+    }
+
+    private void requestDrain() {
+        if (drainPending.compareAndSet(false, true)) {
+            ThreadManager.getInstance().executeDatabase(this::drain, ThreadManager.TASK_PRIORITY_SMS, "history-write");
+        }
+    }
+
+    private void drain() {
+        synchronized (writeLock) {
+            // Records queued from here on need a new drain request
+            drainPending.set(false);
+
+            List<SmsHistory> batch = new ArrayList<>();
+            while (true) {
+                batch.clear();
+                SmsHistory history;
+                while (batch.size() < MAX_TRANSACTION_ROWS && (history = queue.poll()) != null) {
+                    batch.add(history);
+                }
+                if (batch.isEmpty()) {
+                    return;
+                }
+                queuedCount.addAndGet(-batch.size());
+                commit(batch);
+            }
+        }
+    }
+
+    private void commit(List<SmsHistory> batch) {
+        SmsHistoryDao dao;
+        try {
+            dao = AppDatabase.getInstance(context).smsHistoryDao();
+        } catch (Exception e) {
+            Log.e(TAG, "Database unavailable, dropping " + batch.size() + " history records: " + e.getMessage(), e);
+            return;
+        }
+
+        // Keep the cached SIM usage totals in step with what is committed
+        SimUsageTracker simUsage = SimUsageTracker.getInstance();
+        List<SmsHistory> written = batch;
+        simUsage.beginWrite();
+        try {
+            dao.insertAll(batch);
+            committedRows.addAndGet(batch.size());
+            committedTransactions.incrementAndGet();
+            logDebug("Committed " + batch.size() + " history records");
+        } catch (Exception e) {
+            // Fall back to row-by-row so one bad record does not lose the whole batch
+            Log.e(TAG, "Batched history insert failed, retrying row by row: " + e.getMessage(), e);
+            written = new ArrayList<>();
+            for (SmsHistory history : batch) {
+                try {
+                    dao.insert(history);
+                    written.add(history);
+                    committedRows.incrementAndGet();
+                    committedTransactions.incrementAndGet();
+                } catch (Exception rowError) {
+                    Log.e(TAG, "Failed to write history record: " + rowError.getMessage(), rowError);
+                }
+            }
+        } finally {
+            simUsage.endWrite(written);
+        }
+    }
+
+    /**
+     * Secure debug logging
+     */
+    private void logDebug(String message) {
+        if (BuildConfig.ENABLE_DEBUG_LOGS) {
+            Log.d(TAG, message);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.keremgok.sms;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+
+/**
+ * Time-bucketed latency histogram for Room Database
+ * One row per (metric, resolution, bucket start) holding a LatencyHistogram snapshot. Rows of
+ * a range are merged to get percentiles for it, so no raw latency samples have to be kept.
+ */
+@Entity(tableName = "latency_buckets", primaryKeys = {"metric", "resolution", "bucket_start"})
+public class LatencyBucket {
+
+    @NonNull
+    @ColumnInfo(name = "metric")
+    private String metric;
+
+    @NonNull
+    @ColumnInfo(name = "resolution")
+    private String resolution; // StatisticsBucket.HOUR or StatisticsBucket.DAY
+
+    @ColumnInfo(name = "bucket_start")
+    private long bucketStart; // Local-time aligned start of the bucket in epoch millis
+
+    @ColumnInfo(name = "sample_count")
+    private long sampleCount;
+
+    @ColumnInfo(name = "sum_ms")
+    private long sumMs;
+
+    @ColumnInfo(name = "max_ms")
+    private long maxMs;
+
+    @ColumnInfo(name = "histogram")
+    private byte[] histogram; // LatencyHistogram.Snapshot.encodeBuckets()
+
+    // Constructor
+    public LatencyBucket(@NonNull String metric, @NonNull String resolution, long bucketStart,
+                         long sampleCount, long sumMs, long maxMs, byte[] histogram) {
+        this.metric = metric;
+        this.resolution = resolution;
+        this.bucketStart = bucketStart;
+        this.sampleCount = sampleCount;
+        this.sumMs = sumMs;
+        this.maxMs = maxMs;
+        this.histogram = histogram;
+    }
+
+    /**
+     * Build a bucket row from a histogram snapshot
+     */
+    public static LatencyBucket of(String metric, String resolution, long bucketStart, LatencyHistogram.Snapshot snapshot) {
+        return new LatencyBucket(metric, resolution, bucketStart, snapshot.count, snapshot.sum,
+            snapshot.max, snapshot.encodeBuckets());
+    }
+
+    /**
+     * Decode the stored histogram
+     */
+    public LatencyHistogram.Snapshot toSnapshot() {
+        return LatencyHistogram.Snapshot.decode(histogram, sampleCount, sumMs, maxMs);
+    }
+
+    // Getters
+    @NonNull
+    public String getMetric() {
+        return metric;
+    }
+
+    @NonNull
+    public String getResolution() {
+        return resolution;
+    }
+
+    public long getBucketStart() {
+        return bucketStart;
+    }
+
+    public long getSampleCount() {
+        return sampleCount;
+    }
+
+    public long getSumMs() {
+        return sumMs;
+    }
+
+    public long getMaxMs() {
+        return maxMs;
+    }
+
+    public byte[] getHistogram() {
+        return histogram;
+    }
+}
@@ -0,0 +1,67 @@
+package com.keremgok.sms;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+import androidx.room.Transaction;
+import java.util.List;
+
+/**
+ * Data Access Object (DAO) for Latency Buckets
+ * Persisted latency histograms behind the percentile figures on the statistics dashboard
+ */
+@Dao
+public interface LatencyBucketDao {
+
+    /**
+     * Insert or replace a bucket
+     */
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void upsert(LatencyBucket bucket);
+
+    /**
+     * Get a single bucket
+     * @return The bucket, or null if nothing was recorded for it yet
+     */
+    @Query("SELECT * FROM latency_buckets WHERE metric = :metric AND resolution = :resolution AND bucket_start = :bucketStart LIMIT 1")
+    LatencyBucket getBucket(String metric, String resolution, long bucketStart);
+
+    /**
+     * Merge a set of histogram deltas into their buckets
+     * @param deltas Histogram deltas keyed by their metric, resolution and bucket start
+     */
+    @Transaction
+    default void mergeAll(List<LatencyBucket> deltas) {
+        for (LatencyBucket delta : deltas) {
+            LatencyBucket existing = getBucket(delta.getMetric(), delta.getResolution(), delta.getBucketStart());
+            if (existing == null) {
+                upsert(delta);
+            } else {
+                upsert(LatencyBucket.of(delta.getMetric(), delta.getResolution(), delta.getBucketStart(),
+                    existing.toSnapshot().merge(delta.toSnapshot())));
+            }
+        }
+    }
+
+    /**
+     * Get the buckets of one metric and resolution within a time range, oldest first
+     * @param startTime First bucket start (inclusive)
+     * @param endTime Last bucket start (inclusive)
+     */
+    @Query("SELECT * FROM latency_buckets WHERE metric = :metric AND resolution = :resolution AND bucket_start BETWEEN :startTime AND :endTime ORDER BY bucket_start ASC")
+    List<LatencyBucket> getBuckets(String metric, String resolution, long startTime, long endTime);
+
+    /**
+     * Delete buckets of one resolution older than a threshold
+     * @return Number of deleted buckets
+     */
+    @Query("DELETE FROM latency_buckets WHERE resolution = :resolution AND bucket_start < :timestamp")
+    int deleteOldBuckets(String resolution, long timestamp);
+
+    /**
+     * Delete all buckets
+     */
+    @Query("DELETE FROM latency_buckets")
+    void deleteAllBuckets();
+}
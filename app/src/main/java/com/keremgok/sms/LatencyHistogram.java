@@ -0,0 +1,204 @@
+package com.keremgok.sms;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free log-linear latency histogram
+ * Each power-of-two range is split into SUB_BUCKETS linear buckets, so any recorded value is
+ * reported within 12.5% of its true value. Recording is a couple of atomic increments, cheap
+ * enough to run around every pooled task. Snapshots share the bucket layout, so they can be
+ * merged and stored compactly (only non-empty buckets are encoded).
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int OCTAVES = 40; // Covers values up to about 2^42
+    static final int BUCKET_COUNT = SUB_BUCKETS * (OCTAVES + 1);
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong(0);
+    private final AtomicLong sum = new AtomicLong(0);
+    private final AtomicLong max = new AtomicLong(0);
+
+    /**
+     * Record a single value (negative values are clamped to zero)
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        buckets.incrementAndGet(bucketIndex(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long currentMax;
+        while (value > (currentMax = max.get())) {
+            if (max.compareAndSet(currentMax, value)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Take a consistent-enough copy for reporting, recording may continue concurrently
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            copy[i] = buckets.get(i);
+        }
+        return new Snapshot(copy, count.get(), sum.get(), max.get());
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int msb = 63 - Long.numberOfLeadingZeros(value);
+        int shift = msb - SUB_BUCKET_BITS;
+        int index = (shift + 1) * SUB_BUCKETS + (int) ((value >> shift) & (SUB_BUCKETS - 1));
+        return Math.min(index, BUCKET_COUNT - 1);
+    }
+
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long lower = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lower + (1L << shift) - 1;
+    }
+
+    /**
+     * Immutable histogram copy with percentile queries
+     */
+    public static class Snapshot {
+        private final long[] buckets;
+        public final long count;
+        public final long sum;
+        public final long max;
+
+        Snapshot(long[] buckets, long count, long sum, long max) {
+            this.buckets = buckets;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        /**
+         * Snapshot with no samples, used as the starting point for merges
+         */
+        public static Snapshot empty() {
+            return new Snapshot(new long[BUCKET_COUNT], 0, 0, 0);
+        }
+
+        /**
+         * Combine two snapshots as if every sample had been recorded into one histogram
+         */
+        public Snapshot merge(Snapshot other) {
+            long[] merged = new long[BUCKET_COUNT];
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                merged[i] = buckets[i] + other.buckets[i];
+            }
+            return new Snapshot(merged, count + other.count, sum + other.sum, Math.max(max, other.max));
+        }
+
+        /**
+         * Encode the non-empty buckets as (index, count) pairs
+         */
+        public byte[] encodeBuckets() {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                for (int i = 0; i < BUCKET_COUNT; i++) {
+                    if (buckets[i] > 0) {
+                        out.writeShort(i);
+                        out.writeLong(buckets[i]);
+                    }
+                }
+            } catch (IOException e) {
+                // Not thrown by in-memory streams
+            }
+            return bytes.toByteArray();
+        }
+
+        /**
+         * Rebuild a snapshot from encodeBuckets output and its stored totals
+         * Unknown bucket indices from a corrupt blob are skipped
+         */
+        public static Snapshot decode(byte[] encoded, long count, long sum, long max) {
+            long[] buckets = new long[BUCKET_COUNT];
+            if (encoded != null) {
+                try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(encoded))) {
+                    while (in.available() >= 10) {
+                        int index = in.readUnsignedShort();
+                        long value = in.readLong();
+                        if (index < BUCKET_COUNT) {
+                            buckets[index] += value;
+                        }
+                    }
+                } catch (IOException e) {
+                    // Keep whatever was decoded
+                }
+            }
+            return new Snapshot(buckets, count, sum, max);
+        }
+
+        /**
+         * Count the samples recorded at or below a value, to within the bucket resolution
+         * Used for the cumulative buckets of the OpenMetrics export
+         */
+        public long countAtOrBelow(long value) {
+            long total = 0;
+            for (int i = 0; i < buckets.length && bucketUpperBound(i) <= value; i++) {
+                total += buckets[i];
+            }
+            return total;
+        }
+
+        public double getMean() {
+            return count > 0 ? (double) sum / count : 0;
+        }
+
+        /**
+         * Get the value at a quantile
+         * @param quantile Between 0 and 1, e.g. 0.95 for p95
+         */
+        public long getPercentile(double quantile) {
+            long total = 0;
+            for (long bucket : buckets) {
+                total += bucket;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(quantile * total);
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank && buckets[i] > 0) {
+                    return Math.min(bucketUpperBound(i), max);
+                }
+            }
+            return max;
+        }
+
+        /**
+         * Format as "n=12 p50=.. p95=.. p99=.. max=.." with values divided by the given unit
+         */
+        public String format(double unitDivisor, String unit) {
+            return String.format(Locale.US, "n=%d p50=%.1f%s p95=%.1f%s p99=%.1f%s max=%.1f%s",
+                    count,
+                    getPercentile(0.50) / unitDivisor, unit,
+                    getPercentile(0.95) / unitDivisor, unit,
+                    getPercentile(0.99) / unitDivisor, unit,
+                    max / unitDivisor, unit);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.keremgok.sms;
+
+import android.content.Context;
+import android.util.Log;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Latency histograms for the forwarding pipeline
+ * Samples are recorded into in-memory LatencyHistograms keyed by metric and hour, and merged
+ * into hour and day rows of latency_buckets every FLUSH_DELAY_MS. Any range is answered by
+ * merging its bucket rows with what is still pending, so percentiles never need raw samples.
+ */
+public class LatencyMetrics {
+
+    private static final String TAG = "LatencyMetrics";
+
+    // Metrics
+    public static final String PROCESSING = "processing"; // SMS received to forward queued
+    public static final String ENQUEUE_TO_SEND = "enqueue_to_send"; // Forward queued (and due) to radio send
+    public static final String SEND_TO_ACK = "send_to_ack"; // Radio send to sent-ack
+
+    private static final long FLUSH_DELAY_MS = 30000;
+    private static final long HOUR_BUCKET_RETENTION_MS = 90L * 24 * 60 * 60 * 1000;
+    private static final long PRUNE_INTERVAL_MS = 60 * 60 * 1000;
+    // Ranges longer than this are answered from day buckets
+    private static final long HOUR_RESOLUTION_MAX_RANGE_MS = 7L * 24 * 60 * 60 * 1000;
+
+    private static volatile LatencyMetrics instance;
+
+    private final AppDatabase database;
+    // Pending samples per metric and hour bucket, guarded by this
+    private final Map<String, Pending> pending = new LinkedHashMap<>();
+    private final AtomicBoolean timerArmed = new AtomicBoolean(false);
+    private final Object writeLock = new Object();
+    private long lastPrunedAt = 0; // Guarded by writeLock
+
+    private static class Pending {
+        final String metric;
+        final long hourStart;
+        final LatencyHistogram histogram = new LatencyHistogram();
+
+        Pending(String metric, long hourStart) {
+            this.metric = metric;
+            this.hourStart = hourStart;
+        }
+    }
+
+    private LatencyMetrics(Context context) {
+        this.database = AppDatabase.getInstance(context.getApplicationContext());
+    }
+
+    public static LatencyMetrics getInstance(Context context) {
+        if (instance == null) {
+            synchronized (LatencyMetrics.class) {
+                if (instance == null) {
+                    instance = new LatencyMetrics(context);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Flush pending samples if the recorder was ever started
+     * Called on memory trim and termination, and before the dashboard reads buckets
+     */
+    public static void flushIfActive() {
+        LatencyMetrics metrics = instance;
+        if (metrics != null) {
+            metrics.flush();
+        }
+    }
+
+    /**
+     * Record one latency sample, never touches the database
+     */
+    public void record(String metric, long latencyMs) {
+        if (latencyMs < 0) {
+            return;
+        }
+        MetricsRegistry.PIPELINE_LATENCY.observe(latencyMs, metric);
+        long hourStart = StatisticsBucket.bucketStart(StatisticsBucket.HOUR, System.currentTimeMillis());
+        synchronized (this) {
+            String key = metric + hourStart;
+            Pending entry = pending.get(key);
+            if (entry == null) {
+                entry = new Pending(metric, hourStart);
+                pending.put(key, entry);
+            }
+            entry.histogram.record(latencyMs);
+        }
+
+        if (timerArmed.compareAndSet(false, true)) {
+            TimerWheel.getInstance().schedule(() -> {
+                timerArmed.set(false);
+                ThreadManager.getInstance().executeDatabase(this::flush, ThreadManager.TASK_PRIORITY_ANALYTICS, "latency-flush");
+            }, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS, ThreadManager.TASK_PRIORITY_ANALYTICS, "latency-flush");
+        }
+    }
+
+    /**
+     * Merge pending samples into their hour and day buckets on the calling thread
+     */
+    public void flush() {
+        synchronized (writeLock) {
+            List<Pending> batch;
+            synchronized (this) {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                batch = new ArrayList<>(pending.values());
+                pending.clear();
+            }
+
+            List<LatencyBucket> deltas = new ArrayList<>();
+            for (Pending entry : batch) {
+                LatencyHistogram.Snapshot snapshot = entry.histogram.snapshot();
+                deltas.add(LatencyBucket.of(entry.metric, StatisticsBucket.HOUR, entry.hourStart, snapshot));
+                deltas.add(LatencyBucket.of(entry.metric, StatisticsBucket.DAY,
+                    StatisticsBucket.bucketStart(StatisticsBucket.DAY, entry.hourStart), snapshot));
+            }
+
+            try {
+                database.latencyBucketDao().mergeAll(deltas);
+            } catch (Exception e) {
+                Log.e(TAG, "Error writing " + batch.size() + " latency histograms: " + e.getMessage(), e);
+            }
+            pruneBuckets();
+        }
+    }
+
+    /**
+     * Merge the persisted and pending histograms of a metric over a time range
+     * Runs a database query, call from a background thread
+     */
+    public LatencyHistogram.Snapshot getSnapshot(String metric, long startTime, long endTime) {
+        String resolution = endTime - startTime > HOUR_RESOLUTION_MAX_RANGE_MS
+            ? StatisticsBucket.DAY : StatisticsBucket.HOUR;
+        long firstBucket = StatisticsBucket.bucketStart(resolution, startTime);
+
+        // Wait for a flush in progress so its samples are either pending or persisted
+        synchronized (writeLock) {
+            LatencyHistogram.Snapshot merged = LatencyHistogram.Snapshot.empty();
+            try {
+                for (LatencyBucket bucket : database.latencyBucketDao().getBuckets(metric, resolution, firstBucket, endTime)) {
+                    merged = merged.merge(bucket.toSnapshot());
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error reading latency histograms: " + e.getMessage(), e);
+            }
+
+            synchronized (this) {
+                for (Pending entry : pending.values()) {
+                    if (entry.metric.equals(metric) && entry.hourStart >= firstBucket && entry.hourStart <= endTime) {
+                        merged = merged.merge(entry.histogram.snapshot());
+                    }
+                }
+            }
+            return merged;
+        }
+    }
+
+    /**
+     * Drop hour buckets past their retention, at most once per PRUNE_INTERVAL_MS
+     */
+    private void pruneBuckets() {
+        long now = System.currentTimeMillis();
+        if (now - lastPrunedAt < PRUNE_INTERVAL_MS) {
+            return;
+        }
+        lastPrunedAt = now;
+        try {
+            database.latencyBucketDao().deleteOldBuckets(StatisticsBucket.HOUR, now - HOUR_BUCKET_RETENTION_MS);
+        } catch (Exception e) {
+            Log.e(TAG, "Error pruning latency buckets: " + e.getMessage(), e);
+        }
+    }
+}
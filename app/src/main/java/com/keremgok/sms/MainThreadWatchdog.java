@@ -0,0 +1,323 @@
+package com.keremgok.sms;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.Printer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Main looper stall watchdog
+ * Hooks the main looper's message logging to time every dispatched message. When a dispatch
+ * runs past STALL_THRESHOLD_MS the main thread stack is captured from a watchdog thread while
+ * the stall is still in progress. Finished stalls are ranked by stall site (the first app frame
+ * on the captured stack) and recorded as PERFORMANCE analytics events.
+ */
+public class MainThreadWatchdog {
+
+    private static final String TAG = "MainThreadWatchdog";
+    private static final String STATE_PREFS_NAME = "HermesStallWatchdog";
+    private static final String KEY_SITES = "stall_sites";
+
+    // Watchdog configuration
+    private static final long STALL_THRESHOLD_MS = 200; // Dispatches longer than this count as stalls
+    private static final long EVENT_INTERVAL_PER_SITE_MS = 60000; // At most one analytics event per site per minute
+    private static final int MAX_TRACKED_SITES = 50;
+    private static final int MAX_STACK_FRAMES = 12;
+    private static final String APP_PACKAGE = "com.keremgok.sms";
+
+    private static MainThreadWatchdog instance;
+
+    /**
+     * Accumulated stalls at one site
+     */
+    public static class StallSite {
+        public final String site;
+        public int count;
+        public long totalMs;
+        public long maxMs;
+        public String sampleStack;
+        long lastEventAt;
+
+        StallSite(String site) {
+            this.site = site;
+        }
+    }
+
+    private final Context context;
+    private final Thread mainThread;
+    private final Handler watchdogHandler;
+    private final Map<String, StallSite> sites = new HashMap<>();
+
+    // Current dispatch, written by the main thread and read by the watchdog thread
+    private volatile long dispatchStartedAt = 0;
+    private volatile int dispatchGeneration = 0;
+    private volatile StackTraceElement[] capturedStack;
+    private volatile int capturedGeneration = -1;
+    private String currentDispatch;
+
+    private final Runnable captureStack = new Runnable() {
+        @Override
+        public void run() {
+            int generation = dispatchGeneration;
+            if (dispatchStartedAt != 0) {
+                capturedStack = mainThread.getStackTrace();
+                capturedGeneration = generation;
+            }
+        }
+    };
+
+    private MainThreadWatchdog(Context context) {
+        this.context = context.getApplicationContext();
+        this.mainThread = Looper.getMainLooper().getThread();
+
+        HandlerThread thread = new HandlerThread("HermesWatchdog-Thread");
+        thread.start();
+        this.watchdogHandler = new Handler(thread.getLooper());
+
+        // Keep the ranking restore off the main thread
+        watchdogHandler.post(this::restore);
+    }
+
+    /**
+     * Start watching the main looper, safe to call more than once
+     * Must be called on the main thread
+     */
+    public static synchronized void start(Context context) {
+        if (instance != null) {
+            return;
+        }
+        instance = new MainThreadWatchdog(context);
+        Looper.getMainLooper().setMessageLogging(instance.printer);
+        Log.i(TAG, "Main thread watchdog started, threshold " + STALL_THRESHOLD_MS + " ms");
+    }
+
+    /**
+     * Get the running watchdog, or null if it was not started
+     */
+    public static synchronized MainThreadWatchdog getInstance() {
+        return instance;
+    }
+
+    private final Printer printer = new Printer() {
+        @Override
+        public void println(String line) {
+            if (line.startsWith(">>>>> Dispatching")) {
+                onDispatchStarted(line);
+            } else if (line.startsWith("<<<<< Finished")) {
+                onDispatchFinished();
+            }
+        }
+    };
+
+    private void onDispatchStarted(String line) {
+        currentDispatch = line;
+        dispatchGeneration++;
+        dispatchStartedAt = SystemClock.uptimeMillis();
+        watchdogHandler.postDelayed(captureStack, STALL_THRESHOLD_MS);
+    }
+
+    private void onDispatchFinished() {
+        long startedAt = dispatchStartedAt;
+        dispatchStartedAt = 0;
+        watchdogHandler.removeCallbacks(captureStack);
+        if (startedAt == 0) {
+            return;
+        }
+
+        long durationMs = SystemClock.uptimeMillis() - startedAt;
+        if (durationMs < STALL_THRESHOLD_MS) {
+            return;
+        }
+
+        StackTraceElement[] stack = capturedGeneration == dispatchGeneration ? capturedStack : null;
+        String dispatch = currentDispatch;
+        // Ranking and analytics happen off the main thread
+        watchdogHandler.post(() -> recordStall(durationMs, stack, dispatch));
+    }
+
+    private void recordStall(long durationMs, StackTraceElement[] stack, String dispatch) {
+        String site = stack != null ? findStallSite(stack) : describeDispatch(dispatch);
+        String stackText = stack != null ? formatStack(stack) : dispatch;
+        boolean emitEvent;
+
+        synchronized (sites) {
+            StallSite entry = sites.get(site);
+            if (entry == null) {
+                if (sites.size() >= MAX_TRACKED_SITES) {
+                    evictSmallestSite();
+                }
+                entry = new StallSite(site);
+                sites.put(site, entry);
+            }
+            entry.count++;
+            entry.totalMs += durationMs;
+            entry.maxMs = Math.max(entry.maxMs, durationMs);
+            entry.sampleStack = stackText;
+
+            long now = System.currentTimeMillis();
+            emitEvent = now - entry.lastEventAt >= EVENT_INTERVAL_PER_SITE_MS;
+            if (emitEvent) {
+                entry.lastEventAt = now;
+            }
+        }
+
+        Log.w(TAG, "Main thread stalled " + durationMs + " ms at " + site);
+        if (emitEvent) {
+            StatisticsManager.getInstance(context).recordMainThreadStall(durationMs, site, stackText);
+        }
+    }
+
+    /**
+     * Get stall sites ranked by total stalled time, this and previous processes combined
+     */
+    public List<StallSite> getTopStallSites(int limit) {
+        List<StallSite> ranked;
+        synchronized (sites) {
+            ranked = new ArrayList<>(sites.values());
+        }
+        Collections.sort(ranked, (a, b) -> Long.compare(b.totalMs, a.totalMs));
+        return ranked.size() > limit ? ranked.subList(0, limit) : ranked;
+    }
+
+    /**
+     * Human readable top stall sites for debug screens
+     */
+    public String getStatusSummary() {
+        List<StallSite> top = getTopStallSites(5);
+        if (top.isEmpty()) {
+            return "No main thread stalls over " + STALL_THRESHOLD_MS + " ms";
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < top.size(); i++) {
+            StallSite site = top.get(i);
+            sb.append(i + 1).append(". ").append(site.site).append("\n")
+              .append(String.format(Locale.US, "   %d stalls, %d ms total, %d ms max",
+                                    site.count, site.totalMs, site.maxMs)).append("\n");
+        }
+        return sb.toString().trim();
+    }
+
+    /**
+     * Persist the stall ranking if the watchdog is running
+     * Called on memory trim and app termination
+     */
+    public static void persistIfActive() {
+        MainThreadWatchdog watchdog = getInstance();
+        if (watchdog != null) {
+            watchdog.persist();
+        }
+    }
+
+    private static String findStallSite(StackTraceElement[] stack) {
+        for (StackTraceElement frame : stack) {
+            if (frame.getClassName().startsWith(APP_PACKAGE)
+                    && !frame.getClassName().startsWith(MainThreadWatchdog.class.getName())) {
+                return formatFrame(frame);
+            }
+        }
+        // No app frame - blame the innermost framework frame
+        return stack.length > 0 ? formatFrame(stack[0]) : "unknown";
+    }
+
+    /**
+     * Fallback site when the stack could not be captured in time, e.g.
+     * ">>>>> Dispatching to Handler (android.app.ActivityThread$H) {3f2a1c} null: 115"
+     */
+    private static String describeDispatch(String dispatch) {
+        if (dispatch == null) {
+            return "unknown";
+        }
+        return dispatch.replace(">>>>> Dispatching to ", "").replaceAll("\\{[0-9a-f]+\\}", "").trim();
+    }
+
+    private static String formatFrame(StackTraceElement frame) {
+        String className = frame.getClassName();
+        String simpleName = className.substring(className.lastIndexOf('.') + 1);
+        return simpleName + "." + frame.getMethodName() + "(" + frame.getFileName() + ":" + frame.getLineNumber() + ")";
+    }
+
+    private static String formatStack(StackTraceElement[] stack) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < stack.length && i < MAX_STACK_FRAMES; i++) {
+            sb.append(stack[i].toString()).append("\n");
+        }
+        return sb.toString().trim();
+    }
+
+    private void evictSmallestSite() {
+        StallSite smallest = null;
+        for (StallSite site : sites.values()) {
+            if (smallest == null || site.totalMs < smallest.totalMs) {
+                smallest = site;
+            }
+        }
+        if (smallest != null) {
+            sites.remove(smallest.site);
+        }
+    }
+
+    private void persist() {
+        try {
+            JSONArray array = new JSONArray();
+            synchronized (sites) {
+                for (StallSite site : sites.values()) {
+                    JSONObject json = new JSONObject();
+                    json.put("site", site.site);
+                    json.put("count", site.count);
+                    json.put("total_ms", site.totalMs);
+                    json.put("max_ms", site.maxMs);
+                    json.put("stack", site.sampleStack);
+                    array.put(json);
+                }
+            }
+            SharedPreferences prefs = context.getSharedPreferences(STATE_PREFS_NAME, Context.MODE_PRIVATE);
+            prefs.edit().putString(KEY_SITES, array.toString()).apply();
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to persist stall sites: " + e.getMessage(), e);
+        }
+    }
+
+    private void restore() {
+        try {
+            SharedPreferences prefs = context.getSharedPreferences(STATE_PREFS_NAME, Context.MODE_PRIVATE);
+            String stored = prefs.getString(KEY_SITES, null);
+            if (stored == null) {
+                return;
+            }
+            JSONArray array = new JSONArray(stored);
+            synchronized (sites) {
+                for (int i = 0; i < array.length(); i++) {
+                    JSONObject json = array.getJSONObject(i);
+                    StallSite site = new StallSite(json.getString("site"));
+                    site.count = json.optInt("count");
+                    site.totalMs = json.optLong("total_ms");
+                    site.maxMs = json.optLong("max_ms");
+                    site.sampleStack = json.optString("stack", null);
+                    // Stalls recorded before the restore ran are merged in
+                    StallSite current = sites.get(site.site);
+                    if (current != null) {
+                        current.count += site.count;
+                        current.totalMs += site.totalMs;
+                        current.maxMs = Math.max(current.maxMs, site.maxMs);
+                    } else {
+                        sites.put(site.site, site);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to restore stall sites: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package com.keremgok.sms;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.util.Log;
+import androidx.core.content.ContextCompat;
+import androidx.preference.PreferenceManager;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OpenMetrics exporter for fleet monitoring
+ * Rewrites FILE_NAME in the app's external files directory every FILE_WRITE_INTERVAL_MS, so a
+ * phone can be read with adb shell cat. Debug builds, which request INTERNET, also serve
+ * MetricsRegistry on http://127.0.0.1:PORT/metrics for "adb forward tcp:9464 tcp:9464". The
+ * socket is bound to the loopback address only, but any app on the device holding INTERNET can
+ * still scrape it, so release builds stay file-only. The exporter is off unless enabled in settings.
+ */
+public class MetricsExporter {
+
+    private static final String TAG = "MetricsExporter";
+
+    public static final String PREF_ENABLED = "pref_metrics_exporter_enabled";
+    public static final int PORT = 9464;
+    public static final String FILE_NAME = "metrics.prom";
+
+    private static final String PATH = "/metrics";
+    private static final String CONTENT_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+    private static final long FILE_WRITE_INTERVAL_MS = 15000;
+    private static final int SOCKET_TIMEOUT_MS = 5000;
+    private static final int ACCEPT_BACKLOG = 4;
+
+    private static MetricsExporter instance;
+    private static boolean collectorsRegistered = false;
+
+    private final Context context;
+    private volatile boolean running = true;
+    private volatile ServerSocket serverSocket;
+    private TimerWheel.Timeout fileTimer; // Guarded by this
+
+    private MetricsExporter(Context context) {
+        this.context = context;
+    }
+
+    /**
+     * Start or stop the exporter to match the settings, called on app start
+     */
+    public static void applySettings(Context context) {
+        setEnabled(context, PreferenceManager.getDefaultSharedPreferences(context).getBoolean(PREF_ENABLED, false));
+    }
+
+    /**
+     * Start or stop the exporter, safe to call repeatedly
+     */
+    public static synchronized void setEnabled(Context context, boolean enabled) {
+        if (enabled && instance == null) {
+            Context appContext = context.getApplicationContext();
+            registerCollectors(appContext);
+            instance = new MetricsExporter(appContext);
+            instance.start();
+        } else if (!enabled && instance != null) {
+            instance.stop();
+            instance = null;
+        }
+    }
+
+    private void start() {
+        if (ContextCompat.checkSelfPermission(context, Manifest.permission.INTERNET) == PackageManager.PERMISSION_GRANTED) {
+            Thread thread = new Thread(this::serve, "HermesMetrics-Thread");
+            thread.setDaemon(true);
+            thread.start();
+        } else {
+            Log.i(TAG, "No INTERNET permission in this build, exporting metrics to " + FILE_NAME + " only");
+        }
+        scheduleFileWrite(0);
+    }
+
+    private void stop() {
+        running = false;
+        ServerSocket server = serverSocket;
+        if (server != null) {
+            try {
+                server.close(); // Unblocks accept()
+            } catch (IOException e) {
+                Log.w(TAG, "Error closing metrics endpoint: " + e.getMessage());
+            }
+        }
+        synchronized (this) {
+            if (fileTimer != null) {
+                fileTimer.cancel();
+                fileTimer = null;
+            }
+        }
+        // Don't leave stale numbers behind for a scraper to pick up
+        ThreadManager.getInstance().executeBackground(() -> {
+            File file = getMetricsFile();
+            if (file.exists() && !file.delete()) {
+                Log.w(TAG, "Could not delete " + file);
+            }
+        }, ThreadManager.TASK_PRIORITY_ANALYTICS, "metrics-file");
+        Log.i(TAG, "Metrics exporter stopped");
+    }
+
+    /**
+     * Accept loop on its own thread, a blocking accept would otherwise hold a pool thread forever
+     * Scrapes are small and rare, so requests are handled one at a time
+     */
+    private void serve() {
+        try (ServerSocket server = new ServerSocket()) {
+            server.setReuseAddress(true);
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), PORT), ACCEPT_BACKLOG);
+            serverSocket = server;
+            if (!running) {
+                return;
+            }
+            Log.i(TAG, "Serving OpenMetrics on 127.0.0.1:" + PORT + PATH);
+
+            while (running) {
+                try (Socket socket = server.accept()) {
+                    handle(socket);
+                } catch (IOException e) {
+                    if (running) {
+                        Log.w(TAG, "Metrics request failed: " + e.getMessage());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            if (running) {
+                Log.e(TAG, "Could not open metrics endpoint on port " + PORT + ": " + e.getMessage(), e);
+            }
+        }
+    }
+
+    private void handle(Socket socket) throws IOException {
+        socket.setSoTimeout(SOCKET_TIMEOUT_MS);
+        BufferedReader reader = new BufferedReader(
+            new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+        String requestLine = reader.readLine();
+        if (requestLine == null) {
+            return;
+        }
+        // Headers are not needed, read past them so the client sees a clean close
+        String header;
+        while ((header = reader.readLine()) != null && !header.isEmpty()) {
+            // Skip
+        }
+
+        String[] parts = requestLine.split(" ");
+        String method = parts[0];
+        String path = parts.length > 1 ? parts[1] : "";
+        int query = path.indexOf('?');
+        if (query >= 0) {
+            path = path.substring(0, query);
+        }
+
+        String status;
+        String contentType = "text/plain; charset=utf-8";
+        String body;
+        if (!"GET".equals(method) && !"HEAD".equals(method)) {
+            status = "405 Method Not Allowed";
+            body = "Method not allowed\n";
+        } else if (PATH.equals(path) || "/".equals(path)) {
+            status = "200 OK";
+            contentType = CONTENT_TYPE;
+            body = MetricsRegistry.getInstance().scrape();
+        } else {
+            status = "404 Not Found";
+            body = "Not found, metrics are at " + PATH + "\n";
+        }
+
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        String head = "HTTP/1.1 " + status + "\r\n"
+            + "Content-Type: " + contentType + "\r\n"
+            + "Content-Length: " + bytes.length + "\r\n"
+            + "Connection: close\r\n\r\n";
+        OutputStream out = socket.getOutputStream();
+        out.write(head.getBytes(StandardCharsets.US_ASCII));
+        if (!"HEAD".equals(method)) {
+            out.write(bytes);
+        }
+        out.flush();
+    }
+
+    private synchronized void scheduleFileWrite(long delayMs) {
+        if (!running) {
+            return;
+        }
+        fileTimer = TimerWheel.getInstance().schedule(this::writeFile, delayMs, TimeUnit.MILLISECONDS,
+            ThreadManager.TASK_PRIORITY_ANALYTICS, "metrics-file");
+    }
+
+    /**
+     * Rewrite the metrics file atomically (write a temp file, then rename over the old one)
+     */
+    private void writeFile() {
+        if (!running) {
+            return;
+        }
+        File file = getMetricsFile();
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(MetricsRegistry.getInstance().scrape().getBytes(StandardCharsets.UTF_8));
+            out.getFD().sync();
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing metrics file: " + e.getMessage(), e);
+            scheduleFileWrite(FILE_WRITE_INTERVAL_MS);
+            return;
+        }
+        if (!temp.renameTo(file)) {
+            Log.w(TAG, "Could not replace " + file);
+        }
+        scheduleFileWrite(FILE_WRITE_INTERVAL_MS);
+    }
+
+    private File getMetricsFile() {
+        File dir = context.getExternalFilesDir(null);
+        return new File(dir != null ? dir : context.getFilesDir(), FILE_NAME);
+    }
+
+    /**
+     * Scrape-time metrics copied from the components that already track them
+     */
+    private static void registerCollectors(Context context) {
+        if (collectorsRegistered) {
+            return;
+        }
+        collectorsRegistered = true;
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+
+        MetricsRegistry.Gauge queueDepth = registry.gauge(
+            "hermes_queue_depth", "Outbound SMS waiting, by where they wait", "state");
+        MetricsRegistry.Counter queueShed = registry.counter(
+            "hermes_queue_shed", "SMS dropped by the outbound backlog shedding policy, by priority", "priority");
+        registry.addCollector(() -> {
+            SmsQueueManager queueManager = SmsQueueManager.getInstance(context);
+            OutboundBacklog.BacklogStats backlog = queueManager.getBacklogStats();
+            queueDepth.set(backlog.memorySize, "backlog");
+            queueDepth.set(backlog.spilledSize, "spilled");
+            queueDepth.set(queueManager.getTimedCount(), "timed");
+            queueDepth.set(queueManager.getParkedCount(), "parked");
+            queueDepth.set(queueManager.getInFlightWorkCount(), "in_flight");
+            queueShed.set(backlog.shedLowCount, "low");
+            queueShed.set(backlog.shedNormalCount, "normal");
+        });
+
+        MetricsRegistry.Gauge poolQueued = registry.gauge(
+            "hermes_thread_pool_queued_tasks", "Tasks waiting in a thread pool queue", "pool");
+        MetricsRegistry.Gauge poolActive = registry.gauge(
+            "hermes_thread_pool_active_threads", "Threads running a task", "pool");
+        MetricsRegistry.Counter poolRejected = registry.counter(
+            "hermes_thread_pool_rejected_tasks", "Tasks refused by a full thread pool queue", "pool");
+        MetricsRegistry.Histogram poolWait = registry.histogram(
+            "hermes_thread_pool_queue_wait_seconds", "Time tasks waited in a thread pool queue", 1000000, "pool");
+        MetricsRegistry.Histogram poolRun = registry.histogram(
+            "hermes_thread_pool_run_seconds", "Time tasks ran on a thread pool, DB pools are database latency", 1000000, "pool");
+        registry.addCollector(() -> {
+            ThreadManager threadManager = ThreadManager.getInstance();
+            ThreadManager.ThreadPoolStats stats = threadManager.getStats();
+            poolQueued.set(stats.databaseQueueSize, "DB");
+            poolActive.set(stats.databaseActiveThreads, "DB");
+            poolRejected.set(stats.databaseRejected, "DB");
+            poolQueued.set(stats.databaseReadQueueSize, "DB read");
+            poolActive.set(stats.databaseReadActiveThreads, "DB read");
+            poolRejected.set(stats.databaseReadRejected, "DB read");
+            poolQueued.set(stats.networkQueueSize, "Network");
+            poolActive.set(stats.networkActiveThreads, "Network");
+            poolRejected.set(stats.networkRejected, "Network");
+            poolQueued.set(stats.backgroundQueueSize, "Background");
+            poolActive.set(stats.backgroundActiveThreads, "Background");
+            poolRejected.set(stats.backgroundRejected, "Background");
+            for (ThreadManager.TaskTimingStats timings : threadManager.getTaskTimings()) {
+                if (timings.tag == null) {
+                    poolWait.set(timings.queueWait, timings.pool);
+                    poolRun.set(timings.runTime, timings.pool);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,364 @@
+package com.keremgok.sms;
+
+import android.util.Log;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process metrics registry rendered as OpenMetrics text
+ * Counters and histograms are updated inline on the hot path (a map lookup and an atomic
+ * increment), gauges and mirrored totals are refreshed by collectors right before a scrape,
+ * so nothing is computed for metrics nobody reads. MetricsExporter serves the text.
+ */
+public class MetricsRegistry {
+
+    private static final String TAG = "MetricsRegistry";
+
+    // Upper bound on label combinations per family, extra combinations are dropped
+    private static final int MAX_SERIES_PER_FAMILY = 256;
+
+    // Cumulative histogram bucket bounds in seconds
+    private static final double[] LATENCY_BOUNDS_SECONDS = {
+        0.001, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 300
+    };
+
+    private static final MetricsRegistry INSTANCE = new MetricsRegistry();
+
+    // Forwarding pipeline
+    public static final Counter SMS_RECEIVED = INSTANCE.counter(
+        "hermes_sms_received", "SMS received while forwarding targets are set, by source SIM slot", "sim");
+    public static final Counter SMS_SENT = INSTANCE.counter(
+        "hermes_sms_sent", "Forwarded SMS parts acknowledged by the radio, by SIM slot and result", "sim", "result");
+    public static final Counter SMS_SEND_FAILURES = INSTANCE.counter(
+        "hermes_sms_send_failures", "Failed SMS sends, by SIM slot and SmsManager result code", "sim", "code");
+    public static final Counter FILTER_HITS = INSTANCE.counter(
+        "hermes_filter_hits", "Filter rule matches, by filter type and outcome", "type", "action");
+    public static final Histogram PIPELINE_LATENCY = INSTANCE.histogram(
+        "hermes_pipeline_latency_seconds", "Forwarding pipeline stage latency", 1000, "stage");
+
+    private final List<Family> families = new CopyOnWriteArrayList<>();
+    private final List<Runnable> collectors = new CopyOnWriteArrayList<>();
+
+    private MetricsRegistry() {
+    }
+
+    public static MetricsRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Register a counter family, values are whole counts
+     */
+    public Counter counter(String name, String help, String... labelNames) {
+        return register(new Counter(name, help, labelNames));
+    }
+
+    /**
+     * Register a gauge family
+     */
+    public Gauge gauge(String name, String help, String... labelNames) {
+        return register(new Gauge(name, help, labelNames));
+    }
+
+    /**
+     * Register a histogram family
+     * @param unitsPerSecond Recorded values per second, e.g. 1000 for milliseconds
+     */
+    public Histogram histogram(String name, String help, double unitsPerSecond, String... labelNames) {
+        return register(new Histogram(name, help, unitsPerSecond, labelNames));
+    }
+
+    /**
+     * Add a task run before every scrape, used to copy state held elsewhere into gauges
+     */
+    public void addCollector(Runnable collector) {
+        collectors.add(collector);
+    }
+
+    private synchronized <F extends Family> F register(F family) {
+        for (Family existing : families) {
+            if (existing.name.equals(family.name)) {
+                throw new IllegalArgumentException("Metric already registered: " + family.name);
+            }
+        }
+        families.add(family);
+        return family;
+    }
+
+    /**
+     * Run the collectors and render every family as OpenMetrics text, ending with # EOF
+     */
+    public String scrape() {
+        for (Runnable collector : collectors) {
+            try {
+                collector.run();
+            } catch (Exception e) {
+                Log.e(TAG, "Metrics collector failed: " + e.getMessage(), e);
+            }
+        }
+
+        StringBuilder out = new StringBuilder(4096);
+        for (Family family : families) {
+            family.write(out);
+        }
+        out.append("# EOF\n");
+        return out.toString();
+    }
+
+    /**
+     * Base for a metric family, one series per distinct combination of label values
+     */
+    public abstract static class Family {
+        final String name;
+        final String help;
+        final String type;
+        final String[] labelNames;
+
+        Family(String name, String help, String type, String[] labelNames) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+            this.labelNames = labelNames;
+        }
+
+        void write(StringBuilder out) {
+            out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+            out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+            writeSamples(out);
+        }
+
+        abstract void writeSamples(StringBuilder out);
+
+        static String key(String[] labelValues) {
+            if (labelValues.length == 1) {
+                return String.valueOf(labelValues[0]);
+            }
+            StringBuilder key = new StringBuilder();
+            for (String value : labelValues) {
+                key.append(value).append('\u0000');
+            }
+            return key.toString();
+        }
+
+        /**
+         * Get or create the series for a set of label values, null once the family is full
+         */
+        <S> S series(ConcurrentHashMap<String, S> map, String[] labelValues, SeriesFactory<S> factory) {
+            if (labelValues.length != labelNames.length) {
+                throw new IllegalArgumentException(name + " expects " + labelNames.length + " labels");
+            }
+            String key = key(labelValues);
+            S series = map.get(key);
+            if (series == null && map.size() < MAX_SERIES_PER_FAMILY) {
+                S created = factory.create(labelValues.clone());
+                series = map.putIfAbsent(key, created);
+                if (series == null) {
+                    series = created;
+                }
+            }
+            return series;
+        }
+
+        void appendLabels(StringBuilder out, String[] labelValues, String extraName, String extraValue) {
+            if (labelNames.length == 0 && extraName == null) {
+                return;
+            }
+            out.append('{');
+            for (int i = 0; i < labelNames.length; i++) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                appendLabel(out, labelNames[i], labelValues[i]);
+            }
+            if (extraName != null) {
+                if (labelNames.length > 0) {
+                    out.append(',');
+                }
+                appendLabel(out, extraName, extraValue);
+            }
+            out.append('}');
+        }
+
+        private static void appendLabel(StringBuilder out, String name, String value) {
+            out.append(name).append("=\"");
+            String safe = value == null ? "" : value;
+            for (int i = 0; i < safe.length(); i++) {
+                char c = safe.charAt(i);
+                if (c == '\\' || c == '"') {
+                    out.append('\\').append(c);
+                } else if (c == '\n') {
+                    out.append("\\n");
+                } else {
+                    out.append(c);
+                }
+            }
+            out.append('"');
+        }
+
+        static <S> List<Map.Entry<String, S>> sorted(Map<String, S> map) {
+            List<Map.Entry<String, S>> entries = new ArrayList<>(map.entrySet());
+            Collections.sort(entries, (a, b) -> a.getKey().compareTo(b.getKey()));
+            return entries;
+        }
+    }
+
+    interface SeriesFactory<S> {
+        S create(String[] labelValues);
+    }
+
+    private static class LongSeries {
+        final String[] labelValues;
+        final AtomicLong value = new AtomicLong(0);
+
+        LongSeries(String[] labelValues) {
+            this.labelValues = labelValues;
+        }
+    }
+
+    /**
+     * Monotonic counter, exported with the _total suffix
+     */
+    public static class Counter extends Family {
+        private final ConcurrentHashMap<String, LongSeries> series = new ConcurrentHashMap<>();
+
+        Counter(String name, String help, String[] labelNames) {
+            super(name, help, "counter", labelNames);
+        }
+
+        public void inc(String... labelValues) {
+            add(1, labelValues);
+        }
+
+        public void add(long amount, String... labelValues) {
+            LongSeries target = series(series, labelValues, LongSeries::new);
+            if (target != null) {
+                target.value.addAndGet(amount);
+            }
+        }
+
+        /**
+         * Mirror a total that is counted elsewhere, for collectors
+         */
+        public void set(long total, String... labelValues) {
+            LongSeries target = series(series, labelValues, LongSeries::new);
+            if (target != null) {
+                target.value.set(total);
+            }
+        }
+
+        @Override
+        void writeSamples(StringBuilder out) {
+            for (Map.Entry<String, LongSeries> entry : sorted(series)) {
+                out.append(name).append("_total");
+                appendLabels(out, entry.getValue().labelValues, null, null);
+                out.append(' ').append(entry.getValue().value.get()).append('\n');
+            }
+        }
+    }
+
+    /**
+     * Point-in-time value, usually set by a collector right before a scrape
+     */
+    public static class Gauge extends Family {
+        private final ConcurrentHashMap<String, LongSeries> series = new ConcurrentHashMap<>();
+
+        Gauge(String name, String help, String[] labelNames) {
+            super(name, help, "gauge", labelNames);
+        }
+
+        public void set(double value, String... labelValues) {
+            LongSeries target = series(series, labelValues, LongSeries::new);
+            if (target != null) {
+                target.value.set(Double.doubleToLongBits(value));
+            }
+        }
+
+        @Override
+        void writeSamples(StringBuilder out) {
+            for (Map.Entry<String, LongSeries> entry : sorted(series)) {
+                out.append(name);
+                appendLabels(out, entry.getValue().labelValues, null, null);
+                out.append(' ').append(formatDouble(Double.longBitsToDouble(entry.getValue().value.get()))).append('\n');
+            }
+        }
+    }
+
+    private static class HistogramSeries {
+        final String[] labelValues;
+        final LatencyHistogram histogram = new LatencyHistogram();
+        volatile LatencyHistogram.Snapshot mirrored; // Set by collectors instead of recording
+
+        HistogramSeries(String[] labelValues) {
+            this.labelValues = labelValues;
+        }
+
+        LatencyHistogram.Snapshot snapshot() {
+            LatencyHistogram.Snapshot snapshot = mirrored;
+            return snapshot != null ? snapshot : histogram.snapshot();
+        }
+    }
+
+    /**
+     * Latency histogram exported in seconds with fixed cumulative buckets
+     */
+    public static class Histogram extends Family {
+        private final ConcurrentHashMap<String, HistogramSeries> series = new ConcurrentHashMap<>();
+        private final double unitsPerSecond;
+
+        Histogram(String name, String help, double unitsPerSecond, String[] labelNames) {
+            super(name, help, "histogram", labelNames);
+            this.unitsPerSecond = unitsPerSecond;
+        }
+
+        public void observe(long value, String... labelValues) {
+            HistogramSeries target = series(series, labelValues, HistogramSeries::new);
+            if (target != null) {
+                target.histogram.record(value);
+            }
+        }
+
+        /**
+         * Mirror a histogram that is recorded elsewhere, for collectors
+         */
+        public void set(LatencyHistogram.Snapshot snapshot, String... labelValues) {
+            HistogramSeries target = series(series, labelValues, HistogramSeries::new);
+            if (target != null) {
+                target.mirrored = snapshot;
+            }
+        }
+
+        @Override
+        void writeSamples(StringBuilder out) {
+            for (Map.Entry<String, HistogramSeries> entry : sorted(series)) {
+                String[] labelValues = entry.getValue().labelValues;
+                LatencyHistogram.Snapshot snapshot = entry.getValue().snapshot();
+                for (double bound : LATENCY_BOUNDS_SECONDS) {
+                    out.append(name).append("_bucket");
+                    appendLabels(out, labelValues, "le", Double.toString(bound));
+                    out.append(' ').append(snapshot.countAtOrBelow((long) (bound * unitsPerSecond))).append('\n');
+                }
+                out.append(name).append("_bucket");
+                appendLabels(out, labelValues, "le", "+Inf");
+                out.append(' ').append(snapshot.count).append('\n');
+                out.append(name).append("_count");
+                appendLabels(out, labelValues, null, null);
+                out.append(' ').append(snapshot.count).append('\n');
+                out.append(name).append("_sum");
+                appendLabels(out, labelValues, null, null);
+                out.append(' ').append(formatDouble(snapshot.sum / unitsPerSecond)).append('\n');
+            }
+        }
+    }
+
+    static String formatDouble(double value) {
+        if (value == Math.rint(value) && !Double.isInfinite(value) && Math.abs(value) < 1e15) {
+            return String.valueOf((long) value);
+        }
+        return Double.toString(value);
+    }
+}
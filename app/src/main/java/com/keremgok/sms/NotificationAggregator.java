@@ -0,0 +1,149 @@
+package com.keremgok.sms;
+
+import android.content.Context;
+import android.util.Log;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces forwarding result notifications
+ * Sent callbacks are counted over a short window and posted as one summary notification
+ * ("37 forwarded, 2 failed") that is updated in place. Updates are spaced at least
+ * MIN_NOTIFY_INTERVAL_MS apart so bursts don't hit the system notification rate limit.
+ */
+public class NotificationAggregator {
+
+    private static final String TAG = "NotificationAggregator";
+
+    // Coalescing configuration
+    private static final long COALESCE_WINDOW_MS = 1500; // Collect results this long before posting
+    private static final long MIN_NOTIFY_INTERVAL_MS = 3000; // At most one notify call per interval
+    private static final long SUMMARY_RESET_MS = 10 * 60 * 1000; // Start a fresh summary after this much quiet
+    private static final int MAX_RECENT_LINES = 5;
+    private static final int MAX_TRACKED_SENDS = 100;
+
+    private static NotificationAggregator instance;
+
+    private final NotificationHelper notificationHelper;
+
+    // Summary state, guarded by this
+    private int forwardedCount = 0;
+    private int failedCount = 0;
+    private final ArrayDeque<String> recentLines = new ArrayDeque<>();
+    private boolean pendingFailure = false;
+    private boolean flushScheduled = false;
+    private long lastNotifyAt = 0;
+    private long lastEventAt = 0;
+    private int notifyCalls = 0;
+    private int coalescedEvents = 0;
+
+    // Multipart sends report one callback per part, count each send once
+    private final Map<String, Boolean> trackedSends = new LinkedHashMap<String, Boolean>(16, 0.75f, false) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > MAX_TRACKED_SENDS;
+        }
+    };
+
+    private NotificationAggregator(Context context) {
+        this.notificationHelper = new NotificationHelper(context.getApplicationContext());
+    }
+
+    public static synchronized NotificationAggregator getInstance(Context context) {
+        if (instance == null) {
+            instance = new NotificationAggregator(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Record the result of a forwarded SMS
+     * @param sendKey Identifies the send across multipart callbacks (e.g. target + timestamp)
+     */
+    public synchronized void recordResult(String sendKey, String targetNumber, String senderNumber,
+                                          boolean success, String errorMessage) {
+        long now = System.currentTimeMillis();
+        if (now - lastEventAt > SUMMARY_RESET_MS) {
+            forwardedCount = 0;
+            failedCount = 0;
+            recentLines.clear();
+        }
+        lastEventAt = now;
+
+        Boolean previous = trackedSends.get(sendKey);
+        if (previous != null && (previous || !success)) {
+            if (previous && !success) {
+                // A later part failed - the send counts as failed
+                forwardedCount = Math.max(0, forwardedCount - 1);
+                failedCount++;
+                trackedSends.put(sendKey, false);
+                addLine(notificationHelper.formatResultLine(targetNumber, senderNumber, false, errorMessage));
+                pendingFailure = true;
+                scheduleFlush(now);
+            }
+            return;
+        }
+        trackedSends.put(sendKey, success);
+
+        if (success) {
+            forwardedCount++;
+        } else {
+            failedCount++;
+            pendingFailure = true;
+        }
+        addLine(notificationHelper.formatResultLine(targetNumber, senderNumber, success, errorMessage));
+        scheduleFlush(now);
+    }
+
+    /**
+     * Human readable aggregator summary for debug screens
+     */
+    public synchronized String getStatusSummary() {
+        return "Forwarded: " + forwardedCount + ", failed: " + failedCount
+                + ", notify calls: " + notifyCalls + ", coalesced results: " + coalescedEvents;
+    }
+
+    private void addLine(String line) {
+        recentLines.addLast(line);
+        while (recentLines.size() > MAX_RECENT_LINES) {
+            recentLines.removeFirst();
+        }
+    }
+
+    private void scheduleFlush(long now) {
+        if (flushScheduled) {
+            coalescedEvents++;
+            return;
+        }
+        flushScheduled = true;
+        long delay = Math.max(COALESCE_WINDOW_MS, lastNotifyAt + MIN_NOTIFY_INTERVAL_MS - now);
+        ThreadManager.getInstance().schedule(this::flush, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void flush() {
+        int forwarded;
+        int failed;
+        List<String> lines;
+        boolean alert;
+        synchronized (this) {
+            flushScheduled = false;
+            lastNotifyAt = System.currentTimeMillis();
+            notifyCalls++;
+            forwarded = forwardedCount;
+            failed = failedCount;
+            lines = new ArrayList<>(recentLines);
+            alert = pendingFailure;
+            pendingFailure = false;
+        }
+
+        try {
+            notificationHelper.showForwardingSummary(forwarded, failed, lines, alert);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to post forwarding summary: " + e.getMessage(), e);
+        }
+    }
+}
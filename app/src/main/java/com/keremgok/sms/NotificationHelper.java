@@ -11,6 +11,7 @@ import android.net.Uri;
 import android.os.Build;
 import androidx.core.app.NotificationCompat;
 import androidx.preference.PreferenceManager;
+import java.util.List;
 
 /**
  * NotificationHelper - Manages all app notifications
@@ -29,6 +30,10 @@ public class NotificationHelper {
     private static final int NOTIFICATION_ID_SMS_SUCCESS = 1001;
     private static final int NOTIFICATION_ID_SMS_ERROR = 1002;
     private static final int NOTIFICATION_ID_MISSED_CALL = 1003;
+    private static final int NOTIFICATION_ID_SMS_SUMMARY = 1004;
+
+    // Channels only need to be registered once per process
+    private static volatile boolean channelsCreated = false;
 
     private Context context;
     private NotificationManager notificationManager;
@@ -50,6 +55,19 @@ public class NotificationHelper {
      * Create notification channels for Android 8.0+
      */
     private void createNotificationChannels() {
+        if (channelsCreated) {
+            return;
+        }
+        synchronized (NotificationHelper.class) {
+            if (channelsCreated) {
+                return;
+            }
+            registerNotificationChannels();
+            channelsCreated = true;
+        }
+    }
+
+    private void registerNotificationChannels() {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
             // SMS Success Channel
             NotificationChannel successChannel = new NotificationChannel(
@@ -180,6 +198,85 @@ public class NotificationHelper {
         notificationManager.notify(NOTIFICATION_ID_SMS_ERROR, builder.build());
     }
 
+    /**
+     * Show grouped summary of forwarding results, replacing the previous summary
+     * @param forwardedCount SMS forwarded since the summary started
+     * @param failedCount SMS that failed since the summary started
+     * @param recentLines Most recent results, oldest first
+     * @param alert Whether this update should play sound/vibrate (new failures)
+     */
+    public void showForwardingSummary(int forwardedCount, int failedCount, List<String> recentLines, boolean alert) {
+        // Check if notifications are enabled
+        if (!isNotificationEnabled()) {
+            return;
+        }
+
+        int total = forwardedCount + failedCount;
+        String title;
+        if (total == 1) {
+            title = context.getString(failedCount == 1
+                ? R.string.notification_sms_error_title : R.string.notification_sms_forwarded_title);
+        } else if (failedCount == 0) {
+            title = context.getString(R.string.notification_summary_forwarded, forwardedCount);
+        } else {
+            title = context.getString(R.string.notification_summary_title, forwardedCount, failedCount);
+        }
+        String text = recentLines.isEmpty() ? "" : recentLines.get(recentLines.size() - 1);
+
+        // Create intent for notification tap
+        Intent intent = new Intent(context, HistoryActivity.class);
+        PendingIntent pendingIntent = PendingIntent.getActivity(
+            context,
+            0,
+            intent,
+            PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
+        );
+
+        NotificationCompat.InboxStyle style = new NotificationCompat.InboxStyle().setBigContentTitle(title);
+        for (String line : recentLines) {
+            style.addLine(line);
+        }
+
+        // Build notification
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(context,
+                failedCount > 0 ? CHANNEL_SMS_ERROR : CHANNEL_SMS_SUCCESS)
+            .setSmallIcon(R.drawable.ic_notification)
+            .setContentTitle(title)
+            .setContentText(text)
+            .setStyle(style)
+            .setNumber(total)
+            .setPriority(alert ? NotificationCompat.PRIORITY_HIGH : NotificationCompat.PRIORITY_LOW)
+            .setOnlyAlertOnce(!alert)
+            .setContentIntent(pendingIntent)
+            .setAutoCancel(true);
+
+        // Apply sound settings
+        if (isNotificationSoundEnabled()) {
+            Uri soundUri = RingtoneManager.getDefaultUri(RingtoneManager.TYPE_NOTIFICATION);
+            builder.setSound(soundUri);
+        }
+
+        // Apply vibration settings
+        if (isNotificationVibrationEnabled()) {
+            builder.setVibrate(alert ? new long[]{0, 500, 200, 500, 200, 500} : new long[]{0, 300, 200, 300});
+        }
+
+        // Show notification
+        notificationManager.notify(NOTIFICATION_ID_SMS_SUMMARY, builder.build());
+    }
+
+    /**
+     * Format a forwarding result line for the summary notification
+     */
+    public String formatResultLine(String targetNumber, String senderNumber, boolean success, String errorMessage) {
+        if (success) {
+            return context.getString(R.string.notification_sms_forwarded_body,
+                maskPhoneNumber(senderNumber), maskPhoneNumber(targetNumber));
+        }
+        String line = context.getString(R.string.notification_sms_error_body, maskPhoneNumber(targetNumber));
+        return errorMessage != null && !errorMessage.isEmpty() ? line + ": " + errorMessage : line;
+    }
+
     /**
      * Show missed call notification
      * @param callerNumber Caller phone number
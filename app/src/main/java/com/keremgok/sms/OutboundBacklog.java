@@ -0,0 +1,833 @@
+package com.keremgok.sms;
+
+import android.content.Context;
+import android.util.Log;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+
+/**
+ * Bounded outbound SMS backlog used by SmsQueueManager
+ * Holds sends that are waiting for a WorkManager slot. Every entry is appended to a compact
+ * segment file on disk before offer() returns, and a segment is only deleted once each of its
+ * entries has been handed to WorkManager (or dropped), so a process kill never loses a send.
+ * The priority-ordered in-memory tier is a bounded cache over the segments.
+ * Shedding: duplicates are coalesced, LOW priority is dropped first, HIGH priority is never dropped.
+ */
+public class OutboundBacklog {
+
+    private static final String TAG = "OutboundBacklog";
+
+    // Capacity configuration (package-private for tests)
+    static final int MAX_MEMORY_ENTRIES = 200;
+    static final int MAX_SPILLED_ENTRIES = 5000; // NORMAL priority is shed beyond this
+    static final int LOW_SHED_THRESHOLD = MAX_SPILLED_ENTRIES / 2; // LOW priority is shed beyond this
+    static final int SEGMENT_MAX_ENTRIES = 200;
+
+    // Segment file format
+    private static final String SEGMENT_DIR = "outbound_backlog";
+    private static final String SEGMENT_PREFIX = "segment_";
+    private static final String SEGMENT_SUFFIX = ".bin";
+    private static final int RECORD_VERSION_V1 = 1;
+    private static final int RECORD_VERSION = 2; // v2 adds the windowed flag
+    private static final int RECORD_RELEASED = 16; // Tombstone: the entry with this work ID left the backlog
+
+    // Result of offering an entry
+    public static final int OFFER_QUEUED = 0;
+    public static final int OFFER_SPILLED = 1;
+    public static final int OFFER_COALESCED = 2;
+    public static final int OFFER_SHED = 3;
+
+    /**
+     * A single pending outbound send
+     */
+    public static class Entry {
+        public final UUID workId;
+        public final String originalSender;
+        public final String originalMessage;
+        public final String targetNumber;
+        public final long timestamp;
+        public final int retryCount;
+        public final int priority;
+        public final int sourceSubscriptionId;
+        public final int forwardingSubscriptionId;
+        public final int sourceSimSlot;
+        public final int forwardingSimSlot;
+        public final long delayMs;
+        public final long createdAt;
+        public final boolean windowed; // Dispatched through the per-SIM ack-clocked send window
+
+        // Insertion order within the in-memory tier (not persisted)
+        long sequence;
+        // Segment holding this entry's record, -1 if it was never written (not persisted)
+        int segment = -1;
+
+        public Entry(UUID workId, String originalSender, String originalMessage, String targetNumber,
+                     long timestamp, int retryCount, int priority,
+                     int sourceSubscriptionId, int forwardingSubscriptionId,
+                     int sourceSimSlot, int forwardingSimSlot, long delayMs, long createdAt,
+                     boolean windowed) {
+            this.workId = workId;
+            this.originalSender = originalSender;
+            this.originalMessage = originalMessage;
+            this.targetNumber = targetNumber;
+            this.timestamp = timestamp;
+            this.retryCount = retryCount;
+            this.priority = priority;
+            this.sourceSubscriptionId = sourceSubscriptionId;
+            this.forwardingSubscriptionId = forwardingSubscriptionId;
+            this.sourceSimSlot = sourceSimSlot;
+            this.forwardingSimSlot = forwardingSimSlot;
+            this.delayMs = delayMs;
+            this.createdAt = createdAt;
+            this.windowed = windowed;
+        }
+
+        /**
+         * Key used to coalesce identical sends to the same target
+         */
+        String coalesceKey() {
+            return targetNumber + "|" + originalSender + "|" + timestamp + "|" + String.valueOf(originalMessage).hashCode();
+        }
+
+        /**
+         * Time at which this entry may be sent
+         */
+        public long getDueAt() {
+            return createdAt + delayMs;
+        }
+
+        /**
+         * Copy of this entry that may not be sent before the given time
+         * The due time is stored as delayMs, so it survives a restart with the record
+         */
+        Entry withDueAt(long dueAt) {
+            return new Entry(workId, originalSender, originalMessage, targetNumber, timestamp, retryCount, priority,
+                sourceSubscriptionId, forwardingSubscriptionId, sourceSimSlot, forwardingSimSlot,
+                Math.max(0, dueAt - createdAt), createdAt, windowed);
+        }
+
+        /**
+         * Remaining delay before this entry may be sent
+         */
+        public long getRemainingDelayMs() {
+            return Math.max(0, getDueAt() - System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Filter deciding which entries may be admitted right now (e.g. skip parked SIMs)
+     */
+    public interface EntryFilter {
+        boolean accept(Entry entry);
+    }
+
+    /**
+     * Backlog metrics snapshot
+     */
+    public static class BacklogStats {
+        public final int memorySize;
+        public final int spilledSize;
+        public final long totalSpilled;
+        public final long coalescedCount;
+        public final long shedLowCount;
+        public final long shedNormalCount;
+        public final int peakSize;
+
+        public BacklogStats(int memorySize, int spilledSize, long totalSpilled, long coalescedCount,
+                            long shedLowCount, long shedNormalCount, int peakSize) {
+            this.memorySize = memorySize;
+            this.spilledSize = spilledSize;
+            this.totalSpilled = totalSpilled;
+            this.coalescedCount = coalescedCount;
+            this.shedLowCount = shedLowCount;
+            this.shedNormalCount = shedNormalCount;
+            this.peakSize = peakSize;
+        }
+
+        public int getTotalSize() {
+            return memorySize + spilledSize;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("BacklogStats{memory=%d, spilled=%d, peak=%d, totalSpilled=%d, coalesced=%d, shedLow=%d, shedNormal=%d}",
+                memorySize, spilledSize, peakSize, totalSpilled, coalescedCount, shedLowCount, shedNormalCount);
+        }
+    }
+
+    /**
+     * Bookkeeping for one segment file
+     */
+    private static class Segment {
+        final int index;
+        int live; // Records not released yet
+        int unloaded; // Live records only on disk, not in the memory tier
+        long minDueAt = Long.MAX_VALUE; // Earliest due time among the unloaded records (may be stale)
+
+        Segment(int index) {
+            this.index = index;
+        }
+    }
+
+    // Most important first, then oldest first
+    private static final Comparator<Entry> ENTRY_ORDER = (a, b) -> {
+        if (a.priority != b.priority) {
+            return Integer.compare(a.priority, b.priority);
+        }
+        return Long.compare(a.sequence, b.sequence);
+    };
+
+    private final File segmentDir;
+    private final TreeSet<Entry> memory = new TreeSet<>(ENTRY_ORDER);
+    private final Map<String, Entry> memoryKeys = new HashMap<>();
+    private final Set<UUID> memoryIds = new HashSet<>();
+    private final Set<UUID> handedOut = new HashSet<>(); // Polled but not completed yet, still live on disk
+    private long nextSequence = 0;
+
+    // Segment bookkeeping
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+    private boolean indexed = false;
+    private int spilledCount = 0;
+    private int writeSegmentIndex = -1;
+    private int writeSegmentEntries = 0;
+
+    // Metrics
+    private long totalSpilled = 0;
+    private long coalescedCount = 0;
+    private long shedLowCount = 0;
+    private long shedNormalCount = 0;
+    private int peakSize = 0;
+
+    public OutboundBacklog(Context context) {
+        this(new File(context.getFilesDir(), SEGMENT_DIR));
+    }
+
+    /**
+     * Create a backlog spilling to the given directory (tests)
+     */
+    OutboundBacklog(File segmentDir) {
+        this.segmentDir = segmentDir;
+    }
+
+    /**
+     * Restore segments left on disk by a previous process
+     * Should be called off the main thread
+     * @param keep Decides which restored entries are still pending (e.g. not already known to
+     *             WorkManager); rejected entries are released. May be null to keep everything.
+     */
+    public synchronized void restore(EntryFilter keep) {
+        try {
+            ensureIndexed();
+            int count = 0;
+            for (File file : listSegments()) {
+                int index = parseSegmentIndex(file);
+                if (index < 0 || segments.containsKey(index)) {
+                    continue; // Written by this process
+                }
+                Segment segment = new Segment(index);
+                List<Entry> released = new ArrayList<>();
+                for (Entry entry : readSegment(file)) {
+                    entry.segment = index;
+                    if (keep != null && !keep.accept(entry)) {
+                        released.add(entry);
+                        continue;
+                    }
+                    segment.live++;
+                    segment.unloaded++;
+                    segment.minDueAt = Math.min(segment.minDueAt, entry.getDueAt());
+                }
+                if (segment.live == 0) {
+                    deleteSegment(file);
+                    continue;
+                }
+                for (Entry entry : released) {
+                    appendRelease(file, entry.workId);
+                }
+                segments.put(index, segment);
+                spilledCount += segment.unloaded;
+                count += segment.live;
+            }
+            if (count > 0) {
+                Log.i(TAG, "Restored " + count + " spilled outbound SMS from disk");
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to restore outbound backlog: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Offer an entry to the backlog
+     * The entry is on disk when this returns (unless the disk write failed, see logs)
+     * @param entry Entry to hold until a send slot is free
+     * @param shed Receives entries dropped by the shedding policy (may include the offered entry)
+     * @return One of OFFER_QUEUED, OFFER_SPILLED, OFFER_COALESCED, OFFER_SHED for the offered entry
+     */
+    public synchronized int offer(Entry entry, List<Entry> shed) {
+        // Coalesce duplicates already waiting in memory
+        if (memoryKeys.containsKey(entry.coalesceKey())) {
+            coalescedCount++;
+            logDebug("Coalesced duplicate outbound SMS to " + maskPhoneNumber(entry.targetNumber));
+            return OFFER_COALESCED;
+        }
+
+        int result;
+        if (memory.size() < MAX_MEMORY_ENTRIES) {
+            append(entry);
+            addToMemory(entry);
+            result = OFFER_QUEUED;
+        } else {
+            // Memory is full - keep the more important entry in memory and leave the other on disk only
+            Entry victim = memory.last();
+            if (entry.priority < victim.priority) {
+                removeFromMemory(victim);
+                if (shouldShed(victim)) {
+                    release(victim);
+                    shed.add(victim);
+                } else if (!evict(victim)) {
+                    addToMemory(victim); // Never reached disk, keep it
+                }
+                append(entry);
+                addToMemory(entry);
+                result = OFFER_QUEUED;
+            } else if (shouldShed(entry)) {
+                shed.add(entry);
+                result = OFFER_SHED;
+            } else if (append(entry)) {
+                markUnloaded(entry);
+                result = OFFER_SPILLED;
+            } else if (entry.priority == SmsQueueWorker.PRIORITY_HIGH) {
+                // Disk write failed - keep HIGH priority in memory beyond the bound rather than lose it
+                addToMemory(entry);
+                result = OFFER_QUEUED;
+            } else {
+                countShed(entry);
+                shed.add(entry);
+                result = OFFER_SHED;
+            }
+        }
+
+        peakSize = Math.max(peakSize, memory.size() + spilledCount);
+        return result;
+    }
+
+    /**
+     * Take the most important admissible entry, loading segments from disk when the memory tier
+     * runs low or holds nothing admissible. The entry stays on disk until complete() is called.
+     * (a load may take the memory tier past its bound by up to one segment)
+     * @return Next entry to send, or null if no admissible entry is waiting
+     */
+    public synchronized Entry poll(EntryFilter filter) {
+        if (memory.size() < MAX_MEMORY_ENTRIES / 2 && spilledCount > 0) {
+            loadSegment(oldestUnloadedSegment());
+        }
+        Entry next = firstAccepted(filter);
+        while (next == null) {
+            // Entries that fell due while on disk only
+            Segment due = earliestDueSegment(System.currentTimeMillis());
+            if (due == null || !makeRoom()) {
+                break;
+            }
+            loadSegment(due);
+            next = firstAccepted(filter);
+        }
+        if (next != null) {
+            removeFromMemory(next);
+            if (next.segment >= 0) {
+                handedOut.add(next.workId);
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Release a polled entry once it was handed to WorkManager (or given up on)
+     * Its segment file is deleted when this was the segment's last pending entry
+     */
+    public synchronized void complete(Entry entry) {
+        if (handedOut.remove(entry.workId)) {
+            release(entry);
+        }
+    }
+
+    /**
+     * Check whether an admissible entry is waiting that outranks the given priority
+     */
+    public synchronized boolean hasEntryAtOrAbove(int priority, EntryFilter filter) {
+        for (Entry entry : memory) {
+            if (entry.priority > priority) {
+                return false;
+            }
+            if (filter == null || filter.accept(entry)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Count in-memory entries rejected by the filter (e.g. parked for a SIM without service)
+     */
+    public synchronized int countRejected(EntryFilter filter) {
+        int count = 0;
+        for (Entry entry : memory) {
+            if (!filter.accept(entry)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public synchronized boolean isEmpty() {
+        return memory.isEmpty() && spilledCount == 0;
+    }
+
+    /**
+     * Remove a waiting entry by work ID
+     * @return true if the entry was found and removed
+     */
+    public synchronized boolean remove(UUID workId) {
+        if (memoryIds.contains(workId)) {
+            for (Entry entry : memory) {
+                if (entry.workId.equals(workId)) {
+                    removeFromMemory(entry);
+                    release(entry);
+                    return true;
+                }
+            }
+        }
+        if (handedOut.contains(workId)) {
+            return false;
+        }
+        // Look for it among the entries only on disk
+        for (Segment segment : new ArrayList<>(segments.values())) {
+            if (segment.unloaded == 0) {
+                continue;
+            }
+            for (Entry entry : readSegment(segmentFile(segment.index))) {
+                if (entry.workId.equals(workId)) {
+                    entry.segment = segment.index;
+                    segment.unloaded--;
+                    spilledCount--;
+                    release(entry);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Drop everything, including the segment files
+     */
+    public synchronized void clear() {
+        memory.clear();
+        memoryKeys.clear();
+        memoryIds.clear();
+        handedOut.clear();
+        for (File file : listSegments()) {
+            deleteSegment(file);
+        }
+        segments.clear();
+        spilledCount = 0;
+        writeSegmentEntries = SEGMENT_MAX_ENTRIES;
+    }
+
+    /**
+     * Drop the in-memory tier, every entry in it is already on disk
+     * Used on memory trim; entries are loaded back as slots free up
+     */
+    public synchronized void trimMemory() {
+        int evicted = 0;
+        for (Entry entry : new ArrayList<>(memory)) {
+            if (entry.segment >= 0) {
+                removeFromMemory(entry);
+                markUnloaded(entry);
+                evicted++;
+            }
+        }
+        if (evicted > 0) {
+            logDebug("Trimmed " + evicted + " outbound SMS from memory, kept on disk");
+        }
+    }
+
+    public synchronized BacklogStats getStats() {
+        return new BacklogStats(memory.size(), spilledCount, totalSpilled, coalescedCount,
+            shedLowCount, shedNormalCount, peakSize);
+    }
+
+    private void addToMemory(Entry entry) {
+        entry.sequence = nextSequence++;
+        memory.add(entry);
+        memoryKeys.put(entry.coalesceKey(), entry);
+        memoryIds.add(entry.workId);
+    }
+
+    private void removeFromMemory(Entry entry) {
+        memory.remove(entry);
+        memoryKeys.remove(entry.coalesceKey());
+        memoryIds.remove(entry.workId);
+    }
+
+    private Entry firstAccepted(EntryFilter filter) {
+        for (Entry entry : memory) {
+            if (filter == null || filter.accept(entry)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Apply the priority-aware shedding policy to an entry that would only be kept on disk
+     * @return true if the entry is to be dropped
+     */
+    private boolean shouldShed(Entry entry) {
+        if (entry.priority == SmsQueueWorker.PRIORITY_LOW && spilledCount >= LOW_SHED_THRESHOLD) {
+            shedLowCount++;
+            return true;
+        }
+        if (entry.priority == SmsQueueWorker.PRIORITY_NORMAL && spilledCount >= MAX_SPILLED_ENTRIES) {
+            shedNormalCount++;
+            return true;
+        }
+        return false;
+    }
+
+    private void countShed(Entry entry) {
+        if (entry.priority == SmsQueueWorker.PRIORITY_LOW) {
+            shedLowCount++;
+        } else {
+            shedNormalCount++;
+        }
+    }
+
+    /**
+     * Move an in-memory entry to disk only
+     * @return false if the entry was never written and cannot leave memory
+     */
+    private boolean evict(Entry entry) {
+        if (entry.segment < 0 && !append(entry)) {
+            return false;
+        }
+        markUnloaded(entry);
+        return true;
+    }
+
+    private void markUnloaded(Entry entry) {
+        Segment segment = segments.get(entry.segment);
+        if (segment == null) {
+            return;
+        }
+        segment.unloaded++;
+        segment.minDueAt = Math.min(segment.minDueAt, entry.getDueAt());
+        spilledCount++;
+        totalSpilled++;
+    }
+
+    /**
+     * Evict entries that are not due yet until a segment fits in memory
+     * @return false if memory is full of due entries
+     */
+    private boolean makeRoom() {
+        long now = System.currentTimeMillis();
+        Iterator<Entry> iterator = memory.descendingIterator();
+        while (memory.size() >= MAX_MEMORY_ENTRIES + SEGMENT_MAX_ENTRIES && iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.getDueAt() > now && entry.segment >= 0) {
+                iterator.remove();
+                memoryKeys.remove(entry.coalesceKey());
+                memoryIds.remove(entry.workId);
+                markUnloaded(entry);
+            }
+        }
+        return memory.size() < MAX_MEMORY_ENTRIES + SEGMENT_MAX_ENTRIES;
+    }
+
+    private Segment oldestUnloadedSegment() {
+        for (Segment segment : segments.values()) {
+            if (segment.unloaded > 0) {
+                return segment;
+            }
+        }
+        return null;
+    }
+
+    private Segment earliestDueSegment(long now) {
+        Segment earliest = null;
+        for (Segment segment : segments.values()) {
+            if (segment.unloaded > 0 && segment.minDueAt <= now
+                    && (earliest == null || segment.minDueAt < earliest.minDueAt)) {
+                earliest = segment;
+            }
+        }
+        return earliest;
+    }
+
+    /**
+     * Append an entry's record to the current write segment
+     * @return false if the write failed (the entry is then not on disk)
+     */
+    private boolean append(Entry entry) {
+        ensureIndexed();
+        if (!segmentDir.exists() && !segmentDir.mkdirs()) {
+            Log.e(TAG, "Cannot create backlog segment directory");
+            return false;
+        }
+
+        if (writeSegmentIndex < 0 || writeSegmentEntries >= SEGMENT_MAX_ENTRIES) {
+            writeSegmentIndex++;
+            writeSegmentEntries = 0;
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(segmentFile(writeSegmentIndex), true)))) {
+            writeEntry(out, entry);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write outbound SMS to disk: " + e.getMessage(), e);
+            return false;
+        }
+        Segment segment = segments.get(writeSegmentIndex);
+        if (segment == null) {
+            segment = new Segment(writeSegmentIndex);
+            segments.put(writeSegmentIndex, segment);
+        }
+        segment.live++;
+        writeSegmentEntries++;
+        entry.segment = writeSegmentIndex;
+        return true;
+    }
+
+    /**
+     * Record that an entry left the backlog and delete its segment once nothing in it is pending
+     */
+    private void release(Entry entry) {
+        Segment segment = entry.segment >= 0 ? segments.get(entry.segment) : null;
+        if (segment == null) {
+            return;
+        }
+        segment.live--;
+        File file = segmentFile(segment.index);
+        if (segment.live > 0) {
+            appendRelease(file, entry.workId);
+            return;
+        }
+        segments.remove(segment.index);
+        deleteSegment(file);
+        if (segment.index == writeSegmentIndex) {
+            // Start a fresh segment for subsequent writes
+            writeSegmentEntries = SEGMENT_MAX_ENTRIES;
+        }
+    }
+
+    private void appendRelease(File file, UUID workId) {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)))) {
+            out.writeByte(RECORD_RELEASED);
+            out.writeLong(workId.getMostSignificantBits());
+            out.writeLong(workId.getLeastSignificantBits());
+        } catch (IOException e) {
+            // The entry may be sent again after a restart; WorkManager's copy is filtered out by restore()
+            Log.e(TAG, "Failed to release outbound SMS on disk: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Load the pending entries of a segment into the memory tier
+     */
+    private void loadSegment(Segment segment) {
+        if (segment == null) {
+            return;
+        }
+        File file = segmentFile(segment.index);
+        List<Entry> entries = readSegment(file);
+        int live = 0;
+        int loaded = 0;
+        for (Entry entry : entries) {
+            entry.segment = segment.index;
+            live++;
+            if (memoryIds.contains(entry.workId) || handedOut.contains(entry.workId)) {
+                continue;
+            }
+            if (memoryKeys.containsKey(entry.coalesceKey())) {
+                coalescedCount++;
+                release(entry);
+                live--;
+                continue;
+            }
+            addToMemory(entry);
+            loaded++;
+        }
+        if (segments.get(segment.index) == segment) {
+            spilledCount = Math.max(0, spilledCount - segment.unloaded);
+            segment.unloaded = 0;
+            segment.minDueAt = Long.MAX_VALUE;
+            segment.live = live;
+        }
+        logDebug("Loaded " + loaded + " spilled outbound SMS from " + file.getName());
+    }
+
+    /**
+     * Read the pending entries of a segment file (records minus their tombstones)
+     */
+    private List<Entry> readSegment(File segment) {
+        Map<UUID, Entry> entries = new LinkedHashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(segment)))) {
+            while (true) {
+                int type = in.read();
+                if (type == -1) {
+                    break;
+                }
+                if (type == RECORD_RELEASED) {
+                    entries.remove(new UUID(in.readLong(), in.readLong()));
+                    continue;
+                }
+                Entry entry = readEntryBody(in, type);
+                entries.put(entry.workId, entry);
+            }
+        } catch (EOFException e) {
+            // Torn record at the end of the segment - keep what was read
+            logDebug("Truncated record at end of " + segment.getName());
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to read backlog segment " + segment.getName() + ": " + e.getMessage(), e);
+        }
+        return new ArrayList<>(entries.values());
+    }
+
+    /**
+     * Pick up the write position from segment names on disk, so this process never appends to
+     * a segment written by a previous one (it may end in a torn record)
+     */
+    private void ensureIndexed() {
+        if (indexed) {
+            return;
+        }
+        indexed = true;
+        for (File file : listSegments()) {
+            writeSegmentIndex = Math.max(writeSegmentIndex, parseSegmentIndex(file));
+        }
+        writeSegmentEntries = SEGMENT_MAX_ENTRIES;
+    }
+
+    private File segmentFile(int index) {
+        return new File(segmentDir, SEGMENT_PREFIX + String.format(java.util.Locale.US, "%08d", index) + SEGMENT_SUFFIX);
+    }
+
+    private void deleteSegment(File file) {
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "Failed to delete backlog segment " + file.getName());
+        }
+    }
+
+    private List<File> listSegments() {
+        File[] files = segmentDir.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (files == null) {
+            return new ArrayList<>();
+        }
+        Arrays.sort(files, (a, b) -> a.getName().compareTo(b.getName()));
+        return new ArrayList<>(Arrays.asList(files));
+    }
+
+    private static int parseSegmentIndex(File segment) {
+        String name = segment.getName();
+        try {
+            return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    static void writeEntry(DataOutputStream out, Entry entry) throws IOException {
+        out.writeByte(RECORD_VERSION);
+        out.writeLong(entry.workId.getMostSignificantBits());
+        out.writeLong(entry.workId.getLeastSignificantBits());
+        out.writeUTF(nullToEmpty(entry.originalSender));
+        out.writeUTF(nullToEmpty(entry.originalMessage));
+        out.writeUTF(nullToEmpty(entry.targetNumber));
+        out.writeLong(entry.timestamp);
+        out.writeByte(entry.retryCount);
+        out.writeByte(entry.priority);
+        out.writeInt(entry.sourceSubscriptionId);
+        out.writeInt(entry.forwardingSubscriptionId);
+        out.writeByte(entry.sourceSimSlot);
+        out.writeByte(entry.forwardingSimSlot);
+        out.writeLong(entry.delayMs);
+        out.writeLong(entry.createdAt);
+        out.writeBoolean(entry.windowed);
+    }
+
+    static Entry readEntry(DataInputStream in) throws IOException {
+        int version = in.read();
+        if (version == -1) {
+            return null;
+        }
+        return readEntryBody(in, version);
+    }
+
+    private static Entry readEntryBody(DataInputStream in, int version) throws IOException {
+        if (version != RECORD_VERSION && version != RECORD_VERSION_V1) {
+            throw new IOException("Unknown backlog record version " + version);
+        }
+        UUID workId = new UUID(in.readLong(), in.readLong());
+        String sender = in.readUTF();
+        String message = in.readUTF();
+        String target = in.readUTF();
+        long timestamp = in.readLong();
+        int retryCount = in.readByte();
+        int priority = in.readByte();
+        int sourceSubscriptionId = in.readInt();
+        int forwardingSubscriptionId = in.readInt();
+        int sourceSimSlot = in.readByte();
+        int forwardingSimSlot = in.readByte();
+        long delayMs = in.readLong();
+        long createdAt = in.readLong();
+        boolean windowed = version >= RECORD_VERSION && in.readBoolean();
+        return new Entry(workId, sender, message, target, timestamp, retryCount, priority,
+            sourceSubscriptionId, forwardingSubscriptionId, sourceSimSlot, forwardingSimSlot, delayMs, createdAt,
+            windowed);
+    }
+
+    private static String nullToEmpty(String value) {
+        return value != null ? value : "";
+    }
+
+    /**
+     * Mask phone number for secure logging
+     */
+    private static String maskPhoneNumber(String phoneNumber) {
+        if (phoneNumber == null || phoneNumber.length() < 8) {
+            return "***";
+        }
+
+        String prefix = phoneNumber.substring(0, Math.min(5, phoneNumber.length() - 4));
+        String suffix = phoneNumber.substring(phoneNumber.length() - 4);
+        return prefix + "***" + suffix;
+    }
+
+    /**
+     * Secure debug logging
+     */
+    private static void logDebug(String message) {
+        if (BuildConfig.ENABLE_DEBUG_LOGS) {
+            Log.d(TAG, message);
+        }
+    }
+}
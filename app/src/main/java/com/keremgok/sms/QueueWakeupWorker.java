@@ -0,0 +1,34 @@
+package com.keremgok.sms;
+
+import android.content.Context;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+/**
+ * Wake-from-death fallback for the outbound timer wheel
+ * SmsQueueManager keeps one of these enqueued for its earliest pending deadline. If the process
+ * is still alive the wheel has already fired and this is a no-op pump; if it was killed, starting
+ * the queue manager restores the persisted deadlines and re-arms them.
+ */
+public class QueueWakeupWorker extends Worker {
+
+    private static final String TAG = "QueueWakeupWorker";
+
+    public QueueWakeupWorker(@NonNull Context context, @NonNull WorkerParameters workerParams) {
+        super(context, workerParams);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        try {
+            SmsQueueManager.getInstance(getApplicationContext()).wake();
+            return Result.success();
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to wake outbound queue: " + e.getMessage(), e);
+            return Result.failure();
+        }
+    }
+}
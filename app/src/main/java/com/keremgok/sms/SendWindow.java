@@ -0,0 +1,187 @@
+package com.keremgok.sms;
+
+import android.util.Log;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Ack-clocked sliding window per forwarding subscription
+ * At most W sends are in flight per SIM; the next one is released as soon as
+ * SmsCallbackReceiver reports a sent-ack. W adapts to observed ack latency
+ * (additive increase while acks are fast, halved on slow acks, failures and timeouts).
+ */
+public class SendWindow {
+
+    private static final String TAG = "SendWindow";
+
+    // Window configuration
+    private static final double INITIAL_WINDOW = 2.0;
+    private static final double MIN_WINDOW = 1.0;
+    private static final double MAX_WINDOW = 8.0;
+    private static final long TARGET_ACK_LATENCY_MS = 3000; // Grow the window while acks arrive faster than this
+    private static final long ACK_TIMEOUT_MS = 60000; // Reclaim a slot if its ack never arrives
+
+    /**
+     * Window state for a single subscription
+     */
+    private static class Window {
+        double size = INITIAL_WINDOW;
+        long smoothedLatencyMs = 0;
+        final Map<UUID, Long> dispatchedAt = new HashMap<>();
+        final Map<UUID, Long> sentAt = new HashMap<>();
+    }
+
+    private final Map<Integer, Window> windows = new HashMap<>();
+    private final Map<UUID, Integer> sendToSubscription = new HashMap<>();
+
+    /**
+     * Check whether another send may be dispatched on a subscription
+     */
+    public synchronized boolean hasCapacity(int subscriptionId) {
+        Window window = getWindow(subscriptionId);
+        expireTimedOut(subscriptionId, window);
+        return window.dispatchedAt.size() < (int) Math.floor(window.size);
+    }
+
+    /**
+     * Charge a dispatched send against its subscription's window
+     */
+    public synchronized void onDispatched(int subscriptionId, UUID sendId) {
+        Window window = getWindow(subscriptionId);
+        window.dispatchedAt.put(sendId, System.currentTimeMillis());
+        sendToSubscription.put(sendId, subscriptionId);
+    }
+
+    /**
+     * Record the moment the radio send was actually started (ack latency is measured from here)
+     * If the send goes out on another subscription than it was dispatched on (circuit breaker
+     * reroute), its slot moves to that subscription's window so the ack clocks the right SIM
+     * @param subscriptionId Subscription the send actually uses
+     * @return true if the slot moved and the original window has a free slot again
+     */
+    public synchronized boolean onSendStarted(UUID sendId, int subscriptionId) {
+        Integer dispatchedOn = sendToSubscription.get(sendId);
+        if (dispatchedOn == null) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        boolean rebound = dispatchedOn != subscriptionId;
+        Window window = getWindow(dispatchedOn);
+        if (rebound) {
+            Long dispatched = window.dispatchedAt.remove(sendId);
+            window.sentAt.remove(sendId);
+            window = getWindow(subscriptionId);
+            window.dispatchedAt.put(sendId, dispatched != null ? dispatched : now);
+            sendToSubscription.put(sendId, subscriptionId);
+            logDebug("Send rerouted from subscription " + dispatchedOn + " to " + subscriptionId + ", slot moved");
+        }
+        window.sentAt.put(sendId, now);
+        return rebound;
+    }
+
+    /**
+     * Handle a sent-ack and adapt the window
+     * @param success Whether the radio reported RESULT_OK
+     * @return true if a slot was released
+     */
+    public synchronized boolean onAck(UUID sendId, boolean success) {
+        Integer subscriptionId = sendToSubscription.remove(sendId);
+        if (subscriptionId == null) {
+            // Not windowed, or a repeated multipart ack
+            return false;
+        }
+
+        Window window = getWindow(subscriptionId);
+        long now = System.currentTimeMillis();
+        Long dispatched = window.dispatchedAt.remove(sendId);
+        Long started = window.sentAt.remove(sendId);
+        long latency = now - (started != null ? started : (dispatched != null ? dispatched : now));
+
+        window.smoothedLatencyMs = window.smoothedLatencyMs == 0 ? latency
+                : (window.smoothedLatencyMs * 7 + latency) / 8;
+
+        if (!success || latency > TARGET_ACK_LATENCY_MS * 2) {
+            window.size = Math.max(MIN_WINDOW, window.size / 2);
+        } else if (latency <= TARGET_ACK_LATENCY_MS) {
+            window.size = Math.min(MAX_WINDOW, window.size + 1.0 / window.size);
+        }
+
+        logDebug("Ack on subscription " + subscriptionId + ": latency=" + latency + "ms, success=" + success
+                + ", window=" + String.format(java.util.Locale.US, "%.2f", window.size));
+        return true;
+    }
+
+    /**
+     * Release a slot for a send that ended without an ack (parked, failed before sending)
+     * @return true if a slot was released
+     */
+    public synchronized boolean onAborted(UUID sendId) {
+        Integer subscriptionId = sendToSubscription.remove(sendId);
+        if (subscriptionId == null) {
+            return false;
+        }
+        Window window = getWindow(subscriptionId);
+        window.dispatchedAt.remove(sendId);
+        window.sentAt.remove(sendId);
+        return true;
+    }
+
+    /**
+     * Get the time until the oldest in-flight send times out, for scheduling a recheck
+     */
+    public static long getAckTimeoutMs() {
+        return ACK_TIMEOUT_MS;
+    }
+
+    /**
+     * Human readable window summary for debug screens
+     */
+    public synchronized String getStatusSummary() {
+        if (windows.isEmpty()) {
+            return "No windowed sends yet";
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<Integer, Window> entry : windows.entrySet()) {
+            Window window = entry.getValue();
+            sb.append("Subscription ").append(entry.getKey()).append(": ")
+              .append(window.dispatchedAt.size()).append("/").append((int) Math.floor(window.size))
+              .append(" in flight, ack latency ").append(window.smoothedLatencyMs).append("ms\n");
+        }
+        return sb.toString().trim();
+    }
+
+    private Window getWindow(int subscriptionId) {
+        Window window = windows.get(subscriptionId);
+        if (window == null) {
+            window = new Window();
+            windows.put(subscriptionId, window);
+        }
+        return window;
+    }
+
+    private void expireTimedOut(int subscriptionId, Window window) {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<UUID, Long>> iterator = window.dispatchedAt.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<UUID, Long> entry = iterator.next();
+            if (now - entry.getValue() >= ACK_TIMEOUT_MS) {
+                iterator.remove();
+                window.sentAt.remove(entry.getKey());
+                sendToSubscription.remove(entry.getKey());
+                window.size = Math.max(MIN_WINDOW, window.size / 2);
+                Log.w(TAG, "Ack timed out on subscription " + subscriptionId + ", shrinking window");
+            }
+        }
+    }
+
+    /**
+     * Secure debug logging
+     */
+    private void logDebug(String message) {
+        if (BuildConfig.ENABLE_DEBUG_LOGS) {
+            Log.d(TAG, message);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.keremgok.sms;
+
+import android.content.Context;
+import android.os.Build;
+import android.telephony.PhoneStateListener;
+import android.telephony.ServiceState;
+import android.telephony.TelephonyManager;
+import android.util.Log;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Tracks cellular service state per subscription
+ * Used to park outbound SMS while a SIM has no service instead of burning retries,
+ * and to drain the parked queue as soon as service returns.
+ */
+public class ServiceStateMonitor {
+
+    private static final String TAG = "ServiceStateMonitor";
+
+    private static ServiceStateMonitor instance;
+
+    /**
+     * Callback for service state transitions
+     */
+    public interface ServiceStateListener {
+        void onServiceRestored(int subscriptionId);
+    }
+
+    private final Context context;
+    private final Map<Integer, Boolean> inService = new ConcurrentHashMap<>();
+    private final Map<Integer, PhoneStateListener> phoneStateListeners = new ConcurrentHashMap<>();
+    private final List<ServiceStateListener> listeners = new CopyOnWriteArrayList<>();
+
+    private ServiceStateMonitor(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    public static synchronized ServiceStateMonitor getInstance(Context context) {
+        if (instance == null) {
+            instance = new ServiceStateMonitor(context);
+        }
+        return instance;
+    }
+
+    public void addListener(ServiceStateListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(ServiceStateListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Start listening to service state for a subscription if not already
+     * Per-subscription listening needs API 24+, older devices only track the default SIM (-1)
+     * @param subscriptionId Subscription to monitor (-1 for default SIM)
+     */
+    public void ensureMonitoring(int subscriptionId) {
+        int key = Build.VERSION.SDK_INT >= Build.VERSION_CODES.N ? subscriptionId : -1;
+        if (phoneStateListeners.containsKey(key)) {
+            return;
+        }
+
+        // PhoneStateListener delivers callbacks on the looper of the thread that created it
+        ThreadManager.getInstance().executeOnMainThread(() -> register(key));
+    }
+
+    private synchronized void register(int subscriptionId) {
+        if (phoneStateListeners.containsKey(subscriptionId)) {
+            return;
+        }
+
+        try {
+            TelephonyManager telephonyManager = (TelephonyManager) context.getSystemService(Context.TELEPHONY_SERVICE);
+            if (telephonyManager == null) {
+                return;
+            }
+            if (subscriptionId != -1 && Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+                telephonyManager = telephonyManager.createForSubscriptionId(subscriptionId);
+            }
+
+            PhoneStateListener listener = new PhoneStateListener() {
+                @Override
+                public void onServiceStateChanged(ServiceState serviceState) {
+                    handleServiceStateChanged(subscriptionId, serviceState);
+                }
+            };
+            telephonyManager.listen(listener, PhoneStateListener.LISTEN_SERVICE_STATE);
+            phoneStateListeners.put(subscriptionId, listener);
+            logDebug("Monitoring service state for subscription " + subscriptionId);
+        } catch (SecurityException e) {
+            Log.w(TAG, "No permission to monitor service state for subscription " + subscriptionId);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to monitor service state for subscription " + subscriptionId + ": " + e.getMessage(), e);
+        }
+    }
+
+    private void handleServiceStateChanged(int subscriptionId, ServiceState serviceState) {
+        if (serviceState == null) {
+            return;
+        }
+
+        boolean available = serviceState.getState() == ServiceState.STATE_IN_SERVICE;
+        Boolean previous = inService.put(subscriptionId, available);
+
+        if (previous == null || previous != available) {
+            Log.i(TAG, "Subscription " + subscriptionId + " service " + (available ? "available" : "lost")
+                    + " (state " + serviceState.getState() + ")");
+            SimLogger.logSimOperation(available ? "SERVICE_RESTORED" : "SERVICE_LOST", -1, subscriptionId,
+                "Service state " + serviceState.getState(), available ? SimLogger.LEVEL_INFO : SimLogger.LEVEL_WARN);
+        }
+
+        if (available && previous != null && !previous) {
+            for (ServiceStateListener listener : listeners) {
+                try {
+                    listener.onServiceRestored(subscriptionId);
+                } catch (Exception e) {
+                    Log.e(TAG, "Service state listener failed: " + e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Check whether a subscription currently has service
+     * @return false only when the subscription is known to be out of service
+     */
+    public boolean isInService(int subscriptionId) {
+        int key = Build.VERSION.SDK_INT >= Build.VERSION_CODES.N ? subscriptionId : -1;
+        Boolean available = inService.get(key);
+        return available == null || available;
+    }
+
+    /**
+     * Check whether sends for a subscription should be parked
+     * A send is only parked when its SIM has no service and no other active SIM can take it
+     */
+    public boolean shouldPark(int subscriptionId) {
+        if (isInService(subscriptionId)) {
+            return false;
+        }
+
+        try {
+            for (SimManager.SimInfo sim : SimManager.getActiveSimCards(context)) {
+                if (sim.subscriptionId != subscriptionId && sim.isActive && sim.subscriptionId != -1
+                        && isInService(sim.subscriptionId)) {
+                    return false;
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error checking alternative SIMs: " + e.getMessage(), e);
+        }
+        return true;
+    }
+
+    /**
+     * Human readable service state summary for debug screens
+     */
+    public String getStatusSummary() {
+        if (inService.isEmpty()) {
+            return "No subscriptions monitored yet";
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<Integer, Boolean> entry : inService.entrySet()) {
+            sb.append("Subscription ").append(entry.getKey()).append(": ")
+              .append(entry.getValue() ? "IN SERVICE" : "NO SERVICE").append("\n");
+        }
+        return sb.toString().trim();
+    }
+
+    /**
+     * Secure debug logging
+     */
+    private void logDebug(String message) {
+        if (BuildConfig.ENABLE_DEBUG_LOGS) {
+            Log.d(TAG, message);
+        }
+    }
+}
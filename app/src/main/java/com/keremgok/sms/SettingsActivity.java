@@ -102,6 +102,12 @@ public class SettingsActivity extends AppCompatActivity {
             
             // Initialize SMS formatting settings
             initializeSmsFormattingSettings();
+            
+            // Initialize per-SIM daily send budgets
+            initializeSendBudgetSettings();
+            
+            // Initialize the OpenMetrics exporter toggle
+            initializeMetricsExporterSettings();
         }
         
         /**
@@ -142,6 +148,73 @@ public class SettingsActivity extends AppCompatActivity {
             preference.setSummary(summary);
         }
         
+        /**
+         * Start or stop the metrics exporter as soon as its toggle changes
+         */
+        private void initializeMetricsExporterSettings() {
+            androidx.preference.SwitchPreferenceCompat exporterPref = findPreference(MetricsExporter.PREF_ENABLED);
+            if (exporterPref != null) {
+                exporterPref.setOnPreferenceChangeListener((preference, newValue) -> {
+                    MetricsExporter.setEnabled(requireContext(), (Boolean) newValue);
+                    return true;
+                });
+            }
+        }
+        
+        /**
+         * Initialize per-SIM daily send budget preferences
+         */
+        private void initializeSendBudgetSettings() {
+            androidx.preference.EditTextPreference sim1BudgetPref = findPreference("pref_daily_budget_sim1");
+            androidx.preference.EditTextPreference sim2BudgetPref = findPreference("pref_daily_budget_sim2");
+            
+            for (androidx.preference.EditTextPreference budgetPref
+                    : new androidx.preference.EditTextPreference[] {sim1BudgetPref, sim2BudgetPref}) {
+                if (budgetPref == null) {
+                    continue;
+                }
+                budgetPref.setOnBindEditTextListener(editText ->
+                    editText.setInputType(android.text.InputType.TYPE_CLASS_NUMBER));
+                updateBudgetPreferenceSummary(budgetPref, budgetPref.getText());
+                budgetPref.setOnPreferenceChangeListener((preference, newValue) -> {
+                    String value = ((String) newValue).trim();
+                    if (!value.isEmpty() && !android.text.TextUtils.isDigitsOnly(value)) {
+                        return false;
+                    }
+                    updateBudgetPreferenceSummary((androidx.preference.EditTextPreference) preference, value);
+                    return true;
+                });
+            }
+            
+            // Second SIM budget only applies on dual SIM devices
+            if (sim2BudgetPref != null) {
+                sim2BudgetPref.setVisible(false);
+                ThreadManager.getInstance().executeBackground(() -> {
+                    try {
+                        boolean isDualSimSupported = SimManager.isDualSimSupported(requireContext());
+                        requireActivity().runOnUiThread(() -> sim2BudgetPref.setVisible(isDualSimSupported));
+                    } catch (Exception e) {
+                        android.util.Log.e("Settings", "Error checking dual SIM support: " + e.getMessage(), e);
+                    }
+                });
+            }
+        }
+        
+        /**
+         * Update the summary text for a daily send budget preference
+         */
+        private void updateBudgetPreferenceSummary(androidx.preference.EditTextPreference preference, String value) {
+            int limit = 0;
+            try {
+                limit = value != null && !value.isEmpty() ? Integer.parseInt(value) : 0;
+            } catch (NumberFormatException e) {
+                // Treat invalid values as unlimited
+            }
+            preference.setSummary(limit > 0
+                ? getString(R.string.settings_daily_budget_format, limit)
+                : getString(R.string.settings_daily_budget_unlimited));
+        }
+        
         /**
          * Initialize about section with version and developer info
          */
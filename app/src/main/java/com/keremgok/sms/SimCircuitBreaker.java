@@ -0,0 +1,306 @@
+package com.keremgok.sms;
+
+import android.content.Context;
+import android.telephony.SmsManager;
+import android.util.Log;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-subscription circuit breaker for cross-SIM failover
+ * Opens when a SIM reports no service / radio off / network reject (or repeated
+ * generic failures) so that queued and in-flight sends are rerouted to the healthy SIM.
+ * An open breaker is probed in half-open state until the SIM recovers.
+ */
+public class SimCircuitBreaker {
+
+    private static final String TAG = "SimCircuitBreaker";
+
+    // Breaker states
+    public static final int STATE_CLOSED = 0;
+    public static final int STATE_OPEN = 1;
+    public static final int STATE_HALF_OPEN = 2;
+
+    // Breaker configuration
+    private static final int GENERIC_FAILURE_THRESHOLD = 3; // Consecutive generic failures before opening
+    private static final long INITIAL_OPEN_DURATION_MS = 30000; // 30 seconds before first probe
+    private static final long MAX_OPEN_DURATION_MS = 10 * 60 * 1000; // Cap probe interval at 10 minutes
+    private static final long PROBE_TIMEOUT_MS = 60000; // Allow a new probe if the last one never reported back
+    private static final int MAX_REROUTE_KEYS = 200;
+
+    private static SimCircuitBreaker instance;
+
+    private final Map<Integer, Circuit> circuits = new ConcurrentHashMap<>();
+
+    // Recently rerouted sends (target + timestamp), multipart callbacks fire once per part
+    private final Map<String, Long> reroutedSends = new LinkedHashMap<String, Long>(16, 0.75f, false) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > MAX_REROUTE_KEYS;
+        }
+    };
+
+    /**
+     * Breaker state for a single subscription
+     */
+    private static class Circuit {
+        int state = STATE_CLOSED;
+        int consecutiveFailures = 0;
+        long openedAt = 0;
+        long openDurationMs = INITIAL_OPEN_DURATION_MS;
+        long probeStartedAt = 0;
+        int lastErrorCode = 0;
+    }
+
+    private SimCircuitBreaker() {
+    }
+
+    public static synchronized SimCircuitBreaker getInstance() {
+        if (instance == null) {
+            instance = new SimCircuitBreaker();
+        }
+        return instance;
+    }
+
+    /**
+     * Check whether a result code indicates the SIM itself is unusable
+     * (as opposed to a problem with a single message)
+     */
+    public static boolean isHardFailure(int resultCode) {
+        switch (resultCode) {
+            case SmsManager.RESULT_ERROR_NO_SERVICE:
+            case SmsManager.RESULT_ERROR_RADIO_OFF:
+            case SmsManager.RESULT_NETWORK_REJECT:
+            case SmsManager.RESULT_RADIO_NOT_AVAILABLE:
+            case SmsManager.RESULT_RIL_RADIO_NOT_AVAILABLE:
+            case SmsManager.RESULT_RIL_NETWORK_REJECT:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Check whether a result code should count towards opening the breaker
+     */
+    public static boolean isTrippingFailure(int resultCode) {
+        return isHardFailure(resultCode) || resultCode == SmsManager.RESULT_ERROR_GENERIC_FAILURE;
+    }
+
+    /**
+     * Record a successful send on a subscription
+     * Closes the breaker if it was half-open or open
+     * @param subscriptionId Subscription that sent the message (-1 ignored)
+     */
+    public synchronized void recordSuccess(int subscriptionId) {
+        if (subscriptionId == -1) {
+            return;
+        }
+
+        Circuit circuit = circuits.get(subscriptionId);
+        if (circuit == null) {
+            return;
+        }
+
+        if (circuit.state != STATE_CLOSED) {
+            Log.i(TAG, "Subscription " + subscriptionId + " recovered, closing circuit");
+            SimLogger.logSimOperation("CIRCUIT_CLOSED", -1, subscriptionId,
+                "Recovered after error code " + circuit.lastErrorCode, SimLogger.LEVEL_INFO);
+        }
+        circuit.state = STATE_CLOSED;
+        circuit.consecutiveFailures = 0;
+        circuit.openDurationMs = INITIAL_OPEN_DURATION_MS;
+        circuit.probeStartedAt = 0;
+    }
+
+    /**
+     * Record a failed send on a subscription
+     * @param subscriptionId Subscription that failed (-1 ignored)
+     * @param resultCode SmsManager result code from the sent callback
+     * @return true if the breaker is open after this failure
+     */
+    public synchronized boolean recordFailure(int subscriptionId, int resultCode) {
+        if (subscriptionId == -1 || !isTrippingFailure(resultCode)) {
+            return false;
+        }
+
+        Circuit circuit = circuits.get(subscriptionId);
+        if (circuit == null) {
+            circuit = new Circuit();
+            circuits.put(subscriptionId, circuit);
+        }
+
+        circuit.consecutiveFailures++;
+        circuit.lastErrorCode = resultCode;
+        long now = System.currentTimeMillis();
+
+        if (circuit.state == STATE_HALF_OPEN) {
+            // Probe failed - back off before probing again
+            circuit.state = STATE_OPEN;
+            circuit.openedAt = now;
+            circuit.openDurationMs = Math.min(circuit.openDurationMs * 2, MAX_OPEN_DURATION_MS);
+            circuit.probeStartedAt = 0;
+            logDebug("Probe failed on subscription " + subscriptionId + ", reopening for " + circuit.openDurationMs + "ms");
+        } else if (circuit.state == STATE_CLOSED
+                && (isHardFailure(resultCode) || circuit.consecutiveFailures >= GENERIC_FAILURE_THRESHOLD)) {
+            circuit.state = STATE_OPEN;
+            circuit.openedAt = now;
+            circuit.openDurationMs = INITIAL_OPEN_DURATION_MS;
+            Log.w(TAG, "Opening circuit for subscription " + subscriptionId + " (error code " + resultCode
+                    + ", failures " + circuit.consecutiveFailures + ")");
+            SimLogger.logSimOperation("CIRCUIT_OPEN", -1, subscriptionId,
+                "Error code " + resultCode + ", consecutive failures " + circuit.consecutiveFailures,
+                SimLogger.LEVEL_WARN);
+        }
+
+        return circuit.state == STATE_OPEN;
+    }
+
+    /**
+     * Check whether a send may go through the given subscription right now
+     * Moves an open breaker to half-open once its cooldown has elapsed and admits a single probe
+     */
+    public synchronized boolean allowRequest(int subscriptionId) {
+        Circuit circuit = circuits.get(subscriptionId);
+        if (circuit == null || circuit.state == STATE_CLOSED) {
+            return true;
+        }
+
+        long now = System.currentTimeMillis();
+
+        if (circuit.state == STATE_OPEN) {
+            if (now - circuit.openedAt < circuit.openDurationMs) {
+                return false;
+            }
+            circuit.state = STATE_HALF_OPEN;
+            circuit.probeStartedAt = now;
+            logDebug("Subscription " + subscriptionId + " half-open, sending probe");
+            return true;
+        }
+
+        // Half-open: only one probe at a time, unless the previous probe never reported back
+        if (now - circuit.probeStartedAt >= PROBE_TIMEOUT_MS) {
+            circuit.probeStartedAt = now;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Pick the subscription to send through, rerouting away from open breakers
+     * and from SIMs that are known to be out of service
+     * @param context Application context
+     * @param preferredSubscriptionId Subscription selected for the send
+     * @return Preferred subscription if healthy, otherwise a healthy active SIM, or the preferred one
+     *         if no alternative exists (single SIM devices keep their current behaviour)
+     */
+    public int selectSubscription(Context context, int preferredSubscriptionId) {
+        ServiceStateMonitor serviceMonitor = ServiceStateMonitor.getInstance(context);
+        if (preferredSubscriptionId == -1
+                || (serviceMonitor.isInService(preferredSubscriptionId) && allowRequest(preferredSubscriptionId))) {
+            return preferredSubscriptionId;
+        }
+
+        try {
+            List<SimManager.SimInfo> activeSims = SimManager.getActiveSimCards(context);
+            for (SimManager.SimInfo sim : activeSims) {
+                if (sim.subscriptionId != preferredSubscriptionId && sim.isActive
+                        && serviceMonitor.isInService(sim.subscriptionId) && allowRequest(sim.subscriptionId)) {
+                    Log.i(TAG, "Rerouting send from subscription " + preferredSubscriptionId
+                            + " to " + sim.subscriptionId);
+                    SimLogger.logSimOperation("CIRCUIT_REROUTE", preferredSubscriptionId, sim.subscriptionId,
+                        "Preferred subscription unavailable", SimLogger.LEVEL_INFO);
+                    return sim.subscriptionId;
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error selecting healthy subscription: " + e.getMessage(), e);
+        }
+
+        logDebug("No healthy alternative for subscription " + preferredSubscriptionId + ", keeping it");
+        return preferredSubscriptionId;
+    }
+
+    /**
+     * Mark a failed send attempt as requeued (rerouted or parked)
+     * @param attemptKey Work ID of the attempt, or another key unique to it
+     * @return true the first time a given attempt is marked, false for repeated (multipart) callbacks
+     */
+    public synchronized boolean markRerouted(String attemptKey) {
+        if (reroutedSends.containsKey(attemptKey)) {
+            return false;
+        }
+        reroutedSends.put(attemptKey, System.currentTimeMillis());
+        return true;
+    }
+
+    /**
+     * Undo markRerouted when nothing could be requeued, so a later part callback may try again
+     */
+    public synchronized void clearRerouted(String attemptKey) {
+        reroutedSends.remove(attemptKey);
+    }
+
+    /**
+     * Check whether a send attempt was already requeued by an earlier part callback
+     */
+    public synchronized boolean isRerouted(String attemptKey) {
+        return reroutedSends.containsKey(attemptKey);
+    }
+
+    /**
+     * Get current breaker state for a subscription
+     */
+    public synchronized int getState(int subscriptionId) {
+        Circuit circuit = circuits.get(subscriptionId);
+        return circuit != null ? circuit.state : STATE_CLOSED;
+    }
+
+    /**
+     * Human readable breaker summary for debug screens
+     */
+    public synchronized String getStatusSummary() {
+        if (circuits.isEmpty()) {
+            return "All circuits closed";
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<Integer, Circuit> entry : circuits.entrySet()) {
+            Circuit circuit = entry.getValue();
+            sb.append("Subscription ").append(entry.getKey()).append(": ")
+              .append(stateToString(circuit.state))
+              .append(" (failures ").append(circuit.consecutiveFailures)
+              .append(", last error ").append(circuit.lastErrorCode).append(")\n");
+        }
+        return sb.toString().trim();
+    }
+
+    /**
+     * Reset all breakers (e.g. after SIM changes)
+     */
+    public synchronized void reset() {
+        circuits.clear();
+        reroutedSends.clear();
+    }
+
+    private static String stateToString(int state) {
+        switch (state) {
+            case STATE_OPEN:
+                return "OPEN";
+            case STATE_HALF_OPEN:
+                return "HALF_OPEN";
+            default:
+                return "CLOSED";
+        }
+    }
+
+    /**
+     * Secure debug logging
+     */
+    private void logDebug(String message) {
+        if (BuildConfig.ENABLE_DEBUG_LOGS) {
+            Log.d(TAG, message);
+        }
+    }
+}
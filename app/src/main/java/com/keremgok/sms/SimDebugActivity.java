@@ -64,6 +64,85 @@ public class SimDebugActivity extends AppCompatActivity {
         info.append("SIM Debug Activity loaded successfully!\n");
         info.append("Use the buttons below to test functionality.\n\n");
         
+        // Failover circuit breakers
+        info.append("SIM FAILOVER:\n");
+        info.append(SimCircuitBreaker.getInstance().getStatusSummary()).append("\n\n");
+        
+        // Per-SIM service state
+        info.append("SERVICE STATE:\n");
+        info.append(ServiceStateMonitor.getInstance(this).getStatusSummary()).append("\n\n");
+        
+        // Daily send budgets
+        info.append("SEND BUDGET:\n");
+        try {
+            info.append(SimSendBudget.getInstance(this).getStatusSummary()).append("\n");
+        } catch (Exception e) {
+            info.append("Error reading send budget: ").append(e.getMessage()).append("\n");
+        }
+        info.append("\n");
+        
+        // History writer
+        info.append("HISTORY WRITER:\n");
+        info.append(HistoryWriter.getInstance(this).getStatusSummary()).append("\n\n");
+        
+        // Analytics event buffer
+        info.append("ANALYTICS BUFFER:\n");
+        info.append(StatisticsManager.getInstance(this).getEventBufferSummary()).append("\n\n");
+        
+        // Thread pools
+        info.append("THREAD POOLS:\n");
+        ThreadManager.ThreadPoolStats poolStats = ThreadManager.getInstance().getStats();
+        info.append("DB: ").append(poolStats.databaseActiveThreads).append(" active, ")
+            .append(poolStats.databaseQueueSize).append(" queued, ")
+            .append(poolStats.databaseRejected).append(" rejected\n");
+        info.append("DB read: ").append(poolStats.databaseReadActiveThreads).append(" active, ")
+            .append(poolStats.databaseReadQueueSize).append(" queued, ")
+            .append(poolStats.databaseReadRejected).append(" rejected\n");
+        info.append("Background: ").append(poolStats.backgroundActiveThreads).append(" active, ")
+            .append(poolStats.backgroundQueueSize).append(" queued, ")
+            .append(poolStats.backgroundRejected).append(" rejected\n");
+        info.append("Network: ").append(poolStats.networkActiveThreads).append(" active, ")
+            .append(poolStats.networkQueueSize).append(" queued, ")
+            .append(poolStats.networkRejected).append(" rejected\n\n");
+        
+        // Queue-wait and run-time per pool and task
+        info.append("TASK TIMINGS:\n");
+        info.append(ThreadManager.getInstance().getTimingSummary()).append("\n\n");
+        
+        // Main thread stalls, ranked by total stalled time
+        info.append("TOP STALL SITES:\n");
+        MainThreadWatchdog watchdog = MainThreadWatchdog.getInstance();
+        info.append(watchdog != null ? watchdog.getStatusSummary() : "Watchdog not running").append("\n\n");
+        
+        // Delayed sends, retry backoff and digest flushes
+        info.append("TIMER WHEEL:\n");
+        info.append(TimerWheel.getInstance().getStatusSummary()).append("\n\n");
+        
+        // Notification coalescing
+        info.append("NOTIFICATIONS:\n");
+        info.append(NotificationAggregator.getInstance(this).getStatusSummary()).append("\n\n");
+        
+        // Outbound backlog
+        info.append("OUTBOUND BACKLOG:\n");
+        try {
+            SmsQueueManager queueManager = SmsQueueManager.getInstance(this);
+            OutboundBacklog.BacklogStats backlogStats = queueManager.getBacklogStats();
+            info.append("In flight: ").append(queueManager.getInFlightWorkCount())
+                .append(", parked: ").append(queueManager.getParkedCount()).append("\n");
+            info.append("Waiting: ").append(backlogStats.memorySize).append(" in memory, ")
+                .append(backlogStats.spilledSize).append(" on disk\n");
+            info.append("Not due yet: ").append(queueManager.getTimedCount()).append(" of those\n");
+            info.append("Held in digests: ").append(DigestManager.getInstance(this).getHeldCount()).append("\n");
+            info.append("Send windows:\n").append(queueManager.getSendWindowSummary()).append("\n");
+            info.append("Peak: ").append(backlogStats.peakSize)
+                .append(", spilled total: ").append(backlogStats.totalSpilled).append("\n");
+            info.append("Coalesced: ").append(backlogStats.coalescedCount)
+                .append(", shed LOW: ").append(backlogStats.shedLowCount)
+                .append(", shed NORMAL: ").append(backlogStats.shedNormalCount).append("\n\n");
+        } catch (Exception e) {
+            info.append("Unavailable: ").append(e.getMessage()).append("\n\n");
+        }
+        
         info.append("=== END DEBUG INFO ===");
         
         tvSimInfo.setText(info.toString());
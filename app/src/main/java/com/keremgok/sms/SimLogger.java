@@ -7,6 +7,8 @@ import android.util.Log;
  * SimLogger - Specialized logging utility for dual SIM operations
  * Provides secure, structured logging with debug/production awareness
  * Automatically masks sensitive information in production builds
+ * Each category is sampled per TelemetryPolicy under the key "SIM_" + category,
+ * warnings and errors are always logged
  */
 public class SimLogger {
     
@@ -30,6 +32,10 @@ public class SimLogger {
      */
     public static void logSimOperation(String operation, int sourceSubscriptionId, 
                                      int targetSubscriptionId, String message, int level) {
+        int weight = sampleWeight(operation, level);
+        if (weight == 0) {
+            return;
+        }
         String tag = TAG_PREFIX + "_" + operation;
         
         StringBuilder logMessage = new StringBuilder();
@@ -46,6 +52,7 @@ public class SimLogger {
         }
         
         logMessage.append("MSG:").append(message);
+        appendSampleWeight(logMessage, weight);
         
         writeLog(tag, logMessage.toString(), level);
     }
@@ -57,12 +64,17 @@ public class SimLogger {
      * @param isDualSupported Whether dual SIM is supported
      */
     public static void logSimDetection(Context context, java.util.List<SimManager.SimInfo> sims, boolean isDualSupported) {
+        int weight = sampleWeight("DETECTION", LEVEL_INFO);
+        if (weight == 0) {
+            return;
+        }
         String tag = TAG_PREFIX + "_DETECTION";
         
         StringBuilder logMessage = new StringBuilder();
         logMessage.append("[SIM_DETECT] Found ").append(sims.size()).append(" SIM(s) | ");
         logMessage.append("DUAL_SUPPORT:").append(isDualSupported).append(" | ");
         logMessage.append("DEFAULT_SUB:").append(maskSubscriptionId(SimManager.getDefaultSmsSubscriptionId(context)));
+        appendSampleWeight(logMessage, weight);
         
         writeLog(tag, logMessage.toString(), LEVEL_INFO);
         
@@ -97,6 +109,10 @@ public class SimLogger {
      */
     public static void logSimSelection(String targetNumber, String selectionMode, 
                                      int sourceSubscriptionId, int selectedSubscriptionId, String reason) {
+        int weight = sampleWeight("SELECTION", LEVEL_INFO);
+        if (weight == 0) {
+            return;
+        }
         String tag = TAG_PREFIX + "_SELECTION";
         
         StringBuilder logMessage = new StringBuilder();
@@ -112,6 +128,7 @@ public class SimLogger {
         }
         
         logMessage.append("REASON:").append(reason);
+        appendSampleWeight(logMessage, weight);
         
         writeLog(tag, logMessage.toString(), LEVEL_INFO);
     }
@@ -124,6 +141,9 @@ public class SimLogger {
      * @param exception Exception if available
      */
     public static void logSimError(String operation, int subscriptionId, String errorMessage, Throwable exception) {
+        if (sampleWeight("ERROR", LEVEL_ERROR) == 0) {
+            return;
+        }
         String tag = TAG_PREFIX + "_ERROR";
         
         StringBuilder logMessage = new StringBuilder();
@@ -161,6 +181,11 @@ public class SimLogger {
     public static void logSmsForwarding(String originalSender, String targetNumber, 
                                       int sourceSimSlot, int forwardingSimSlot, 
                                       boolean success, long processingTimeMs) {
+        int level = success ? LEVEL_INFO : LEVEL_WARN;
+        int weight = sampleWeight("FORWARD", level);
+        if (weight == 0) {
+            return;
+        }
         String tag = TAG_PREFIX + "_FORWARD";
         
         StringBuilder logMessage = new StringBuilder();
@@ -170,8 +195,8 @@ public class SimLogger {
         logMessage.append("FWD_SLOT:").append(forwardingSimSlot).append(" | ");
         logMessage.append("SUCCESS:").append(success).append(" | ");
         logMessage.append("TIME:").append(processingTimeMs).append("ms");
+        appendSampleWeight(logMessage, weight);
         
-        int level = success ? LEVEL_INFO : LEVEL_WARN;
         writeLog(tag, logMessage.toString(), level);
     }
     
@@ -183,6 +208,10 @@ public class SimLogger {
      * @param subscriptionId Affected subscription ID
      */
     public static void logSimStateChange(String action, int slotId, int newState, int subscriptionId) {
+        int weight = sampleWeight("STATE", LEVEL_INFO);
+        if (weight == 0) {
+            return;
+        }
         String tag = TAG_PREFIX + "_STATE";
         
         StringBuilder logMessage = new StringBuilder();
@@ -195,6 +224,7 @@ public class SimLogger {
         } else {
             logMessage.append("SUB_MASKED:").append(subscriptionId != -1 ? "***" : "-1");
         }
+        appendSampleWeight(logMessage, weight);
         
         writeLog(tag, logMessage.toString(), LEVEL_INFO);
     }
@@ -232,6 +262,26 @@ public class SimLogger {
         }
     }
     
+    /**
+     * Decide whether to log a record, before any message is built
+     * @return 0 to skip the record, otherwise the number of records it stands for
+     */
+    private static int sampleWeight(String category, int level) {
+        if (level == LEVEL_DEBUG && !BuildConfig.ENABLE_DEBUG_LOGS) {
+            return 0;
+        }
+        return TelemetryPolicy.get().sample("SIM_" + category, level >= LEVEL_WARN);
+    }
+    
+    /**
+     * Note on a sampled record how many records it stands for
+     */
+    private static void appendSampleWeight(StringBuilder logMessage, int weight) {
+        if (weight > 1) {
+            logMessage.append(" | SAMPLE:1/").append(weight);
+        }
+    }
+    
     /**
      * Write log message with appropriate level
      * @param tag Log tag
@@ -504,6 +504,9 @@ public class SimManager {
                     List<SimInfo> currentSims = getActiveSimCards(context);
                     logDebug("Current active SIMs after state change: " + currentSims.size());
                     
+                    // SIM set changed - start failover tracking from a clean slate
+                    SimCircuitBreaker.getInstance().reset();
+                    
                     break;
                     
                 default:
@@ -0,0 +1,306 @@
+package com.keremgok.sms;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+import java.util.Calendar;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-SIM daily send budgets counted in SMS segments
+ * Counters live in memory and are persisted periodically. Sends are checked against the
+ * budget before they hit the radio: HIGH priority may use the whole budget, NORMAL and LOW
+ * leave a reserve for HIGH, and LOW is paced whenever the recent send rate projects the
+ * budget to run out before the end of the day.
+ * An allowed check reserves its segments right away, so concurrent sends cannot overshoot the
+ * budget; segments that never reach the radio are refunded. Subscription -1 (default SIM) is
+ * resolved to the default SMS subscription on dual SIM phones, so charges and refunds always
+ * land on the same counter.
+ */
+public class SimSendBudget {
+
+    private static final String TAG = "SimSendBudget";
+    private static final String STATE_PREFS_NAME = "HermesSendBudget";
+    private static final String PREF_BUDGET_SIM1 = "pref_daily_budget_sim1";
+    private static final String PREF_BUDGET_SIM2 = "pref_daily_budget_sim2";
+
+    // Budget configuration
+    private static final double HIGH_PRIORITY_RESERVE = 0.1; // Share of the budget only HIGH priority may use
+    private static final long RATE_TIME_CONSTANT_MS = 60 * 60 * 1000; // Recent rate is averaged over about an hour
+    private static final long PERSIST_DELAY_MS = 30000; // Coalesce counter writes
+    private static final long MAX_PACING_DELAY_MS = 30 * 60 * 1000;
+
+    private static SimSendBudget instance;
+
+    /**
+     * Result of a budget check
+     */
+    public static class Decision {
+        public final boolean allowed;
+        public final long delayMs;
+        public final String reason;
+
+        Decision(boolean allowed, long delayMs, String reason) {
+            this.allowed = allowed;
+            this.delayMs = delayMs;
+            this.reason = reason;
+        }
+    }
+
+    /**
+     * Usage counter for a single subscription and day
+     */
+    private static class Counter {
+        int day;
+        int usedSegments;
+        double ratePerMs; // Exponentially decayed segments per millisecond
+        long rateUpdatedAt;
+        long nextLowSendAt;
+    }
+
+    private final Context context;
+    private final Map<Integer, Counter> counters = new ConcurrentHashMap<>();
+    private boolean persistScheduled = false;
+
+    private SimSendBudget(Context context) {
+        this.context = context.getApplicationContext();
+        restore();
+    }
+
+    public static synchronized SimSendBudget getInstance(Context context) {
+        if (instance == null) {
+            instance = new SimSendBudget(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Check whether a send of the given size may go out now and reserve its segments if so
+     * Refund the segments if the send then fails before reaching the radio
+     * @param subscriptionId Forwarding subscription (-1 for default SIM)
+     * @param priority SmsQueueWorker priority
+     * @param segments Number of segments from SmsManager.divideMessage
+     */
+    public synchronized Decision check(int subscriptionId, int priority, int segments) {
+        subscriptionId = resolveSubscription(subscriptionId);
+        long now = System.currentTimeMillis();
+        Decision decision = evaluate(subscriptionId, priority, segments, now);
+        if (decision.allowed) {
+            charge(getCounter(subscriptionId, now), segments, now);
+        }
+        return decision;
+    }
+
+    private Decision evaluate(int subscriptionId, int priority, int segments, long now) {
+        int limit = getDailyLimit(subscriptionId);
+        if (limit <= 0) {
+            return new Decision(true, 0, "unlimited");
+        }
+
+        Counter counter = getCounter(subscriptionId, now);
+        int remaining = limit - counter.usedSegments;
+        int reserve = (int) Math.ceil(limit * HIGH_PRIORITY_RESERVE);
+
+        if (priority == SmsQueueWorker.PRIORITY_HIGH) {
+            if (segments <= remaining) {
+                return new Decision(true, 0, "within budget");
+            }
+            return new Decision(false, getMillisUntilNextDay(now), "daily budget exhausted");
+        }
+
+        if (segments > remaining - reserve) {
+            return new Decision(false, getMillisUntilNextDay(now), "reserved for high priority");
+        }
+
+        if (priority == SmsQueueWorker.PRIORITY_LOW) {
+            long timeLeft = getMillisUntilNextDay(now);
+            double projected = counter.usedSegments + decayedRate(counter, now) * timeLeft;
+            if (projected > limit - reserve) {
+                // Pace LOW priority to the rate the remaining budget can sustain until midnight
+                double sustainableRatePerMs = (double) (remaining - reserve) / timeLeft;
+                if (now < counter.nextLowSendAt) {
+                    return new Decision(false, Math.min(counter.nextLowSendAt - now, MAX_PACING_DELAY_MS),
+                                        "throttled, projected " + (int) projected + "/" + limit);
+                }
+                counter.nextLowSendAt = now + (long) Math.min(segments / sustainableRatePerMs, MAX_PACING_DELAY_MS);
+            }
+        }
+        return new Decision(true, 0, "within budget");
+    }
+
+    /**
+     * Charge segments against a counter, called with the lock held
+     */
+    private void charge(Counter counter, int segments, long now) {
+        counter.ratePerMs = decayedRate(counter, now) + (double) segments / RATE_TIME_CONSTANT_MS;
+        counter.rateUpdatedAt = now;
+        counter.usedSegments += segments;
+        schedulePersist();
+    }
+
+    /**
+     * Return reserved segments that were not sent (send failed, or the radio reported e.g. no service)
+     */
+    public synchronized void refund(int subscriptionId, int segments) {
+        Counter counter = counters.get(resolveSubscription(subscriptionId));
+        if (counter == null || counter.day != getDayKey(System.currentTimeMillis())) {
+            return;
+        }
+        counter.usedSegments = Math.max(0, counter.usedSegments - segments);
+        schedulePersist();
+    }
+
+    /**
+     * Human readable budget summary for debug screens
+     */
+    public synchronized String getStatusSummary() {
+        if (counters.isEmpty()) {
+            return "No sends counted today";
+        }
+        long now = System.currentTimeMillis();
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<Integer, Counter> entry : counters.entrySet()) {
+            Counter counter = getCounter(entry.getKey(), now);
+            int limit = getDailyLimit(entry.getKey());
+            double projected = counter.usedSegments + decayedRate(counter, now) * getMillisUntilNextDay(now);
+            sb.append("Subscription ").append(entry.getKey()).append(": ")
+              .append(counter.usedSegments).append("/").append(limit > 0 ? String.valueOf(limit) : "unlimited")
+              .append(" segments, projected ").append((int) projected).append("\n");
+        }
+        return sb.toString().trim();
+    }
+
+    /**
+     * Persist counters if the budget tracker is running
+     * Called on memory trim and app termination
+     */
+    public static void persistIfActive() {
+        SimSendBudget budget;
+        synchronized (SimSendBudget.class) {
+            budget = instance;
+        }
+        if (budget != null) {
+            budget.persist();
+        }
+    }
+
+    /**
+     * Map the default SIM (-1) to the default SMS subscription on dual SIM phones
+     */
+    private int resolveSubscription(int subscriptionId) {
+        if (subscriptionId == -1 && SimManager.isDualSimSupported(context)) {
+            return SimManager.getDefaultSmsSubscriptionId(context);
+        }
+        return subscriptionId;
+    }
+
+    private int getDailyLimit(int subscriptionId) {
+        int slot = subscriptionId != -1 ? SimManager.getSlotIndexForSubscription(context, subscriptionId) : 0;
+        SharedPreferences prefs = androidx.preference.PreferenceManager.getDefaultSharedPreferences(context);
+        String value = prefs.getString(slot == 1 ? PREF_BUDGET_SIM2 : PREF_BUDGET_SIM1, "0");
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private Counter getCounter(int subscriptionId, long now) {
+        int day = getDayKey(now);
+        Counter counter = counters.get(subscriptionId);
+        if (counter == null) {
+            counter = new Counter();
+            counter.day = day;
+            counters.put(subscriptionId, counter);
+        } else if (counter.day != day) {
+            // New day - the budget resets, the recent rate carries over
+            counter.day = day;
+            counter.usedSegments = 0;
+            counter.nextLowSendAt = 0;
+        }
+        return counter;
+    }
+
+    private static double decayedRate(Counter counter, long now) {
+        if (counter.rateUpdatedAt == 0) {
+            return 0;
+        }
+        return counter.ratePerMs * Math.exp(-(double) (now - counter.rateUpdatedAt) / RATE_TIME_CONSTANT_MS);
+    }
+
+    private static int getDayKey(long timestamp) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(timestamp);
+        return calendar.get(Calendar.YEAR) * 1000 + calendar.get(Calendar.DAY_OF_YEAR);
+    }
+
+    private static long getMillisUntilNextDay(long now) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(now);
+        calendar.add(Calendar.DAY_OF_YEAR, 1);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        return Math.max(1, calendar.getTimeInMillis() - now);
+    }
+
+    private void schedulePersist() {
+        if (persistScheduled) {
+            return;
+        }
+        persistScheduled = true;
+        ThreadManager.getInstance().schedule(this::persist, PERSIST_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void persist() {
+        persistScheduled = false;
+        try {
+            SharedPreferences.Editor editor = context.getSharedPreferences(STATE_PREFS_NAME, Context.MODE_PRIVATE).edit();
+            editor.clear();
+            for (Map.Entry<Integer, Counter> entry : counters.entrySet()) {
+                Counter counter = entry.getValue();
+                String key = String.valueOf(entry.getKey());
+                editor.putInt("day_" + key, counter.day);
+                editor.putInt("used_" + key, counter.usedSegments);
+                editor.putFloat("rate_" + key, (float) counter.ratePerMs);
+                editor.putLong("rate_at_" + key, counter.rateUpdatedAt);
+            }
+            editor.apply();
+            logDebug("Send budget counters persisted");
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to persist send budget: " + e.getMessage(), e);
+        }
+    }
+
+    private void restore() {
+        try {
+            SharedPreferences prefs = context.getSharedPreferences(STATE_PREFS_NAME, Context.MODE_PRIVATE);
+            for (String key : prefs.getAll().keySet()) {
+                if (!key.startsWith("day_")) {
+                    continue;
+                }
+                String subscription = key.substring("day_".length());
+                Counter counter = new Counter();
+                counter.day = prefs.getInt(key, 0);
+                counter.usedSegments = prefs.getInt("used_" + subscription, 0);
+                counter.ratePerMs = prefs.getFloat("rate_" + subscription, 0f);
+                counter.rateUpdatedAt = prefs.getLong("rate_at_" + subscription, 0);
+                counters.put(Integer.parseInt(subscription), counter);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to restore send budget: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Secure debug logging
+     */
+    private void logDebug(String message) {
+        if (BuildConfig.ENABLE_DEBUG_LOGS) {
+            Log.d(TAG, message);
+        }
+    }
+}
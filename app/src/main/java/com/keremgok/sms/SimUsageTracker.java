@@ -0,0 +1,98 @@
+package com.keremgok.sms;
+
+import java.util.List;
+
+/**
+ * Cached SIM usage totals for the statistics screen
+ * The totals are computed once with a single aggregation query and then kept current by
+ * HistoryWriter as it commits records. Bulk deletes and restores invalidate the cache so the
+ * next read recomputes it. A load that overlaps a write is returned but not cached, since the
+ * query may or may not have seen the write.
+ */
+public class SimUsageTracker {
+
+    private static SimUsageTracker instance;
+
+    private SmsHistoryDao.SimUsageTotals totals; // Guarded by this, null until loaded
+    private long modCount = 0; // Bumped by every write and invalidation, guarded by this
+    private int writesInFlight = 0; // Guarded by this
+
+    private SimUsageTracker() {
+    }
+
+    public static synchronized SimUsageTracker getInstance() {
+        if (instance == null) {
+            instance = new SimUsageTracker();
+        }
+        return instance;
+    }
+
+    /**
+     * Get the SIM usage statistics, querying the database only when the cache is cold
+     * May run a database query, call from a background thread
+     */
+    public StatisticsManager.SimUsageStats getStats(SmsHistoryDao dao) {
+        long startModCount;
+        synchronized (this) {
+            if (totals != null) {
+                return toStats(totals);
+            }
+            startModCount = writesInFlight == 0 ? modCount : -1;
+        }
+
+        SmsHistoryDao.SimUsageTotals loaded = dao.getSimUsageTotals();
+        synchronized (this) {
+            if (startModCount == modCount && writesInFlight == 0) {
+                totals = loaded;
+            }
+        }
+        return toStats(loaded);
+    }
+
+    /**
+     * Called by HistoryWriter before it commits a batch
+     */
+    public synchronized void beginWrite() {
+        writesInFlight++;
+        modCount++;
+    }
+
+    /**
+     * Called by HistoryWriter after a commit with the records that were actually written
+     */
+    public synchronized void endWrite(List<SmsHistory> written) {
+        writesInFlight--;
+        modCount++;
+        if (totals != null) {
+            for (SmsHistory history : written) {
+                totals.add(history);
+            }
+        }
+    }
+
+    /**
+     * Drop the cached totals after rows were deleted or imported outside HistoryWriter
+     */
+    public synchronized void invalidate() {
+        totals = null;
+        modCount++;
+    }
+
+    private static StatisticsManager.SimUsageStats toStats(SmsHistoryDao.SimUsageTotals totals) {
+        double sim1SuccessRate = totals.sim1_forwarded > 0
+            ? totals.sim1_forward_success * 100.0 / totals.sim1_forwarded : 0.0;
+        double sim2SuccessRate = totals.sim2_forwarded > 0
+            ? totals.sim2_forward_success * 100.0 / totals.sim2_forwarded : 0.0;
+
+        int mostUsedForwardingSim = -1;
+        if (totals.sim1_forwarded > 0 || totals.sim2_forwarded > 0) {
+            mostUsedForwardingSim = totals.sim2_forwarded > totals.sim1_forwarded ? 1 : 0;
+        }
+
+        return new StatisticsManager.SimUsageStats(
+            totals.sim1_received, totals.sim2_received, totals.sim1_forwarded, totals.sim2_forwarded,
+            sim1SuccessRate, sim2SuccessRate, totals.sim_switches, mostUsedForwardingSim,
+            totals.dual_sim_records
+        );
+    }
+}
@@ -41,6 +41,14 @@ public class SmsCallbackReceiver extends BroadcastReceiver {
         long timestamp = intent.getLongExtra("timestamp", System.currentTimeMillis());
         int retryCount = intent.getIntExtra("retryCount", 0);
         boolean isMultipart = intent.getBooleanExtra("isMultipart", false);
+        int priority = intent.getIntExtra("priority", SmsQueueWorker.PRIORITY_NORMAL);
+        int sourceSubscriptionId = intent.getIntExtra("sourceSubscriptionId", -1);
+        int sourceSimSlot = intent.getIntExtra("sourceSimSlot", -1);
+        int forwardingSubscriptionId = intent.getIntExtra("forwardingSubscriptionId", -1);
+        int forwardingSimSlot = intent.getIntExtra("forwardingSimSlot", -1);
+        int budgetSubscriptionId = intent.getIntExtra("budgetSubscriptionId", forwardingSubscriptionId);
+        String workId = intent.getStringExtra("workId");
+        long sendStartedAt = intent.getLongExtra("sendStartedAt", 0);
         
         int resultCode = getResultCode();
         boolean success = (resultCode == Activity.RESULT_OK);
@@ -223,15 +231,84 @@ public class SmsCallbackReceiver extends BroadcastReceiver {
                 break;
         }
         
+        // Send rate and failure codes per forwarding SIM
+        String simLabel = String.valueOf(forwardingSimSlot);
+        MetricsRegistry.SMS_SENT.inc(simLabel, success ? "success" : "failure");
+        if (!success) {
+            MetricsRegistry.SMS_SEND_FAILURES.inc(simLabel, String.valueOf(resultCode));
+        }
+        
+        // Send-to-ack latency, one sample per acked part
+        if (sendStartedAt > 0) {
+            LatencyMetrics.getInstance(context)
+                .record(LatencyMetrics.SEND_TO_ACK, System.currentTimeMillis() - sendStartedAt);
+        }
+        
+        // Clock the per-SIM send window so the next queued send can go out
+        if (workId != null) {
+            try {
+                SmsQueueManager.getInstance(context).onSendAcked(java.util.UUID.fromString(workId), success);
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to report sent-ack to queue manager: " + e.getMessage(), e);
+            }
+        }
+        
+        // A part the radio never sent does not count against the SIM's daily budget
+        if (!success && SimCircuitBreaker.isHardFailure(resultCode)) {
+            SimSendBudget.getInstance(context).refund(budgetSubscriptionId, 1);
+        }
+        
+        // Feed the per-SIM circuit breaker and reroute the send if its SIM is down
+        // Multipart sends report once per part, so requeueing is deduped per send attempt: a rerouted
+        // send runs under a new work ID and may be rerouted or parked again if it fails too
+        SimCircuitBreaker circuitBreaker = SimCircuitBreaker.getInstance();
+        String attemptKey = workId != null ? workId
+                : targetNumber + "_" + timestamp + "_" + retryCount + "_" + forwardingSubscriptionId;
+        boolean rerouted = false;
+        if (success) {
+            circuitBreaker.recordSuccess(forwardingSubscriptionId);
+        } else if (circuitBreaker.recordFailure(forwardingSubscriptionId, resultCode)) {
+            rerouted = rerouteToHealthySim(context, attemptKey, originalSender, originalMessage, targetNumber, timestamp,
+                    retryCount, priority, sourceSubscriptionId, sourceSimSlot, forwardingSubscriptionId);
+            if (rerouted) {
+                errorMessage = errorMessage + " - rerouted to other SIM";
+            }
+        }
+        
+        // No SIM has service - park the send until service returns instead of losing it
+        if (!success && !rerouted && SimCircuitBreaker.isHardFailure(resultCode) && retryCount < 3
+                && ServiceStateMonitor.getInstance(context).shouldPark(forwardingSubscriptionId)
+                && originalSender != null && originalMessage != null && targetNumber != null
+                && circuitBreaker.markRerouted(attemptKey)) {
+            try {
+                java.util.UUID parkedWorkId = SmsQueueManager.getInstance(context).queueRetrySms(
+                        originalSender, originalMessage, targetNumber, timestamp, retryCount + 1, priority,
+                        sourceSubscriptionId, forwardingSubscriptionId, sourceSimSlot, forwardingSimSlot);
+                if (parkedWorkId != null) {
+                    rerouted = true;
+                    errorMessage = errorMessage + " - parked until service returns";
+                } else {
+                    circuitBreaker.clearRerouted(attemptKey);
+                }
+            } catch (Exception e) {
+                circuitBreaker.clearRerouted(attemptKey);
+                Log.e(TAG, "Failed to park SMS until service returns: " + e.getMessage(), e);
+            }
+        }
+        
+        // Another part of this attempt already requeued it - that send reports its own result
+        if (!success && !rerouted && circuitBreaker.isRerouted(attemptKey)) {
+            rerouted = true;
+        }
+        
         // Log to database in background thread
-        logSmsHistory(context, originalSender, originalMessage, targetNumber, forwardedMessage, timestamp, success, errorMessage);
+        logSmsHistory(context, originalSender, originalMessage, targetNumber, forwardedMessage, timestamp, success, errorMessage,
+                sourceSimSlot, forwardingSimSlot, sourceSubscriptionId, forwardingSubscriptionId);
 
-        // Show notification based on success/failure
-        NotificationHelper notificationHelper = new NotificationHelper(context);
-        if (success) {
-            notificationHelper.showSmsSuccessNotification(targetNumber, originalSender);
-        } else {
-            notificationHelper.showSmsErrorNotification(targetNumber, errorMessage);
+        // Add the result to the coalesced summary notification (a rerouted send reports its own result later)
+        if (success || !rerouted) {
+            NotificationAggregator.getInstance(context).recordResult(targetNumber + "_" + timestamp,
+                    targetNumber, originalSender, success, errorMessage);
         }
 
         // Handle retry if SMS failed and retries available
@@ -242,6 +319,49 @@ public class SmsCallbackReceiver extends BroadcastReceiver {
         }
     }
     
+    /**
+     * Requeue a failed in-flight send on a healthy SIM after its circuit opened
+     * @param attemptKey Identifies the failed send attempt, so each attempt is requeued only once
+     * @return true if this call requeued the send on another subscription
+     */
+    private boolean rerouteToHealthySim(Context context, String attemptKey, String originalSender, String originalMessage,
+                                        String targetNumber, long timestamp, int retryCount, int priority,
+                                        int sourceSubscriptionId, int sourceSimSlot, int failedSubscriptionId) {
+        SimCircuitBreaker circuitBreaker = SimCircuitBreaker.getInstance();
+        try {
+            if (originalSender == null || originalMessage == null || targetNumber == null) {
+                return false;
+            }
+            
+            // Dedupe before selecting, so repeated part callbacks don't use up a half-open probe
+            if (!circuitBreaker.markRerouted(attemptKey)) {
+                return false;
+            }
+            
+            int healthySubscriptionId = circuitBreaker.selectSubscription(context, failedSubscriptionId);
+            if (healthySubscriptionId == failedSubscriptionId || healthySubscriptionId == -1) {
+                circuitBreaker.clearRerouted(attemptKey);
+                return false;
+            }
+            
+            int healthySimSlot = SimManager.getSlotIndexForSubscription(context, healthySubscriptionId);
+            // Failover goes out right away, without retry backoff or priority spacing
+            java.util.UUID workId = SmsQueueManager.getInstance(context).queueRerouteSms(
+                    originalSender, originalMessage, targetNumber, timestamp, retryCount, priority,
+                    sourceSubscriptionId, healthySubscriptionId, sourceSimSlot, healthySimSlot);
+            
+            if (workId != null) {
+                Log.i(TAG, "Rerouted failed send to " + maskPhoneNumber(targetNumber) + " from subscription "
+                        + failedSubscriptionId + " to " + healthySubscriptionId);
+                return true;
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to reroute SMS to healthy SIM: " + e.getMessage(), e);
+        }
+        circuitBreaker.clearRerouted(attemptKey);
+        return false;
+    }
+    
     /**
      * Handle SMS delivered confirmation
      * Currently not used for database updates, but can be extended
@@ -261,42 +381,37 @@ public class SmsCallbackReceiver extends BroadcastReceiver {
     
     /**
      * Log SMS forwarding history to database with dual SIM support
-     * Runs in optimized background thread to avoid blocking main thread
+     * Handed to the single history writer, which commits in grouped transactions
      */
-    private void logSmsHistory(Context context, String senderNumber, String originalMessage, String targetNumber, String forwardedMessage, long timestamp, boolean success, String errorMessage) {
-        ThreadManager.getInstance().executeDatabase(() -> {
-            try {
-                AppDatabase database = AppDatabase.getInstance(context);
-                
-                // Create SmsHistory with dual SIM support
-                // For now, we don't have SIM info in callback, so use defaults
-                // This could be enhanced to store SIM info in the intent extras
-                SmsHistory history = new SmsHistory(
-                    senderNumber,
-                    originalMessage,
-                    targetNumber,
-                    forwardedMessage,
-                    timestamp,
-                    success,
-                    errorMessage,
-                    -1, // sourceSimSlot - could be extracted from intent extras
-                    -1, // forwardingSimSlot - could be extracted from intent extras  
-                    -1, // sourceSubscriptionId - could be extracted from intent extras
-                    -1  // forwardingSubscriptionId - could be extracted from intent extras
-                );
-                database.smsHistoryDao().insert(history);
-                
-                if (BuildConfig.ENABLE_DEBUG_LOGS) {
-                    String status = success ? "SUCCESS" : "FAILED";
-                    Log.d(TAG, "SMS history logged: " + status + " from " + maskPhoneNumber(senderNumber) + 
-                            " to " + maskPhoneNumber(targetNumber) + 
-                            (errorMessage != null && !errorMessage.isEmpty() ? " - " + errorMessage : ""));
-                }
-                
-            } catch (Exception e) {
-                Log.e(TAG, "Failed to log SMS history: " + e.getMessage(), e);
+    private void logSmsHistory(Context context, String senderNumber, String originalMessage, String targetNumber, String forwardedMessage, long timestamp, boolean success, String errorMessage,
+                               int sourceSimSlot, int forwardingSimSlot, int sourceSubscriptionId, int forwardingSubscriptionId) {
+        try {
+            // Create SmsHistory with dual SIM support (SIM info carried in the sent intent extras)
+            SmsHistory history = new SmsHistory(
+                senderNumber,
+                originalMessage,
+                targetNumber,
+                forwardedMessage,
+                timestamp,
+                success,
+                errorMessage,
+                sourceSimSlot,
+                forwardingSimSlot,
+                sourceSubscriptionId,
+                forwardingSubscriptionId
+            );
+            HistoryWriter.getInstance(context).enqueue(history);
+            
+            if (BuildConfig.ENABLE_DEBUG_LOGS) {
+                String status = success ? "SUCCESS" : "FAILED";
+                Log.d(TAG, "SMS history logged: " + status + " from " + maskPhoneNumber(senderNumber) + 
+                        " to " + maskPhoneNumber(targetNumber) + 
+                        (errorMessage != null && !errorMessage.isEmpty() ? " - " + errorMessage : ""));
             }
-        });
+            
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to log SMS history: " + e.getMessage(), e);
+        }
     }
     
     /**
@@ -1,6 +1,7 @@
 package com.keremgok.sms;
 
 import androidx.room.Entity;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 import androidx.room.ColumnInfo;
 
@@ -8,7 +9,13 @@ import androidx.room.ColumnInfo;
  * SMS Filter Entity for Room Database
  * Stores SMS filtering rules for advanced message filtering
  */
-@Entity(tableName = "sms_filters")
+@Entity(
+    tableName = "sms_filters",
+    indices = {
+        @Index(value = {"is_enabled", "priority"}),
+        @Index(value = {"filter_type", "is_enabled", "priority"})
+    }
+)
 public class SmsFilter {
     
     @PrimaryKey(autoGenerate = true)
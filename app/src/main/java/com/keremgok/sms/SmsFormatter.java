@@ -22,6 +22,9 @@ public class SmsFormatter {
     public static final String FORMAT_DETAILED = "detailed";
     public static final String FORMAT_CUSTOM = "custom";
     
+    // Sender marker for pre-packed digest messages (sent as-is)
+    public static final String DIGEST_SENDER = "HERMES_DIGEST";
+    
     // Default settings
     private static final String DEFAULT_FORMAT_TYPE = FORMAT_STANDARD;
     private static final boolean DEFAULT_INCLUDE_SIM_INFO = true;
@@ -50,6 +53,11 @@ public class SmsFormatter {
                                int sourceSimSlot, int forwardingSimSlot, 
                                int sourceSubscriptionId, int forwardingSubscriptionId) {
         
+        // Digest messages are already packed in compact form
+        if (DIGEST_SENDER.equals(originalSender)) {
+            return originalMessage;
+        }
+        
         String formatType = prefs.getString("sms_format_type", DEFAULT_FORMAT_TYPE);
         
         switch (formatType) {
@@ -136,6 +144,14 @@ public class SmsFormatter {
         return sb.toString();
     }
     
+    /**
+     * Format a single line of a digest message (compact format, no forwarding SIM)
+     */
+    public String formatDigestLine(String originalSender, String originalMessage,
+                                   int sourceSimSlot, int sourceSubscriptionId) {
+        return formatCompact(originalSender, originalMessage, 0, sourceSimSlot, -1, sourceSubscriptionId, -1);
+    }
+    
     /**
      * Detailed format - all available information
      */
@@ -1,6 +1,7 @@
 package com.keremgok.sms;
 
 import androidx.room.Entity;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 import androidx.room.ColumnInfo;
 import androidx.room.Ignore;
@@ -9,7 +10,17 @@ import androidx.room.Ignore;
  * SMS History Entity for Room Database
  * Stores forwarded SMS information with success/failure tracking
  */
-@Entity(tableName = "sms_history")
+@Entity(
+    tableName = "sms_history",
+    indices = {
+        @Index(value = "timestamp"),
+        @Index(value = {"success", "timestamp"}),
+        @Index(value = {"success", "target_number", "sender_number"}),
+        @Index(value = {"sender_number", "timestamp"}),
+        @Index(value = "source_sim_slot"),
+        @Index(value = "forwarding_sim_slot")
+    }
+)
 public class SmsHistory {
     
     @PrimaryKey(autoGenerate = true)
@@ -20,6 +20,13 @@ public interface SmsHistoryDao {
     @Insert
     void insert(SmsHistory smsHistory);
     
+    /**
+     * Insert a batch of SMS history records in a single transaction
+     * @param smsHistories The SMS history records to insert
+     */
+    @Insert
+    void insertAll(List<SmsHistory> smsHistories);
+    
     /**
      * Get all SMS history records ordered by timestamp (newest first)
      * @return List of all SMS history records
@@ -212,4 +219,166 @@ public interface SmsHistoryDao {
      */
     @Query("SELECT forwarding_sim_slot FROM sms_history WHERE forwarding_sim_slot != -1 GROUP BY forwarding_sim_slot ORDER BY COUNT(*) DESC LIMIT 1")
     int getMostUsedForwardingSim();
-}
\ No newline at end of file
+    
+    /**
+     * Get the highest history record ID (upper bound for a bulk resend run)
+     * @return Highest record ID, 0 if the table is empty
+     */
+    @Query("SELECT COALESCE(MAX(id), 0) FROM sms_history")
+    int getMaxId();
+    
+    /**
+     * Get distinct target numbers that have failed records
+     * @return List of target numbers with at least one failed forward
+     */
+    @Query("SELECT DISTINCT target_number FROM sms_history WHERE success = 0 ORDER BY target_number")
+    List<String> getFailedTargetNumbers();
+    
+    /**
+     * Get one page of failed records eligible for bulk resend (keyset pagination on id)
+     * Only the oldest failed record per (target, sender, message) is returned, and records whose
+     * message was delivered to the same target later are skipped.
+     * @param afterId Return records with id greater than this (last id of the previous page, 0 for the first page)
+     * @param maxId Upper id bound fixed at the start of the run so new failures are not picked up
+     * @param startTime Start timestamp
+     * @param endTime End timestamp
+     * @param forwardingSimSlot Forwarding SIM slot to filter by (-2 for any)
+     * @param targetNumber Target number to filter by (null for any)
+     * @param limit Page size
+     * @return Failed SMS history records ordered by id
+     */
+    @Query("SELECT h.* FROM sms_history h " +
+           "WHERE h.success = 0 AND h.id > :afterId AND h.id <= :maxId AND h.timestamp BETWEEN :startTime AND :endTime " +
+           "AND (:forwardingSimSlot = -2 OR h.forwarding_sim_slot = :forwardingSimSlot) " +
+           "AND (:targetNumber IS NULL OR h.target_number = :targetNumber) " +
+           "AND h.id = (SELECT MIN(f.id) FROM sms_history f WHERE f.success = 0 AND f.target_number = h.target_number " +
+           "AND f.sender_number = h.sender_number AND f.original_message = h.original_message AND f.id <= :maxId " +
+           "AND f.timestamp BETWEEN :startTime AND :endTime AND (:forwardingSimSlot = -2 OR f.forwarding_sim_slot = :forwardingSimSlot)) " +
+           "AND NOT EXISTS (SELECT 1 FROM sms_history d WHERE d.success = 1 AND d.target_number = h.target_number " +
+           "AND d.sender_number = h.sender_number AND d.original_message = h.original_message)" +
+           " ORDER BY h.id ASC LIMIT :limit")
+    List<SmsHistory> getResendCandidatesPage(int afterId, int maxId, long startTime, long endTime,
+                                             int forwardingSimSlot, String targetNumber, int limit);
+    
+    /**
+     * Count failed records eligible for bulk resend (same filter as getResendCandidatesPage)
+     * @return Number of records a bulk resend run would requeue
+     */
+    @Query("SELECT COUNT(*) FROM sms_history h " +
+           "WHERE h.success = 0 AND h.id > :afterId AND h.id <= :maxId AND h.timestamp BETWEEN :startTime AND :endTime " +
+           "AND (:forwardingSimSlot = -2 OR h.forwarding_sim_slot = :forwardingSimSlot) " +
+           "AND (:targetNumber IS NULL OR h.target_number = :targetNumber) " +
+           "AND h.id = (SELECT MIN(f.id) FROM sms_history f WHERE f.success = 0 AND f.target_number = h.target_number " +
+           "AND f.sender_number = h.sender_number AND f.original_message = h.original_message AND f.id <= :maxId " +
+           "AND f.timestamp BETWEEN :startTime AND :endTime AND (:forwardingSimSlot = -2 OR f.forwarding_sim_slot = :forwardingSimSlot)) " +
+           "AND NOT EXISTS (SELECT 1 FROM sms_history d WHERE d.success = 1 AND d.target_number = h.target_number " +
+           "AND d.sender_number = h.sender_number AND d.original_message = h.original_message)")
+    int countResendCandidates(int afterId, int maxId, long startTime, long endTime,
+                              int forwardingSimSlot, String targetNumber);
+    
+    /**
+     * Count records per (source SIM slot, forwarding SIM slot) pair within a date range
+     * Aggregated in SQL so summaries never load message bodies; returns at most a handful of rows
+     * @param startTime Start timestamp
+     * @param endTime End timestamp
+     * @return One row per slot pair that has records
+     */
+    @Query("SELECT source_sim_slot, forwarding_sim_slot, COUNT(*) AS count, " +
+           "SUM(CASE WHEN success = 1 THEN 1 ELSE 0 END) AS success_count " +
+           "FROM sms_history WHERE timestamp BETWEEN :startTime AND :endTime " +
+           "GROUP BY source_sim_slot, forwarding_sim_slot")
+    List<SimSlotCount> getSimSlotCountsByDateRange(long startTime, long endTime);
+    
+    /**
+     * Get every SIM usage figure in a single pass over sms_history
+     * @return All-time totals (all zero when the table is empty)
+     */
+    @Query("SELECT " +
+           "COALESCE(SUM(CASE WHEN source_sim_slot = 0 THEN 1 ELSE 0 END), 0) AS sim1_received, " +
+           "COALESCE(SUM(CASE WHEN source_sim_slot = 1 THEN 1 ELSE 0 END), 0) AS sim2_received, " +
+           "COALESCE(SUM(CASE WHEN forwarding_sim_slot = 0 THEN 1 ELSE 0 END), 0) AS sim1_forwarded, " +
+           "COALESCE(SUM(CASE WHEN forwarding_sim_slot = 1 THEN 1 ELSE 0 END), 0) AS sim2_forwarded, " +
+           "COALESCE(SUM(CASE WHEN forwarding_sim_slot = 0 AND success = 1 THEN 1 ELSE 0 END), 0) AS sim1_forward_success, " +
+           "COALESCE(SUM(CASE WHEN forwarding_sim_slot = 1 AND success = 1 THEN 1 ELSE 0 END), 0) AS sim2_forward_success, " +
+           "COALESCE(SUM(CASE WHEN source_sim_slot != -1 AND forwarding_sim_slot != -1 " +
+           "AND source_sim_slot != forwarding_sim_slot THEN 1 ELSE 0 END), 0) AS sim_switches, " +
+           "COALESCE(SUM(CASE WHEN source_sim_slot != -1 AND forwarding_sim_slot != -1 AND source_subscription_id != -1 " +
+           "AND forwarding_subscription_id != -1 THEN 1 ELSE 0 END), 0) AS dual_sim_records " +
+           "FROM sms_history")
+    SimUsageTotals getSimUsageTotals();
+    
+    /**
+     * Helper class for per SIM slot pair counting query results
+     */
+    class SimSlotCount {
+        public int source_sim_slot;
+        public int forwarding_sim_slot;
+        public int count;
+        public int success_count;
+        
+        public SimSlotCount(int source_sim_slot, int forwarding_sim_slot, int count, int success_count) {
+            this.source_sim_slot = source_sim_slot;
+            this.forwarding_sim_slot = forwarding_sim_slot;
+            this.count = count;
+            this.success_count = success_count;
+        }
+        
+        /**
+         * Whether the message was received on one SIM and forwarded via the other
+         */
+        public boolean isSimSwitch() {
+            return source_sim_slot != -1 && forwarding_sim_slot != -1 && source_sim_slot != forwarding_sim_slot;
+        }
+    }
+    
+    /**
+     * Helper class for SIM usage totals query results
+     */
+    class SimUsageTotals {
+        public int sim1_received;
+        public int sim2_received;
+        public int sim1_forwarded;
+        public int sim2_forwarded;
+        public int sim1_forward_success;
+        public int sim2_forward_success;
+        public int sim_switches;
+        public int dual_sim_records;
+        
+        public SimUsageTotals(int sim1_received, int sim2_received, int sim1_forwarded, int sim2_forwarded,
+                              int sim1_forward_success, int sim2_forward_success, int sim_switches,
+                              int dual_sim_records) {
+            this.sim1_received = sim1_received;
+            this.sim2_received = sim2_received;
+            this.sim1_forwarded = sim1_forwarded;
+            this.sim2_forwarded = sim2_forwarded;
+            this.sim1_forward_success = sim1_forward_success;
+            this.sim2_forward_success = sim2_forward_success;
+            this.sim_switches = sim_switches;
+            this.dual_sim_records = dual_sim_records;
+        }
+        
+        /**
+         * Add a newly written record, with the same conditions as the totals query
+         */
+        public void add(SmsHistory history) {
+            int source = history.getSourceSimSlot();
+            int forwarding = history.getForwardingSimSlot();
+            if (source == 0) sim1_received++;
+            else if (source == 1) sim2_received++;
+            if (forwarding == 0) {
+                sim1_forwarded++;
+                if (history.isSuccess()) sim1_forward_success++;
+            } else if (forwarding == 1) {
+                sim2_forwarded++;
+                if (history.isSuccess()) sim2_forward_success++;
+            }
+            if (source != -1 && forwarding != -1 && source != forwarding) {
+                sim_switches++;
+            }
+            if (source != -1 && forwarding != -1 && history.getSourceSubscriptionId() != -1
+                    && history.getForwardingSubscriptionId() != -1) {
+                dual_sim_records++;
+            }
+        }
+    }
+}
@@ -2,18 +2,32 @@ package com.keremgok.sms;
 
 import android.content.Context;
 import android.util.Log;
-import androidx.work.BackoffPolicy;
 import androidx.work.Constraints;
 import androidx.work.Data;
 import androidx.work.ExistingWorkPolicy;
 import androidx.work.NetworkType;
 import androidx.work.OneTimeWorkRequest;
+import androidx.work.Operation;
 import androidx.work.WorkInfo;
 import androidx.work.WorkManager;
 import androidx.work.WorkQuery;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * SMS Queue Manager using WorkManager for optimized background processing
@@ -29,17 +43,45 @@ public class SmsQueueManager {
     private static final String WORK_TAG_LOW_PRIORITY = "sms_queue_low";
     private static final String WORK_TAG_BATCH = "sms_batch";
     
-    // Unique work names
-    private static final String WORK_NAME_HIGH = "sms_high_priority";
-    private static final String WORK_NAME_NORMAL = "sms_normal_priority";
-    private static final String WORK_NAME_LOW = "sms_low_priority";
-    
     // Batch processing configuration
     private static final int BATCH_SIZE = 5; // Process 5 SMS at a time
     private static final long BATCH_DELAY_MS = 10000; // 10 seconds delay for batching
     
+    // Backlog configuration - WorkRequests admitted to WorkManager at any one time
+    private static final int MAX_IN_FLIGHT_WORK = 50;
+    // How often the admitted work count is resynced with WorkManager (work that never ran can't report back)
+    private static final long IN_FLIGHT_RECONCILE_INTERVAL_MS = 5 * 60 * 1000;
+    
+    // Delayed sends - held in the backlog until due, with a WorkManager wake-up for the earliest one
+    private static final String LEGACY_TIMER_FILE = "outbound_timers.bin"; // Written by older versions
+    private static final String WORK_NAME_WAKEUP = "sms_timer_wakeup";
+    private static final long WAKE_RESTORE_TIMEOUT_MS = 5000;
+    
     private final Context context;
     private final WorkManager workManager;
+    private final OutboundBacklog backlog;
+    private final AtomicInteger inFlightWork = new AtomicInteger(0);
+    private final ServiceStateMonitor serviceMonitor;
+    
+    // Per-SIM ack-clocked window for sequential fan-out
+    private final SendWindow sendWindow = new SendWindow();
+    
+    // Entries for a SIM without service stay parked in the backlog (no WorkManager wakeups)
+    private final OutboundBacklog.EntryFilter notParked = entry -> !isParked(entry);
+    
+    // Entries that may be admitted right now: due, not parked, and windowed ones only while their SIM has a free slot
+    private final OutboundBacklog.EntryFilter admissible = entry -> entry.getRemainingDelayMs() == 0
+            && !isParked(entry)
+            && (!entry.windowed || sendWindow.hasCapacity(getWindowSubscription(entry)));
+    
+    // Due time of every backlog entry still waiting out a delay (fan-out spacing, retry backoff), guarded by this
+    // The entries themselves live in the backlog, so they share its memory bound and shedding
+    private final Map<UUID, Long> timed = new HashMap<>();
+    private final long[] lastSpacedAt = new long[SmsQueueWorker.PRIORITY_LOW + 1]; // Per priority
+    private final CountDownLatch timersRestored = new CountDownLatch(1);
+    private TimerWheel.Timeout dueTimer; // Armed for the earliest due time, guarded by this
+    private long dueTimerAt = Long.MAX_VALUE; // Guarded by this
+    private long wakeupScheduledAt = 0; // Guarded by this
     
     // Singleton instance
     private static SmsQueueManager instance;
@@ -59,6 +101,22 @@ public class SmsQueueManager {
             Log.e(TAG, "Unexpected error getting WorkManager instance: " + e.getMessage(), e);
             throw new RuntimeException("Failed to initialize SmsQueueManager: " + e.getMessage(), e);
         }
+        
+        // Drain parked sends as soon as their SIM gets service back
+        this.serviceMonitor = ServiceStateMonitor.getInstance(this.context);
+        this.serviceMonitor.addListener(subscriptionId -> {
+            logDebug("Service restored on subscription " + subscriptionId + ", draining parked SMS");
+            ThreadManager.getInstance().executeBackground(this::pumpBacklog, ThreadManager.TASK_PRIORITY_SMS, "backlog-pump");
+        });
+        
+        // Restore the backlog, pending due times and admitted work count from a previous process
+        this.backlog = new OutboundBacklog(this.context);
+        ThreadManager.getInstance().executeBackground(() -> {
+            restoreBacklog();
+            reseedInFlightWork();
+            pumpBacklog();
+            scheduleInFlightReconcile();
+        }, ThreadManager.TASK_PRIORITY_SMS);
     }
     
     /**
@@ -126,6 +184,41 @@ public class SmsQueueManager {
         return queueLowPrioritySms(originalSender, originalMessage, targetNumber, timestamp, -1, -1, -1, -1);
     }
     
+    /**
+     * Requeue a previously attempted SMS (e.g. rerouted to another SIM after a send failure)
+     * @param retryCount Number of attempts already made
+     * @return UUID of the queued work, or null if queueing failed
+     */
+    public UUID queueRetrySms(String originalSender, String originalMessage, String targetNumber, long timestamp,
+                              int retryCount, int priority, int sourceSubscriptionId, int forwardingSubscriptionId,
+                              int sourceSimSlot, int forwardingSimSlot) {
+        return queueSms(originalSender, originalMessage, targetNumber, timestamp, retryCount, priority,
+                       sourceSubscriptionId, forwardingSubscriptionId, sourceSimSlot, forwardingSimSlot);
+    }
+    
+    /**
+     * Requeue a send that failed on one SIM for immediate failover to another
+     * Skips retry backoff and priority spacing: the send already waited its turn and the new SIM
+     * is healthy, so it is admitted right away (or held in the backlog if no slot is free)
+     * @param retryCount Number of attempts already made, carried over unchanged
+     * @return UUID of the queued work, or null if queueing failed
+     */
+    public UUID queueRerouteSms(String originalSender, String originalMessage, String targetNumber, long timestamp,
+                                int retryCount, int priority, int sourceSubscriptionId, int forwardingSubscriptionId,
+                                int sourceSimSlot, int forwardingSimSlot) {
+        try {
+            OutboundBacklog.Entry entry = new OutboundBacklog.Entry(UUID.randomUUID(),
+                originalSender, originalMessage, targetNumber, timestamp, retryCount, priority,
+                sourceSubscriptionId, forwardingSubscriptionId, sourceSimSlot, forwardingSimSlot,
+                0, System.currentTimeMillis(), false);
+            return admit(entry);
+            
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to queue rerouted SMS: " + e.getMessage(), e);
+            return null;
+        }
+    }
+    
     /**
      * Queue SMS for delayed processing with WorkManager
      * Replaces Handler.postDelayed() to prevent memory leaks
@@ -137,48 +230,29 @@ public class SmsQueueManager {
                                long timestamp, long delay, int priority,
                                int sourceSubscriptionId, int forwardingSubscriptionId, 
                                int sourceSimSlot, int forwardingSimSlot) {
+        return queueDelayedSms(originalSender, originalMessage, targetNumber, timestamp, delay, 0, priority,
+                              sourceSubscriptionId, forwardingSubscriptionId, sourceSimSlot, forwardingSimSlot);
+    }
+    
+    /**
+     * Queue a previously attempted SMS for delayed processing (e.g. deferred by the send budget)
+     * @param delay Delay in milliseconds before processing, replaces the retry backoff
+     * @param retryCount Number of attempts already made, carried over unchanged
+     * @return UUID of the queued work, or null if queueing failed
+     */
+    public UUID queueDelayedSms(String originalSender, String originalMessage, String targetNumber, 
+                               long timestamp, long delay, int retryCount, int priority,
+                               int sourceSubscriptionId, int forwardingSubscriptionId, 
+                               int sourceSimSlot, int forwardingSimSlot) {
         try {
-            // Create input data with dual SIM support
-            Data inputData = SmsQueueWorker.createInputData(
-                originalSender, originalMessage, targetNumber, timestamp, 0, priority,
-                sourceSubscriptionId, forwardingSubscriptionId, sourceSimSlot, forwardingSimSlot
-            );
-            
-            // Create constraints for SMS processing
-            Constraints.Builder constraintsBuilder = new Constraints.Builder()
-                .setRequiredNetworkType(NetworkType.NOT_REQUIRED)
-                .setRequiresBatteryNotLow(false)
-                .setRequiresCharging(false)
-                .setRequiresStorageNotLow(true);
-
-            if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.M) {
-                constraintsBuilder.setRequiresDeviceIdle(false);
-            }
-
-            Constraints constraints = constraintsBuilder.build();
-            
-            // Create work request with specified delay
-            OneTimeWorkRequest workRequest = new OneTimeWorkRequest.Builder(SmsQueueWorker.class)
-                .setInputData(inputData)
-                .setConstraints(constraints)
-                .setInitialDelay(delay, TimeUnit.MILLISECONDS) // Use specified delay
-                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, 
-                                   SmsQueueWorker.calculateBackoffDelay(0), 
-                                   TimeUnit.MILLISECONDS)
-                .addTag(getWorkTag(priority))
-                .addTag(WORK_TAG_BATCH)
-                .build();
-            
-            // Enqueue work with REPLACE policy for delayed SMS
-            workManager.enqueueUniqueWork(
-                "delayed_sms_" + targetNumber + "_" + timestamp, 
-                ExistingWorkPolicy.REPLACE, 
-                workRequest
-            );
+            OutboundBacklog.Entry entry = new OutboundBacklog.Entry(UUID.randomUUID(),
+                originalSender, originalMessage, targetNumber, timestamp, retryCount, priority,
+                sourceSubscriptionId, forwardingSubscriptionId, sourceSimSlot, forwardingSimSlot,
+                delay, System.currentTimeMillis(), false);
             
+            UUID workId = submit(entry);
             logDebug("Delayed SMS queued: priority=" + priority + ", delay=" + delay + "ms");
-            
-            return workRequest.getId();
+            return workId;
             
         } catch (Exception e) {
             Log.e(TAG, "Failed to queue delayed SMS: " + e.getMessage(), e);
@@ -192,12 +266,99 @@ public class SmsQueueManager {
     private UUID queueSms(String originalSender, String originalMessage, String targetNumber, 
                          long timestamp, int retryCount, int priority, int sourceSubscriptionId, 
                          int forwardingSubscriptionId, int sourceSimSlot, int forwardingSimSlot) {
+        try {
+            OutboundBacklog.Entry entry = new OutboundBacklog.Entry(UUID.randomUUID(),
+                originalSender, originalMessage, targetNumber, timestamp, retryCount, priority,
+                sourceSubscriptionId, forwardingSubscriptionId, sourceSimSlot, forwardingSimSlot,
+                0, System.currentTimeMillis(), false);
+            return submit(entry);
+            
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to queue SMS: " + e.getMessage(), e);
+            return null;
+        }
+    }
+    
+    /**
+     * Queue SMS through the per-SIM ack-clocked send window
+     * Used for sequential fan-out: each SIM has at most W sends in flight and the next one
+     * is released as soon as a sent-ack arrives, instead of a fixed per-target delay
+     * @return UUID of the queued work, or null if queueing failed
+     */
+    public UUID queueWindowedSms(String originalSender, String originalMessage, String targetNumber, long timestamp,
+                                 int priority, int sourceSubscriptionId, int forwardingSubscriptionId,
+                                 int sourceSimSlot, int forwardingSimSlot) {
+        try {
+            OutboundBacklog.Entry entry = new OutboundBacklog.Entry(UUID.randomUUID(),
+                originalSender, originalMessage, targetNumber, timestamp, 0, priority,
+                sourceSubscriptionId, forwardingSubscriptionId, sourceSimSlot, forwardingSimSlot,
+                0, System.currentTimeMillis(), true);
+            return submit(entry);
+            
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to queue windowed SMS: " + e.getMessage(), e);
+            return null;
+        }
+    }
+    
+    /**
+     * Hold an entry in the backlog until its next attempt, or admit it right away if it is due
+     * @return Work ID the entry will run under (also for held entries), or null if enqueueing failed
+     */
+    private UUID submit(OutboundBacklog.Entry entry) {
+        long nextAttemptAt = getNextAttemptAt(entry);
+        if (nextAttemptAt > System.currentTimeMillis()) {
+            return admit(entry.withDueAt(nextAttemptAt));
+        }
+        return admit(entry);
+    }
+    
+    /**
+     * Admit an entry straight to WorkManager if a slot is free, otherwise hold it in the bounded backlog
+     * @return Work ID the entry will run under (also for backlogged entries), or null if enqueueing failed
+     */
+    private UUID admit(OutboundBacklog.Entry entry) {
+        List<OutboundBacklog.Entry> shed = new ArrayList<>();
+        synchronized (this) {
+            if (admissible.accept(entry) && inFlightWork.get() < MAX_IN_FLIGHT_WORK
+                    && !backlog.hasEntryAtOrAbove(entry.priority, admissible)) {
+                return enqueueWork(entry) ? entry.workId : null;
+            }
+            
+            int result = backlog.offer(entry, shed);
+            logDebug("SMS held in outbound backlog: priority=" + entry.priority + ", result=" + result
+                    + ", " + backlog.getStats());
+            if ((result == OutboundBacklog.OFFER_QUEUED || result == OutboundBacklog.OFFER_SPILLED)
+                    && entry.getRemainingDelayMs() > 0) {
+                trackDue(entry.workId, entry.getDueAt());
+            }
+            for (OutboundBacklog.Entry dropped : shed) {
+                timed.remove(dropped.workId);
+            }
+        }
+        
+        for (OutboundBacklog.Entry dropped : shed) {
+            logShedHistory(dropped);
+        }
+        return entry.workId;
+    }
+    
+    /**
+     * Build and enqueue the WorkRequest for a backlog entry
+     * @return true if WorkManager accepted the request
+     */
+    private boolean enqueueWork(OutboundBacklog.Entry entry) {
         try {
             // Create input data with dual SIM support
             Data inputData = SmsQueueWorker.createInputData(
-                originalSender, originalMessage, targetNumber, timestamp, retryCount, priority,
-                sourceSubscriptionId, forwardingSubscriptionId, sourceSimSlot, forwardingSimSlot
+                entry.originalSender, entry.originalMessage, entry.targetNumber, entry.timestamp,
+                entry.retryCount, entry.priority, entry.sourceSubscriptionId, entry.forwardingSubscriptionId,
+                entry.sourceSimSlot, entry.forwardingSimSlot
             );
+            inputData = new Data.Builder()
+                .putAll(inputData)
+                .putLong(SmsQueueWorker.KEY_ENQUEUED_AT, entry.createdAt + entry.delayMs)
+                .build();
             
             // Create constraints for SMS processing
             Constraints.Builder constraintsBuilder = new Constraints.Builder()
@@ -213,41 +374,467 @@ public class SmsQueueManager {
 
             Constraints constraints = constraintsBuilder.build();
             
-            // Calculate delay and backoff based on priority and retry count
-            long initialDelay = calculateInitialDelay(priority, retryCount);
-            long backoffDelay = SmsQueueWorker.calculateBackoffDelay(retryCount);
-            
             // Create work request
             OneTimeWorkRequest workRequest = new OneTimeWorkRequest.Builder(SmsQueueWorker.class)
+                .setId(entry.workId)
                 .setInputData(inputData)
                 .setConstraints(constraints)
-                .setInitialDelay(initialDelay, TimeUnit.MILLISECONDS)
-                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, backoffDelay, TimeUnit.MILLISECONDS)
-                .addTag(getWorkTag(priority))
+                .addTag(getWorkTag(entry.priority))
                 .addTag(WORK_TAG_BATCH)
                 .build();
             
-            // Enqueue work with policy based on priority
-            ExistingWorkPolicy policy = getWorkPolicy(priority);
-            String workName = getWorkName(priority);
-            
-            workManager.enqueueUniqueWork(workName, policy, workRequest);
+            // Every admitted entry is its own independent request: delays, spacing and retry backoff
+            // were already waited out in the backlog, and a shared unique name would let one send
+            // cancel (REPLACE) or fail (APPEND) another without its slot ever being freed
+            Operation operation = workManager.enqueue(workRequest);
+            inFlightWork.incrementAndGet();
+            // Backlog entries stay on disk until WorkManager has persisted the request
+            operation.getResult().addListener(() -> onEnqueueSettled(entry, operation), Runnable::run);
+            if (entry.windowed) {
+                sendWindow.onDispatched(getWindowSubscription(entry), entry.workId);
+                // Reclaim the slot if the ack never arrives
+                TimerWheel.getInstance().schedule(this::pumpBacklog, SendWindow.getAckTimeoutMs(), TimeUnit.MILLISECONDS,
+                    ThreadManager.TASK_PRIORITY_SMS, "backlog-pump");
+            }
             
             // Log with SIM information if available
             String simInfo = "";
-            if (forwardingSubscriptionId != -1 || forwardingSimSlot != -1) {
-                simInfo = ", forwarding via subscription " + forwardingSubscriptionId + ", slot " + forwardingSimSlot;
+            if (entry.forwardingSubscriptionId != -1 || entry.forwardingSimSlot != -1) {
+                simInfo = ", forwarding via subscription " + entry.forwardingSubscriptionId + ", slot " + entry.forwardingSimSlot;
             }
-            logDebug("SMS queued for processing: priority=" + priority + ", delay=" + initialDelay + "ms, retry=" + retryCount + simInfo);
+            logDebug("SMS queued for processing: priority=" + entry.priority + ", retry=" + entry.retryCount + simInfo);
             
-            return workRequest.getId();
+            return true;
             
         } catch (Exception e) {
             Log.e(TAG, "Failed to queue SMS: " + e.getMessage(), e);
+            return false;
+        }
+    }
+    
+    /**
+     * Release a backlog entry once WorkManager has accepted (or refused) its request
+     */
+    private void onEnqueueSettled(OutboundBacklog.Entry entry, Operation operation) {
+        try {
+            operation.getResult().get();
+        } catch (Exception e) {
+            Log.e(TAG, "WorkManager failed to enqueue SMS: " + e.getMessage(), e);
+            logShedHistory(entry);
+            onSendAborted(entry.workId);
+            onWorkFinished();
+        }
+        backlog.complete(entry);
+    }
+    
+    /**
+     * Called by SmsQueueWorker when a send finishes for good (success or final failure)
+     * Frees a WorkManager slot and admits the next backlog entry
+     */
+    public void onWorkFinished() {
+        int count;
+        do {
+            count = inFlightWork.get();
+        } while (count > 0 && !inFlightWork.compareAndSet(count, count - 1));
+        pumpBacklog();
+    }
+    
+    /**
+     * Called by SmsQueueWorker right before handing a send to the radio
+     * @param subscriptionId Subscription the worker actually sends on, after any circuit breaker reroute
+     */
+    public void onSendStarted(UUID workId, int subscriptionId) {
+        if (sendWindow.onSendStarted(workId, subscriptionId)) {
+            ThreadManager.getInstance().executeBackground(this::pumpBacklog, ThreadManager.TASK_PRIORITY_SMS, "backlog-pump");
+        }
+    }
+    
+    /**
+     * Window key for an entry: the default SIM (-1) is resolved the way SmsQueueWorker resolves it,
+     * so a send is charged to the window of the SIM it will actually use
+     */
+    private int getWindowSubscription(OutboundBacklog.Entry entry) {
+        if (entry.forwardingSubscriptionId == -1 && SimManager.isDualSimSupported(context)) {
+            return SimManager.getDefaultSmsSubscriptionId(context);
+        }
+        return entry.forwardingSubscriptionId;
+    }
+    
+    /**
+     * Called by SmsCallbackReceiver when a sent-ack arrives
+     * Clocks the send window and releases the next windowed send
+     */
+    public void onSendAcked(UUID workId, boolean success) {
+        if (sendWindow.onAck(workId, success)) {
+            ThreadManager.getInstance().executeBackground(this::pumpBacklog, ThreadManager.TASK_PRIORITY_SMS, "backlog-pump");
+        }
+    }
+    
+    /**
+     * Called by SmsQueueWorker when a send ends without reaching the radio (failed, parked)
+     */
+    public void onSendAborted(UUID workId) {
+        if (sendWindow.onAborted(workId)) {
+            ThreadManager.getInstance().executeBackground(this::pumpBacklog, ThreadManager.TASK_PRIORITY_SMS, "backlog-pump");
+        }
+    }
+    
+    /**
+     * Get per-SIM send window summary for debug screens
+     */
+    public String getSendWindowSummary() {
+        return sendWindow.getStatusSummary();
+    }
+    
+    /**
+     * Move backlog entries into WorkManager while slots are free
+     */
+    private void pumpBacklog() {
+        List<OutboundBacklog.Entry> failed = new ArrayList<>();
+        synchronized (this) {
+            while (inFlightWork.get() < MAX_IN_FLIGHT_WORK) {
+                OutboundBacklog.Entry entry = backlog.poll(admissible);
+                if (entry == null) {
+                    break;
+                }
+                timed.remove(entry.workId);
+                if (!enqueueWork(entry)) {
+                    failed.add(entry);
+                }
+            }
+        }
+        
+        for (OutboundBacklog.Entry entry : failed) {
+            logShedHistory(entry);
+            backlog.complete(entry);
+        }
+    }
+    
+    /**
+     * Work out when an entry may next be attempted
+     * Explicit delays count from when the entry was queued, retries back off exponentially, and
+     * NORMAL / LOW sends are spaced out one after another per priority (sequential fan-out spacing)
+     */
+    private synchronized long getNextAttemptAt(OutboundBacklog.Entry entry) {
+        long now = System.currentTimeMillis();
+        if (entry.delayMs > 0) {
+            return entry.createdAt + entry.delayMs;
+        }
+        if (entry.retryCount > 0) {
+            return now + calculateInitialDelay(entry.priority, entry.retryCount);
+        }
+        long spacing = calculateInitialDelay(entry.priority, 0);
+        // The send window paces windowed sends by their acks
+        if (entry.windowed || spacing == 0 || entry.priority < 0 || entry.priority >= lastSpacedAt.length) {
+            return now;
+        }
+        long nextAttemptAt = Math.max(now, lastSpacedAt[entry.priority]) + spacing;
+        lastSpacedAt[entry.priority] = nextAttemptAt;
+        return nextAttemptAt;
+    }
+    
+    /**
+     * Remember when a backlog entry falls due and arm the timers for it
+     */
+    private synchronized void trackDue(UUID workId, long dueAt) {
+        timed.put(workId, dueAt);
+        if (dueAt < dueTimerAt) {
+            armDueTimer(dueAt);
+        }
+        logDebug("SMS held until due: in " + (dueAt - System.currentTimeMillis()) + "ms");
+    }
+    
+    /**
+     * Keep one timer wheel timeout and one WorkManager wake-up armed for the earliest due time
+     * Called with this held
+     */
+    private void armDueTimer(long dueAt) {
+        if (dueTimer != null) {
+            dueTimer.cancel();
+            dueTimer = null;
+        }
+        dueTimerAt = dueAt;
+        if (dueAt != Long.MAX_VALUE) {
+            dueTimer = TimerWheel.getInstance().schedule(this::onDue,
+                Math.max(0, dueAt - System.currentTimeMillis()), TimeUnit.MILLISECONDS,
+                ThreadManager.TASK_PRIORITY_SMS, "backlog-due");
+        }
+        scheduleWakeup(dueAt);
+    }
+    
+    /**
+     * Timer wheel callback, the earliest held entries are due
+     */
+    private void onDue() {
+        synchronized (this) {
+            dueTimer = null;
+            dueTimerAt = Long.MAX_VALUE;
+            releaseDue();
+        }
+        pumpBacklog();
+    }
+    
+    /**
+     * Forget the due times that have passed and re-arm for the next one
+     * Called with this held; the entries themselves are admitted by pumpBacklog
+     */
+    private int releaseDue() {
+        long now = System.currentTimeMillis();
+        long earliest = Long.MAX_VALUE;
+        int released = 0;
+        Iterator<Long> iterator = timed.values().iterator();
+        while (iterator.hasNext()) {
+            long dueAt = iterator.next();
+            if (dueAt <= now) {
+                iterator.remove();
+                released++;
+            } else {
+                earliest = Math.min(earliest, dueAt);
+            }
+        }
+        if (earliest != dueTimerAt) {
+            armDueTimer(earliest);
+        }
+        return released;
+    }
+    
+    /**
+     * Called by QueueWakeupWorker: admit every held send that is due and the rest of the waiting backlog
+     * Runs synchronously so due sends reach WorkManager before the worker lets the process go
+     */
+    public void wake() {
+        try {
+            if (!timersRestored.await(WAKE_RESTORE_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                Log.w(TAG, "Backlog restore still running on wake-up");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        
+        int due;
+        synchronized (this) {
+            due = releaseDue();
+        }
+        logDebug("Woken by WorkManager, " + due + " held SMS due");
+        pumpBacklog();
+    }
+    
+    /**
+     * Get number of backlog entries still waiting out a delay (included in the backlog stats)
+     */
+    public synchronized int getTimedCount() {
+        return timed.size();
+    }
+    
+    /**
+     * Keep a single WorkManager wake-up armed for the earliest due time, so held sends are
+     * admitted even if the process was killed in the meantime
+     * Called with this held
+     */
+    private void scheduleWakeup(long earliest) {
+        try {
+            if (earliest == Long.MAX_VALUE) {
+                if (wakeupScheduledAt != 0) {
+                    workManager.cancelUniqueWork(WORK_NAME_WAKEUP);
+                    wakeupScheduledAt = 0;
+                }
+                return;
+            }
+            if (earliest == wakeupScheduledAt) {
+                return;
+            }
+            OneTimeWorkRequest wakeup = new OneTimeWorkRequest.Builder(QueueWakeupWorker.class)
+                .setInitialDelay(Math.max(0, earliest - System.currentTimeMillis()), TimeUnit.MILLISECONDS)
+                .build();
+            workManager.enqueueUniqueWork(WORK_NAME_WAKEUP, ExistingWorkPolicy.REPLACE, wakeup);
+            wakeupScheduledAt = earliest;
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to schedule SMS timer wake-up: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Restore the backlog left by a previous process and re-arm the due times of held entries
+     */
+    private void restoreBacklog() {
+        OutboundBacklog.EntryFilter unknown = getUnknownToWorkManager();
+        long now = System.currentTimeMillis();
+        Map<UUID, Long> held = new HashMap<>();
+        // Collected outside our lock: the filter runs with the backlog locked
+        backlog.restore(entry -> {
+            if (unknown != null && !unknown.accept(entry)) {
+                return false;
+            }
+            if (entry.getDueAt() > now) {
+                held.put(entry.workId, entry.getDueAt());
+            }
+            return true;
+        });
+        for (Map.Entry<UUID, Long> dueAt : held.entrySet()) {
+            trackDue(dueAt.getKey(), dueAt.getValue());
+        }
+        
+        importLegacyTimers();
+        timersRestored.countDown();
+    }
+    
+    /**
+     * Move sends held in the timer file of an older version into the backlog, once
+     */
+    private void importLegacyTimers() {
+        File timerFile = new File(context.getFilesDir(), LEGACY_TIMER_FILE);
+        if (!timerFile.exists()) {
+            return;
+        }
+        List<OutboundBacklog.Entry> restored = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(timerFile)))) {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                long nextAttemptAt = in.readLong();
+                OutboundBacklog.Entry entry = OutboundBacklog.readEntry(in);
+                if (entry == null) {
+                    break;
+                }
+                restored.add(entry.withDueAt(nextAttemptAt));
+            }
+        } catch (EOFException e) {
+            // Torn write - keep what was read
+            logDebug("Truncated timer file");
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to restore SMS timers: " + e.getMessage(), e);
+        }
+        
+        for (OutboundBacklog.Entry entry : restored) {
+            if (admit(entry) == null) {
+                logShedHistory(entry);
+            }
+        }
+        if (!timerFile.delete()) {
+            Log.w(TAG, "Failed to delete timer file");
+        }
+        if (!restored.isEmpty()) {
+            Log.i(TAG, "Moved " + restored.size() + " delayed SMS from the timer file to the backlog");
+        }
+    }
+    
+    /**
+     * Check whether an entry's SIM has no service (and no other SIM can take it)
+     */
+    private boolean isParked(OutboundBacklog.Entry entry) {
+        serviceMonitor.ensureMonitoring(entry.forwardingSubscriptionId);
+        return serviceMonitor.shouldPark(entry.forwardingSubscriptionId);
+    }
+    
+    /**
+     * Get number of backlog entries parked until their SIM regains service
+     */
+    public int getParkedCount() {
+        return backlog.countRejected(notParked);
+    }
+    
+    /**
+     * Resync the admitted work count every IN_FLIGHT_RECONCILE_INTERVAL_MS and admit waiting backlog
+     * Work cancelled or dropped by WorkManager never reaches SmsQueueWorker, so its slot is only
+     * freed here
+     */
+    private void scheduleInFlightReconcile() {
+        TimerWheel.getInstance().schedule(() -> {
+            reseedInFlightWork();
+            pumpBacklog();
+            scheduleInFlightReconcile();
+        }, IN_FLIGHT_RECONCILE_INTERVAL_MS, TimeUnit.MILLISECONDS, ThreadManager.TASK_PRIORITY_SMS, "in-flight-reconcile");
+    }
+    
+    /**
+     * Resync the admitted work count with WorkManager
+     * Holds the queue lock so no admission slips in between the query and the reset; WorkManager
+     * runs enqueues and queries on one serial executor, so every admitted request is counted
+     */
+    private synchronized void reseedInFlightWork() {
+        try {
+            WorkQuery query = WorkQuery.Builder
+                .fromTags(List.of(WORK_TAG_BATCH))
+                .addStates(List.of(WorkInfo.State.ENQUEUED, WorkInfo.State.RUNNING, WorkInfo.State.BLOCKED))
+                .build();
+            int admitted = workManager.getWorkInfos(query).get().size();
+            inFlightWork.set(admitted);
+            logDebug("In-flight SMS work reseeded: " + admitted);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to reseed in-flight SMS work count: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Filter for restored backlog entries that WorkManager does not know yet
+     * The previous process may have been killed after WorkManager accepted a request but before
+     * its backlog entry was released
+     * @return Filter, or null to keep every restored entry if WorkManager cannot be queried
+     */
+    private OutboundBacklog.EntryFilter getUnknownToWorkManager() {
+        try {
+            Set<UUID> known = new HashSet<>();
+            for (WorkInfo info : workManager.getWorkInfos(WorkQuery.Builder.fromTags(List.of(WORK_TAG_BATCH)).build()).get()) {
+                known.add(info.getId());
+            }
+            return entry -> !known.contains(entry.workId);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to query WorkManager for restored backlog: " + e.getMessage(), e);
             return null;
         }
     }
     
+    /**
+     * Record an SMS dropped by the backlog shedding policy in history
+     */
+    private void logShedHistory(OutboundBacklog.Entry entry) {
+        Log.w(TAG, "Outbound backlog full, dropped priority " + entry.priority + " SMS");
+        try {
+            SmsHistory history = new SmsHistory(
+                entry.originalSender,
+                entry.originalMessage,
+                entry.targetNumber,
+                "",
+                entry.timestamp,
+                false,
+                "Dropped: outbound backlog full",
+                entry.sourceSimSlot,
+                entry.forwardingSimSlot,
+                entry.sourceSubscriptionId,
+                entry.forwardingSubscriptionId
+            );
+            HistoryWriter.getInstance(context).enqueue(history);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to log dropped SMS history: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Get outbound backlog metrics (size, spill volume, shed counts)
+     */
+    public OutboundBacklog.BacklogStats getBacklogStats() {
+        return backlog.getStats();
+    }
+    
+    /**
+     * Get number of WorkRequests currently admitted to WorkManager
+     */
+    public int getInFlightWorkCount() {
+        return inFlightWork.get();
+    }
+    
+    /**
+     * Drop the in-memory backlog tier if the queue manager is running, its entries stay on disk
+     */
+    public static void trimBacklogIfActive() {
+        SmsQueueManager manager;
+        synchronized (SmsQueueManager.class) {
+            manager = instance;
+        }
+        if (manager != null) {
+            manager.backlog.trimMemory();
+        }
+    }
+    
     /**
      * Queue SMS for processing with specified priority (backward compatibility)
      */
@@ -266,7 +853,7 @@ public class SmsQueueManager {
     public void queueMissedCallNotification(String callerNumber, String formattedMessage, long timestamp) {
         try {
             // Get all active target numbers
-            ThreadManager.getInstance().executeDatabase(() -> {
+            ThreadManager.getInstance().executeDatabaseRead(() -> {
                 try {
                     AppDatabase database = AppDatabase.getInstance(context);
                     TargetNumberDao targetDao = database.targetNumberDao();
@@ -290,7 +877,7 @@ public class SmsQueueManager {
                 } catch (Exception e) {
                     Log.e(TAG, "Failed to queue missed call notifications: " + e.getMessage(), e);
                 }
-            });
+            }, ThreadManager.TASK_PRIORITY_SMS, "missed-call-fanout");
             
         } catch (Exception e) {
             Log.e(TAG, "Error in queueMissedCallNotification: " + e.getMessage(), e);
@@ -340,6 +927,12 @@ public class SmsQueueManager {
     public void cancelAllPendingSms() {
         try {
             workManager.cancelAllWorkByTag(WORK_TAG_BATCH);
+            synchronized (this) {
+                timed.clear();
+                armDueTimer(Long.MAX_VALUE);
+            }
+            backlog.clear();
+            inFlightWork.set(0);
             logDebug("All pending SMS cancelled from queue");
         } catch (Exception e) {
             Log.e(TAG, "Failed to cancel pending SMS: " + e.getMessage(), e);
@@ -352,6 +945,13 @@ public class SmsQueueManager {
     public void cancelSms(UUID workId) {
         try {
             if (workId != null) {
+                synchronized (this) {
+                    timed.remove(workId);
+                }
+                if (backlog.remove(workId)) {
+                    logDebug("SMS removed from outbound backlog: " + workId);
+                    return;
+                }
                 workManager.cancelWorkById(workId);
                 logDebug("SMS cancelled from queue: " + workId);
             }
@@ -382,6 +982,10 @@ public class SmsQueueManager {
                 logDebug("Cancelled stuck work: " + workInfo.getId());
             }
             
+            // Resync admitted work count and admit any waiting backlog
+            reseedInFlightWork();
+            pumpBacklog();
+            
             logDebug("Queue maintenance completed");
             
         } catch (Exception e) {
@@ -391,6 +995,7 @@ public class SmsQueueManager {
     
     /**
      * Calculate initial delay based on priority and retry count
+     * The base delay is also the spacing between consecutive sends of the same priority
      */
     private long calculateInitialDelay(int priority, int retryCount) {
         long baseDelay = 0;
@@ -400,10 +1005,10 @@ public class SmsQueueManager {
                 baseDelay = 0; // Immediate processing
                 break;
             case SmsQueueWorker.PRIORITY_NORMAL:
-                baseDelay = 1000; // 1 second delay
+                baseDelay = 1500; // 1.5 second spacing (includes the worker's former 500ms sleep)
                 break;
             case SmsQueueWorker.PRIORITY_LOW:
-                baseDelay = 5000; // 5 seconds delay
+                baseDelay = 6000; // 6 second spacing (includes the worker's former 1s sleep)
                 break;
         }
         
@@ -431,38 +1036,6 @@ public class SmsQueueManager {
         }
     }
     
-    /**
-     * Get work name based on priority
-     */
-    private String getWorkName(int priority) {
-        switch (priority) {
-            case SmsQueueWorker.PRIORITY_HIGH:
-                return WORK_NAME_HIGH;
-            case SmsQueueWorker.PRIORITY_NORMAL:
-                return WORK_NAME_NORMAL;
-            case SmsQueueWorker.PRIORITY_LOW:
-                return WORK_NAME_LOW;
-            default:
-                return WORK_NAME_NORMAL;
-        }
-    }
-    
-    /**
-     * Get work policy based on priority
-     */
-    private ExistingWorkPolicy getWorkPolicy(int priority) {
-        switch (priority) {
-            case SmsQueueWorker.PRIORITY_HIGH:
-                return ExistingWorkPolicy.REPLACE; // Replace for urgent SMS
-            case SmsQueueWorker.PRIORITY_NORMAL:
-                return ExistingWorkPolicy.APPEND; // Append for normal processing
-            case SmsQueueWorker.PRIORITY_LOW:
-                return ExistingWorkPolicy.APPEND_OR_REPLACE; // Flexible for low priority
-            default:
-                return ExistingWorkPolicy.APPEND;
-        }
-    }
-    
     /**
      * Secure debug logging
      */
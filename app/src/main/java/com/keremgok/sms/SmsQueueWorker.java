@@ -10,6 +10,7 @@ import androidx.work.Data;
 import androidx.work.Worker;
 import androidx.work.WorkerParameters;
 import java.util.ArrayList;
+import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -27,6 +28,7 @@ public class SmsQueueWorker extends Worker {
     public static final String KEY_TIMESTAMP = "timestamp";
     public static final String KEY_RETRY_COUNT = "retry_count";
     public static final String KEY_PRIORITY = "priority";
+    public static final String KEY_ENQUEUED_AT = "enqueued_at"; // When the entry was queued and due, for latency
     
     // Dual SIM Support Keys
     public static final String KEY_SOURCE_SUBSCRIPTION_ID = "source_subscription_id";
@@ -43,6 +45,9 @@ public class SmsQueueWorker extends Worker {
     private static final int MAX_RETRY_COUNT = 3;
     private static final long INITIAL_RETRY_DELAY_MS = 2000; // 2 seconds
     
+    // Subscription the send actually goes out on (resolved default SIM when none was selected)
+    private int breakerSubscriptionId = -1;
+    
     public SmsQueueWorker(@NonNull Context context, @NonNull WorkerParameters workerParams) {
         super(context, workerParams);
     }
@@ -87,15 +92,60 @@ public class SmsQueueWorker extends Worker {
                                    targetNumber != null ? targetNumber : "Unknown", 
                                    timestamp, "Invalid input data", 
                                    sourceSimSlot, forwardingSimSlot, sourceSubscriptionId, forwardingSubscriptionId);
+                notifySendAborted();
+                notifyWorkFinished();
                 return Result.failure();
             }
             
+            // Reroute away from a SIM whose circuit breaker is open
+            int trackedSubscriptionId = forwardingSubscriptionId != -1 ? forwardingSubscriptionId
+                    : (SimManager.isDualSimSupported(getApplicationContext())
+                        ? SimManager.getDefaultSmsSubscriptionId(getApplicationContext()) : -1);
+            int healthySubscriptionId = SimCircuitBreaker.getInstance()
+                    .selectSubscription(getApplicationContext(), trackedSubscriptionId);
+            if (healthySubscriptionId != trackedSubscriptionId) {
+                forwardingSubscriptionId = healthySubscriptionId;
+                forwardingSimSlot = SimManager.getSlotIndexForSubscription(getApplicationContext(), healthySubscriptionId);
+                logDebug("Circuit open on subscription " + trackedSubscriptionId + ", rerouted to " + healthySubscriptionId);
+            }
+            breakerSubscriptionId = healthySubscriptionId;
+            
+            // No service on any usable SIM - park instead of burning retries
+            ServiceStateMonitor serviceMonitor = ServiceStateMonitor.getInstance(getApplicationContext());
+            serviceMonitor.ensureMonitoring(healthySubscriptionId);
+            if (serviceMonitor.shouldPark(healthySubscriptionId)) {
+                logDebug("No service on subscription " + healthySubscriptionId + ", parking SMS until service returns");
+                SmsQueueManager.getInstance(getApplicationContext()).queueRetrySms(
+                    originalSender, originalMessage, targetNumber, timestamp, retryCount, priority,
+                    sourceSubscriptionId, forwardingSubscriptionId, sourceSimSlot, forwardingSimSlot);
+                notifySendAborted();
+                notifyWorkFinished();
+                return Result.success();
+            }
+            
             // Format forwarded message using SmsFormatter
             SmsFormatter formatter = new SmsFormatter(getApplicationContext());
             String forwardedMessage = formatter.formatMessage(originalSender, originalMessage, timestamp,
                                                             sourceSimSlot, forwardingSimSlot,
                                                             sourceSubscriptionId, forwardingSubscriptionId);
             
+            // Check the SIM's daily send budget using the real segment count, an allowed send is reserved
+            int segments = getSmsManagerWithFallback(forwardingSubscriptionId).divideMessage(forwardedMessage).size();
+            SimSendBudget sendBudget = SimSendBudget.getInstance(getApplicationContext());
+            SimSendBudget.Decision budgetDecision = sendBudget.check(healthySubscriptionId, priority, segments);
+            if (!budgetDecision.allowed) {
+                logDebug("Send budget on subscription " + healthySubscriptionId + ": " + budgetDecision.reason
+                        + ", deferring SMS by " + budgetDecision.delayMs + "ms");
+                SimLogger.logSimOperation("BUDGET_DEFER", sourceSubscriptionId, healthySubscriptionId,
+                    budgetDecision.reason + ", priority " + priority + ", " + segments + " segments", SimLogger.LEVEL_INFO);
+                SmsQueueManager.getInstance(getApplicationContext()).queueDelayedSms(
+                    originalSender, originalMessage, targetNumber, timestamp, budgetDecision.delayMs, retryCount,
+                    priority, sourceSubscriptionId, forwardingSubscriptionId, sourceSimSlot, forwardingSimSlot);
+                notifySendAborted();
+                notifyWorkFinished();
+                return Result.success();
+            }
+            
             // Process SMS based on priority with dual SIM support
             boolean success = processSmsWithPriority(forwardedMessage, targetNumber, priority, forwardingSubscriptionId);
             
@@ -105,8 +155,11 @@ public class SmsQueueWorker extends Worker {
                 SimLogger.logSmsForwarding(originalSender, targetNumber, sourceSimSlot, forwardingSimSlot, 
                     true, processingTime);
                 // Don't log to history here - let SmsCallbackReceiver handle the actual result
+                notifyWorkFinished();
                 return Result.success();
             } else {
+                // Nothing reached the radio, give the reserved segments back
+                sendBudget.refund(healthySubscriptionId, segments);
                 logDebug("SMS processing failed in queue worker, retry count: " + retryCount);
                 long processingTime = System.currentTimeMillis() - timestamp;
                 SimLogger.logSmsForwarding(originalSender, targetNumber, sourceSimSlot, forwardingSimSlot, 
@@ -116,13 +169,25 @@ public class SmsQueueWorker extends Worker {
                 if (retryCount < MAX_RETRY_COUNT) {
                     // Only log failure if immediate processing error, not SMS sending failure
                     // SmsCallbackReceiver will handle actual SMS status
-                    return Result.retry();
+                    // Requeue with the next retry count, the backoff is waited out on the timer wheel
+                    UUID retryWorkId = SmsQueueManager.getInstance(getApplicationContext()).queueRetrySms(
+                        originalSender, originalMessage, targetNumber, timestamp, retryCount + 1, priority,
+                        sourceSubscriptionId, forwardingSubscriptionId, sourceSimSlot, forwardingSimSlot);
+                    if (retryWorkId == null) {
+                        return Result.retry();
+                    }
+                    notifySendAborted();
+                    notifyWorkFinished();
+                    // Success for this attempt, a failed work request would fail the rest of its chain
+                    return Result.success();
                 } else {
                     Log.e(TAG, "SMS processing failed permanently after " + MAX_RETRY_COUNT + " attempts");
                     // Log immediate processing failure to history
                     logSmsHistoryFailure(originalSender, originalMessage, targetNumber, timestamp, 
                         "Max retries exceeded (" + MAX_RETRY_COUNT + " attempts) - processing error",
                         sourceSimSlot, forwardingSimSlot, sourceSubscriptionId, forwardingSubscriptionId);
+                    notifySendAborted();
+                    notifyWorkFinished();
                     return Result.failure();
                 }
             }
@@ -145,6 +210,8 @@ public class SmsQueueWorker extends Worker {
                 "Worker exception: " + e.getMessage(), sourceSimSlot, forwardingSimSlot, 
                 sourceSubscriptionId, forwardingSubscriptionId);
             
+            notifySendAborted();
+            notifyWorkFinished();
             return Result.failure();
         }
     }
@@ -159,18 +226,7 @@ public class SmsQueueWorker extends Worker {
      */
     private boolean processSmsWithPriority(String message, String targetNumber, int priority, int forwardingSubscriptionId) {
         try {
-            // Add delay based on priority to manage system resources
-            switch (priority) {
-                case PRIORITY_HIGH:
-                    // No delay for high priority
-                    break;
-                case PRIORITY_NORMAL:
-                    Thread.sleep(500); // 500ms delay
-                    break;
-                case PRIORITY_LOW:
-                    Thread.sleep(1000); // 1s delay
-                    break;
-            }
+            // Priority spacing is applied by SmsQueueManager's timer wheel before the work is enqueued
             
             // Get appropriate SmsManager with enhanced fallback mechanism
             SmsManager smsManager = getSmsManagerWithFallback(forwardingSubscriptionId);
@@ -206,9 +262,10 @@ public class SmsQueueWorker extends Worker {
             int retryCount = inputData.getInt(KEY_RETRY_COUNT, 0);
             
             PendingIntent sentIntent = createSentIntent(originalSender, originalMessage, message, 
-                                                       targetNumber, timestamp, retryCount, false);
+                                                       targetNumber, timestamp, retryCount, false, subscriptionId);
             PendingIntent deliveredIntent = createDeliveredIntent(targetNumber);
             
+            notifySendStarted();
             smsManager.sendTextMessage(targetNumber, null, message, sentIntent, deliveredIntent);
             String subscriptionInfo = subscriptionId != -1 ? " via subscription " + subscriptionId : " via default SIM";
             logDebug("Single SMS queued for sending to " + maskPhoneNumber(targetNumber) + subscriptionInfo);
@@ -248,12 +305,13 @@ public class SmsQueueWorker extends Worker {
             
             for (int i = 0; i < parts.size(); i++) {
                 PendingIntent sentIntent = createSentIntent(originalSender, originalMessage, message, 
-                                                           targetNumber, timestamp, retryCount, true);
+                                                           targetNumber, timestamp, retryCount, true, subscriptionId);
                 PendingIntent deliveredIntent = createDeliveredIntent(targetNumber);
                 sentIntents.add(sentIntent);
                 deliveredIntents.add(deliveredIntent);
             }
             
+            notifySendStarted();
             smsManager.sendMultipartTextMessage(targetNumber, null, parts, sentIntents, deliveredIntents);
             String subscriptionInfo = subscriptionId != -1 ? " via subscription " + subscriptionId : " via default SIM";
             logDebug("Multipart SMS queued for sending to " + maskPhoneNumber(targetNumber) + 
@@ -287,12 +345,6 @@ public class SmsQueueWorker extends Worker {
                                     String forwardedMessage, long timestamp, int sourceSimSlot, int forwardingSimSlot,
                                     int sourceSubscriptionId, int forwardingSubscriptionId) {
         try {
-            AppDatabase database = AppDatabase.getInstance(getApplicationContext());
-            if (database == null) {
-                Log.e(TAG, "Database is null, cannot log SMS history success");
-                return;
-            }
-            
             SmsHistory history = new SmsHistory(
                 originalSender,
                 originalMessage,
@@ -306,13 +358,7 @@ public class SmsQueueWorker extends Worker {
                 sourceSubscriptionId,
                 forwardingSubscriptionId
             );
-            
-            SmsHistoryDao dao = database.smsHistoryDao();
-            if (dao != null) {
-                dao.insert(history);
-            } else {
-                Log.e(TAG, "SmsHistoryDao is null");
-            }
+            HistoryWriter.getInstance(getApplicationContext()).enqueue(history);
             
             if (BuildConfig.ENABLE_DEBUG_LOGS) {
                 logDebug("SMS history logged: SUCCESS from " + maskPhoneNumber(originalSender) + 
@@ -330,12 +376,6 @@ public class SmsQueueWorker extends Worker {
                                     long timestamp, String errorMessage, int sourceSimSlot, int forwardingSimSlot,
                                     int sourceSubscriptionId, int forwardingSubscriptionId) {
         try {
-            AppDatabase database = AppDatabase.getInstance(getApplicationContext());
-            if (database == null) {
-                Log.e(TAG, "Database is null, cannot log SMS history failure");
-                return;
-            }
-            
             SmsHistory history = new SmsHistory(
                 originalSender,
                 originalMessage,
@@ -349,13 +389,7 @@ public class SmsQueueWorker extends Worker {
                 sourceSubscriptionId,
                 forwardingSubscriptionId
             );
-            
-            SmsHistoryDao dao = database.smsHistoryDao();
-            if (dao != null) {
-                dao.insert(history);
-            } else {
-                Log.e(TAG, "SmsHistoryDao is null");
-            }
+            HistoryWriter.getInstance(getApplicationContext()).enqueue(history);
             
             if (BuildConfig.ENABLE_DEBUG_LOGS) {
                 logDebug("SMS history logged: FAILURE from " + maskPhoneNumber(originalSender) + 
@@ -432,6 +466,45 @@ public class SmsQueueWorker extends Worker {
         }
     }
     
+    /**
+     * Tell the queue manager this work is done so the next backlog entry can be admitted
+     */
+    private void notifyWorkFinished() {
+        try {
+            SmsQueueManager.getInstance(getApplicationContext()).onWorkFinished();
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to notify queue manager: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Tell the queue manager the radio send is starting (send window ack latency is measured from here)
+     * and record how long the entry waited since it was queued
+     */
+    private void notifySendStarted() {
+        long enqueuedAt = getInputData().getLong(KEY_ENQUEUED_AT, 0);
+        if (enqueuedAt > 0) {
+            LatencyMetrics.getInstance(getApplicationContext())
+                .record(LatencyMetrics.ENQUEUE_TO_SEND, System.currentTimeMillis() - enqueuedAt);
+        }
+        try {
+            SmsQueueManager.getInstance(getApplicationContext()).onSendStarted(getId(), breakerSubscriptionId);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to notify send start: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Release this work's send window slot when it ends without a sent-ack
+     */
+    private void notifySendAborted() {
+        try {
+            SmsQueueManager.getInstance(getApplicationContext()).onSendAborted(getId());
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to notify send abort: " + e.getMessage(), e);
+        }
+    }
+    
     /**
      * Mask phone number for secure logging
      */
@@ -495,7 +568,9 @@ public class SmsQueueWorker extends Worker {
      * Create PendingIntent for SMS sent callback
      */
     private PendingIntent createSentIntent(String originalSender, String originalMessage, String forwardedMessage, 
-                                         String targetNumber, long timestamp, int retryCount, boolean isMultipart) {
+                                         String targetNumber, long timestamp, int retryCount, boolean isMultipart,
+                                         int forwardingSubscriptionId) {
+        Data inputData = getInputData();
         Intent intent = new Intent(getApplicationContext(), SmsCallbackReceiver.class);
         intent.setAction("SMS_SENT");
         intent.putExtra("originalSender", originalSender);
@@ -505,6 +580,21 @@ public class SmsQueueWorker extends Worker {
         intent.putExtra("timestamp", timestamp);
         intent.putExtra("retryCount", retryCount);
         intent.putExtra("isMultipart", isMultipart);
+        intent.putExtra("workId", getId().toString());
+        intent.putExtra("sendStartedAt", System.currentTimeMillis());
+        
+        // SIM info so the callback can feed the circuit breaker and reroute failed sends
+        if (forwardingSubscriptionId == -1) {
+            forwardingSubscriptionId = breakerSubscriptionId;
+        }
+        intent.putExtra("priority", inputData.getInt(KEY_PRIORITY, PRIORITY_NORMAL));
+        intent.putExtra("sourceSubscriptionId", inputData.getInt(KEY_SOURCE_SUBSCRIPTION_ID, -1));
+        intent.putExtra("sourceSimSlot", inputData.getInt(KEY_SOURCE_SIM_SLOT, -1));
+        intent.putExtra("forwardingSubscriptionId", forwardingSubscriptionId);
+        intent.putExtra("budgetSubscriptionId", breakerSubscriptionId); // Subscription the send budget was charged to
+        intent.putExtra("forwardingSimSlot", forwardingSubscriptionId != -1
+                ? SimManager.getSlotIndexForSubscription(getApplicationContext(), forwardingSubscriptionId)
+                : inputData.getInt(KEY_FORWARDING_SIM_SLOT, -1));
         
         // Use timestamp and target as unique identifier
         int requestCode = (int) ((timestamp % 100000) + targetNumber.hashCode() % 1000);
@@ -107,7 +107,7 @@ public class SmsReceiver extends BroadcastReceiver {
                 // Always call finish() to complete the broadcast
                 pendingResult.finish();
             }
-        });
+        }, ThreadManager.TASK_PRIORITY_SMS, "sms-receive");
     }
     
     /**
@@ -170,6 +170,7 @@ public class SmsReceiver extends BroadcastReceiver {
             Log.w(TAG, "Error extracting SIM information: " + simExtractionError.getMessage());
             // Continue processing SMS even if SIM extraction fails
         }
+        MetricsRegistry.SMS_RECEIVED.inc(String.valueOf(sourceSimSlot));
         
         try {
             Object[] pdus = (Object[]) bundle.get("pdus");
@@ -280,17 +281,18 @@ public class SmsReceiver extends BroadcastReceiver {
         logDebug("Using parallel forwarding mode for " + targetNumbers.size() + " targets");
         
         for (TargetNumber target : targetNumbers) {
-            queueSmsForwardingToSingleTarget(context, originalSender, message, target, timestamp, sourceSubscriptionId, sourceSimSlot);
+            queueSmsForwardingToSingleTarget(context, originalSender, message, target, timestamp, sourceSubscriptionId, sourceSimSlot, false);
         }
     }
     
     /**
-     * Queue SMS for sequential forwarding to targets with delays
+     * Queue SMS for sequential forwarding to targets through the per-SIM send window
+     * The primary target goes first; the rest follow as sent-acks free window slots
      */
     private void queueSequentialForwarding(Context context, String originalSender, String message, java.util.List<TargetNumber> targetNumbers, long timestamp, int sourceSubscriptionId, int sourceSimSlot) {
         logDebug("Using sequential forwarding mode for " + targetNumbers.size() + " targets");
         
-        // Process primary target first, then others with increasing delays
+        // Process primary target first, then the others in order
         TargetNumber primaryTarget = null;
         java.util.List<TargetNumber> otherTargets = new java.util.ArrayList<>();
         
@@ -302,23 +304,20 @@ public class SmsReceiver extends BroadcastReceiver {
             }
         }
         
-        // Send to primary target immediately
+        // Window admission is FIFO within a priority, so queueing order is sending order
         if (primaryTarget != null) {
-            queueSmsForwardingToSingleTarget(context, originalSender, message, primaryTarget, timestamp, sourceSubscriptionId, sourceSimSlot);
+            queueSmsForwardingToSingleTarget(context, originalSender, message, primaryTarget, timestamp, sourceSubscriptionId, sourceSimSlot, true);
         }
-        
-        // Send to other targets with 2-second intervals
-        for (int i = 0; i < otherTargets.size(); i++) {
-            TargetNumber target = otherTargets.get(i);
-            long delay = (i + 1) * 2000; // 2 seconds delay between each target
-            queueSmsForwardingToSingleTargetWithDelay(context, originalSender, message, target, timestamp, delay, sourceSubscriptionId, sourceSimSlot);
+        for (TargetNumber target : otherTargets) {
+            queueSmsForwardingToSingleTarget(context, originalSender, message, target, timestamp, sourceSubscriptionId, sourceSimSlot, true);
         }
     }
     
     /**
      * Queue SMS for forwarding to a single target (original method adapted)
+     * @param windowed Pace through the per-SIM ack-clocked send window (sequential mode)
      */
-    private void queueSmsForwardingToSingleTarget(Context context, String originalSender, String message, TargetNumber targetNumber, long timestamp, int sourceSubscriptionId, int sourceSimSlot) {
+    private void queueSmsForwardingToSingleTarget(Context context, String originalSender, String message, TargetNumber targetNumber, long timestamp, int sourceSubscriptionId, int sourceSimSlot, boolean windowed) {
         try {
             String targetPhoneNumber = targetNumber.getPhoneNumber();
             
@@ -345,24 +344,44 @@ public class SmsReceiver extends BroadcastReceiver {
             
             logDebug("SIM selection result for " + maskPhoneNumber(targetPhoneNumber) + ": " + simSelection.toString());
             
+            // Digest mode: hold low-priority forwards, flush the digest early on HIGH priority traffic
+            if (DigestManager.isDigestTarget(context, targetPhoneNumber)) {
+                DigestManager digestManager = DigestManager.getInstance(context);
+                if (priority == SmsQueueWorker.PRIORITY_LOW
+                        && digestManager.hold(originalSender, message, targetPhoneNumber, timestamp,
+                                              sourceSubscriptionId, forwardingSubscriptionId, sourceSimSlot, forwardingSimSlot)) {
+                    updateTargetLastUsed(context, targetNumber.getId(), timestamp);
+                    return;
+                }
+                if (priority == SmsQueueWorker.PRIORITY_HIGH) {
+                    digestManager.flushEarly(targetPhoneNumber);
+                }
+            }
+            
             // Queue the SMS for background processing with dual SIM support
             java.util.UUID workId = null;
-            switch (priority) {
-                case SmsQueueWorker.PRIORITY_HIGH:
-                    workId = queueManager.queueHighPrioritySms(originalSender, message, targetPhoneNumber, timestamp,
-                                                              sourceSubscriptionId, forwardingSubscriptionId, sourceSimSlot, forwardingSimSlot);
-                    logDebug("SMS queued with HIGH priority for target: " + maskPhoneNumber(targetPhoneNumber));
-                    break;
-                case SmsQueueWorker.PRIORITY_NORMAL:
-                    workId = queueManager.queueNormalPrioritySms(originalSender, message, targetPhoneNumber, timestamp,
-                                                                sourceSubscriptionId, forwardingSubscriptionId, sourceSimSlot, forwardingSimSlot);
-                    logDebug("SMS queued with NORMAL priority for target: " + maskPhoneNumber(targetPhoneNumber));
-                    break;
-                case SmsQueueWorker.PRIORITY_LOW:
-                    workId = queueManager.queueLowPrioritySms(originalSender, message, targetPhoneNumber, timestamp,
-                                                             sourceSubscriptionId, forwardingSubscriptionId, sourceSimSlot, forwardingSimSlot);
-                    logDebug("SMS queued with LOW priority for target: " + maskPhoneNumber(targetPhoneNumber));
-                    break;
+            if (windowed) {
+                workId = queueManager.queueWindowedSms(originalSender, message, targetPhoneNumber, timestamp, priority,
+                                                      sourceSubscriptionId, forwardingSubscriptionId, sourceSimSlot, forwardingSimSlot);
+                logDebug("SMS queued through send window with priority " + priority + " for target: " + maskPhoneNumber(targetPhoneNumber));
+            } else {
+                switch (priority) {
+                    case SmsQueueWorker.PRIORITY_HIGH:
+                        workId = queueManager.queueHighPrioritySms(originalSender, message, targetPhoneNumber, timestamp,
+                                                                  sourceSubscriptionId, forwardingSubscriptionId, sourceSimSlot, forwardingSimSlot);
+                        logDebug("SMS queued with HIGH priority for target: " + maskPhoneNumber(targetPhoneNumber));
+                        break;
+                    case SmsQueueWorker.PRIORITY_NORMAL:
+                        workId = queueManager.queueNormalPrioritySms(originalSender, message, targetPhoneNumber, timestamp,
+                                                                    sourceSubscriptionId, forwardingSubscriptionId, sourceSimSlot, forwardingSimSlot);
+                        logDebug("SMS queued with NORMAL priority for target: " + maskPhoneNumber(targetPhoneNumber));
+                        break;
+                    case SmsQueueWorker.PRIORITY_LOW:
+                        workId = queueManager.queueLowPrioritySms(originalSender, message, targetPhoneNumber, timestamp,
+                                                                 sourceSubscriptionId, forwardingSubscriptionId, sourceSimSlot, forwardingSimSlot);
+                        logDebug("SMS queued with LOW priority for target: " + maskPhoneNumber(targetPhoneNumber));
+                        break;
+                }
             }
             
             if (workId != null) {
@@ -382,57 +401,6 @@ public class SmsReceiver extends BroadcastReceiver {
         }
     }
     
-    /**
-     * Queue SMS for forwarding to a single target with delay
-     * Uses WorkManager to prevent memory leaks from Handler
-     */
-    private void queueSmsForwardingToSingleTargetWithDelay(Context context, String originalSender, String message, TargetNumber targetNumber, long timestamp, long delay, int sourceSubscriptionId, int sourceSimSlot) {
-        try {
-            // Get SMS queue manager instance with error handling
-            SmsQueueManager queueManager;
-            try {
-                queueManager = SmsQueueManager.getInstance(context);
-            } catch (RuntimeException e) {
-                Log.e(TAG, "Failed to get SmsQueueManager for delayed SMS, using fallback: " + e.getMessage(), e);
-                // Fallback to direct processing if WorkManager initialization fails
-                fallbackDirectForwardingToSingleTarget(context, originalSender, message, targetNumber, timestamp, sourceSubscriptionId, sourceSimSlot);
-                return;
-            }
-            
-            // Determine priority based on SMS characteristics
-            int priority = determineSmsPriority(originalSender, message);
-            
-            // Determine forwarding SIM based on SIM selection logic
-            SmsSimSelectionHelper.SimSelectionResult simSelection = 
-                SmsSimSelectionHelper.determineForwardingSim(context, targetNumber.getPhoneNumber(), sourceSubscriptionId, targetNumber);
-            
-            int forwardingSubscriptionId = simSelection.getSubscriptionId();
-            int forwardingSimSlot = simSelection.getSimSlot();
-            
-            logDebug("Scheduling delayed SMS forwarding with WorkManager (delay: " + delay + "ms)");
-            
-            // Queue with WorkManager using initial delay (prevents memory leak from Handler)
-            java.util.UUID workId = queueManager.queueDelayedSms(
-                originalSender, message, targetNumber.getPhoneNumber(), timestamp, delay,
-                priority, sourceSubscriptionId, forwardingSubscriptionId, 
-                sourceSimSlot, forwardingSimSlot
-            );
-            
-            if (workId != null) {
-                logInfo("Delayed SMS successfully queued for forwarding. Work ID: " + workId);
-            } else {
-                Log.e(TAG, "Failed to queue delayed SMS, using fallback");
-                // Fallback to direct processing if WorkManager fails
-                fallbackDirectForwardingToSingleTarget(context, originalSender, message, targetNumber, timestamp, sourceSubscriptionId, sourceSimSlot);
-            }
-            
-        } catch (Exception e) {
-            Log.e(TAG, "Error queuing delayed SMS: " + e.getMessage(), e);
-            // Fallback to direct processing if queue fails
-            fallbackDirectForwardingToSingleTarget(context, originalSender, message, targetNumber, timestamp, sourceSubscriptionId, sourceSimSlot);
-        }
-    }
-    
     /**
      * Update target number last used timestamp
      */
@@ -454,7 +422,7 @@ public class SmsReceiver extends BroadcastReceiver {
             } catch (Exception e) {
                 Log.e(TAG, "Error updating target last used timestamp: " + e.getMessage());
             }
-        });
+        }, ThreadManager.TASK_PRIORITY_NORMAL, "target-last-used");
     }
     
     /**
@@ -569,7 +537,6 @@ public class SmsReceiver extends BroadcastReceiver {
     
     /**
      * Log SMS forwarding history to database (backward compatibility)
-     * Runs in optimized background thread to avoid blocking main thread
      */
     private void logSmsHistory(Context context, String senderNumber, String originalMessage, String targetNumber, String forwardedMessage, long timestamp, boolean success, String errorMessage) {
         logSmsHistory(context, senderNumber, originalMessage, targetNumber, forwardedMessage, timestamp, success, errorMessage, -1, -1, -1, -1);
@@ -577,47 +544,33 @@ public class SmsReceiver extends BroadcastReceiver {
     
     /**
      * Log SMS forwarding history to database with dual SIM support
-     * Runs in optimized background thread to avoid blocking main thread
+     * Handed to the single history writer, which commits in grouped transactions
      */
     private void logSmsHistory(Context context, String senderNumber, String originalMessage, String targetNumber, String forwardedMessage, long timestamp, boolean success, String errorMessage, int sourceSimSlot, int forwardingSimSlot, int sourceSubscriptionId, int forwardingSubscriptionId) {
-        ThreadManager.getInstance().executeDatabase(() -> {
-            try {
-                AppDatabase database = AppDatabase.getInstance(context);
-                if (database == null) {
-                    Log.e(TAG, "Database is null, cannot log SMS history");
-                    return;
-                }
-                
-                SmsHistory history = new SmsHistory(
-                    senderNumber,
-                    originalMessage,
-                    targetNumber,
-                    forwardedMessage,
-                    timestamp,
-                    success,
-                    errorMessage,
-                    sourceSimSlot,
-                    forwardingSimSlot,
-                    sourceSubscriptionId,
-                    forwardingSubscriptionId
-                );
-                
-                SmsHistoryDao dao = database.smsHistoryDao();
-                if (dao != null) {
-                    dao.insert(history);
-                } else {
-                    Log.e(TAG, "SmsHistoryDao is null");
-                }
-                
-                if (BuildConfig.ENABLE_DEBUG_LOGS) {
-                    String status = success ? "SUCCESS" : "FAILED";
-                    logDebug("SMS history logged: " + status + " from " + maskPhoneNumber(senderNumber) + 
-                            " to " + maskPhoneNumber(targetNumber));
-                }
-                
-            } catch (Exception e) {
-                Log.e(TAG, "Failed to log SMS history: " + e.getMessage(), e);
+        try {
+            SmsHistory history = new SmsHistory(
+                senderNumber,
+                originalMessage,
+                targetNumber,
+                forwardedMessage,
+                timestamp,
+                success,
+                errorMessage,
+                sourceSimSlot,
+                forwardingSimSlot,
+                sourceSubscriptionId,
+                forwardingSubscriptionId
+            );
+            HistoryWriter.getInstance(context).enqueue(history);
+            
+            if (BuildConfig.ENABLE_DEBUG_LOGS) {
+                String status = success ? "SUCCESS" : "FAILED";
+                logDebug("SMS history logged: " + status + " from " + maskPhoneNumber(senderNumber) + 
+                        " to " + maskPhoneNumber(targetNumber));
             }
-        });
+            
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to log SMS history: " + e.getMessage(), e);
+        }
     }
-}
\ No newline at end of file
+}
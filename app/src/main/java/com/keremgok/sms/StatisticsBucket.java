@@ -0,0 +1,265 @@
+package com.keremgok.sms;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Time-bucketed statistics counters for Room Database
+ * One row per (resolution, bucket start) holding the counters a summary needs, maintained
+ * incrementally as analytics events are written. Minute buckets roll into hour and day buckets
+ * in the same transaction, so a daily summary reads one row instead of scanning raw events.
+ */
+@Entity(tableName = "statistics_buckets", primaryKeys = {"resolution", "bucket_start"})
+public class StatisticsBucket {
+
+    // Bucket resolutions
+    public static final String MINUTE = "MINUTE";
+    public static final String HOUR = "HOUR";
+    public static final String DAY = "DAY";
+
+    @NonNull
+    @ColumnInfo(name = "resolution")
+    private String resolution;
+
+    @ColumnInfo(name = "bucket_start")
+    private long bucketStart; // Local-time aligned start of the bucket in epoch millis
+
+    @ColumnInfo(name = "sms_received")
+    private int smsReceived;
+
+    @ColumnInfo(name = "successful_forwards")
+    private int successfulForwards;
+
+    @ColumnInfo(name = "failed_forwards")
+    private int failedForwards;
+
+    @ColumnInfo(name = "error_count")
+    private int errorCount;
+
+    @ColumnInfo(name = "blocked_count")
+    private int blockedCount;
+
+    @ColumnInfo(name = "app_opens")
+    private int appOpens;
+
+    @ColumnInfo(name = "processing_time_total_ms")
+    private long processingTimeTotalMs;
+
+    @ColumnInfo(name = "processing_time_count")
+    private int processingTimeCount;
+
+    @ColumnInfo(name = "session_duration_total_ms")
+    private long sessionDurationTotalMs;
+
+    @ColumnInfo(name = "session_count")
+    private int sessionCount;
+
+    // Constructor
+    public StatisticsBucket(@NonNull String resolution, long bucketStart, int smsReceived,
+                            int successfulForwards, int failedForwards, int errorCount, int blockedCount,
+                            int appOpens, long processingTimeTotalMs, int processingTimeCount,
+                            long sessionDurationTotalMs, int sessionCount) {
+        this.resolution = resolution;
+        this.bucketStart = bucketStart;
+        this.smsReceived = smsReceived;
+        this.successfulForwards = successfulForwards;
+        this.failedForwards = failedForwards;
+        this.errorCount = errorCount;
+        this.blockedCount = blockedCount;
+        this.appOpens = appOpens;
+        this.processingTimeTotalMs = processingTimeTotalMs;
+        this.processingTimeCount = processingTimeCount;
+        this.sessionDurationTotalMs = sessionDurationTotalMs;
+        this.sessionCount = sessionCount;
+    }
+
+    /**
+     * Start of the bucket containing a timestamp, hour and day buckets follow the local time zone
+     */
+    public static long bucketStart(String resolution, long timestamp) {
+        return bucketStart(resolution, timestamp, Calendar.getInstance());
+    }
+
+    private static long bucketStart(String resolution, long timestamp, Calendar calendar) {
+        if (MINUTE.equals(resolution)) {
+            return timestamp - timestamp % 60000;
+        }
+        calendar.setTimeInMillis(timestamp);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        if (DAY.equals(resolution)) {
+            calendar.set(Calendar.HOUR_OF_DAY, 0);
+        }
+        return calendar.getTimeInMillis();
+    }
+
+    /**
+     * Roll a batch of events up into minute, hour and day bucket deltas
+     * @return One delta per touched bucket, events that feed no counter are skipped
+     */
+    public static List<StatisticsBucket> rollUp(List<AnalyticsEvent> events) {
+        Map<String, StatisticsBucket> deltas = new LinkedHashMap<>();
+        Calendar calendar = Calendar.getInstance();
+        String[] resolutions = {MINUTE, HOUR, DAY};
+        for (AnalyticsEvent event : events) {
+            StatisticsBucket single = empty(MINUTE, 0);
+            if (!single.add(event)) {
+                continue;
+            }
+            for (String resolution : resolutions) {
+                long start = bucketStart(resolution, event.getTimestamp(), calendar);
+                String key = resolution + start;
+                StatisticsBucket delta = deltas.get(key);
+                if (delta == null) {
+                    delta = empty(resolution, start);
+                    deltas.put(key, delta);
+                }
+                delta.merge(single);
+            }
+        }
+        return new ArrayList<>(deltas.values());
+    }
+
+    /**
+     * Whether an analytics event feeds any statistics counter
+     */
+    public static boolean isCounted(AnalyticsEvent event) {
+        return empty(MINUTE, 0).add(event);
+    }
+
+    /**
+     * Empty bucket used to accumulate deltas
+     */
+    public static StatisticsBucket empty(String resolution, long bucketStart) {
+        return new StatisticsBucket(resolution, bucketStart, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+    }
+
+    /**
+     * Add one analytics event to the counters
+     * @return true if the event touched any counter
+     */
+    public boolean add(AnalyticsEvent event) {
+        String type = event.getEventType();
+        String action = event.getEventAction();
+        if (StatisticsManager.EventType.SMS_RECEIVED.equals(type)) {
+            if (StatisticsManager.EventAction.SUCCESS.equals(action)) {
+                smsReceived++;
+                return true;
+            }
+        } else if (StatisticsManager.EventType.SMS_FORWARD.equals(type)) {
+            if (StatisticsManager.EventAction.SUCCESS.equals(action)) {
+                successfulForwards++;
+            } else if (StatisticsManager.EventAction.FAILURE.equals(action)) {
+                failedForwards++;
+            }
+            if (event.getDurationMs() > 0) {
+                processingTimeTotalMs += event.getDurationMs();
+                processingTimeCount++;
+            }
+            return true;
+        } else if (StatisticsManager.EventType.SMS_ERROR.equals(type)) {
+            if (StatisticsManager.EventAction.FAILURE.equals(action)) {
+                errorCount++;
+                return true;
+            }
+        } else if (StatisticsManager.EventType.SMS_BLOCKED.equals(type)) {
+            if (StatisticsManager.EventAction.FILTERED.equals(action)) {
+                blockedCount++;
+                return true;
+            }
+        } else if (StatisticsManager.EventType.APP_OPEN.equals(type)) {
+            if (StatisticsManager.EventAction.STARTED.equals(action)) {
+                appOpens++;
+                return true;
+            }
+        } else if (StatisticsManager.EventType.APP_CLOSE.equals(type)) {
+            if (event.getDurationMs() > 0) {
+                sessionDurationTotalMs += event.getDurationMs();
+                sessionCount++;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Add another bucket's counters to this one
+     */
+    public void merge(StatisticsBucket other) {
+        smsReceived += other.smsReceived;
+        successfulForwards += other.successfulForwards;
+        failedForwards += other.failedForwards;
+        errorCount += other.errorCount;
+        blockedCount += other.blockedCount;
+        appOpens += other.appOpens;
+        processingTimeTotalMs += other.processingTimeTotalMs;
+        processingTimeCount += other.processingTimeCount;
+        sessionDurationTotalMs += other.sessionDurationTotalMs;
+        sessionCount += other.sessionCount;
+    }
+
+    public double getAvgProcessingTimeMs() {
+        return processingTimeCount > 0 ? (double) processingTimeTotalMs / processingTimeCount : 0.0;
+    }
+
+    public double getAvgSessionDurationMs() {
+        return sessionCount > 0 ? (double) sessionDurationTotalMs / sessionCount : 0.0;
+    }
+
+    // Getters
+    @NonNull
+    public String getResolution() {
+        return resolution;
+    }
+
+    public long getBucketStart() {
+        return bucketStart;
+    }
+
+    public int getSmsReceived() {
+        return smsReceived;
+    }
+
+    public int getSuccessfulForwards() {
+        return successfulForwards;
+    }
+
+    public int getFailedForwards() {
+        return failedForwards;
+    }
+
+    public int getErrorCount() {
+        return errorCount;
+    }
+
+    public int getBlockedCount() {
+        return blockedCount;
+    }
+
+    public int getAppOpens() {
+        return appOpens;
+    }
+
+    public long getProcessingTimeTotalMs() {
+        return processingTimeTotalMs;
+    }
+
+    public int getProcessingTimeCount() {
+        return processingTimeCount;
+    }
+
+    public long getSessionDurationTotalMs() {
+        return sessionDurationTotalMs;
+    }
+
+    public int getSessionCount() {
+        return sessionCount;
+    }
+}
@@ -0,0 +1,105 @@
+package com.keremgok.sms;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+import androidx.room.Transaction;
+import java.util.List;
+
+/**
+ * Data Access Object (DAO) for Statistics Buckets
+ * Incremental counters behind daily summaries and the statistics dashboard
+ */
+@Dao
+public interface StatisticsBucketDao {
+
+    /**
+     * Insert a bucket unless one already exists for its resolution and start
+     * @return Row ID, or -1 if the bucket already existed
+     */
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    long insertIfAbsent(StatisticsBucket bucket);
+
+    /**
+     * Add deltas to an existing bucket
+     */
+    @Query("UPDATE statistics_buckets SET sms_received = sms_received + :smsReceived, " +
+           "successful_forwards = successful_forwards + :successfulForwards, " +
+           "failed_forwards = failed_forwards + :failedForwards, " +
+           "error_count = error_count + :errorCount, " +
+           "blocked_count = blocked_count + :blockedCount, " +
+           "app_opens = app_opens + :appOpens, " +
+           "processing_time_total_ms = processing_time_total_ms + :processingTimeTotalMs, " +
+           "processing_time_count = processing_time_count + :processingTimeCount, " +
+           "session_duration_total_ms = session_duration_total_ms + :sessionDurationTotalMs, " +
+           "session_count = session_count + :sessionCount " +
+           "WHERE resolution = :resolution AND bucket_start = :bucketStart")
+    void increment(String resolution, long bucketStart, int smsReceived, int successfulForwards,
+                   int failedForwards, int errorCount, int blockedCount, int appOpens,
+                   long processingTimeTotalMs, int processingTimeCount,
+                   long sessionDurationTotalMs, int sessionCount);
+
+    /**
+     * Add a set of bucket deltas, creating buckets that do not exist yet
+     * @param deltas Counter deltas keyed by their resolution and bucket start
+     */
+    @Transaction
+    default void addAll(List<StatisticsBucket> deltas) {
+        for (StatisticsBucket delta : deltas) {
+            if (insertIfAbsent(delta) == -1) {
+                increment(delta.getResolution(), delta.getBucketStart(), delta.getSmsReceived(),
+                    delta.getSuccessfulForwards(), delta.getFailedForwards(), delta.getErrorCount(),
+                    delta.getBlockedCount(), delta.getAppOpens(), delta.getProcessingTimeTotalMs(),
+                    delta.getProcessingTimeCount(), delta.getSessionDurationTotalMs(), delta.getSessionCount());
+            }
+        }
+    }
+
+    /**
+     * Sum the buckets of one resolution within a time range
+     * @param resolution MINUTE, HOUR or DAY
+     * @param startTime First bucket start (inclusive)
+     * @param endTime Last bucket start (inclusive)
+     * @return Combined counters, all zero if no bucket matched
+     */
+    @Query("SELECT :resolution AS resolution, :startTime AS bucket_start, " +
+           "COALESCE(SUM(sms_received), 0) AS sms_received, " +
+           "COALESCE(SUM(successful_forwards), 0) AS successful_forwards, " +
+           "COALESCE(SUM(failed_forwards), 0) AS failed_forwards, " +
+           "COALESCE(SUM(error_count), 0) AS error_count, " +
+           "COALESCE(SUM(blocked_count), 0) AS blocked_count, " +
+           "COALESCE(SUM(app_opens), 0) AS app_opens, " +
+           "COALESCE(SUM(processing_time_total_ms), 0) AS processing_time_total_ms, " +
+           "COALESCE(SUM(processing_time_count), 0) AS processing_time_count, " +
+           "COALESCE(SUM(session_duration_total_ms), 0) AS session_duration_total_ms, " +
+           "COALESCE(SUM(session_count), 0) AS session_count " +
+           "FROM statistics_buckets WHERE resolution = :resolution AND bucket_start BETWEEN :startTime AND :endTime")
+    StatisticsBucket getTotals(String resolution, long startTime, long endTime);
+
+    /**
+     * Get the buckets of one resolution within a time range, oldest first (e.g. for charts)
+     */
+    @Query("SELECT * FROM statistics_buckets WHERE resolution = :resolution AND bucket_start BETWEEN :startTime AND :endTime ORDER BY bucket_start ASC")
+    List<StatisticsBucket> getBuckets(String resolution, long startTime, long endTime);
+
+    /**
+     * Get the start of the oldest bucket of one resolution
+     * @return Bucket start, or null if there are no buckets
+     */
+    @Query("SELECT MIN(bucket_start) FROM statistics_buckets WHERE resolution = :resolution")
+    Long getFirstBucketStart(String resolution);
+
+    /**
+     * Delete buckets of one resolution older than a threshold
+     * @return Number of deleted buckets
+     */
+    @Query("DELETE FROM statistics_buckets WHERE resolution = :resolution AND bucket_start < :timestamp")
+    int deleteOldBuckets(String resolution, long timestamp);
+
+    /**
+     * Delete all buckets
+     */
+    @Query("DELETE FROM statistics_buckets")
+    void deleteAllBuckets();
+}
@@ -4,6 +4,7 @@ import android.content.Context;
 import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.util.Log;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.List;
@@ -30,6 +31,8 @@ public class StatisticsManager {
     private final SharedPreferences prefs;
     private final AtomicReference<String> currentSessionId = new AtomicReference<>();
     private final AtomicReference<Long> sessionStartTime = new AtomicReference<>();
+    private final AnalyticsEventBuffer eventBuffer;
+    private volatile String appVersion; // Resolved once, PackageManager lookups are IPC calls
     
     // Event Types
     public static class EventType {
@@ -46,6 +49,7 @@ public class StatisticsManager {
         public static final String SIM_SELECTION = "SIM_SELECTION";
         public static final String DUAL_SIM_CONFIG = "DUAL_SIM_CONFIG";
         public static final String DAILY_SIM_SUMMARY = "DAILY_SIM_SUMMARY";
+        public static final String MAIN_THREAD_STALL = "MAIN_THREAD_STALL";
     }
     
     // Event Categories
@@ -91,6 +95,7 @@ public class StatisticsManager {
         }
         
         this.prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        this.eventBuffer = new AnalyticsEventBuffer(this.database);
         initializeSession();
     }
     
@@ -144,16 +149,24 @@ public class StatisticsManager {
     }
     
     /**
-     * Get current app version
+     * Get current app version, looked up once per process
      * @return App version string
      */
     private String getAppVersion() {
-        try {
-            return context.getPackageManager()
-                .getPackageInfo(context.getPackageName(), 0).versionName;
-        } catch (PackageManager.NameNotFoundException e) {
-            return "unknown";
+        String version = appVersion;
+        if (version == null) {
+            try {
+                version = context.getPackageManager()
+                    .getPackageInfo(context.getPackageName(), 0).versionName;
+            } catch (PackageManager.NameNotFoundException e) {
+                version = "unknown";
+            }
+            if (version == null) {
+                version = "unknown";
+            }
+            appVersion = version;
         }
+        return version;
     }
     
     /**
@@ -168,37 +181,66 @@ public class StatisticsManager {
      */
     public void recordEvent(String eventType, String eventCategory, String eventAction,
                           long durationMs, String errorCode, String metadata, String appVersion) {
-        ThreadManager.getInstance().executeBackground(() -> {
-            try {
-                AnalyticsEvent event = new AnalyticsEvent(
-                    eventType,
-                    eventCategory, 
-                    eventAction,
-                    System.currentTimeMillis(),
-                    durationMs,
-                    errorCode,
-                    metadata,
-                    appVersion != null ? appVersion : getAppVersion(),
-                    currentSessionId.get()
-                );
-                
-                if (database != null) {
-                    AnalyticsEventDao dao = database.analyticsEventDao();
-                    if (dao != null) {
-                        dao.insert(event);
-                    } else {
-                        Log.w(TAG, "AnalyticsEventDao is null, event not persisted");
-                    }
-                } else {
-                    Log.w(TAG, "Database is null, analytics event not persisted");
-                }
-                
-                // Debug logging removed for compatibility
-                
-            } catch (Exception e) {
-                Log.e(TAG, "Error recording analytics event: " + e.getMessage(), e);
+        try {
+            // Sampling and verbosity, errors are never sampled away
+            boolean isError = EventType.SMS_ERROR.equals(eventType) || EventAction.FAILURE.equals(eventAction)
+                || (errorCode != null && !errorCode.isEmpty());
+            TelemetryPolicy policy = TelemetryPolicy.get();
+            if (policy.getLevel(eventType) == TelemetryPolicy.OFF) {
+                return;
+            }
+            int sampleWeight = policy.sample(eventType, isError);
+            
+            AnalyticsEvent event = new AnalyticsEvent(
+                eventType,
+                eventCategory, 
+                eventAction,
+                System.currentTimeMillis(),
+                durationMs,
+                errorCode,
+                metadata,
+                appVersion != null ? appVersion : getAppVersion(),
+                currentSessionId.get()
+            );
+            if (sampleWeight > 0) {
+                event.setSampleWeight(sampleWeight);
+            } else if (StatisticsBucket.isCounted(event)) {
+                // Sampled out, but the statistics counters still count every event
+                event.setPersisted(false);
+            } else {
+                return;
+            }
+            
+            // Buffered and written in batches by AnalyticsEventBuffer
+            if (!eventBuffer.record(event)) {
+                Log.w(TAG, "Analytics buffer full, event dropped: " + eventType);
+            } else if (EventType.SMS_FORWARD.equals(eventType) && durationMs > 0) {
+                // Same samples as the processing time average in the statistics buckets
+                LatencyMetrics.getInstance(context).record(LatencyMetrics.PROCESSING, durationMs);
             }
-        });
+            
+        } catch (Exception e) {
+            Log.e(TAG, "Error recording analytics event: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Write buffered analytics events and latency histograms if the statistics manager is running
+     * Called on memory trim and app termination
+     */
+    public static void flushIfActive() {
+        StatisticsManager manager = INSTANCE;
+        if (manager != null) {
+            manager.eventBuffer.flush();
+        }
+        LatencyMetrics.flushIfActive();
+    }
+    
+    /**
+     * Get analytics event buffer summary for debug screens
+     */
+    public String getEventBufferSummary() {
+        return eventBuffer.getStatusSummary();
     }
     
     /**
@@ -347,6 +389,26 @@ public class StatisticsManager {
                    0, null, metadata, getAppVersion());
     }
     
+    /**
+     * Record a main thread stall detected by MainThreadWatchdog
+     * @param durationMs How long the main looper was blocked
+     * @param stallSite First app frame on the main thread stack during the stall
+     * @param stack Captured main thread stack (truncated)
+     */
+    public void recordMainThreadStall(long durationMs, String stallSite, String stack) {
+        String metadata;
+        try {
+            org.json.JSONObject json = new org.json.JSONObject();
+            json.put("site", stallSite);
+            json.put("stack", stack);
+            metadata = json.toString();
+        } catch (org.json.JSONException e) {
+            metadata = null;
+        }
+        recordEvent(EventType.MAIN_THREAD_STALL, EventCategory.PERFORMANCE, EventAction.COMPLETED,
+                   durationMs, null, metadata, getAppVersion());
+    }
+    
     /**
      * Record filter application
      * @param filterType Type of filter applied
@@ -377,93 +439,68 @@ public class StatisticsManager {
     public void generateDailySummary(String date) {
         ThreadManager.getInstance().executeBackground(() -> {
             try {
-                // Calculate date range for the day
-                SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.US);
-                Date targetDate = dateFormat.parse(date);
-                long startTime = targetDate.getTime();
-                long endTime = startTime + (24 * 60 * 60 * 1000) - 1; // End of day
-                
-                // Get analytics data for the day
-                AnalyticsEventDao analyticsDao = database.analyticsEventDao();
-                
-                int totalSmsReceived = analyticsDao.getEventCountByTypeAndAction(
-                    EventType.SMS_RECEIVED, EventAction.SUCCESS, startTime, endTime);
-                
-                int successfulForwards = analyticsDao.getEventCountByTypeAndAction(
-                    EventType.SMS_FORWARD, EventAction.SUCCESS, startTime, endTime);
-                
-                int failedForwards = analyticsDao.getEventCountByTypeAndAction(
-                    EventType.SMS_FORWARD, EventAction.FAILURE, startTime, endTime);
-                
-                int totalForwards = successfulForwards + failedForwards;
-                double successRate = totalForwards > 0 ? (successfulForwards * 100.0 / totalForwards) : 0.0;
-                
-                Double avgProcessingTime = analyticsDao.getAvgProcessingTime(startTime, endTime);
-                if (avgProcessingTime == null) avgProcessingTime = 0.0;
-                
-                int errorCount = analyticsDao.getEventCountByTypeAndAction(
-                    EventType.SMS_ERROR, EventAction.FAILURE, startTime, endTime);
-
-                int totalBlockedCount = analyticsDao.getEventCountByTypeAndAction(
-                    EventType.SMS_BLOCKED, EventAction.FILTERED, startTime, endTime);
-
-                int appOpens = analyticsDao.getEventCountByTypeAndAction(
-                    EventType.APP_OPEN, EventAction.STARTED, startTime, endTime);
-                
-                // Get most common error
-                String mostCommonError = "";
-                try {
-                    List<AnalyticsEventDao.ErrorCodeCount> errorCounts = analyticsDao.getMostCommonErrors(startTime, endTime, 1);
-                    if (!errorCounts.isEmpty()) {
-                        mostCommonError = errorCounts.get(0).error_code;
-                    }
-                } catch (Exception e) {
-                    Log.w(TAG, "Could not get most common error: " + e.getMessage());
-                }
-                
-                // Calculate session metrics
-                long totalSessionDuration = 0;
-                double avgSessionDuration = 0.0;
-                // TODO: Calculate from APP_CLOSE events with duration
-                
-                // Create or update daily summary
-                StatisticsSummary summary = new StatisticsSummary(
-                    date, "DAILY", totalSmsReceived, totalForwards, successfulForwards,
-                    failedForwards, successRate, avgProcessingTime, errorCount,
-                    totalBlockedCount, mostCommonError, appOpens, totalSessionDuration,
-                    avgSessionDuration, System.currentTimeMillis(), System.currentTimeMillis()
-                );
-                
-                // Check if summary already exists
-                StatisticsSummaryDao summaryDao = database.statisticsSummaryDao();
-                if (summaryDao.summaryExists(date, "DAILY") > 0) {
-                    // Update existing summary
-                    StatisticsSummary existing = summaryDao.getSummaryByDateAndType(date, "DAILY");
-                    if (existing != null) {
-                        existing.setTotalSmsReceived(totalSmsReceived);
-                        existing.setTotalSmsForwarded(totalForwards);
-                        existing.setSuccessfulForwards(successfulForwards);
-                        existing.setFailedForwards(failedForwards);
-                        existing.setSuccessRate(successRate);
-                        existing.setAvgProcessingTimeMs(avgProcessingTime);
-                        existing.setErrorCount(errorCount);
-                        existing.setTotalBlockedCount(totalBlockedCount);
-                        existing.setMostCommonError(mostCommonError);
-                        existing.setAppOpens(appOpens);
-                        existing.setLastUpdated(System.currentTimeMillis());
-                        summaryDao.update(existing);
-                    }
-                } else {
-                    // Insert new summary
-                    summaryDao.insert(summary);
-                }
-                
-                // Debug logging removed for compatibility
-                
+                writeDailySummary(date);
             } catch (Exception e) {
                 Log.e(TAG, "Error generating daily summary: " + e.getMessage(), e);
             }
-        });
+        }, ThreadManager.TASK_PRIORITY_ANALYTICS, "daily-summary");
+    }
+    
+    /**
+     * Compute and store the DAILY summary of a date on the calling thread
+     * Used directly by StatisticsRollup, which already runs on a worker thread
+     * @param date Date in YYYY-MM-DD format
+     */
+    void writeDailySummary(String date) throws ParseException {
+        // Calculate date range for the day
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.US);
+        Date targetDate = dateFormat.parse(date);
+        long startTime = targetDate.getTime();
+        long endTime = startTime + (24 * 60 * 60 * 1000) - 1; // End of day
+        
+        // Make sure buffered events are counted
+        eventBuffer.flush();
+        
+        // Day counters are maintained incrementally, one row instead of scanning the day's events
+        StatisticsBucket day = database.statisticsBucketDao().getTotals(
+            StatisticsBucket.DAY, startTime, startTime);
+        AnalyticsEventDao analyticsDao = database.analyticsEventDao();
+        
+        int totalSmsReceived = day.getSmsReceived();
+        int successfulForwards = day.getSuccessfulForwards();
+        int failedForwards = day.getFailedForwards();
+        
+        int totalForwards = successfulForwards + failedForwards;
+        double successRate = totalForwards > 0 ? (successfulForwards * 100.0 / totalForwards) : 0.0;
+        
+        double avgProcessingTime = day.getAvgProcessingTimeMs();
+        int errorCount = day.getErrorCount();
+        int totalBlockedCount = day.getBlockedCount();
+        int appOpens = day.getAppOpens();
+        
+        // Get most common error
+        String mostCommonError = "";
+        try {
+            List<AnalyticsEventDao.ErrorCodeCount> errorCounts = analyticsDao.getMostCommonErrors(startTime, endTime, 1);
+            if (!errorCounts.isEmpty()) {
+                mostCommonError = errorCounts.get(0).error_code;
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Could not get most common error: " + e.getMessage());
+        }
+        
+        // Session metrics from APP_CLOSE events with duration
+        long totalSessionDuration = day.getSessionDurationTotalMs();
+        double avgSessionDuration = day.getAvgSessionDurationMs();
+        
+        // Create or replace daily summary in one statement, keeps its created timestamp
+        long now = System.currentTimeMillis();
+        database.statisticsSummaryDao().upsert(new StatisticsSummary(
+            date, "DAILY", totalSmsReceived, totalForwards, successfulForwards,
+            failedForwards, successRate, avgProcessingTime, errorCount,
+            totalBlockedCount, mostCommonError, appOpens, totalSessionDuration,
+            avgSessionDuration, now, now
+        ));
     }
     
     /**
@@ -490,39 +527,17 @@ public class StatisticsManager {
     
     /**
      * Get SIM usage statistics
+     * Totals cover the whole history (the period was never applied); they are cached and kept
+     * current by HistoryWriter, so repeated calls do not touch the database
      * @param startTime Start timestamp for analysis period
      * @param endTime End timestamp for analysis period
      * @return SIM usage statistics
      */
     public void getSimUsageStatistics(long startTime, long endTime, SimStatsCallback callback) {
-        ThreadManager.getInstance().executeDatabase(() -> {
+        ThreadManager.getInstance().executeDatabaseRead(() -> {
             try {
-                SmsHistoryDao historyDao = database.smsHistoryDao();
-                
-                // Get SIM-based counts from SMS history
-                int sim1Received = historyDao.getCountBySourceSim(0);
-                int sim2Received = historyDao.getCountBySourceSim(1);
-                int sim1Forwarded = historyDao.getCountByForwardingSim(0);
-                int sim2Forwarded = historyDao.getCountByForwardingSim(1);
-                
-                // Get success rates
-                double sim1SuccessRate = historyDao.getSuccessRateByForwardingSim(0);
-                double sim2SuccessRate = historyDao.getSuccessRateByForwardingSim(1);
-                
-                // Get SIM switch count (received on one SIM, forwarded via another)
-                int simSwitchCount = historyDao.getSimSwitchCount();
-                
-                // Get most used forwarding SIM
-                int mostUsedForwardingSim = historyDao.getMostUsedForwardingSim();
-                
-                // Get dual SIM statistics
-                List<SmsHistory> dualSimStats = historyDao.getDualSimStatistics();
-                
-                SimUsageStats stats = new SimUsageStats(
-                    sim1Received, sim2Received, sim1Forwarded, sim2Forwarded,
-                    sim1SuccessRate, sim2SuccessRate, simSwitchCount,
-                    mostUsedForwardingSim, dualSimStats.size()
-                );
+                // One aggregation pass over sms_history, then served from the cache HistoryWriter keeps current
+                SimUsageStats stats = SimUsageTracker.getInstance().getStats(database.smsHistoryDao());
                 
                 ThreadManager.getInstance().executeOnMainThread(() -> {
                     if (callback != null) {
@@ -538,7 +553,7 @@ public class StatisticsManager {
                     }
                 });
             }
-        });
+        }, ThreadManager.TASK_PRIORITY_NORMAL, "sim-usage-stats");
     }
     
     /**
@@ -588,9 +603,9 @@ public class StatisticsManager {
                 // Get existing daily summary data
                 generateDailySummary(date); // Generate base summary first
                 
-                // Get SIM-specific statistics for the day
+                // Get SIM-specific statistics for the day, aggregated per slot pair in SQL
                 SmsHistoryDao historyDao = database.smsHistoryDao();
-                List<SmsHistory> dayHistory = historyDao.getHistoryByDateRange(startTime, endTime);
+                List<SmsHistoryDao.SimSlotCount> slotCounts = historyDao.getSimSlotCountsByDateRange(startTime, endTime);
                 
                 // Calculate SIM-specific metrics
                 int sim1ReceivedToday = 0;
@@ -599,19 +614,18 @@ public class StatisticsManager {
                 int sim2ForwardedToday = 0;
                 int simSwitchesToday = 0;
                 
-                for (SmsHistory history : dayHistory) {
+                for (SmsHistoryDao.SimSlotCount slotCount : slotCounts) {
                     // Count received by SIM
-                    if (history.getSourceSimSlot() == 0) sim1ReceivedToday++;
-                    else if (history.getSourceSimSlot() == 1) sim2ReceivedToday++;
+                    if (slotCount.source_sim_slot == 0) sim1ReceivedToday += slotCount.count;
+                    else if (slotCount.source_sim_slot == 1) sim2ReceivedToday += slotCount.count;
                     
                     // Count forwarded by SIM
-                    if (history.getForwardingSimSlot() == 0) sim1ForwardedToday++;
-                    else if (history.getForwardingSimSlot() == 1) sim2ForwardedToday++;
+                    if (slotCount.forwarding_sim_slot == 0) sim1ForwardedToday += slotCount.count;
+                    else if (slotCount.forwarding_sim_slot == 1) sim2ForwardedToday += slotCount.count;
                     
                     // Count SIM switches
-                    if (history.getSourceSimSlot() != -1 && history.getForwardingSimSlot() != -1 &&
-                        history.getSourceSimSlot() != history.getForwardingSimSlot()) {
-                        simSwitchesToday++;
+                    if (slotCount.isSimSwitch()) {
+                        simSwitchesToday += slotCount.count;
                     }
                 }
                 
@@ -627,7 +641,7 @@ public class StatisticsManager {
             } catch (Exception e) {
                 Log.e(TAG, "Error generating daily SIM summary: " + e.getMessage(), e);
             }
-        });
+        }, ThreadManager.TASK_PRIORITY_ANALYTICS, "daily-sim-summary");
     }
     
     /**
@@ -635,6 +649,7 @@ public class StatisticsManager {
      */
     public void cleanup() {
         endSession();
+        ThreadManager.getInstance().executeDatabase(eventBuffer::flush, ThreadManager.TASK_PRIORITY_ANALYTICS, "analytics-flush");
         INSTANCE = null;
     }
     
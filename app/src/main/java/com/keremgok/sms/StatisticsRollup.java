@@ -0,0 +1,224 @@
+package com.keremgok.sms;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Periodic statistics rollup and raw event downsampling
+ * Run by CleanupWorker: writes the DAILY summaries of finished days, rolls them up into WEEKLY
+ * (Monday based) and MONTHLY summaries, then drops the raw analytics events whose counts now
+ * live in the day buckets and summaries. Events with an error code are left to the regular
+ * retention cleanup, since the most common error figures are computed from them.
+ */
+public class StatisticsRollup {
+
+    private static final String TAG = "StatisticsRollup";
+
+    public static final String DAILY = "DAILY";
+    public static final String WEEKLY = "WEEKLY";
+    public static final String MONTHLY = "MONTHLY";
+
+    private static final String PREFS_NAME = "statistics_rollup";
+    private static final String KEY_ROLLED_UP_THROUGH = "rolled_up_through"; // Start of the last day rolled up
+
+    private static final int MAX_BACKFILL_DAYS = 90;
+    // Raw events stay this long even after rollup, for the recent-error views
+    private static final int RAW_EVENT_RETENTION_DAYS = 7;
+
+    private final Context context;
+    private final AppDatabase database;
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.US);
+
+    public StatisticsRollup(Context context) {
+        this.context = context.getApplicationContext();
+        this.database = AppDatabase.getInstance(this.context);
+    }
+
+    /**
+     * Roll up every day finished since the last run and downsample raw events
+     * Runs database queries, call from a background thread
+     */
+    public void run() {
+        // Make sure buffered events are in the day buckets
+        StatisticsManager.flushIfActive();
+
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        Calendar today = startOfDay(System.currentTimeMillis());
+        Calendar yesterday = (Calendar) today.clone();
+        yesterday.add(Calendar.DAY_OF_MONTH, -1);
+
+        Calendar from = firstDayToRollUp(prefs, today);
+        if (from != null && !from.after(yesterday)) {
+            int days = rollUpDays(from, yesterday);
+            rollUpPeriods(WEEKLY, startOfWeek(from), yesterday);
+            rollUpPeriods(MONTHLY, startOfMonth(from), yesterday);
+            prefs.edit().putLong(KEY_ROLLED_UP_THROUGH, yesterday.getTimeInMillis()).apply();
+            Log.i(TAG, "Rolled up " + days + " days through " + dateFormat.format(yesterday.getTime()));
+        }
+
+        downsampleEvents(prefs, today);
+    }
+
+    /**
+     * First day without a DAILY summary written by the rollup
+     * @return Day start, or null if nothing was ever recorded
+     */
+    private Calendar firstDayToRollUp(SharedPreferences prefs, Calendar today) {
+        long rolledUpThrough = prefs.getLong(KEY_ROLLED_UP_THROUGH, -1);
+        if (rolledUpThrough >= 0) {
+            Calendar from = startOfDay(rolledUpThrough);
+            from.add(Calendar.DAY_OF_MONTH, 1);
+            return from;
+        }
+
+        // First run, start from the oldest day bucket within the backfill window
+        Long firstBucket = database.statisticsBucketDao().getFirstBucketStart(StatisticsBucket.DAY);
+        if (firstBucket == null) {
+            return null;
+        }
+        Calendar earliest = (Calendar) today.clone();
+        earliest.add(Calendar.DAY_OF_MONTH, -MAX_BACKFILL_DAYS);
+        Calendar from = startOfDay(firstBucket);
+        return from.before(earliest) ? earliest : from;
+    }
+
+    private int rollUpDays(Calendar from, Calendar through) {
+        StatisticsManager statisticsManager = StatisticsManager.getInstance(context);
+        Calendar day = (Calendar) from.clone();
+        int days = 0;
+        while (!day.after(through)) {
+            String date = dateFormat.format(day.getTime());
+            try {
+                statisticsManager.writeDailySummary(date);
+                days++;
+            } catch (Exception e) {
+                Log.e(TAG, "Error writing daily summary for " + date + ": " + e.getMessage(), e);
+            }
+            day.add(Calendar.DAY_OF_MONTH, 1);
+        }
+        return days;
+    }
+
+    /**
+     * Rebuild the summaries of every period from the one starting at first up to the one containing through
+     * Periods still in progress are summarized up to through and rebuilt on the next run
+     */
+    private void rollUpPeriods(String summaryType, Calendar first, Calendar through) {
+        Calendar periodStart = (Calendar) first.clone();
+        while (!periodStart.after(through)) {
+            Calendar nextPeriod = (Calendar) periodStart.clone();
+            nextPeriod.add(WEEKLY.equals(summaryType) ? Calendar.WEEK_OF_YEAR : Calendar.MONTH, 1);
+            Calendar lastDay = (Calendar) nextPeriod.clone();
+            lastDay.add(Calendar.DAY_OF_MONTH, -1);
+            if (lastDay.after(through)) {
+                lastDay = (Calendar) through.clone();
+            }
+
+            try {
+                rollUpPeriod(summaryType, periodStart, lastDay);
+            } catch (Exception e) {
+                Log.e(TAG, "Error writing " + summaryType + " summary for "
+                    + dateFormat.format(periodStart.getTime()) + ": " + e.getMessage(), e);
+            }
+            periodStart = nextPeriod;
+        }
+    }
+
+    /**
+     * Sum the DAILY summaries of a period into one summary dated at the period start
+     */
+    private void rollUpPeriod(String summaryType, Calendar periodStart, Calendar lastDay) {
+        StatisticsSummaryDao summaryDao = database.statisticsSummaryDao();
+        String date = dateFormat.format(periodStart.getTime());
+        List<StatisticsSummary> days = summaryDao.getSummariesByDateRange(
+            date, dateFormat.format(lastDay.getTime()), DAILY);
+        if (days.isEmpty()) {
+            return;
+        }
+
+        int totalSmsReceived = 0;
+        int totalForwards = 0;
+        int successfulForwards = 0;
+        int failedForwards = 0;
+        int errorCount = 0;
+        int totalBlockedCount = 0;
+        int appOpens = 0;
+        long totalSessionDuration = 0;
+        String mostCommonError = "";
+        int mostErrorsInADay = 0;
+        for (StatisticsSummary day : days) {
+            totalSmsReceived += day.getTotalSmsReceived();
+            totalForwards += day.getTotalSmsForwarded();
+            successfulForwards += day.getSuccessfulForwards();
+            failedForwards += day.getFailedForwards();
+            errorCount += day.getErrorCount();
+            totalBlockedCount += day.getTotalBlockedCount();
+            appOpens += day.getAppOpens();
+            totalSessionDuration += day.getSessionDurationTotalMs();
+            // Error codes are only known per day, take the one of the worst day
+            if (day.getErrorCount() > mostErrorsInADay && day.getMostCommonError() != null
+                    && !day.getMostCommonError().isEmpty()) {
+                mostErrorsInADay = day.getErrorCount();
+                mostCommonError = day.getMostCommonError();
+            }
+        }
+        double successRate = totalForwards > 0 ? (successfulForwards * 100.0 / totalForwards) : 0.0;
+
+        // Averages come from the day buckets, averaging the daily averages would weight quiet days too much
+        StatisticsBucket buckets = database.statisticsBucketDao().getTotals(
+            StatisticsBucket.DAY, periodStart.getTimeInMillis(), lastDay.getTimeInMillis());
+        double avgProcessingTime = buckets.getAvgProcessingTimeMs();
+        double avgSessionDuration = buckets.getAvgSessionDurationMs();
+
+        long now = System.currentTimeMillis();
+        summaryDao.upsert(new StatisticsSummary(
+            date, summaryType, totalSmsReceived, totalForwards, successfulForwards,
+            failedForwards, successRate, avgProcessingTime, errorCount,
+            totalBlockedCount, mostCommonError, appOpens, totalSessionDuration,
+            avgSessionDuration, now, now));
+    }
+
+    /**
+     * Drop raw events that are both rolled up and older than RAW_EVENT_RETENTION_DAYS
+     */
+    private void downsampleEvents(SharedPreferences prefs, Calendar today) {
+        long rolledUpThrough = prefs.getLong(KEY_ROLLED_UP_THROUGH, -1);
+        if (rolledUpThrough < 0) {
+            return;
+        }
+        Calendar rolledUpEnd = startOfDay(rolledUpThrough);
+        rolledUpEnd.add(Calendar.DAY_OF_MONTH, 1);
+        Calendar retentionStart = (Calendar) today.clone();
+        retentionStart.add(Calendar.DAY_OF_MONTH, -RAW_EVENT_RETENTION_DAYS);
+        long cutoff = Math.min(rolledUpEnd.getTimeInMillis(), retentionStart.getTimeInMillis());
+
+        int deleted = database.analyticsEventDao().deleteRolledUpEvents(cutoff);
+        if (deleted > 0) {
+            Log.i(TAG, "Downsampled " + deleted + " rolled up analytics events");
+        }
+    }
+
+    private static Calendar startOfDay(long timestamp) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(StatisticsBucket.bucketStart(StatisticsBucket.DAY, timestamp));
+        return calendar;
+    }
+
+    private static Calendar startOfWeek(Calendar day) {
+        Calendar calendar = (Calendar) day.clone();
+        int daysSinceMonday = (calendar.get(Calendar.DAY_OF_WEEK) + 5) % 7;
+        calendar.add(Calendar.DAY_OF_MONTH, -daysSinceMonday);
+        return calendar;
+    }
+
+    private static Calendar startOfMonth(Calendar day) {
+        Calendar calendar = (Calendar) day.clone();
+        calendar.set(Calendar.DAY_OF_MONTH, 1);
+        return calendar;
+    }
+}
@@ -1,6 +1,7 @@
 package com.keremgok.sms;
 
 import androidx.room.Entity;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 import androidx.room.ColumnInfo;
 
@@ -9,7 +10,12 @@ import androidx.room.ColumnInfo;
  * Stores aggregated daily/weekly/monthly statistics for dashboard
  * Privacy-first approach - no sensitive user data stored
  */
-@Entity(tableName = "statistics_summary")
+@Entity(
+    tableName = "statistics_summary",
+    indices = {
+        @Index(value = {"summary_type", "date"}, unique = true)
+    }
+)
 public class StatisticsSummary {
     
     @PrimaryKey(autoGenerate = true)
@@ -30,15 +30,28 @@ public interface StatisticsSummaryDao {
     void update(StatisticsSummary summary);
     
     /**
-     * Insert or update statistics summary (upsert functionality)
-     * @param summary The statistics summary to insert or update
+     * Insert or replace the summary of a date and type in one statement
+     * Relies on the unique (summary_type, date) index; the replaced row's created_timestamp is kept
      */
-    @Query("INSERT OR REPLACE INTO statistics_summary (date, summary_type, total_sms_received, total_sms_forwarded, successful_forwards, failed_forwards, success_rate, avg_processing_time_ms, error_count, most_common_error, app_opens, session_duration_total_ms, avg_session_duration_ms, created_timestamp, last_updated) VALUES (:date, :summaryType, :totalSmsReceived, :totalSmsForwarded, :successfulForwards, :failedForwards, :successRate, :avgProcessingTimeMs, :errorCount, :mostCommonError, :appOpens, :sessionDurationTotalMs, :avgSessionDurationMs, :createdTimestamp, :lastUpdated)")
+    @Query("INSERT OR REPLACE INTO statistics_summary (date, summary_type, total_sms_received, total_sms_forwarded, successful_forwards, failed_forwards, success_rate, avg_processing_time_ms, error_count, total_blocked_count, most_common_error, app_opens, session_duration_total_ms, avg_session_duration_ms, created_timestamp, last_updated) VALUES (:date, :summaryType, :totalSmsReceived, :totalSmsForwarded, :successfulForwards, :failedForwards, :successRate, :avgProcessingTimeMs, :errorCount, :totalBlockedCount, :mostCommonError, :appOpens, :sessionDurationTotalMs, :avgSessionDurationMs, COALESCE((SELECT created_timestamp FROM statistics_summary WHERE date = :date AND summary_type = :summaryType), :lastUpdated), :lastUpdated)")
     void insertOrUpdate(String date, String summaryType, int totalSmsReceived, int totalSmsForwarded, 
                        int successfulForwards, int failedForwards, double successRate, 
-                       double avgProcessingTimeMs, int errorCount, String mostCommonError, 
+                       double avgProcessingTimeMs, int errorCount, int totalBlockedCount, String mostCommonError, 
                        int appOpens, long sessionDurationTotalMs, double avgSessionDurationMs, 
-                       long createdTimestamp, long lastUpdated);
+                       long lastUpdated);
+    
+    /**
+     * Atomically insert a summary or replace the existing one for its date and type
+     * Safe to call concurrently for the same date, the last write wins
+     * @param summary The statistics summary to store
+     */
+    default void upsert(StatisticsSummary summary) {
+        insertOrUpdate(summary.getDate(), summary.getSummaryType(), summary.getTotalSmsReceived(),
+            summary.getTotalSmsForwarded(), summary.getSuccessfulForwards(), summary.getFailedForwards(),
+            summary.getSuccessRate(), summary.getAvgProcessingTimeMs(), summary.getErrorCount(),
+            summary.getTotalBlockedCount(), summary.getMostCommonError(), summary.getAppOpens(),
+            summary.getSessionDurationTotalMs(), summary.getAvgSessionDurationMs(), summary.getLastUpdated());
+    }
     
     /**
      * Get all statistics summaries ordered by date (newest first)
@@ -1,6 +1,7 @@
 package com.keremgok.sms;
 
 import androidx.room.Entity;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 import androidx.room.ColumnInfo;
 import androidx.room.Ignore;
@@ -9,7 +10,13 @@ import androidx.room.Ignore;
  * Target Number Entity for Room Database
  * Stores multiple target phone numbers for SMS forwarding
  */
-@Entity(tableName = "target_numbers")
+@Entity(
+    tableName = "target_numbers",
+    indices = {
+        @Index(value = "phone_number"),
+        @Index(value = "is_enabled")
+    }
+)
 public class TargetNumber {
     
     @PrimaryKey(autoGenerate = true)
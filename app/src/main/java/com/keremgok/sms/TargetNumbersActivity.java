@@ -47,6 +47,7 @@ public class TargetNumbersActivity extends AppCompatActivity implements TargetNu
     private EditText etNewDisplayName;
     private CheckBox cbSetAsPrimary;
     private CheckBox cbEnabled;
+    private CheckBox cbDigestMode;
     private TextView tvValidationMessage;
     private Button btnAddTarget;
     
@@ -67,6 +68,10 @@ public class TargetNumbersActivity extends AppCompatActivity implements TargetNu
     private AppDatabase database;
     private TargetNumberDao targetNumberDao;
     private SharedPreferences prefs;
+    
+    // Latest list load and duplicate check, newer ones drop the ones they supersede
+    private final HermesFuture.Latest targetsQuery = new HermesFuture.Latest();
+    private final HermesFuture.Latest duplicateCheck = new HermesFuture.Latest();
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -133,6 +138,7 @@ public class TargetNumbersActivity extends AppCompatActivity implements TargetNu
         etNewDisplayName = dialogView.findViewById(R.id.etNewDisplayName);
         cbSetAsPrimary = dialogView.findViewById(R.id.cbSetAsPrimary);
         cbEnabled = dialogView.findViewById(R.id.cbEnabled);
+        cbDigestMode = dialogView.findViewById(R.id.cbDigestMode);
         tvValidationMessage = dialogView.findViewById(R.id.tvValidationMessage);
         
         // Initialize SIM selection components
@@ -325,10 +331,12 @@ public class TargetNumbersActivity extends AppCompatActivity implements TargetNu
         PhoneNumberValidator.ValidationResult result = PhoneNumberValidator.validate(phoneNumber);
         
         if (result.isValid()) {
-            // Check for duplicates
-            ThreadManager.getInstance().executeBackground(() -> {
-                boolean exists = targetNumberDao.isPhoneNumberExists(phoneNumber);
-                runOnUiThread(() -> {
+            // Check for duplicates, each keystroke supersedes the previous check
+            duplicateCheck.replace(ThreadManager.getInstance()
+                .supplyDatabaseRead(() -> targetNumberDao.isPhoneNumberExists(phoneNumber),
+                                ThreadManager.TASK_PRIORITY_UI, "target-duplicate-check")
+                .bindTo(this)
+                .onMainThread(exists -> {
                     if (exists) {
                         showValidationError(getString(R.string.target_duplicate_number));
                         enableAddButton(false);
@@ -336,9 +344,9 @@ public class TargetNumbersActivity extends AppCompatActivity implements TargetNu
                         showValidationSuccess();
                         enableAddButton(true);
                     }
-                });
-            });
+                }, null));
         } else {
+            duplicateCheck.cancel();
             String errorMessage = getValidationMessage(result.getErrorCode());
             showValidationError(errorMessage);
             enableAddButton(false);
@@ -406,6 +414,7 @@ public class TargetNumbersActivity extends AppCompatActivity implements TargetNu
         String displayName = etNewDisplayName.getText().toString().trim();
         boolean isPrimary = cbSetAsPrimary.isChecked();
         boolean isEnabled = cbEnabled.isChecked();
+        boolean digestMode = cbDigestMode.isChecked();
         
         // Validate phone number
         PhoneNumberValidator.ValidationResult result = PhoneNumberValidator.validate(phoneNumber);
@@ -451,6 +460,7 @@ public class TargetNumbersActivity extends AppCompatActivity implements TargetNu
                 }
                 
                 long id = targetNumberDao.insert(targetNumber);
+                DigestManager.setDigestTarget(this, formattedNumber, digestMode);
                 
                 // If this is the first target, set as primary automatically
                 List<TargetNumber> allTargets = targetNumberDao.getAllTargetNumbers();
@@ -481,13 +491,13 @@ public class TargetNumbersActivity extends AppCompatActivity implements TargetNu
      * Load target numbers from database and update UI
      */
     private void loadTargetNumbers() {
-        ThreadManager.getInstance().executeDatabase(() -> {
-            List<TargetNumber> targets = targetNumberDao.getAllTargetNumbers();
-            runOnUiThread(() -> {
+        targetsQuery.replace(ThreadManager.getInstance()
+            .supplyDatabaseRead(() -> targetNumberDao.getAllTargetNumbers(), ThreadManager.TASK_PRIORITY_UI, "target-list")
+            .bindTo(this)
+            .onMainThread(targets -> {
                 adapter.updateTargetNumbers(targets);
                 updateUI();
-            });
-        });
+            }, null));
     }
     
     /**
@@ -566,6 +576,7 @@ public class TargetNumbersActivity extends AppCompatActivity implements TargetNu
         ThreadManager.getInstance().executeDatabase(() -> {
             try {
                 targetNumberDao.delete(targetNumber);
+                DigestManager.setDigestTarget(this, targetNumber.getPhoneNumber(), false);
                 runOnUiThread(() -> {
                     Toast.makeText(this, R.string.target_delete_success, Toast.LENGTH_SHORT).show();
                     loadTargetNumbers();
@@ -594,6 +605,7 @@ public class TargetNumbersActivity extends AppCompatActivity implements TargetNu
         EditText etDisplayName = dialogView.findViewById(R.id.etNewDisplayName);
         CheckBox cbSetPrimary = dialogView.findViewById(R.id.cbSetAsPrimary);
         CheckBox cbEnabledCheck = dialogView.findViewById(R.id.cbEnabled);
+        CheckBox cbDigestModeCheck = dialogView.findViewById(R.id.cbDigestMode);
         RadioGroup radioGroupSimMode = dialogView.findViewById(R.id.radio_group_sim_mode);
         RadioButton rbSimAuto = dialogView.findViewById(R.id.radio_auto);
         RadioButton rbSimSource = dialogView.findViewById(R.id.radio_source);
@@ -606,6 +618,7 @@ public class TargetNumbersActivity extends AppCompatActivity implements TargetNu
         etDisplayName.setText(targetNumber.getDisplayName());
         cbSetPrimary.setChecked(targetNumber.isPrimary());
         cbEnabledCheck.setChecked(targetNumber.isEnabled());
+        cbDigestModeCheck.setChecked(DigestManager.isDigestTarget(this, targetNumber.getPhoneNumber()));
 
         // Pre-select SIM mode
         String simMode = targetNumber.getSimSelectionMode();
@@ -675,6 +688,7 @@ public class TargetNumbersActivity extends AppCompatActivity implements TargetNu
                 String displayName = etDisplayName.getText().toString().trim();
                 boolean isPrimary = cbSetPrimary.isChecked();
                 boolean isEnabled = cbEnabledCheck.isChecked();
+                boolean digestMode = cbDigestModeCheck.isChecked();
 
                 String simSelectionMode = "auto";
                 int preferredSimSlot = -1;
@@ -687,7 +701,7 @@ public class TargetNumbersActivity extends AppCompatActivity implements TargetNu
                     preferredSimSlot = spinnerSimSelection.getSelectedItemPosition();
                 }
 
-                if (updateTargetNumber(targetNumber, phoneNumber, displayName, isPrimary, isEnabled, simSelectionMode, preferredSimSlot)) {
+                if (updateTargetNumber(targetNumber, phoneNumber, displayName, isPrimary, isEnabled, simSelectionMode, preferredSimSlot, digestMode)) {
                     dialog.dismiss();
                 }
             });
@@ -732,10 +746,12 @@ public class TargetNumbersActivity extends AppCompatActivity implements TargetNu
         PhoneNumberValidator.ValidationResult result = PhoneNumberValidator.validate(phoneNumber);
 
         if (result.isValid()) {
-            // Check for duplicates (excluding current target)
-            ThreadManager.getInstance().executeBackground(() -> {
-                boolean exists = targetNumberDao.isPhoneNumberExistsExcept(phoneNumber, targetNumber.getId());
-                runOnUiThread(() -> {
+            // Check for duplicates (excluding current target), each keystroke supersedes the previous check
+            duplicateCheck.replace(ThreadManager.getInstance()
+                .supplyDatabaseRead(() -> targetNumberDao.isPhoneNumberExistsExcept(phoneNumber, targetNumber.getId()),
+                                ThreadManager.TASK_PRIORITY_UI, "target-duplicate-check")
+                .bindTo(this)
+                .onMainThread(exists -> {
                     if (exists) {
                         showEditValidationError(getString(R.string.target_duplicate_number), tvValidationMessage);
                         updateButton.setEnabled(false);
@@ -743,9 +759,9 @@ public class TargetNumbersActivity extends AppCompatActivity implements TargetNu
                         showEditValidationSuccess(tvValidationMessage);
                         updateButton.setEnabled(true);
                     }
-                });
-            });
+                }, null));
         } else {
+            duplicateCheck.cancel();
             String errorMessage = getValidationMessage(result.getErrorCode());
             showEditValidationError(errorMessage, tvValidationMessage);
             updateButton.setEnabled(false);
@@ -775,7 +791,8 @@ public class TargetNumbersActivity extends AppCompatActivity implements TargetNu
      * @return true if update initiated successfully, false if validation failed
      */
     private boolean updateTargetNumber(TargetNumber targetNumber, String phoneNumber, String displayName,
-                                       boolean isPrimary, boolean isEnabled, String simSelectionMode, int preferredSimSlot) {
+                                       boolean isPrimary, boolean isEnabled, String simSelectionMode, int preferredSimSlot,
+                                       boolean digestMode) {
         // Validate phone number
         PhoneNumberValidator.ValidationResult result = PhoneNumberValidator.validate(phoneNumber);
         if (!result.isValid()) {
@@ -785,7 +802,7 @@ public class TargetNumbersActivity extends AppCompatActivity implements TargetNu
         }
 
         // Check for duplicate phone number (excluding current target)
-        ThreadManager.getInstance().executeDatabase(() -> {
+        ThreadManager.getInstance().executeDatabaseRead(() -> {
             boolean duplicateExists = targetNumberDao.isPhoneNumberExistsExcept(phoneNumber, targetNumber.getId());
 
             runOnUiThread(() -> {
@@ -794,6 +811,10 @@ public class TargetNumbersActivity extends AppCompatActivity implements TargetNu
                     return;
                 }
 
+                // Digest opt-in is keyed by phone number
+                DigestManager.setDigestTarget(this, targetNumber.getPhoneNumber(), false);
+                DigestManager.setDigestTarget(this, phoneNumber, digestMode);
+
                 // Update the target number object with new values
                 targetNumber.setPhoneNumber(phoneNumber);
                 targetNumber.setDisplayName(displayName);
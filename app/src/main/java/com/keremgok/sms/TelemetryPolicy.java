@@ -0,0 +1,194 @@
+package com.keremgok.sms;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+import androidx.preference.PreferenceManager;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Verbosity levels and sampling rates for analytics events and SIM logs
+ * Every record type runs at one of four levels: OFF drops it, ERRORS keeps only error records,
+ * SAMPLED keeps error records plus every Nth other record, FULL keeps everything. Error records
+ * are never sampled away. A kept sample is weighted by N, so counts read back from the kept
+ * records are extrapolated to the real totals.
+ * Analytics records are keyed by event type (e.g. SMS_RECEIVED), SIM log records by "SIM_" plus
+ * their category (e.g. SIM_SMS_RECEIVE, SIM_FORWARD). The default level applies to every key
+ * without an override.
+ */
+public class TelemetryPolicy {
+
+    private static final String TAG = "TelemetryPolicy";
+
+    // Levels
+    public static final int OFF = 0;
+    public static final int ERRORS = 1;
+    public static final int SAMPLED = 2;
+    public static final int FULL = 3;
+
+    // SharedPreferences keys
+    public static final String PREF_LEVEL = "pref_telemetry_level";
+    public static final String PREF_SAMPLE_RATE = "pref_telemetry_sample_rate";
+    public static final String PREF_OVERRIDES = "pref_telemetry_overrides"; // TYPE=level[:rate], comma separated
+
+    private static final int DEFAULT_SAMPLE_RATE = 10;
+    private static final int MAX_SAMPLE_RATE = 10000;
+
+    private static volatile TelemetryPolicy current = new TelemetryPolicy(new Rule(FULL, 1), new HashMap<>());
+    private static SharedPreferences.OnSharedPreferenceChangeListener listener; // Strong reference, prefs only keep weak ones
+
+    private final Rule defaultRule;
+    private final Map<String, Rule> overrides;
+    // Records seen per key, picks every Nth one for SAMPLED
+    private final ConcurrentHashMap<String, AtomicLong> sequences = new ConcurrentHashMap<>();
+
+    private static class Rule {
+        final int level;
+        final int sampleRate;
+
+        Rule(int level, int sampleRate) {
+            this.level = level;
+            this.sampleRate = sampleRate;
+        }
+    }
+
+    private TelemetryPolicy(Rule defaultRule, Map<String, Rule> overrides) {
+        this.defaultRule = defaultRule;
+        this.overrides = overrides;
+    }
+
+    /**
+     * Get the policy in effect, FULL for everything until load() ran
+     */
+    public static TelemetryPolicy get() {
+        return current;
+    }
+
+    /**
+     * Load the policy from settings and follow later changes to them
+     */
+    public static synchronized void load(Context context) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context.getApplicationContext());
+        current = fromPreferences(prefs);
+        if (listener == null) {
+            listener = (changed, key) -> {
+                if (PREF_LEVEL.equals(key) || PREF_SAMPLE_RATE.equals(key) || PREF_OVERRIDES.equals(key)) {
+                    current = fromPreferences(changed);
+                }
+            };
+            prefs.registerOnSharedPreferenceChangeListener(listener);
+        }
+    }
+
+    private static TelemetryPolicy fromPreferences(SharedPreferences prefs) {
+        int sampleRate = parseRate(prefs.getString(PREF_SAMPLE_RATE, String.valueOf(DEFAULT_SAMPLE_RATE)), DEFAULT_SAMPLE_RATE);
+        int level = parseLevel(prefs.getString(PREF_LEVEL, "full"), FULL);
+        Rule defaultRule = new Rule(level, sampleRate);
+
+        Map<String, Rule> overrides = new HashMap<>();
+        String spec = prefs.getString(PREF_OVERRIDES, "");
+        if (spec != null) {
+            for (String entry : spec.split(",")) {
+                int equals = entry.indexOf('=');
+                if (equals <= 0) {
+                    continue;
+                }
+                String key = entry.substring(0, equals).trim().toUpperCase(Locale.US);
+                String value = entry.substring(equals + 1).trim();
+                int colon = value.indexOf(':');
+                int entryLevel = parseLevel(colon >= 0 ? value.substring(0, colon) : value, -1);
+                if (entryLevel < 0) {
+                    Log.w(TAG, "Ignoring telemetry override with unknown level: " + entry.trim());
+                    continue;
+                }
+                int entryRate = colon >= 0 ? parseRate(value.substring(colon + 1), sampleRate) : sampleRate;
+                overrides.put(key, new Rule(entryLevel, entryRate));
+            }
+        }
+        return new TelemetryPolicy(defaultRule, overrides);
+    }
+
+    private static int parseLevel(String value, int fallback) {
+        if (value == null) {
+            return fallback;
+        }
+        switch (value.trim().toLowerCase(Locale.US)) {
+            case "off":
+                return OFF;
+            case "errors":
+                return ERRORS;
+            case "sampled":
+                return SAMPLED;
+            case "full":
+                return FULL;
+            default:
+                return fallback;
+        }
+    }
+
+    private static int parseRate(String value, int fallback) {
+        try {
+            int rate = Integer.parseInt(value.trim());
+            return rate >= 1 ? Math.min(rate, MAX_SAMPLE_RATE) : fallback;
+        } catch (NumberFormatException | NullPointerException e) {
+            return fallback;
+        }
+    }
+
+    /**
+     * Get the level a record type runs at
+     */
+    public int getLevel(String key) {
+        return ruleFor(key).level;
+    }
+
+    /**
+     * Decide whether to keep one record
+     * @param key Event type, or "SIM_" plus the SIM log category
+     * @param isError Error records are kept at every level but OFF
+     * @return 0 to drop the record, otherwise the number of records the kept one stands for
+     */
+    public int sample(String key, boolean isError) {
+        Rule rule = ruleFor(key);
+        switch (rule.level) {
+            case FULL:
+                return 1;
+            case SAMPLED:
+                if (isError || rule.sampleRate <= 1) {
+                    return 1;
+                }
+                return nextSequence(key) % rule.sampleRate == 0 ? rule.sampleRate : 0;
+            case ERRORS:
+                return isError ? 1 : 0;
+            default:
+                return 0;
+        }
+    }
+
+    private Rule ruleFor(String key) {
+        if (!overrides.isEmpty() && key != null) {
+            Rule rule = overrides.get(key);
+            if (rule != null) {
+                return rule;
+            }
+        }
+        return defaultRule;
+    }
+
+    private long nextSequence(String key) {
+        key = String.valueOf(key);
+        AtomicLong sequence = sequences.get(key);
+        if (sequence == null) {
+            AtomicLong created = new AtomicLong(0);
+            sequence = sequences.putIfAbsent(key, created);
+            if (sequence == null) {
+                sequence = created;
+            }
+        }
+        return sequence.getAndIncrement();
+    }
+}
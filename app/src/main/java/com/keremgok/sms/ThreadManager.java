@@ -2,11 +2,23 @@ package com.keremgok.sms;
 
 import android.os.Handler;
 import android.os.Looper;
-import java.util.concurrent.ExecutorService;
+import android.util.Log;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Centralized thread management for performance optimization
@@ -14,41 +26,73 @@ import java.util.concurrent.TimeUnit;
  */
 public class ThreadManager {
     
+    private static final String TAG = "ThreadManager";
+    
+    // Task priorities, lower runs first. Tasks of equal priority run in submission order.
+    public static final int TASK_PRIORITY_SMS = 0;       // Receiving, queueing and sending SMS
+    public static final int TASK_PRIORITY_UI = 1;        // Loads a visible screen is waiting for
+    public static final int TASK_PRIORITY_NORMAL = 2;    // Default for everything else
+    public static final int TASK_PRIORITY_ANALYTICS = 3; // Statistics and analytics recording
+    
+    // Pool sizing
+    private static final int CPU_COUNT = Runtime.getRuntime().availableProcessors();
+    private static final int BACKGROUND_POOL_SIZE = Math.max(2, Math.min(CPU_COUNT, 4));
+    private static final int DATABASE_READ_POOL_SIZE = Math.max(2, Math.min(CPU_COUNT, 4)); // WAL allows concurrent readers
+    private static final int NETWORK_POOL_SIZE = Math.max(1, Math.min(CPU_COUNT, 3));
+    private static final long KEEP_ALIVE_SECONDS = 30;
+    
+    // Queue bounds, analytics may only fill part of a queue so SMS work always finds room
+    private static final int DATABASE_QUEUE_CAPACITY = 512;
+    private static final int WORKER_QUEUE_CAPACITY = 256;
+    private static final int ANALYTICS_QUEUE_CAPACITY = 64;
+    
+    // Upper bound on distinct task tags tracked per pool
+    private static final int MAX_TAGS_PER_POOL = 32;
+    
     private static ThreadManager instance;
     
     // Thread pools for different types of operations
-    private final ExecutorService databaseExecutor;
-    private final ExecutorService networkExecutor;
-    private final ExecutorService backgroundExecutor;
+    private final ThreadPoolExecutor databaseExecutor;
+    private final ThreadPoolExecutor databaseReadExecutor;
+    private final ThreadPoolExecutor networkExecutor;
+    private final ThreadPoolExecutor backgroundExecutor;
     private final ScheduledExecutorService scheduledExecutor;
     
+    // Rejected task counters per pool
+    private final AtomicInteger databaseRejected = new AtomicInteger(0);
+    private final AtomicInteger databaseReadRejected = new AtomicInteger(0);
+    private final AtomicInteger networkRejected = new AtomicInteger(0);
+    private final AtomicInteger backgroundRejected = new AtomicInteger(0);
+    
+    // Queue-wait and run-time histograms per pool
+    private final PoolTimings databaseTimings = new PoolTimings("DB");
+    private final PoolTimings databaseReadTimings = new PoolTimings("DB read");
+    private final PoolTimings networkTimings = new PoolTimings("Network");
+    private final PoolTimings backgroundTimings = new PoolTimings("Background");
+    
+    // Submission order for tasks of equal priority
+    private final AtomicLong taskSequence = new AtomicLong(0);
+    
     // Main thread handler for UI updates
     private final Handler mainHandler;
     
     private ThreadManager() {
-        // Database operations pool - single thread to avoid conflicts
-        databaseExecutor = Executors.newSingleThreadExecutor(r -> {
-            Thread t = new Thread(r);
-            t.setName("HermesDB-Thread");
-            t.setPriority(Thread.NORM_PRIORITY);
-            return t;
-        });
+        // Database write pool - single writer, SQLite serializes writes anyway
+        // Its tasks never run on the submitting thread, that would put a second writer next to it
+        databaseExecutor = createPriorityPool(1, DATABASE_QUEUE_CAPACITY, "HermesDB-Thread",
+                                              Thread.NORM_PRIORITY, databaseRejected, false);
+        
+        // Database read pool - readers run concurrently with the writer on WAL connections
+        databaseReadExecutor = createPriorityPool(DATABASE_READ_POOL_SIZE, DATABASE_QUEUE_CAPACITY, "HermesDBRead-Thread",
+                                                  Thread.NORM_PRIORITY, databaseReadRejected, true);
         
         // Network/SMS operations pool - small pool for concurrent operations
-        networkExecutor = Executors.newFixedThreadPool(3, r -> {
-            Thread t = new Thread(r);
-            t.setName("HermesNetwork-Thread");
-            t.setPriority(Thread.NORM_PRIORITY);
-            return t;
-        });
+        networkExecutor = createPriorityPool(NETWORK_POOL_SIZE, WORKER_QUEUE_CAPACITY, "HermesNetwork-Thread",
+                                             Thread.NORM_PRIORITY, networkRejected, true);
         
-        // General background operations pool
-        backgroundExecutor = Executors.newCachedThreadPool(r -> {
-            Thread t = new Thread(r);
-            t.setName("HermesBackground-Thread");
-            t.setPriority(Thread.NORM_PRIORITY - 1);
-            return t;
-        });
+        // General background operations pool - bounded to the core count
+        backgroundExecutor = createPriorityPool(BACKGROUND_POOL_SIZE, WORKER_QUEUE_CAPACITY, "HermesBackground-Thread",
+                                                Thread.NORM_PRIORITY - 1, backgroundRejected, true);
         
         // Scheduled operations pool
         scheduledExecutor = Executors.newScheduledThreadPool(2, r -> {
@@ -74,10 +118,44 @@ public class ThreadManager {
     
     /**
      * Execute database operation in background
-     * Use this for Room database operations
+     * Use this for Room database writes and read-modify-write work, it runs on the single writer
      */
     public void executeDatabase(Runnable task) {
-        databaseExecutor.execute(task);
+        executeDatabase(task, TASK_PRIORITY_NORMAL);
+    }
+    
+    /**
+     * Execute database operation in background with a task priority
+     */
+    public void executeDatabase(Runnable task, int priority) {
+        executeDatabase(task, priority, null);
+    }
+    
+    /**
+     * Execute database operation with a task priority and a tag for per-task timing
+     * @param tag Short task name shown in timing stats, null for untagged
+     * @return false if the backpressure policy dropped the task (full queue or shutdown)
+     */
+    public boolean executeDatabase(Runnable task, int priority, String tag) {
+        PrioritizedTask prioritized = new PrioritizedTask(task, priority, taskSequence.getAndIncrement(), databaseTimings, tag);
+        databaseExecutor.execute(prioritized);
+        return !prioritized.dropped;
+    }
+    
+    /**
+     * Execute read-only database operation in background
+     * Use this for Room queries that do not write, they don't wait behind queued writes
+     */
+    public void executeDatabaseRead(Runnable task) {
+        executeDatabaseRead(task, TASK_PRIORITY_NORMAL, null);
+    }
+    
+    /**
+     * Execute read-only database operation with a task priority and a tag for per-task timing
+     * @param tag Short task name shown in timing stats, null for untagged
+     */
+    public void executeDatabaseRead(Runnable task, int priority, String tag) {
+        databaseReadExecutor.execute(new PrioritizedTask(task, priority, taskSequence.getAndIncrement(), databaseReadTimings, tag));
     }
     
     /**
@@ -85,7 +163,22 @@ public class ThreadManager {
      * Use this for SMS sending, network calls
      */
     public void executeNetwork(Runnable task) {
-        networkExecutor.execute(task);
+        executeNetwork(task, TASK_PRIORITY_NORMAL);
+    }
+    
+    /**
+     * Execute network/SMS operation in background with a task priority
+     */
+    public void executeNetwork(Runnable task, int priority) {
+        executeNetwork(task, priority, null);
+    }
+    
+    /**
+     * Execute network/SMS operation with a task priority and a tag for per-task timing
+     * @param tag Short task name shown in timing stats, null for untagged
+     */
+    public void executeNetwork(Runnable task, int priority, String tag) {
+        networkExecutor.execute(new PrioritizedTask(task, priority, taskSequence.getAndIncrement(), networkTimings, tag));
     }
     
     /**
@@ -93,7 +186,65 @@ public class ThreadManager {
      * Use this for file operations, calculations, etc.
      */
     public void executeBackground(Runnable task) {
-        backgroundExecutor.execute(task);
+        executeBackground(task, TASK_PRIORITY_NORMAL);
+    }
+    
+    /**
+     * Execute general background operation with a task priority
+     */
+    public void executeBackground(Runnable task, int priority) {
+        executeBackground(task, priority, null);
+    }
+    
+    /**
+     * Execute background operation with a task priority and a tag for per-task timing
+     * @param tag Short task name shown in timing stats, null for untagged
+     */
+    public void executeBackground(Runnable task, int priority, String tag) {
+        backgroundExecutor.execute(new PrioritizedTask(task, priority, taskSequence.getAndIncrement(), backgroundTimings, tag));
+    }
+    
+    /**
+     * Run a database query and return a composable future of its result
+     * Use this instead of nesting executeDatabase and executeOnMainThread
+     */
+    public <T> HermesFuture<T> supplyDatabase(Callable<T> work) {
+        return supplyDatabase(work, TASK_PRIORITY_NORMAL, null);
+    }
+    
+    /**
+     * Run a database query with a task priority and tag and return a future of its result
+     */
+    public <T> HermesFuture<T> supplyDatabase(Callable<T> work, int priority, String tag) {
+        return HermesFuture.supply(task -> executeDatabase(task, priority, tag), work);
+    }
+    
+    /**
+     * Run a read-only database query and return a composable future of its result
+     */
+    public <T> HermesFuture<T> supplyDatabaseRead(Callable<T> work) {
+        return supplyDatabaseRead(work, TASK_PRIORITY_NORMAL, null);
+    }
+    
+    /**
+     * Run a read-only database query with a task priority and tag and return a future of its result
+     */
+    public <T> HermesFuture<T> supplyDatabaseRead(Callable<T> work, int priority, String tag) {
+        return HermesFuture.supply(task -> executeDatabaseRead(task, priority, tag), work);
+    }
+    
+    /**
+     * Run background work and return a composable future of its result
+     */
+    public <T> HermesFuture<T> supplyBackground(Callable<T> work) {
+        return supplyBackground(work, TASK_PRIORITY_NORMAL, null);
+    }
+    
+    /**
+     * Run background work with a task priority and tag and return a future of its result
+     */
+    public <T> HermesFuture<T> supplyBackground(Callable<T> work, int priority, String tag) {
+        return HermesFuture.supply(task -> executeBackground(task, priority, tag), work);
     }
     
     /**
@@ -144,23 +295,21 @@ public class ThreadManager {
     public ThreadPoolStats getStats() {
         ThreadPoolStats stats = new ThreadPoolStats();
         
-        if (databaseExecutor instanceof ThreadPoolExecutor) {
-            ThreadPoolExecutor dbPool = (ThreadPoolExecutor) databaseExecutor;
-            stats.databaseActiveThreads = dbPool.getActiveCount();
-            stats.databaseQueueSize = dbPool.getQueue().size();
-        }
+        stats.databaseActiveThreads = databaseExecutor.getActiveCount();
+        stats.databaseQueueSize = databaseExecutor.getQueue().size();
+        stats.databaseRejected = databaseRejected.get();
         
-        if (networkExecutor instanceof ThreadPoolExecutor) {
-            ThreadPoolExecutor netPool = (ThreadPoolExecutor) networkExecutor;
-            stats.networkActiveThreads = netPool.getActiveCount();
-            stats.networkQueueSize = netPool.getQueue().size();
-        }
+        stats.databaseReadActiveThreads = databaseReadExecutor.getActiveCount();
+        stats.databaseReadQueueSize = databaseReadExecutor.getQueue().size();
+        stats.databaseReadRejected = databaseReadRejected.get();
         
-        if (backgroundExecutor instanceof ThreadPoolExecutor) {
-            ThreadPoolExecutor bgPool = (ThreadPoolExecutor) backgroundExecutor;
-            stats.backgroundActiveThreads = bgPool.getActiveCount();
-            stats.backgroundQueueSize = bgPool.getQueue().size();
-        }
+        stats.networkActiveThreads = networkExecutor.getActiveCount();
+        stats.networkQueueSize = networkExecutor.getQueue().size();
+        stats.networkRejected = networkRejected.get();
+        
+        stats.backgroundActiveThreads = backgroundExecutor.getActiveCount();
+        stats.backgroundQueueSize = backgroundExecutor.getQueue().size();
+        stats.backgroundRejected = backgroundRejected.get();
         
         if (scheduledExecutor instanceof ThreadPoolExecutor) {
             ThreadPoolExecutor schedPool = (ThreadPoolExecutor) scheduledExecutor;
@@ -171,12 +320,52 @@ public class ThreadManager {
         return stats;
     }
     
+    /**
+     * Get queue-wait and run-time histograms for every pool and tagged task
+     * Pool-wide entries have a null tag and come first for each pool
+     */
+    public List<TaskTimingStats> getTaskTimings() {
+        List<TaskTimingStats> result = new ArrayList<>();
+        for (PoolTimings timings : new PoolTimings[] {databaseTimings, databaseReadTimings, backgroundTimings, networkTimings}) {
+            result.add(new TaskTimingStats(timings.poolName, null,
+                    timings.queueWait.snapshot(), timings.runTime.snapshot()));
+            List<TaskTimingStats> tagged = new ArrayList<>();
+            for (Map.Entry<String, TaskTimings> entry : timings.tags.entrySet()) {
+                tagged.add(new TaskTimingStats(timings.poolName, entry.getKey(),
+                        entry.getValue().queueWait.snapshot(), entry.getValue().runTime.snapshot()));
+            }
+            // Tasks that kept the pool busy the longest first
+            Collections.sort(tagged, (a, b) -> Long.compare(b.runTime.sum, a.runTime.sum));
+            result.addAll(tagged);
+        }
+        return result;
+    }
+    
+    /**
+     * Human readable timing summary for debug screens
+     */
+    public String getTimingSummary() {
+        StringBuilder sb = new StringBuilder();
+        for (TaskTimingStats stats : getTaskTimings()) {
+            if (stats.runTime.count == 0) {
+                continue;
+            }
+            sb.append(stats.tag == null ? stats.pool : "  " + stats.tag).append("\n")
+              .append(stats.tag == null ? "  " : "    ")
+              .append("wait ").append(stats.queueWait.format(1000.0, "ms")).append("\n")
+              .append(stats.tag == null ? "  " : "    ")
+              .append("run  ").append(stats.runTime.format(1000.0, "ms")).append("\n");
+        }
+        return sb.length() > 0 ? sb.toString().trim() : "No pooled tasks run yet";
+    }
+    
     /**
      * Shutdown all thread pools (call this when app is destroyed)
      */
     public void shutdown() {
         try {
             databaseExecutor.shutdown();
+            databaseReadExecutor.shutdown();
             networkExecutor.shutdown();
             backgroundExecutor.shutdown();
             scheduledExecutor.shutdown();
@@ -185,6 +374,9 @@ public class ThreadManager {
             if (!databaseExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
                 databaseExecutor.shutdownNow();
             }
+            if (!databaseReadExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
+                databaseReadExecutor.shutdownNow();
+            }
             if (!networkExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
                 networkExecutor.shutdownNow();
             }
@@ -207,22 +399,243 @@ public class ThreadManager {
     public static class ThreadPoolStats {
         public int databaseActiveThreads = 0;
         public int databaseQueueSize = 0;
+        public int databaseRejected = 0;
+        public int databaseReadActiveThreads = 0;
+        public int databaseReadQueueSize = 0;
+        public int databaseReadRejected = 0;
         public int networkActiveThreads = 0;
         public int networkQueueSize = 0;
+        public int networkRejected = 0;
         public int backgroundActiveThreads = 0;
         public int backgroundQueueSize = 0;
+        public int backgroundRejected = 0;
         public int scheduledActiveThreads = 0;
         public int scheduledQueueSize = 0;
         
         @Override
         public String toString() {
             return String.format(
-                "ThreadPoolStats{DB: %d/%d, NET: %d/%d, BG: %d/%d, SCHED: %d/%d}",
-                databaseActiveThreads, databaseQueueSize,
-                networkActiveThreads, networkQueueSize,
-                backgroundActiveThreads, backgroundQueueSize,
+                "ThreadPoolStats{DB: %d/%d (%d rejected), DB read: %d/%d (%d rejected), NET: %d/%d (%d rejected), BG: %d/%d (%d rejected), SCHED: %d/%d}",
+                databaseActiveThreads, databaseQueueSize, databaseRejected,
+                databaseReadActiveThreads, databaseReadQueueSize, databaseReadRejected,
+                networkActiveThreads, networkQueueSize, networkRejected,
+                backgroundActiveThreads, backgroundQueueSize, backgroundRejected,
                 scheduledActiveThreads, scheduledQueueSize
             );
         }
     }
+    
+    /**
+     * Queue-wait and run-time histograms of one pool or tag, values in microseconds
+     */
+    public static class TaskTimingStats {
+        public final String pool;
+        public final String tag;
+        public final LatencyHistogram.Snapshot queueWait;
+        public final LatencyHistogram.Snapshot runTime;
+        
+        TaskTimingStats(String pool, String tag, LatencyHistogram.Snapshot queueWait, LatencyHistogram.Snapshot runTime) {
+            this.pool = pool;
+            this.tag = tag;
+            this.queueWait = queueWait;
+            this.runTime = runTime;
+        }
+    }
+    
+    private static class TaskTimings {
+        final LatencyHistogram queueWait = new LatencyHistogram();
+        final LatencyHistogram runTime = new LatencyHistogram();
+        
+        void record(long waitMicros, long runMicros) {
+            queueWait.record(waitMicros);
+            runTime.record(runMicros);
+        }
+    }
+    
+    private static class PoolTimings extends TaskTimings {
+        final String poolName;
+        final Map<String, TaskTimings> tags = new ConcurrentHashMap<>();
+        
+        PoolTimings(String poolName) {
+            this.poolName = poolName;
+        }
+        
+        TaskTimings forTag(String tag) {
+            TaskTimings timings = tags.get(tag);
+            if (timings == null && tags.size() < MAX_TAGS_PER_POOL) {
+                TaskTimings created = new TaskTimings();
+                timings = tags.putIfAbsent(tag, created);
+                if (timings == null) {
+                    timings = created;
+                }
+            }
+            return timings;
+        }
+    }
+    
+    /**
+     * Create a fixed-size pool whose queue orders tasks by priority and is bounded
+     * @param callerRuns Whether a full queue pushes tasks back onto the submitting thread, otherwise
+     *                   they are queued past the bound
+     */
+    private ThreadPoolExecutor createPriorityPool(int threads, int capacity, String threadName,
+                                                  int threadPriority, AtomicInteger rejectedCounter,
+                                                  boolean callerRuns) {
+        ThreadFactory factory = r -> {
+            Thread t = new Thread(r);
+            t.setName(threadName);
+            t.setPriority(threadPriority);
+            return t;
+        };
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new BoundedPriorityQueue(capacity), factory,
+                new BackpressurePolicy(threadName, rejectedCounter, callerRuns));
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+    
+    /**
+     * Runnable wrapper carrying the priority and submission order used by the pool queues
+     * Also times how long the task waited in the queue and how long it ran
+     */
+    private static class PrioritizedTask implements Runnable, Comparable<PrioritizedTask> {
+        final Runnable task;
+        final int priority;
+        final long sequence;
+        final PoolTimings timings;
+        final String tag;
+        final long submittedAtNanos;
+        volatile boolean dropped = false; // Set by BackpressurePolicy, which runs inside execute()
+        
+        PrioritizedTask(Runnable task, int priority, long sequence, PoolTimings timings, String tag) {
+            this.task = task;
+            this.priority = priority;
+            this.sequence = sequence;
+            this.timings = timings;
+            this.tag = tag;
+            this.submittedAtNanos = System.nanoTime();
+        }
+        
+        @Override
+        public void run() {
+            long startedAt = System.nanoTime();
+            try {
+                task.run();
+            } finally {
+                long waitMicros = (startedAt - submittedAtNanos) / 1000;
+                long runMicros = (System.nanoTime() - startedAt) / 1000;
+                timings.record(waitMicros, runMicros);
+                if (tag != null) {
+                    TaskTimings tagTimings = timings.forTag(tag);
+                    if (tagTimings != null) {
+                        tagTimings.record(waitMicros, runMicros);
+                    }
+                }
+            }
+        }
+        
+        @Override
+        public int compareTo(PrioritizedTask other) {
+            if (priority != other.priority) {
+                return priority < other.priority ? -1 : 1;
+            }
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+    }
+    
+    /**
+     * Priority queue that refuses new tasks beyond its capacity
+     * Analytics tasks are refused earlier so a burst of them never takes the room SMS work needs
+     */
+    private static class BoundedPriorityQueue extends PriorityBlockingQueue<Runnable> {
+        private final int capacity;
+        
+        BoundedPriorityQueue(int capacity) {
+            super(16);
+            this.capacity = capacity;
+        }
+        
+        @Override
+        public boolean offer(Runnable task) {
+            int limit = priorityOf(task) >= TASK_PRIORITY_ANALYTICS ? ANALYTICS_QUEUE_CAPACITY : capacity;
+            if (size() >= limit) {
+                return false;
+            }
+            return super.offer(task);
+        }
+        
+        /**
+         * Enqueue regardless of capacity, used when the submitter must not block
+         */
+        boolean forceOffer(Runnable task) {
+            return super.offer(task);
+        }
+    }
+    
+    /**
+     * Rejection policy for the priority pools
+     * Analytics tasks are dropped, everything else is pushed back onto the submitting thread
+     * (caller runs) so producers slow down. The main thread and the timer wheel thread never run
+     * pool work, and neither does any thread for the single-writer DB pool, whose tasks must stay
+     * serialized: those tasks are queued past the bound instead.
+     */
+    private static class BackpressurePolicy implements RejectedExecutionHandler {
+        private final String poolName;
+        private final AtomicInteger rejectedCounter;
+        private final boolean callerRuns;
+        
+        BackpressurePolicy(String poolName, AtomicInteger rejectedCounter, boolean callerRuns) {
+            this.poolName = poolName;
+            this.rejectedCounter = rejectedCounter;
+            this.callerRuns = callerRuns;
+        }
+        
+        @Override
+        public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+            rejectedCounter.incrementAndGet();
+            
+            if (executor.isShutdown()) {
+                Log.w(TAG, poolName + " is shut down, task dropped");
+                markDropped(task, poolName + " is shut down");
+                return;
+            }
+            
+            if (priorityOf(task) >= TASK_PRIORITY_ANALYTICS) {
+                if (BuildConfig.ENABLE_DEBUG_LOGS) {
+                    Log.d(TAG, poolName + " queue full, analytics task dropped");
+                }
+                markDropped(task, poolName + " queue full");
+                return;
+            }
+            
+            // A task run inline on the wheel thread would hold up every timer behind it
+            if (!callerRuns || Looper.myLooper() == Looper.getMainLooper() || TimerWheel.isWheelThread()) {
+                if (!callerRuns) {
+                    Log.w(TAG, poolName + " queue full, queueing task past the bound");
+                }
+                ((BoundedPriorityQueue) executor.getQueue()).forceOffer(task);
+                return;
+            }
+            
+            Log.w(TAG, poolName + " queue full, running task on submitting thread");
+            task.run();
+        }
+    }
+    
+    /**
+     * Flag a task the pool will never run, and fail the HermesFuture waiting on it
+     */
+    private static void markDropped(Runnable task, String reason) {
+        if (task instanceof PrioritizedTask) {
+            PrioritizedTask prioritized = (PrioritizedTask) task;
+            prioritized.dropped = true;
+            if (prioritized.task instanceof HermesFuture.Rejectable) {
+                ((HermesFuture.Rejectable) prioritized.task).reject(new RejectedExecutionException(reason + ", task dropped"));
+            }
+        }
+    }
+    
+    private static int priorityOf(Runnable task) {
+        return task instanceof PrioritizedTask ? ((PrioritizedTask) task).priority : TASK_PRIORITY_NORMAL;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,269 @@
+package com.keremgok.sms;
+
+import android.os.SystemClock;
+import android.util.Log;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hashed timer wheel for in-process delays
+ * Delayed sends, retry backoff and digest flushes are hashed into TICK_MS buckets of a single
+ * wheel instead of each becoming its own scheduled job. Insert and cancel are O(1) list
+ * operations; one thread wakes per tick that has work (sleeping through empty stretches) and
+ * hands expired tasks to the ThreadManager background pool. Timers do not survive process
+ * death - callers that need that persist their deadline and re-arm on restore.
+ */
+public class TimerWheel {
+
+    private static final String TAG = "TimerWheel";
+
+    // Wheel geometry - one revolution covers TICK_MS * WHEEL_SIZE (51.2 seconds)
+    private static final long TICK_MS = 100;
+    private static final int WHEEL_SIZE = 512;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+    private static TimerWheel instance;
+    private static volatile Thread wheelThread; // Set once the wheel is created
+
+    /**
+     * Handle to a scheduled task
+     */
+    public static class Timeout {
+        final TimerWheel wheel;
+        final Runnable task;
+        final int priority;
+        final String tag;
+        final long deadlineTick;
+
+        // Bucket links, guarded by the wheel lock
+        Timeout prev;
+        Timeout next;
+        boolean linked;
+
+        Timeout(TimerWheel wheel, Runnable task, int priority, String tag, long deadlineTick) {
+            this.wheel = wheel;
+            this.task = task;
+            this.priority = priority;
+            this.tag = tag;
+            this.deadlineTick = deadlineTick;
+        }
+
+        /**
+         * Cancel the task if it has not fired yet
+         * @return true if the task was removed before firing
+         */
+        public boolean cancel() {
+            return wheel.remove(this);
+        }
+    }
+
+    private final Object lock = new Object();
+    private final Timeout[] buckets = new Timeout[WHEEL_SIZE];
+    private final long origin = SystemClock.elapsedRealtime();
+    private long currentTick = 0; // Last tick whose bucket was expired
+    private int pendingCount = 0;
+
+    // Metrics
+    private long scheduledCount = 0;
+    private long firedCount = 0;
+    private long cancelledCount = 0;
+    private long wakeupCount = 0;
+    private long maxLatenessMs = 0;
+
+    private TimerWheel() {
+        Thread thread = new Thread(this::run, "HermesTimerWheel-Thread");
+        thread.setDaemon(true);
+        wheelThread = thread;
+        thread.start();
+    }
+
+    /**
+     * Check whether the caller is the wheel thread, which dispatches expired timers
+     */
+    static boolean isWheelThread() {
+        return Thread.currentThread() == wheelThread;
+    }
+
+    public static synchronized TimerWheel getInstance() {
+        if (instance == null) {
+            instance = new TimerWheel();
+        }
+        return instance;
+    }
+
+    /**
+     * Run a task on the background pool after a delay
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        return schedule(task, delay, unit, ThreadManager.TASK_PRIORITY_NORMAL, null);
+    }
+
+    /**
+     * Run a task on the background pool after a delay
+     * @param priority ThreadManager task priority used when the task fires
+     * @param tag Timing tag for ThreadManager, may be null
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit, int priority, String tag) {
+        long delayMs = Math.max(0, unit.toMillis(delay));
+        synchronized (lock) {
+            // Round up so a task never fires early, and never into a bucket already expired
+            long deadlineTick = Math.max(currentTick + 1, elapsedTicks() + (delayMs + TICK_MS - 1) / TICK_MS);
+            Timeout timeout = new Timeout(this, task, priority, tag, deadlineTick);
+            link(timeout);
+            pendingCount++;
+            scheduledCount++;
+            lock.notify();
+            return timeout;
+        }
+    }
+
+    /**
+     * Get number of tasks waiting to fire
+     */
+    public int getPendingCount() {
+        synchronized (lock) {
+            return pendingCount;
+        }
+    }
+
+    /**
+     * Human readable wheel state for debug screens
+     */
+    public String getStatusSummary() {
+        synchronized (lock) {
+            return String.format(Locale.US,
+                "Pending: %d (tick %d ms x %d slots)\nScheduled: %d, fired: %d, cancelled: %d\nWakeups: %d, max lateness: %d ms",
+                pendingCount, TICK_MS, WHEEL_SIZE, scheduledCount, firedCount, cancelledCount,
+                wakeupCount, maxLatenessMs);
+        }
+    }
+
+    private boolean remove(Timeout timeout) {
+        synchronized (lock) {
+            if (!timeout.linked) {
+                return false;
+            }
+            unlink(timeout);
+            pendingCount--;
+            cancelledCount++;
+            return true;
+        }
+    }
+
+    private void run() {
+        while (true) {
+            List<Timeout> expired = new ArrayList<>();
+            try {
+                synchronized (lock) {
+                    long waitMs = expireDue(expired);
+                    if (expired.isEmpty()) {
+                        if (waitMs > 0) {
+                            lock.wait(waitMs);
+                        } else if (waitMs < 0) {
+                            lock.wait();
+                        }
+                        continue;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Log.w(TAG, "Timer wheel thread interrupted");
+                return;
+            }
+            dispatch(expired);
+        }
+    }
+
+    /**
+     * Expire every bucket up to now and work out how long to sleep
+     * @return Milliseconds until the next non-empty bucket, 0 to loop again, -1 if the wheel is empty
+     */
+    private long expireDue(List<Timeout> expired) {
+        long nowTick = elapsedTicks();
+        if (nowTick > currentTick) {
+            wakeupCount++;
+            // After a long sleep every bucket is due for a look, but only once
+            long from = Math.max(currentTick + 1, nowTick - WHEEL_SIZE + 1);
+            for (long tick = from; tick <= nowTick; tick++) {
+                expireBucket((int) (tick & WHEEL_MASK), nowTick, expired);
+            }
+            currentTick = nowTick;
+        }
+        if (!expired.isEmpty()) {
+            return 0;
+        }
+        if (pendingCount == 0) {
+            return -1;
+        }
+        // Sleep until the next bucket holding anything, at most one revolution ahead
+        for (long tick = currentTick + 1; tick <= currentTick + WHEEL_SIZE; tick++) {
+            if (buckets[(int) (tick & WHEEL_MASK)] != null) {
+                return Math.max(1, origin + tick * TICK_MS - SystemClock.elapsedRealtime());
+            }
+        }
+        return TICK_MS * WHEEL_SIZE;
+    }
+
+    private void expireBucket(int slot, long nowTick, List<Timeout> expired) {
+        Timeout timeout = buckets[slot];
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            // Later revolutions share the bucket, they stay until their own deadline
+            if (timeout.deadlineTick <= nowTick) {
+                unlink(timeout);
+                pendingCount--;
+                firedCount++;
+                maxLatenessMs = Math.max(maxLatenessMs, (nowTick - timeout.deadlineTick) * TICK_MS);
+                expired.add(timeout);
+            }
+            timeout = next;
+        }
+    }
+
+    private void dispatch(List<Timeout> expired) {
+        ThreadManager threadManager = ThreadManager.getInstance();
+        for (Timeout timeout : expired) {
+            try {
+                if (timeout.tag != null) {
+                    threadManager.executeBackground(timeout.task, timeout.priority, timeout.tag);
+                } else {
+                    threadManager.executeBackground(timeout.task, timeout.priority);
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to dispatch expired timer: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    private void link(Timeout timeout) {
+        int slot = (int) (timeout.deadlineTick & WHEEL_MASK);
+        Timeout head = buckets[slot];
+        timeout.prev = null;
+        timeout.next = head;
+        if (head != null) {
+            head.prev = timeout;
+        }
+        buckets[slot] = timeout;
+        timeout.linked = true;
+    }
+
+    private void unlink(Timeout timeout) {
+        int slot = (int) (timeout.deadlineTick & WHEEL_MASK);
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            buckets[slot] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.linked = false;
+    }
+
+    private long elapsedTicks() {
+        return (SystemClock.elapsedRealtime() - origin) / TICK_MS;
+    }
+}
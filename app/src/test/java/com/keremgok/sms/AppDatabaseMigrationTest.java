@@ -0,0 +1,258 @@
+package com.keremgok.sms;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteConstraintException;
+import androidx.room.Room;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.SupportSQLiteOpenHelper;
+import androidx.sqlite.db.framework.FrameworkSQLiteOpenHelperFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import static org.junit.Assert.*;
+
+/**
+ * Migration tests for the hand-written AppDatabase migrations
+ * The schema is not exported, so old versions are rebuilt by replaying the migration chain on a
+ * version 1 database, and the result is compared with what Room creates from the entities.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class AppDatabaseMigrationTest {
+
+    // sms_history as shipped in version 1, every other table is created by the migrations
+    private static final String SMS_HISTORY_V1 = "CREATE TABLE IF NOT EXISTS `sms_history` (" +
+        "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
+        "`sender_number` TEXT, " +
+        "`original_message` TEXT, " +
+        "`target_number` TEXT, " +
+        "`forwarded_message` TEXT, " +
+        "`timestamp` INTEGER NOT NULL, " +
+        "`success` INTEGER NOT NULL, " +
+        "`error_message` TEXT)";
+
+    private static final Migration[] MIGRATIONS_TO_11 = {
+        AppDatabase.MIGRATION_1_2, AppDatabase.MIGRATION_2_3, AppDatabase.MIGRATION_3_4, AppDatabase.MIGRATION_4_5,
+        AppDatabase.MIGRATION_5_6, AppDatabase.MIGRATION_6_7, AppDatabase.MIGRATION_7_8, AppDatabase.MIGRATION_8_9,
+        AppDatabase.MIGRATION_9_10, AppDatabase.MIGRATION_10_11
+    };
+
+    private static final Migration[] MIGRATIONS_11_TO_LATEST = {
+        AppDatabase.MIGRATION_11_12, AppDatabase.MIGRATION_12_13, AppDatabase.MIGRATION_13_14, AppDatabase.MIGRATION_14_15
+    };
+
+    private static final Migration[] MIGRATIONS_11_TO_14 = {
+        AppDatabase.MIGRATION_11_12, AppDatabase.MIGRATION_12_13, AppDatabase.MIGRATION_13_14
+    };
+
+    // Tables whose indices are declared on the entity
+    private static final String[] INDEXED_TABLES = {
+        "sms_history", "analytics_events", "statistics_summary", "sms_filters", "target_numbers"
+    };
+
+    private SupportSQLiteOpenHelper helper;
+    private AppDatabase expected;
+
+    @Before
+    public void setUp() {
+        expected = Room.inMemoryDatabaseBuilder(RuntimeEnvironment.getApplication(), AppDatabase.class)
+            .allowMainThreadQueries()
+            .build();
+    }
+
+    @After
+    public void tearDown() {
+        expected.close();
+        if (helper != null) {
+            helper.close();
+        }
+    }
+
+    @Test
+    public void testVersion11HasNoQueryIndices() {
+        SupportSQLiteDatabase database = openVersion11();
+
+        for (String table : INDEXED_TABLES) {
+            assertTrue("Unexpected index on " + table + " before migration: " + indices(database, table),
+                indices(database, table).isEmpty());
+        }
+    }
+
+    @Test
+    public void testMigrationFrom11CreatesEntityIndices() {
+        SupportSQLiteDatabase database = openVersion11();
+        seedVersion11(database);
+
+        migrate(database, MIGRATIONS_11_TO_LATEST);
+
+        SupportSQLiteDatabase entities = expected.getOpenHelper().getWritableDatabase();
+        for (String table : INDEXED_TABLES) {
+            assertEquals("Migrated indices of " + table + " differ from the @Index set",
+                indices(entities, table), indices(database, table));
+        }
+    }
+
+    @Test
+    public void testMigrationFrom11KeepsRows() {
+        SupportSQLiteDatabase database = openVersion11();
+        seedVersion11(database);
+
+        migrate(database, MIGRATIONS_11_TO_LATEST);
+
+        assertEquals(3, count(database, "SELECT COUNT(*) FROM sms_history"));
+        assertEquals(2, count(database, "SELECT COUNT(*) FROM analytics_events WHERE sample_weight = 1"));
+        assertEquals(1, count(database, "SELECT COUNT(*) FROM statistics_summary"));
+    }
+
+    @Test
+    public void testMigration14To15KeepsNewestSummaryPerDateAndType() {
+        SupportSQLiteDatabase database = openVersion11();
+        migrate(database, MIGRATIONS_11_TO_14);
+        // Three DAILY rows for one date: the newest update wins, ties go to the highest id
+        insertSummary(database, 1, "2024-01-05", "DAILY", 10, 100, 500);
+        insertSummary(database, 2, "2024-01-05", "DAILY", 20, 50, 300);
+        insertSummary(database, 3, "2024-01-05", "DAILY", 30, 200, 500);
+        // Same date with another type, and another date with the same type, are not duplicates
+        insertSummary(database, 4, "2024-01-05", "WEEKLY", 40, 400, 400);
+        insertSummary(database, 5, "2024-01-06", "DAILY", 50, 600, 600);
+
+        migrate(database, AppDatabase.MIGRATION_14_15);
+
+        assertEquals(3, count(database, "SELECT COUNT(*) FROM statistics_summary"));
+        try (Cursor cursor = database.query("SELECT id, total_sms_received, created_timestamp, last_updated " +
+                "FROM statistics_summary WHERE date = '2024-01-05' AND summary_type = 'DAILY'")) {
+            assertEquals(1, cursor.getCount());
+            assertTrue(cursor.moveToFirst());
+            assertEquals(3, cursor.getLong(0));
+            assertEquals(30, cursor.getInt(1));
+            // The survivor keeps the earliest created_timestamp of its group
+            assertEquals(50, cursor.getLong(2));
+            assertEquals(500, cursor.getLong(3));
+        }
+        assertEquals(400, count(database, "SELECT created_timestamp FROM statistics_summary WHERE id = 4"));
+        assertEquals(600, count(database, "SELECT created_timestamp FROM statistics_summary WHERE id = 5"));
+    }
+
+    @Test
+    public void testMigration14To15MakesSummaryIndexUnique() {
+        SupportSQLiteDatabase database = openVersion11();
+        migrate(database, MIGRATIONS_11_TO_14);
+        insertSummary(database, 1, "2024-01-05", "DAILY", 10, 100, 100);
+        insertSummary(database, 2, "2024-01-05", "DAILY", 20, 200, 200);
+
+        migrate(database, AppDatabase.MIGRATION_14_15);
+
+        assertEquals(Collections.singletonList("index_statistics_summary_summary_type_date UNIQUE [summary_type, date]"),
+            indices(database, "statistics_summary"));
+        try {
+            insertSummary(database, 3, "2024-01-05", "DAILY", 30, 300, 300);
+            fail("Duplicate (summary_type, date) accepted after migration");
+        } catch (SQLiteConstraintException duplicate) {
+            // Rejected by the unique index
+        }
+    }
+
+    /**
+     * Open an in-memory database at version 1 and migrate it to version 11
+     */
+    private SupportSQLiteDatabase openVersion11() {
+        SupportSQLiteOpenHelper.Configuration configuration = SupportSQLiteOpenHelper.Configuration
+            .builder(RuntimeEnvironment.getApplication())
+            .name(null)
+            .callback(new SupportSQLiteOpenHelper.Callback(1) {
+                @Override
+                public void onCreate(SupportSQLiteDatabase db) {
+                    db.execSQL(SMS_HISTORY_V1);
+                }
+
+                @Override
+                public void onUpgrade(SupportSQLiteDatabase db, int oldVersion, int newVersion) {
+                }
+            })
+            .build();
+        helper = new FrameworkSQLiteOpenHelperFactory().create(configuration);
+        SupportSQLiteDatabase database = helper.getWritableDatabase();
+        migrate(database, MIGRATIONS_TO_11);
+        return database;
+    }
+
+    private void seedVersion11(SupportSQLiteDatabase database) {
+        for (int i = 0; i < 3; i++) {
+            database.execSQL("INSERT INTO sms_history (sender_number, original_message, target_number, forwarded_message, " +
+                "timestamp, success, error_message, source_sim_slot, forwarding_sim_slot, source_subscription_id, " +
+                "forwarding_subscription_id) VALUES (?, ?, ?, ?, ?, ?, ?, 0, 1, 1, 2)",
+                new Object[]{"+905550000001", "Message " + i, "+905320000001", "Forwarded", 1700000000000L + i, i % 2, null});
+        }
+        for (int i = 0; i < 2; i++) {
+            database.execSQL("INSERT INTO analytics_events (event_type, event_category, event_action, timestamp, duration_ms, " +
+                "error_code, metadata, app_version, session_id) VALUES ('SMS_FORWARD', 'MESSAGING', 'SUCCESS', ?, 100, NULL, NULL, 'test', 's')",
+                new Object[]{1700000000000L + i});
+        }
+        database.execSQL("INSERT INTO statistics_summary (date, summary_type, total_sms_received, total_sms_forwarded, " +
+            "successful_forwards, failed_forwards, success_rate, avg_processing_time_ms, error_count, most_common_error, " +
+            "app_opens, session_duration_total_ms, avg_session_duration_ms, created_timestamp, last_updated, total_blocked_count) " +
+            "VALUES ('2024-01-05', 'DAILY', 3, 3, 2, 1, 66.6, 100.0, 1, NULL, 1, 0, 0.0, 1700000000000, 1700000000000, 0)");
+    }
+
+    private static void insertSummary(SupportSQLiteDatabase database, long id, String date, String summaryType,
+                                      int received, long createdTimestamp, long lastUpdated) {
+        database.execSQL("INSERT INTO statistics_summary (id, date, summary_type, total_sms_received, total_sms_forwarded, " +
+            "successful_forwards, failed_forwards, success_rate, avg_processing_time_ms, error_count, most_common_error, " +
+            "app_opens, session_duration_total_ms, avg_session_duration_ms, created_timestamp, last_updated, total_blocked_count) " +
+            "VALUES (?, ?, ?, ?, 0, 0, 0, 0.0, 0.0, 0, NULL, 0, 0, 0.0, ?, ?, 0)",
+            new Object[]{id, date, summaryType, received, createdTimestamp, lastUpdated});
+    }
+
+    private static void migrate(SupportSQLiteDatabase database, Migration... migrations) {
+        for (Migration migration : migrations) {
+            migration.migrate(database);
+            database.setVersion(migration.endVersion);
+        }
+    }
+
+    /**
+     * Describe the explicitly created indices of a table as "name UNIQUE? (col, col)", sorted by name
+     */
+    private static List<String> indices(SupportSQLiteDatabase database, String table) {
+        List<String> names = new ArrayList<>();
+        List<Boolean> unique = new ArrayList<>();
+        try (Cursor cursor = database.query("SELECT name, sql FROM sqlite_master WHERE type = 'index' AND tbl_name = ? " +
+                "AND sql IS NOT NULL ORDER BY name", new Object[]{table})) {
+            while (cursor.moveToNext()) {
+                names.add(cursor.getString(0));
+                unique.add(cursor.getString(1).toUpperCase().startsWith("CREATE UNIQUE"));
+            }
+        }
+
+        List<String> described = new ArrayList<>();
+        for (int i = 0; i < names.size(); i++) {
+            List<String> columns = new ArrayList<>();
+            try (Cursor cursor = database.query("PRAGMA index_info(`" + names.get(i) + "`)")) {
+                int seqno = cursor.getColumnIndexOrThrow("seqno");
+                int name = cursor.getColumnIndexOrThrow("name");
+                String[] ordered = new String[cursor.getCount()];
+                while (cursor.moveToNext()) {
+                    ordered[cursor.getInt(seqno)] = cursor.getString(name);
+                }
+                Collections.addAll(columns, ordered);
+            }
+            described.add(names.get(i) + (unique.get(i) ? " UNIQUE " : " ") + columns);
+        }
+        return described;
+    }
+
+    private static long count(SupportSQLiteDatabase database, String sql) {
+        try (Cursor cursor = database.query(sql)) {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getLong(0);
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package com.keremgok.sms;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for OutboundBacklog spill files and shedding, without Android dependencies
+ */
+public class OutboundBacklogTest {
+
+    private static final long NOW = 1700000000000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File segmentDir;
+    private long nextTimestamp;
+
+    @Before
+    public void setUp() {
+        segmentDir = new File(folder.getRoot(), "outbound_backlog");
+        nextTimestamp = NOW;
+    }
+
+    @Test
+    public void testSpillAndRestoreRoundTrip() {
+        OutboundBacklog backlog = new OutboundBacklog(segmentDir);
+        OutboundBacklog.Entry low = entry(SmsQueueWorker.PRIORITY_LOW, false);
+        OutboundBacklog.Entry high = entry(SmsQueueWorker.PRIORITY_HIGH, true);
+        OutboundBacklog.Entry normal = entry(SmsQueueWorker.PRIORITY_NORMAL, false);
+        List<OutboundBacklog.Entry> shed = new ArrayList<>();
+        assertEquals(OutboundBacklog.OFFER_QUEUED, backlog.offer(low, shed));
+        assertEquals(OutboundBacklog.OFFER_QUEUED, backlog.offer(high, shed));
+        assertEquals(OutboundBacklog.OFFER_QUEUED, backlog.offer(normal, shed));
+
+        // A new process finds the entries on disk, even though they never left memory
+        OutboundBacklog restored = new OutboundBacklog(segmentDir);
+        restored.restore(null);
+        assertEquals(3, restored.getStats().spilledSize);
+        assertEntryEquals(high, restored.poll(null));
+        assertEntryEquals(normal, restored.poll(null));
+        assertEntryEquals(low, restored.poll(null));
+        assertNull(restored.poll(null));
+        assertTrue(restored.isEmpty());
+        assertTrue(shed.isEmpty());
+    }
+
+    @Test
+    public void testReadsVersion1Records() throws IOException {
+        OutboundBacklog.Entry windowed = entry(SmsQueueWorker.PRIORITY_NORMAL, true);
+        OutboundBacklog.Entry legacy = entry(SmsQueueWorker.PRIORITY_HIGH, false);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeVersion1(out, legacy);
+            OutboundBacklog.writeEntry(out, windowed);
+        }
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            OutboundBacklog.Entry read = OutboundBacklog.readEntry(in);
+            assertEntryEquals(legacy, read);
+            assertFalse("v1 records predate the send window", read.windowed);
+            assertEntryEquals(windowed, OutboundBacklog.readEntry(in));
+            assertNull(OutboundBacklog.readEntry(in));
+        }
+    }
+
+    @Test
+    public void testRestoresVersion1Segment() throws IOException {
+        OutboundBacklog.Entry legacy = entry(SmsQueueWorker.PRIORITY_NORMAL, false);
+        assertTrue(segmentDir.mkdirs());
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(new File(segmentDir, "segment_00000000.bin"))))) {
+            writeVersion1(out, legacy);
+        }
+
+        OutboundBacklog backlog = new OutboundBacklog(segmentDir);
+        backlog.restore(null);
+
+        assertEquals(1, backlog.getStats().spilledSize);
+        assertEntryEquals(legacy, backlog.poll(null));
+    }
+
+    @Test
+    public void testPolledEntryStaysOnDiskUntilCompleted() {
+        OutboundBacklog backlog = new OutboundBacklog(segmentDir);
+        OutboundBacklog.Entry first = entry(SmsQueueWorker.PRIORITY_NORMAL, false);
+        OutboundBacklog.Entry second = entry(SmsQueueWorker.PRIORITY_NORMAL, false);
+        List<OutboundBacklog.Entry> shed = new ArrayList<>();
+        backlog.offer(first, shed);
+        backlog.offer(second, shed);
+
+        // Killed after poll but before the entry reached WorkManager
+        assertSame(first, backlog.poll(null));
+        OutboundBacklog restored = new OutboundBacklog(segmentDir);
+        restored.restore(null);
+        assertEquals(2, restored.getStats().spilledSize);
+
+        // Killed after the entry reached WorkManager
+        backlog.complete(first);
+        restored = new OutboundBacklog(segmentDir);
+        restored.restore(null);
+        assertEquals(1, restored.getStats().spilledSize);
+        assertEntryEquals(second, restored.poll(null));
+    }
+
+    @Test
+    public void testDeletesSegmentOnceEveryEntryCompleted() {
+        OutboundBacklog backlog = new OutboundBacklog(segmentDir);
+        List<OutboundBacklog.Entry> shed = new ArrayList<>();
+        backlog.offer(entry(SmsQueueWorker.PRIORITY_NORMAL, false), shed);
+        backlog.offer(entry(SmsQueueWorker.PRIORITY_LOW, false), shed);
+        assertEquals(1, segmentDir.list().length);
+
+        backlog.complete(backlog.poll(null));
+        assertEquals(1, segmentDir.list().length);
+        backlog.complete(backlog.poll(null));
+        assertEquals(0, segmentDir.list().length);
+    }
+
+    @Test
+    public void testRestoreReleasesRejectedEntries() {
+        OutboundBacklog backlog = new OutboundBacklog(segmentDir);
+        OutboundBacklog.Entry admitted = entry(SmsQueueWorker.PRIORITY_HIGH, false);
+        OutboundBacklog.Entry pending = entry(SmsQueueWorker.PRIORITY_NORMAL, false);
+        List<OutboundBacklog.Entry> shed = new ArrayList<>();
+        backlog.offer(admitted, shed);
+        backlog.offer(pending, shed);
+
+        // The previous process handed "admitted" to WorkManager but died before releasing it
+        OutboundBacklog restored = new OutboundBacklog(segmentDir);
+        restored.restore(entry -> !entry.workId.equals(admitted.workId));
+        assertEquals(1, restored.getStats().spilledSize);
+
+        OutboundBacklog again = new OutboundBacklog(segmentDir);
+        again.restore(null);
+        assertEntryEquals(pending, again.poll(null));
+        assertNull(again.poll(null));
+    }
+
+    @Test
+    public void testPollLoadsDueEntryFromDisk() {
+        OutboundBacklog backlog = new OutboundBacklog(segmentDir);
+        List<OutboundBacklog.Entry> shed = new ArrayList<>();
+        long later = System.currentTimeMillis() + 60000;
+        for (int i = 0; i < OutboundBacklog.MAX_MEMORY_ENTRIES; i++) {
+            backlog.offer(entry(SmsQueueWorker.PRIORITY_HIGH, false).withDueAt(later), shed);
+        }
+        OutboundBacklog.Entry due = entry(SmsQueueWorker.PRIORITY_NORMAL, false);
+        assertEquals(OutboundBacklog.OFFER_SPILLED, backlog.offer(due, shed));
+
+        // Memory only holds entries that are not due, the due one is fetched from its segment
+        assertEntryEquals(due, backlog.poll(entry -> entry.getRemainingDelayMs() == 0));
+        assertNull(backlog.poll(entry -> entry.getRemainingDelayMs() == 0));
+        assertEquals(later, backlog.poll(null).getDueAt());
+    }
+
+    @Test
+    public void testShedsLowThenNormalAndKeepsHigh() {
+        OutboundBacklog backlog = new OutboundBacklog(segmentDir);
+        List<OutboundBacklog.Entry> shed = new ArrayList<>();
+        for (int i = 0; i < OutboundBacklog.MAX_MEMORY_ENTRIES; i++) {
+            assertEquals(OutboundBacklog.OFFER_QUEUED, backlog.offer(entry(SmsQueueWorker.PRIORITY_HIGH, false), shed));
+        }
+
+        // LOW spills until the LOW threshold, then is shed
+        for (int i = 0; i < OutboundBacklog.LOW_SHED_THRESHOLD; i++) {
+            assertEquals(OutboundBacklog.OFFER_SPILLED, backlog.offer(entry(SmsQueueWorker.PRIORITY_LOW, false), shed));
+        }
+        OutboundBacklog.Entry lowOverflow = entry(SmsQueueWorker.PRIORITY_LOW, false);
+        assertEquals(OutboundBacklog.OFFER_SHED, backlog.offer(lowOverflow, shed));
+
+        // NORMAL still spills up to the full spill limit, then is shed
+        for (int i = OutboundBacklog.LOW_SHED_THRESHOLD; i < OutboundBacklog.MAX_SPILLED_ENTRIES; i++) {
+            assertEquals(OutboundBacklog.OFFER_SPILLED, backlog.offer(entry(SmsQueueWorker.PRIORITY_NORMAL, false), shed));
+        }
+        OutboundBacklog.Entry normalOverflow = entry(SmsQueueWorker.PRIORITY_NORMAL, false);
+        assertEquals(OutboundBacklog.OFFER_SHED, backlog.offer(normalOverflow, shed));
+
+        // HIGH is never shed, even past the spill limit
+        assertEquals(OutboundBacklog.OFFER_SPILLED, backlog.offer(entry(SmsQueueWorker.PRIORITY_HIGH, false), shed));
+
+        assertEquals(2, shed.size());
+        assertSame(lowOverflow, shed.get(0));
+        assertSame(normalOverflow, shed.get(1));
+        OutboundBacklog.BacklogStats stats = backlog.getStats();
+        assertEquals(1, stats.shedLowCount);
+        assertEquals(1, stats.shedNormalCount);
+        assertEquals(OutboundBacklog.MAX_MEMORY_ENTRIES, stats.memorySize);
+        assertEquals(OutboundBacklog.MAX_SPILLED_ENTRIES + 1, stats.spilledSize);
+    }
+
+    @Test
+    public void testHighDisplacesLowerPriorityFromMemory() {
+        OutboundBacklog backlog = new OutboundBacklog(segmentDir);
+        List<OutboundBacklog.Entry> shed = new ArrayList<>();
+        for (int i = 0; i < OutboundBacklog.MAX_MEMORY_ENTRIES; i++) {
+            backlog.offer(entry(SmsQueueWorker.PRIORITY_LOW, false), shed);
+        }
+
+        OutboundBacklog.Entry high = entry(SmsQueueWorker.PRIORITY_HIGH, false);
+        assertEquals(OutboundBacklog.OFFER_QUEUED, backlog.offer(high, shed));
+
+        // The newest LOW entry made room and went to disk
+        assertTrue(shed.isEmpty());
+        assertEquals(1, backlog.getStats().spilledSize);
+        assertSame(high, backlog.poll(null));
+    }
+
+    @Test
+    public void testCoalescesDuplicates() {
+        OutboundBacklog backlog = new OutboundBacklog(segmentDir);
+        List<OutboundBacklog.Entry> shed = new ArrayList<>();
+        OutboundBacklog.Entry first = entry(SmsQueueWorker.PRIORITY_NORMAL, false);
+        OutboundBacklog.Entry duplicate = new OutboundBacklog.Entry(UUID.randomUUID(), first.originalSender,
+            first.originalMessage, first.targetNumber, first.timestamp, 0, SmsQueueWorker.PRIORITY_NORMAL,
+            -1, -1, -1, -1, 0, NOW, false);
+
+        backlog.offer(first, shed);
+
+        assertEquals(OutboundBacklog.OFFER_COALESCED, backlog.offer(duplicate, shed));
+        assertEquals(1, backlog.getStats().memorySize);
+        assertEquals(1, backlog.getStats().coalescedCount);
+    }
+
+    private OutboundBacklog.Entry entry(int priority, boolean windowed) {
+        long timestamp = nextTimestamp++;
+        return new OutboundBacklog.Entry(UUID.randomUUID(), "+905550000001", "Message " + timestamp,
+            "+905320000001", timestamp, 1, priority, 11, 12, 0, 1, 5000, NOW, windowed);
+    }
+
+    /**
+     * Write a record in the version 1 layout (no windowed flag)
+     */
+    private static void writeVersion1(DataOutputStream out, OutboundBacklog.Entry entry) throws IOException {
+        out.writeByte(1);
+        out.writeLong(entry.workId.getMostSignificantBits());
+        out.writeLong(entry.workId.getLeastSignificantBits());
+        out.writeUTF(entry.originalSender);
+        out.writeUTF(entry.originalMessage);
+        out.writeUTF(entry.targetNumber);
+        out.writeLong(entry.timestamp);
+        out.writeByte(entry.retryCount);
+        out.writeByte(entry.priority);
+        out.writeInt(entry.sourceSubscriptionId);
+        out.writeInt(entry.forwardingSubscriptionId);
+        out.writeByte(entry.sourceSimSlot);
+        out.writeByte(entry.forwardingSimSlot);
+        out.writeLong(entry.delayMs);
+        out.writeLong(entry.createdAt);
+    }
+
+    private static void assertEntryEquals(OutboundBacklog.Entry expected, OutboundBacklog.Entry actual) {
+        assertNotNull(actual);
+        assertEquals(expected.workId, actual.workId);
+        assertEquals(expected.originalSender, actual.originalSender);
+        assertEquals(expected.originalMessage, actual.originalMessage);
+        assertEquals(expected.targetNumber, actual.targetNumber);
+        assertEquals(expected.timestamp, actual.timestamp);
+        assertEquals(expected.retryCount, actual.retryCount);
+        assertEquals(expected.priority, actual.priority);
+        assertEquals(expected.sourceSubscriptionId, actual.sourceSubscriptionId);
+        assertEquals(expected.forwardingSubscriptionId, actual.forwardingSubscriptionId);
+        assertEquals(expected.sourceSimSlot, actual.sourceSimSlot);
+        assertEquals(expected.forwardingSimSlot, actual.forwardingSimSlot);
+        assertEquals(expected.delayMs, actual.delayMs);
+        assertEquals(expected.createdAt, actual.createdAt);
+        assertEquals(expected.windowed, actual.windowed);
+    }
+}
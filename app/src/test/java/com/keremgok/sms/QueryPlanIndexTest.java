@@ -0,0 +1,326 @@
+package com.keremgok.sms;
+
+import android.database.Cursor;
+import androidx.room.Room;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import static org.junit.Assert.*;
+
+/**
+ * Query plan regression tests for the hot DAO queries
+ * Seeds a database with a realistic amount of history and analytics data and checks that
+ * EXPLAIN QUERY PLAN never falls back to a full table scan. The SQL is taken from the DAO
+ * @Query annotations, so the plans checked are always those of the shipped queries.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class QueryPlanIndexTest {
+
+    private static final int HISTORY_ROWS = 5000;
+    private static final int ANALYTICS_ROWS = 20000;
+    private static final int SUMMARY_ROWS = 400;
+    private static final long NOW = 1700000000000L;
+    private static final long DAY_MS = 24L * 60 * 60 * 1000;
+
+    // @Query("..." + "...") followed by the annotated method's name
+    private static final Pattern QUERY_METHOD = Pattern.compile(
+        "@Query\\(((?:\\s*\"(?:[^\"\\\\]|\\\\.)*\"\\s*\\+?)+)\\)[^;{(]*?(\\w+)\\s*\\(");
+    private static final Pattern STRING_LITERAL = Pattern.compile("\"((?:[^\"\\\\]|\\\\.)*)\"");
+    // Quoted SQL literals are matched as a whole so a ':' inside them is never taken for a parameter
+    private static final Pattern NAMED_PARAMETER = Pattern.compile("'[^']*'|:([A-Za-z_]\\w*)");
+
+    private AppDatabase database;
+    private SupportSQLiteDatabase sqlite;
+
+    @Before
+    public void setUp() {
+        database = Room.inMemoryDatabaseBuilder(RuntimeEnvironment.getApplication(), AppDatabase.class)
+            .allowMainThreadQueries()
+            .build();
+        sqlite = database.getOpenHelper().getWritableDatabase();
+        seed();
+        sqlite.execSQL("ANALYZE");
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+    }
+
+    // SMS history
+
+    @Test
+    public void testHistoryByDateRangeUsesIndex() {
+        assertUsesIndex(query(SmsHistoryDao.class, "getHistoryByDateRange"),
+            "startTime", NOW - DAY_MS, "endTime", NOW);
+        assertUsesIndex(query(SmsHistoryDao.class, "getLatestHistory"), "limit", 50);
+    }
+
+    @Test
+    public void testHistoryCleanupUsesIndex() {
+        assertUsesIndex(query(SmsHistoryDao.class, "deleteOldRecords"), "timestamp", NOW - 30 * DAY_MS);
+    }
+
+    @Test
+    public void testHistoryBySuccessUsesIndex() {
+        assertUsesIndex(query(SmsHistoryDao.class, "getFailedHistory"));
+        assertUsesIndex(query(SmsHistoryDao.class, "getSuccessCount"));
+    }
+
+    @Test
+    public void testHistoryBySenderUsesIndexWithoutSort() {
+        String sql = query(SmsHistoryDao.class, "getHistoryBySender");
+        assertUsesIndex(sql, "senderNumber", "+905550000001");
+        assertNoTempSort(sql, "senderNumber", "+905550000001");
+    }
+
+    @Test
+    public void testHistoryBySimSlotUsesIndex() {
+        assertUsesIndex(query(SmsHistoryDao.class, "getHistoryBySourceSim"), "sourceSimSlot", 0);
+        assertUsesIndex(query(SmsHistoryDao.class, "getHistoryByForwardingSim"), "forwardingSimSlot", 1);
+        assertUsesIndex(query(SmsHistoryDao.class, "getCountByForwardingSim"), "forwardingSimSlot", 1);
+        assertUsesIndex(query(SmsHistoryDao.class, "getSuccessRateByForwardingSim"), "forwardingSimSlot", 1);
+    }
+
+    @Test
+    public void testSimSlotCountsByDateRangeUsesIndex() {
+        assertUsesIndex(query(SmsHistoryDao.class, "getSimSlotCountsByDateRange"),
+            "startTime", NOW - DAY_MS, "endTime", NOW);
+    }
+
+    @Test
+    public void testFailedTargetNumbersUsesIndex() {
+        String sql = query(SmsHistoryDao.class, "getFailedTargetNumbers");
+        assertUsesIndex(sql);
+        assertNoTempSort(sql);
+    }
+
+    @Test
+    public void testMaxIdDoesNotScan() {
+        assertNoFullScan(query(SmsHistoryDao.class, "getMaxId"));
+    }
+
+    @Test
+    public void testResendCandidatesUseIndex() {
+        Object[] args = {"afterId", 0, "maxId", HISTORY_ROWS, "startTime", NOW - 7 * DAY_MS, "endTime", NOW,
+            "forwardingSimSlot", -2, "targetNumber", null, "limit", 100};
+
+        assertUsesIndex(query(SmsHistoryDao.class, "getResendCandidatesPage"), args);
+        assertUsesIndex(query(SmsHistoryDao.class, "countResendCandidates"), args);
+    }
+
+    // Analytics events
+
+    @Test
+    public void testAnalyticsCountByTypeUsesIndex() {
+        assertUsesIndex(query(AnalyticsEventDao.class, "getEventCountByTypeAndAction"),
+            "eventType", StatisticsManager.EventType.SMS_FORWARD, "eventAction", StatisticsManager.EventAction.SUCCESS,
+            "startTime", NOW - DAY_MS, "endTime", NOW);
+    }
+
+    @Test
+    public void testAnalyticsByDateRangeUsesIndex() {
+        assertUsesIndex(query(AnalyticsEventDao.class, "getEventsByDateRange"),
+            "startTime", NOW - DAY_MS, "endTime", NOW);
+        assertUsesIndex(query(AnalyticsEventDao.class, "getAvgProcessingTime"),
+            "startTime", NOW - DAY_MS, "endTime", NOW);
+        assertUsesIndex(query(AnalyticsEventDao.class, "deleteOldEvents"), "timestamp", NOW - 30 * DAY_MS);
+        assertUsesIndex(query(AnalyticsEventDao.class, "deleteRolledUpEvents"), "timestamp", NOW - 7 * DAY_MS);
+    }
+
+    @Test
+    public void testMostCommonErrorsUsesIndex() {
+        assertUsesIndex(query(AnalyticsEventDao.class, "getMostCommonErrors"),
+            "startTime", NOW - DAY_MS, "endTime", NOW, "limit", 5);
+    }
+
+    // Statistics summaries
+
+    @Test
+    public void testSummaryLookupsUseIndex() {
+        assertUsesIndex(query(StatisticsSummaryDao.class, "getLastNDays"), "days", 7);
+        assertUsesIndex(query(StatisticsSummaryDao.class, "getSummaryByDateAndType"),
+            "date", "2024-01-05", "summaryType", "DAILY");
+        assertUsesIndex(query(StatisticsSummaryDao.class, "getSummariesByDateRange"),
+            "startDate", "2024-01-01", "endDate", "2024-01-31", "summaryType", "DAILY");
+    }
+
+    @Test
+    public void testSummaryUpsertLookupUsesIndex() {
+        // Only the created_timestamp subquery reads the table, the values themselves do not matter
+        String sql = query(StatisticsSummaryDao.class, "insertOrUpdate");
+        List<Object> args = new ArrayList<>();
+        for (String name : new LinkedHashSet<>(parameterNames(sql))) {
+            args.add(name);
+            args.add("date".equals(name) ? "2024-01-05" : "summaryType".equals(name) ? "DAILY" : 0);
+        }
+        assertUsesIndex(sql, args.toArray());
+    }
+
+    private void seed() {
+        Random random = new Random(42);
+
+        List<SmsHistory> history = new ArrayList<>();
+        for (int i = 0; i < HISTORY_ROWS; i++) {
+            history.add(new SmsHistory(
+                String.format("+90555%07d", i % 200), "Message " + (i % 500),
+                String.format("+90532%07d", i % 5), "Forwarded", NOW - (long) (random.nextDouble() * 90 * DAY_MS),
+                i % 10 != 0, i % 10 != 0 ? null : "Send failed",
+                i % 2, (i + 1) % 2, i % 2 + 1, (i + 1) % 2 + 1));
+        }
+        database.smsHistoryDao().insertAll(history);
+
+        String[][] events = {
+            {StatisticsManager.EventType.SMS_FORWARD, StatisticsManager.EventAction.SUCCESS},
+            {StatisticsManager.EventType.SMS_FORWARD, StatisticsManager.EventAction.FAILURE},
+            {StatisticsManager.EventType.SMS_RECEIVED, StatisticsManager.EventAction.SUCCESS},
+            {StatisticsManager.EventType.SMS_ERROR, StatisticsManager.EventAction.FAILURE},
+            {StatisticsManager.EventType.SMS_BLOCKED, StatisticsManager.EventAction.FILTERED},
+            {StatisticsManager.EventType.APP_OPEN, StatisticsManager.EventAction.STARTED},
+            {StatisticsManager.EventType.PERFORMANCE_METRIC, StatisticsManager.EventAction.SUCCESS}
+        };
+        List<AnalyticsEvent> analytics = new ArrayList<>();
+        for (int i = 0; i < ANALYTICS_ROWS; i++) {
+            String[] event = events[i % events.length];
+            boolean failure = StatisticsManager.EventAction.FAILURE.equals(event[1]);
+            analytics.add(new AnalyticsEvent(event[0], StatisticsManager.EventCategory.MESSAGING, event[1],
+                NOW - (long) (random.nextDouble() * 90 * DAY_MS), random.nextInt(500),
+                failure ? "ERROR_" + (i % 7) : null, null, "test", "session-" + (i % 300)));
+        }
+        database.analyticsEventDao().insertAll(analytics);
+
+        String[] summaryTypes = {"DAILY", "WEEKLY", "MONTHLY"};
+        for (int i = 0; i < SUMMARY_ROWS; i++) {
+            String date = String.format("%04d-%02d-%02d", 2023 + i / 336, i / 28 % 12 + 1, i % 28 + 1);
+            database.statisticsSummaryDao().insert(new StatisticsSummary(date, summaryTypes[i % 3],
+                10, 10, 9, 1, 90.0, 120.0, 1, 0, null, 3, 0, 0.0, NOW, NOW));
+        }
+    }
+
+    /**
+     * Get the SQL of a DAO method from its @Query annotation
+     * Room keeps @Query out of the class files, so the annotation is read from the DAO source
+     */
+    private static String query(Class<?> dao, String method) {
+        String source = readSource(dao);
+        Matcher matcher = QUERY_METHOD.matcher(source);
+        String sql = null;
+        while (matcher.find()) {
+            if (method.equals(matcher.group(2))) {
+                assertNull("Overloaded query method " + dao.getSimpleName() + "." + method, sql);
+                StringBuilder builder = new StringBuilder();
+                Matcher literal = STRING_LITERAL.matcher(matcher.group(1));
+                while (literal.find()) {
+                    builder.append(literal.group(1).replace("\\\"", "\"").replace("\\\\", "\\"));
+                }
+                sql = builder.toString();
+            }
+        }
+        assertNotNull("No @Query for " + dao.getSimpleName() + "." + method, sql);
+        return sql;
+    }
+
+    private static String readSource(Class<?> dao) {
+        String path = "src/main/java/" + dao.getName().replace('.', '/') + ".java";
+        // Gradle runs unit tests from the module directory, IDEs may use the project root
+        for (String candidate : new String[]{path, "app/" + path}) {
+            File file = new File(candidate);
+            if (file.isFile()) {
+                try {
+                    return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+                } catch (IOException e) {
+                    throw new AssertionError("Cannot read " + file, e);
+                }
+            }
+        }
+        throw new AssertionError("DAO source not found: " + path);
+    }
+
+    /**
+     * Named :parameters of a query in order of appearance, skipping quoted SQL literals
+     */
+    private static List<String> parameterNames(String sql) {
+        List<String> names = new ArrayList<>();
+        Matcher matcher = NAMED_PARAMETER.matcher(sql);
+        while (matcher.find()) {
+            if (matcher.group(1) != null) {
+                names.add(matcher.group(1));
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Rewrite named :parameters to positional ones and bind them from name/value pairs
+     */
+    private List<String> explain(String sql, Object... namedArgs) {
+        Map<String, Object> values = new HashMap<>();
+        for (int i = 0; i < namedArgs.length; i += 2) {
+            values.put((String) namedArgs[i], namedArgs[i + 1]);
+        }
+        List<Object> args = new ArrayList<>();
+        for (String name : parameterNames(sql)) {
+            assertTrue("No value for :" + name + " in: " + sql, values.containsKey(name));
+            args.add(values.get(name));
+        }
+        StringBuffer positional = new StringBuffer();
+        Matcher matcher = NAMED_PARAMETER.matcher(sql);
+        while (matcher.find()) {
+            matcher.appendReplacement(positional, matcher.group(1) != null ? "?" : Matcher.quoteReplacement(matcher.group()));
+        }
+        matcher.appendTail(positional);
+
+        List<String> steps = new ArrayList<>();
+        try (Cursor cursor = sqlite.query("EXPLAIN QUERY PLAN " + positional, args.toArray())) {
+            int detail = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                steps.add(cursor.getString(detail));
+            }
+        }
+        assertFalse("Empty query plan for: " + sql, steps.isEmpty());
+        return steps;
+    }
+
+    private void assertNoFullScan(String sql, Object... namedArgs) {
+        for (String step : explain(sql, namedArgs)) {
+            // "SCAN sms_history" or "SCAN TABLE sms_history AS h" with no index behind it
+            assertFalse("Full table scan in plan " + step + " for: " + sql,
+                step.startsWith("SCAN ") && !step.contains(" INDEX ") && !step.contains("PRIMARY KEY"));
+        }
+    }
+
+    private void assertUsesIndex(String sql, Object... namedArgs) {
+        assertNoFullScan(sql, namedArgs);
+        boolean indexed = false;
+        for (String step : explain(sql, namedArgs)) {
+            if (step.contains(" INDEX ") || step.contains("PRIMARY KEY")) {
+                indexed = true;
+            }
+        }
+        assertTrue("No index used for: " + sql + " " + explain(sql, namedArgs), indexed);
+    }
+
+    private void assertNoTempSort(String sql, Object... namedArgs) {
+        for (String step : explain(sql, namedArgs)) {
+            assertFalse("Extra sort in plan " + step + " for: " + sql, step.contains("TEMP B-TREE"));
+        }
+    }
+}